@@ -0,0 +1,301 @@
+package com.example.exoplayer;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link LoadControl} whose buffer durations and byte budget are decided by a {@link
+ * BufferSizingPolicy}, from the memory class of the device, the variation of the throughput
+ * measured by a {@link BandwidthMeter}, whether the content is live, and memory pressure reported
+ * through {@link ComponentCallbacks2#onTrimMemory(int)}.
+ *
+ * <p>Loading otherwise follows {@link com.google.android.exoplayer2.DefaultLoadControl}, with time
+ * thresholds not prioritized over the byte budget. When the budget shrinks, unused allocations are
+ * trimmed immediately and loading pauses until playback has consumed the excess.
+ *
+ * <p>The buffer durations may instead be fixed, for example for low-latency live playback, in which
+ * case only the byte budget follows the policy.
+ *
+ * <p>The control registers for bandwidth samples and memory callbacks when created, and unregisters
+ * when the player is released. It must be created on a thread with a looper.
+ */
+public final class AdaptiveLoadControl
+    implements LoadControl, BandwidthMeter.EventListener, ComponentCallbacks2 {
+
+  /** The time for which memory pressure shrinks buffers after it was last reported. */
+  public static final long MEMORY_PRESSURE_HOLD_MS = 60000;
+
+  private static final String TAG = "AdaptiveLoadControl";
+
+  private final Context context;
+  private final BandwidthMeter bandwidthMeter;
+  private final BufferSizingPolicy policy;
+  private final ThroughputVariance throughputVariance;
+  private final DefaultAllocator allocator;
+  @Nullable private final BufferSizingPolicy.Sizes fixedDurations;
+
+  private boolean live;
+  private int memoryPressure;
+  private volatile long memoryPressureEndTimeMs;
+  private volatile BufferSizingPolicy.Sizes sizes;
+  private volatile boolean tracksSelected;
+  private volatile int targetBufferBytes;
+
+  // Accessed on the playback thread only.
+  private boolean isBuffering;
+
+  /**
+   * @param context A context.
+   * @param bandwidthMeter The {@link BandwidthMeter} whose samples tell how steady throughput is.
+   */
+  public AdaptiveLoadControl(Context context, BandwidthMeter bandwidthMeter) {
+    this(context, bandwidthMeter, /* fixedDurations= */ null);
+  }
+
+  /**
+   * @param context A context.
+   * @param bandwidthMeter The {@link BandwidthMeter} whose samples tell how steady throughput is.
+   * @param fixedDurations The buffer durations to use instead of those decided by the policy, or
+   *     null. Its byte budget is ignored.
+   */
+  public AdaptiveLoadControl(
+      Context context,
+      BandwidthMeter bandwidthMeter,
+      @Nullable BufferSizingPolicy.Sizes fixedDurations) {
+    this.context = context.getApplicationContext();
+    this.fixedDurations = fixedDurations;
+    this.bandwidthMeter = bandwidthMeter;
+    ActivityManager activityManager =
+        (ActivityManager) this.context.getSystemService(Context.ACTIVITY_SERVICE);
+    int memoryClassMb =
+        activityManager != null
+            ? activityManager.getMemoryClass()
+            : BufferSizingPolicy.DEFAULT_MEMORY_CLASS_MB;
+    boolean lowRamDevice =
+        Util.SDK_INT >= 19 && activityManager != null && activityManager.isLowRamDevice();
+    policy = new BufferSizingPolicy(memoryClassMb, lowRamDevice);
+    throughputVariance = new ThroughputVariance();
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    sizes = decideSizes(/* live= */ false, /* throughputVariation= */ 0, memoryPressure);
+    bandwidthMeter.addEventListener(new Handler(), this);
+    this.context.registerComponentCallbacks(this);
+  }
+
+  /**
+   * Sets whether the content being played is live. May be called from any thread.
+   *
+   * @param live Whether the content is live.
+   */
+  public synchronized void setLive(boolean live) {
+    if (this.live != live) {
+      this.live = live;
+      updateSizes();
+    }
+  }
+
+  /** Returns the buffer sizes currently in effect. */
+  public BufferSizingPolicy.Sizes getSizes() {
+    long memoryPressureEndTimeMs = this.memoryPressureEndTimeMs;
+    if (memoryPressureEndTimeMs != 0 && SystemClock.elapsedRealtime() >= memoryPressureEndTimeMs) {
+      relaxMemoryPressure();
+    }
+    return sizes;
+  }
+
+  /** Returns the memory currently taken by the buffer, in bytes. */
+  public int getAllocatedBytes() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  /** Returns the memory the buffer may take, in bytes, or 0 if no tracks are selected. */
+  public int getTargetBufferBytes() {
+    return targetBufferBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "allocated="
+        + getAllocatedBytes()
+        + ", target="
+        + getTargetBufferBytes()
+        + ", "
+        + getSizes();
+  }
+
+  // BandwidthMeter.EventListener implementation.
+
+  @Override
+  public synchronized void onBandwidthSample(int elapsedMs, long bytesTransferred, long bitrate) {
+    throughputVariance.addSample(bitrate);
+    updateSizes();
+  }
+
+  // ComponentCallbacks2 implementation.
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      setMemoryPressure(BufferSizingPolicy.MEMORY_PRESSURE_CRITICAL);
+    } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW) {
+      setMemoryPressure(BufferSizingPolicy.MEMORY_PRESSURE_MODERATE);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    setMemoryPressure(BufferSizingPolicy.MEMORY_PRESSURE_CRITICAL);
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+    // Do nothing.
+  }
+
+  // LoadControl implementation.
+
+  @Override
+  public void onPrepared() {
+    reset(false);
+  }
+
+  @Override
+  public void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    boolean tracksSelected = false;
+    for (int i = 0; i < renderers.length; i++) {
+      tracksSelected |= trackSelections.get(i) != null;
+    }
+    this.tracksSelected = tracksSelected;
+    updateTargetBufferBytes();
+  }
+
+  @Override
+  public void onStopped() {
+    reset(true);
+  }
+
+  @Override
+  public void onReleased() {
+    reset(true);
+    bandwidthMeter.removeEventListener(this);
+    context.unregisterComponentCallbacks(this);
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return 0;
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return false;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+    BufferSizingPolicy.Sizes sizes = getSizes();
+    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+    long minBufferUs = C.msToUs(sizes.minBufferMs);
+    long maxBufferUs = C.msToUs(sizes.maxBufferMs);
+    if (playbackSpeed > 1) {
+      // The playback speed is faster than real time, so scale up the minimum required media
+      // duration to keep enough media buffered for a playout duration of minBufferUs.
+      long mediaDurationMinBufferUs =
+          Util.getMediaDurationForPlayoutDuration(minBufferUs, playbackSpeed);
+      minBufferUs = Math.min(mediaDurationMinBufferUs, maxBufferUs);
+    }
+    if (bufferedDurationUs < minBufferUs) {
+      isBuffering = !targetBufferSizeReached;
+    } else if (bufferedDurationUs >= maxBufferUs || targetBufferSizeReached) {
+      isBuffering = false;
+    }
+    return isBuffering;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+    BufferSizingPolicy.Sizes sizes = getSizes();
+    bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long minBufferDurationUs =
+        C.msToUs(
+            rebuffering ? sizes.bufferForPlaybackAfterRebufferMs : sizes.bufferForPlaybackMs);
+    // Under memory pressure the byte budget may be reached first, and playback must still start.
+    return minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs
+        || allocator.getTotalBytesAllocated() >= targetBufferBytes;
+  }
+
+  private synchronized void setMemoryPressure(int memoryPressure) {
+    memoryPressureEndTimeMs = SystemClock.elapsedRealtime() + MEMORY_PRESSURE_HOLD_MS;
+    if (memoryPressure > this.memoryPressure) {
+      this.memoryPressure = memoryPressure;
+      updateSizes();
+      Log.d(TAG, "Memory pressure " + memoryPressure + ": " + sizes);
+    }
+  }
+
+  private synchronized void relaxMemoryPressure() {
+    if (memoryPressureEndTimeMs != 0 && SystemClock.elapsedRealtime() >= memoryPressureEndTimeMs) {
+      memoryPressureEndTimeMs = 0;
+      memoryPressure = BufferSizingPolicy.MEMORY_PRESSURE_NONE;
+      updateSizes();
+    }
+  }
+
+  private synchronized void updateSizes() {
+    sizes = decideSizes(live, throughputVariance.getCoefficientOfVariation(), memoryPressure);
+    updateTargetBufferBytes();
+  }
+
+  private BufferSizingPolicy.Sizes decideSizes(
+      boolean live, float throughputVariation, int memoryPressure) {
+    BufferSizingPolicy.Sizes sizes = policy.getSizes(live, throughputVariation, memoryPressure);
+    if (fixedDurations == null) {
+      return sizes;
+    }
+    return new BufferSizingPolicy.Sizes(
+        fixedDurations.minBufferMs,
+        fixedDurations.maxBufferMs,
+        fixedDurations.bufferForPlaybackMs,
+        fixedDurations.bufferForPlaybackAfterRebufferMs,
+        sizes.targetBufferBytes);
+  }
+
+  private synchronized void updateTargetBufferBytes() {
+    targetBufferBytes = tracksSelected ? sizes.targetBufferBytes : 0;
+    // Lowering the target frees the allocator's unused allocations straight away.
+    allocator.setTargetBufferSize(targetBufferBytes);
+  }
+
+  private void reset(boolean resetAllocator) {
+    tracksSelected = false;
+    updateTargetBufferBytes();
+    isBuffering = false;
+    if (resetAllocator) {
+      allocator.reset();
+    }
+  }
+}
@@ -0,0 +1,255 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persists bandwidth estimates, keyed by network, so that playback on a known network starts from
+ * the bandwidth last measured on it rather than from a default guess.
+ *
+ * <p>Samples are blended into an exponential moving average. The weight of a stored estimate
+ * halves with every half-life since its last sample, falling back towards the caller's default,
+ * and estimates older than the maximum age are dropped. Changes are only written to the file by
+ * {@link #write()} or, off the calling thread, by {@link #writeAsync()}.
+ */
+public final class BandwidthEstimateStore {
+
+  /** The default time after which the weight of a stored estimate has halved. */
+  public static final long DEFAULT_HALF_LIFE_MS = 24 * 60 * 60 * 1000L;
+  /** The default age after which a stored estimate is dropped. */
+  public static final long DEFAULT_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+  /** The weight of a new sample in the moving average. */
+  public static final float SAMPLE_WEIGHT = 0.3f;
+
+  private static final int VERSION = 1;
+
+  private final File file;
+  private final long halfLifeMs;
+  private final long maxAgeMs;
+  private final Map<String, Entry> entries;
+  private final ExecutorService writeExecutor;
+  /** Serializes writes of the file, which are made without holding the lock of the entries. */
+  private final Object fileLock;
+
+  private boolean dirty;
+
+  /**
+   * @param file The file in which estimates are persisted. Existing estimates are loaded from it if
+   *     it exists, so the store should be created off the main thread.
+   */
+  public BandwidthEstimateStore(File file) {
+    this(file, DEFAULT_HALF_LIFE_MS, DEFAULT_MAX_AGE_MS);
+  }
+
+  /**
+   * @param file The file in which estimates are persisted.
+   * @param halfLifeMs The time after which the weight of a stored estimate has halved.
+   * @param maxAgeMs The age after which a stored estimate is dropped.
+   */
+  public BandwidthEstimateStore(File file, long halfLifeMs, long maxAgeMs) {
+    this.file = file;
+    this.halfLifeMs = halfLifeMs;
+    this.maxAgeMs = maxAgeMs;
+    this.entries = new HashMap<>();
+    writeExecutor = Executors.newSingleThreadExecutor();
+    fileLock = new Object();
+    readEntries();
+  }
+
+  /**
+   * Returns whether there is an estimate for {@code networkKey} that is not older than the maximum
+   * age.
+   *
+   * @param networkKey The key of the network.
+   * @param nowMs The current wall clock time, in milliseconds.
+   */
+  public synchronized boolean hasEstimate(String networkKey, long nowMs) {
+    Entry entry = entries.get(networkKey);
+    return entry != null && !isStale(entry, nowMs);
+  }
+
+  /**
+   * Returns the estimate for {@code networkKey}, decayed towards {@code defaultEstimate} by its
+   * age, or {@code defaultEstimate} if there is none or it is older than the maximum age.
+   *
+   * @param networkKey The key of the network.
+   * @param nowMs The current wall clock time, in milliseconds.
+   * @param defaultEstimate The estimate to use without a stored one, in bits per second.
+   */
+  public synchronized long getEstimate(String networkKey, long nowMs, long defaultEstimate) {
+    Entry entry = entries.get(networkKey);
+    if (entry == null) {
+      return defaultEstimate;
+    }
+    if (isStale(entry, nowMs)) {
+      entries.remove(networkKey);
+      dirty = true;
+      return defaultEstimate;
+    }
+    long ageMs = Math.max(0, nowMs - entry.updateTimeMs);
+    double weight = Math.pow(0.5, (double) ageMs / halfLifeMs);
+    return Math.round(defaultEstimate + (entry.estimate - defaultEstimate) * weight);
+  }
+
+  /**
+   * Blends a bandwidth sample into the estimate for {@code networkKey}. A sample replaces a stale
+   * estimate.
+   *
+   * @param networkKey The key of the network.
+   * @param bitrateEstimate The measured bandwidth, in bits per second.
+   * @param nowMs The current wall clock time, in milliseconds.
+   */
+  public synchronized void addSample(String networkKey, long bitrateEstimate, long nowMs) {
+    Entry entry = entries.get(networkKey);
+    long estimate =
+        entry == null || isStale(entry, nowMs)
+            ? bitrateEstimate
+            : Math.round(entry.estimate + (bitrateEstimate - entry.estimate) * SAMPLE_WEIGHT);
+    entries.put(networkKey, new Entry(estimate, nowMs));
+    dirty = true;
+  }
+
+  /** Returns the number of stored estimates, including stale ones that have not been read. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Writes the estimates to the file, if they changed since they were last written or read. */
+  public void write() {
+    Map<String, Entry> snapshot = takeSnapshot();
+    if (snapshot != null) {
+      writeEntries(snapshot);
+    }
+  }
+
+  /**
+   * Writes the estimates to the file on a background thread, if they changed since they were last
+   * written or read.
+   *
+   * @return A {@link Future} that completes when the estimates are written.
+   */
+  public Future<?> writeAsync() {
+    final Map<String, Entry> snapshot = takeSnapshot();
+    return writeExecutor.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (snapshot != null) {
+              writeEntries(snapshot);
+            }
+          }
+        });
+  }
+
+  /** Stops the write thread once pending writes complete. */
+  public void release() {
+    writeExecutor.shutdown();
+  }
+
+  /** Returns a copy of the entries if they changed since they were last written, or null. */
+  @Nullable
+  private synchronized Map<String, Entry> takeSnapshot() {
+    if (!dirty) {
+      return null;
+    }
+    dirty = false;
+    return new HashMap<>(entries);
+  }
+
+  private void writeEntries(Map<String, Entry> snapshot) {
+    synchronized (fileLock) {
+      writeEntriesToFile(snapshot);
+    }
+  }
+
+  private void writeEntriesToFile(Map<String, Entry> snapshot) {
+    File tempFile = new File(file.getPath() + ".tmp");
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(VERSION);
+      output.writeInt(snapshot.size());
+      for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeLong(entry.getValue().estimate);
+        output.writeLong(entry.getValue().updateTimeMs);
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        tempFile.renameTo(file);
+      }
+    } catch (IOException e) {
+      // Estimates remain valid in memory for this process, and are written again with the next
+      // change.
+      tempFile.delete();
+    } finally {
+      closeQuietly(output);
+    }
+  }
+
+  private boolean isStale(Entry entry, long nowMs) {
+    return nowMs - entry.updateTimeMs > maxAgeMs;
+  }
+
+  private void readEntries() {
+    if (!file.exists()) {
+      return;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != VERSION) {
+        return;
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        String networkKey = input.readUTF();
+        long estimate = input.readLong();
+        long updateTimeMs = input.readLong();
+        entries.put(networkKey, new Entry(estimate, updateTimeMs));
+      }
+    } catch (IOException e) {
+      // A corrupt store only costs a cold start, so start again from empty.
+      entries.clear();
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    public final long estimate;
+    public final long updateTimeMs;
+
+    public Entry(long estimate, long updateTimeMs) {
+      this.estimate = estimate;
+      this.updateTimeMs = updateTimeMs;
+    }
+  }
+}
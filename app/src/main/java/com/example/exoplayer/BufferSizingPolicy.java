@@ -0,0 +1,140 @@
+package com.example.exoplayer;
+
+/**
+ * Decides how much media a player buffers, given how much memory the device allows the app, how
+ * steady the throughput is, whether the content is live, and the current memory pressure.
+ *
+ * <p>The byte budget follows the memory class, so that low-RAM devices do not buffer their way into
+ * garbage collection churn or out-of-memory kills. Buffer durations grow with throughput variation,
+ * so that devices that can afford it ride out flaky networks, and are shorter for live content,
+ * which cannot be buffered far ahead of the live edge anyway. Memory pressure shrinks both.
+ */
+public final class BufferSizingPolicy {
+
+  /** Buffer sizes for a set of conditions. */
+  public static final class Sizes {
+
+    /** The duration below which the player always tries to buffer more, in milliseconds. */
+    public final int minBufferMs;
+    /** The duration past which the player stops buffering, in milliseconds. */
+    public final int maxBufferMs;
+    /** The duration buffered before playback starts or resumes after a seek, in milliseconds. */
+    public final int bufferForPlaybackMs;
+    /** The duration buffered before playback resumes after a rebuffer, in milliseconds. */
+    public final int bufferForPlaybackAfterRebufferMs;
+    /** The memory the buffer may take, in bytes. */
+    public final int targetBufferBytes;
+
+    public Sizes(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs,
+        int targetBufferBytes) {
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      this.targetBufferBytes = targetBufferBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "min="
+          + minBufferMs
+          + "ms, max="
+          + maxBufferMs
+          + "ms, forPlayback="
+          + bufferForPlaybackMs
+          + "ms, forPlaybackAfterRebuffer="
+          + bufferForPlaybackAfterRebufferMs
+          + "ms, bytes="
+          + targetBufferBytes;
+    }
+  }
+
+  /** There is no memory pressure. */
+  public static final int MEMORY_PRESSURE_NONE = 0;
+  /** Memory is running low, and buffers are halved. */
+  public static final int MEMORY_PRESSURE_MODERATE = 1;
+  /** Memory is critically low, and buffers are quartered. */
+  public static final int MEMORY_PRESSURE_CRITICAL = 2;
+
+  /** The memory class assumed when the device does not report one, in megabytes. */
+  public static final int DEFAULT_MEMORY_CLASS_MB = 128;
+
+  private static final int MB = 1024 * 1024;
+  /** The share of the memory class the buffer may take. */
+  private static final int MEMORY_CLASS_DIVISOR = 4;
+  /** The share of the memory class the buffer may take on low-RAM devices. */
+  private static final int LOW_RAM_MEMORY_CLASS_DIVISOR = 8;
+  private static final int MIN_BUFFER_BYTES = 4 * MB;
+  private static final int MAX_BUFFER_BYTES = 96 * MB;
+
+  private static final int VOD_MIN_BUFFER_MS = 15000;
+  private static final int VOD_MAX_BUFFER_MS = 50000;
+  private static final int VOD_MAX_BUFFER_CAP_MS = 120000;
+  private static final int LIVE_MIN_BUFFER_MS = 6000;
+  private static final int LIVE_MAX_BUFFER_MS = 20000;
+  private static final int LIVE_MAX_BUFFER_CAP_MS = 30000;
+  private static final int BUFFER_FOR_PLAYBACK_MS = 2500;
+  private static final int BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5000;
+  /** The throughput coefficient of variation past which buffers stop growing. */
+  private static final float MAX_THROUGHPUT_VARIATION = 1f;
+
+  private final int memoryClassMb;
+  private final boolean lowRamDevice;
+
+  /**
+   * @param memoryClassMb The memory class of the device, as reported by {@code
+   *     ActivityManager.getMemoryClass()}, in megabytes.
+   * @param lowRamDevice Whether the device reports itself as a low-RAM device.
+   */
+  public BufferSizingPolicy(int memoryClassMb, boolean lowRamDevice) {
+    this.memoryClassMb = memoryClassMb;
+    this.lowRamDevice = lowRamDevice;
+  }
+
+  /**
+   * Returns the buffer sizes for the given conditions.
+   *
+   * @param live Whether the content is live.
+   * @param throughputVariation The coefficient of variation of recent throughput samples, or 0 if
+   *     unknown.
+   * @param memoryPressure One of the {@code MEMORY_PRESSURE_*} constants.
+   */
+  public Sizes getSizes(boolean live, float throughputVariation, int memoryPressure) {
+    long budgetBytes =
+        (long) memoryClassMb
+            * MB
+            / (lowRamDevice ? LOW_RAM_MEMORY_CLASS_DIVISOR : MEMORY_CLASS_DIVISOR);
+    int targetBufferBytes =
+        (int) Math.max(MIN_BUFFER_BYTES, Math.min(MAX_BUFFER_BYTES, budgetBytes));
+
+    // Scale durations by up to 2x as throughput gets less predictable.
+    float variationScale =
+        1f + Math.max(0f, Math.min(MAX_THROUGHPUT_VARIATION, throughputVariation));
+    int minBufferMs = (int) ((live ? LIVE_MIN_BUFFER_MS : VOD_MIN_BUFFER_MS) * variationScale);
+    int maxBufferMs =
+        (int)
+            Math.min(
+                live ? LIVE_MAX_BUFFER_CAP_MS : VOD_MAX_BUFFER_CAP_MS,
+                (live ? LIVE_MAX_BUFFER_MS : VOD_MAX_BUFFER_MS) * variationScale);
+
+    int pressureShift =
+        memoryPressure == MEMORY_PRESSURE_CRITICAL
+            ? 2
+            : (memoryPressure == MEMORY_PRESSURE_MODERATE ? 1 : 0);
+    targetBufferBytes = Math.max(MIN_BUFFER_BYTES, targetBufferBytes >> pressureShift);
+    maxBufferMs = Math.max(BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS, maxBufferMs >> pressureShift);
+    minBufferMs = Math.min(minBufferMs >> pressureShift, maxBufferMs);
+    minBufferMs = Math.max(BUFFER_FOR_PLAYBACK_MS, minBufferMs);
+
+    return new Sizes(
+        minBufferMs,
+        maxBufferMs,
+        Math.min(BUFFER_FOR_PLAYBACK_MS, minBufferMs),
+        Math.min(BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS, minBufferMs),
+        targetBufferBytes);
+  }
+}
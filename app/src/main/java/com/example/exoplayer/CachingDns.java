@@ -0,0 +1,78 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.util.Clock;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Dns;
+
+/**
+ * A {@link Dns} that caches successful lookups for a fixed time, so that connections to the same
+ * host from segment, manifest and license requests share one resolution. Failed lookups are not
+ * cached.
+ */
+public final class CachingDns implements Dns {
+
+  private static final class Entry {
+
+    private final List<InetAddress> addresses;
+    private final long expiryTimeMs;
+
+    private Entry(List<InetAddress> addresses, long expiryTimeMs) {
+      this.addresses = addresses;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+
+  private final Dns delegate;
+  private final long ttlMs;
+  private final Clock clock;
+  private final Map<String, Entry> entries;
+
+  /**
+   * @param delegate The {@link Dns} used for lookups that are not cached.
+   * @param ttlMs The time for which a lookup is cached, in milliseconds.
+   */
+  public CachingDns(Dns delegate, long ttlMs) {
+    this(delegate, ttlMs, Clock.DEFAULT);
+  }
+
+  /**
+   * @param delegate The {@link Dns} used for lookups that are not cached.
+   * @param ttlMs The time for which a lookup is cached, in milliseconds.
+   * @param clock The {@link Clock} against which cached lookups expire.
+   */
+  public CachingDns(Dns delegate, long ttlMs, Clock clock) {
+    this.delegate = delegate;
+    this.ttlMs = ttlMs;
+    this.clock = clock;
+    entries = new HashMap<>();
+  }
+
+  @Override
+  public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+    long nowMs = clock.elapsedRealtime();
+    synchronized (entries) {
+      Entry entry = entries.get(hostname);
+      if (entry != null && entry.expiryTimeMs > nowMs) {
+        return entry.addresses;
+      }
+    }
+    List<InetAddress> addresses = delegate.lookup(hostname);
+    synchronized (entries) {
+      entries.put(hostname, new Entry(addresses, nowMs + ttlMs));
+    }
+    return addresses;
+  }
+
+  /** Removes all cached lookups, for example after a network change. */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.example.exoplayer;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaDrm;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Probes the {@link DeviceCapabilities} of the device once per app version and OS build, and
+ * persists them, so that later cold starts read them back instead of querying every decoder again.
+ * The HDCP levels, which change as displays are connected, are read from the DRM on every start.
+ */
+public final class CapabilityProbe {
+
+  private static final String TAG = "CapabilityProbe";
+
+  /** The video codecs whose decoders are probed. */
+  private static final String[] VIDEO_MIME_TYPES = {
+    MimeTypes.VIDEO_H264, MimeTypes.VIDEO_H265, MimeTypes.VIDEO_VP9, MimeTypes.VIDEO_AV1
+  };
+
+  /** Video sizes tried from largest to smallest, as {width, height} pairs. */
+  private static final int[][] CANDIDATE_SIZES = {
+    {3840, 2160}, {2560, 1440}, {1920, 1080}, {1280, 720}, {960, 540}, {640, 360}
+  };
+
+  private static final double CANDIDATE_FRAME_RATE = 30;
+
+  private CapabilityProbe() {}
+
+  /**
+   * Returns the capabilities persisted in {@code file} for the current app version and OS build,
+   * with the current HDCP levels, probing and persisting them if there are none. Must not be called
+   * on the main thread.
+   *
+   * @param file The file in which capabilities are persisted.
+   */
+  public static DeviceCapabilities getCapabilities(File file) {
+    String fingerprint = BuildConfig.VERSION_CODE + "/" + Build.FINGERPRINT;
+    DeviceCapabilities capabilities = DeviceCapabilities.read(file, fingerprint);
+    if (capabilities != null) {
+      return readHdcpLevels(capabilities);
+    }
+    capabilities = probe(fingerprint);
+    try {
+      capabilities.write(file);
+    } catch (IOException e) {
+      // The capabilities are probed again on the next cold start.
+      Log.w(TAG, "Failed to persist capabilities", e);
+    }
+    return capabilities;
+  }
+
+  /** Probes the capabilities of the device. */
+  public static DeviceCapabilities probe(String fingerprint) {
+    Map<String, DeviceCapabilities.CodecCapability> codecs = new LinkedHashMap<>();
+    for (String mimeType : VIDEO_MIME_TYPES) {
+      int[] secureSize = getMaxDecodedSize(mimeType, /* secure= */ true);
+      int[] size = getMaxDecodedSize(mimeType, /* secure= */ false);
+      if (secureSize != null || size != null) {
+        codecs.put(
+            mimeType,
+            new DeviceCapabilities.CodecCapability(
+                secureSize != null ? secureSize[0] : 0,
+                secureSize != null ? secureSize[1] : 0,
+                size != null ? size[0] : 0,
+                size != null ? size[1] : 0));
+      }
+    }
+    String securityLevel = null;
+    String hdcpLevel = null;
+    String maxHdcpLevel = null;
+    if (Util.SDK_INT >= 18) {
+      String[] widevineProperties = getWidevineProperties();
+      if (widevineProperties != null) {
+        securityLevel = widevineProperties[0];
+        hdcpLevel = widevineProperties[1];
+        maxHdcpLevel = widevineProperties[2];
+      }
+    }
+    return new DeviceCapabilities(fingerprint, securityLevel, hdcpLevel, maxHdcpLevel, codecs);
+  }
+
+  /** Returns {@code capabilities} with the HDCP levels currently reported by Widevine. */
+  private static DeviceCapabilities readHdcpLevels(DeviceCapabilities capabilities) {
+    if (Util.SDK_INT < 18 || capabilities.widevineSecurityLevel == null) {
+      return capabilities;
+    }
+    String[] widevineProperties = getWidevineProperties();
+    return widevineProperties != null
+        ? capabilities.withHdcpLevels(widevineProperties[1], widevineProperties[2])
+        : capabilities;
+  }
+
+  /**
+   * Returns the largest {width, height} decoded by the decoder ExoPlayer would use for {@code
+   * mimeType}, or null if there is none.
+   */
+  @Nullable
+  private static int[] getMaxDecodedSize(String mimeType, boolean secure) {
+    MediaCodecInfo decoderInfo;
+    try {
+      decoderInfo = MediaCodecUtil.getDecoderInfo(mimeType, secure, /* tunneling= */ false);
+    } catch (MediaCodecUtil.DecoderQueryException e) {
+      Log.w(TAG, "Failed to query " + mimeType + " decoders", e);
+      return null;
+    }
+    if (decoderInfo == null) {
+      return null;
+    }
+    if (Util.SDK_INT >= 21) {
+      for (int[] size : CANDIDATE_SIZES) {
+        if (decoderInfo.isVideoSizeAndRateSupportedV21(size[0], size[1], CANDIDATE_FRAME_RATE)) {
+          return size;
+        }
+      }
+      return getUpperSizeV21(decoderInfo.capabilities);
+    }
+    // Before API 21 only the H.264 decodable frame size is known, and is used for every codec.
+    int maxFrameSize;
+    try {
+      maxFrameSize = MediaCodecUtil.maxH264DecodableFrameSize();
+    } catch (MediaCodecUtil.DecoderQueryException e) {
+      return null;
+    }
+    for (int[] size : CANDIDATE_SIZES) {
+      if (size[0] * size[1] <= maxFrameSize) {
+        return size;
+      }
+    }
+    return null;
+  }
+
+  @TargetApi(21)
+  @Nullable
+  private static int[] getUpperSizeV21(@Nullable CodecCapabilities capabilities) {
+    if (capabilities == null || capabilities.getVideoCapabilities() == null) {
+      return null;
+    }
+    return new int[] {
+      capabilities.getVideoCapabilities().getSupportedWidths().getUpper(),
+      capabilities.getVideoCapabilities().getSupportedHeights().getUpper()
+    };
+  }
+
+  /**
+   * Returns the Widevine security level, current HDCP level and maximum HDCP level, or null if
+   * Widevine is not supported. Levels the DRM does not report are null.
+   */
+  @TargetApi(18)
+  @Nullable
+  private static String[] getWidevineProperties() {
+    MediaDrm mediaDrm;
+    try {
+      mediaDrm = new MediaDrm(C.WIDEVINE_UUID);
+    } catch (Exception e) {
+      return null;
+    }
+    try {
+      return new String[] {
+        getPropertyString(mediaDrm, "securityLevel"),
+        getPropertyString(mediaDrm, "hdcpLevel"),
+        getPropertyString(mediaDrm, "maxHdcpLevel")
+      };
+    } finally {
+      mediaDrm.release();
+    }
+  }
+
+  @TargetApi(18)
+  @Nullable
+  private static String getPropertyString(MediaDrm mediaDrm, String name) {
+    try {
+      return mediaDrm.getPropertyString(name);
+    } catch (RuntimeException e) {
+      // The property is not supported by this DRM.
+      return null;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.RendererCapabilities;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+
+/**
+ * A {@link DefaultTrackSelector} that treats video formats larger than the {@link
+ * DeviceCapabilities} allow for their codec as exceeding the renderer capabilities, so that they
+ * are only selected if no other format of the codec can be played.
+ *
+ * <p>Unlike {@link Parameters#maxVideoWidth}, the limit depends on the MIME type of each format,
+ * since a device may decode one codec securely at a higher resolution than another.
+ */
+public final class CapabilityTrackSelector extends DefaultTrackSelector {
+
+  private final DeviceCapabilities capabilities;
+
+  /**
+   * @param context A context.
+   * @param capabilities The capabilities of the device.
+   */
+  public CapabilityTrackSelector(Context context, DeviceCapabilities capabilities) {
+    super(context, new AdaptiveTrackSelection.Factory());
+    this.capabilities = capabilities;
+  }
+
+  @Override
+  @Nullable
+  protected TrackSelection.Definition selectVideoTrack(
+      TrackGroupArray groups,
+      int[][] formatSupports,
+      int mixedMimeTypeAdaptationSupports,
+      Parameters params,
+      boolean enableAdaptiveTrackSelection)
+      throws ExoPlaybackException {
+    int[][] cappedFormatSupports = new int[formatSupports.length][];
+    for (int groupIndex = 0; groupIndex < groups.length; groupIndex++) {
+      TrackGroup group = groups.get(groupIndex);
+      int[] supports = formatSupports[groupIndex].clone();
+      for (int trackIndex = 0; trackIndex < group.length; trackIndex++) {
+        if (exceedsCapabilities(group.getFormat(trackIndex))
+            && (supports[trackIndex] & RendererCapabilities.FORMAT_SUPPORT_MASK)
+                == RendererCapabilities.FORMAT_HANDLED) {
+          supports[trackIndex] =
+              (supports[trackIndex] & ~RendererCapabilities.FORMAT_SUPPORT_MASK)
+                  | RendererCapabilities.FORMAT_EXCEEDS_CAPABILITIES;
+        }
+      }
+      cappedFormatSupports[groupIndex] = supports;
+    }
+    return super.selectVideoTrack(
+        groups,
+        cappedFormatSupports,
+        mixedMimeTypeAdaptationSupports,
+        params,
+        enableAdaptiveTrackSelection);
+  }
+
+  private boolean exceedsCapabilities(Format format) {
+    if (format.sampleMimeType == null
+        || format.width == Format.NO_VALUE
+        || format.height == Format.NO_VALUE) {
+      return false;
+    }
+    return format.width > capabilities.getMaxVideoWidth(format.sampleMimeType)
+        || format.height > capabilities.getMaxVideoHeight(format.sampleMimeType);
+  }
+}
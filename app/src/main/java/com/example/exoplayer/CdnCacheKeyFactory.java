@@ -0,0 +1,165 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link CacheKeyFactory} that derives cache keys from segment URIs with their CDN specifics
+ * removed, so that the same segment maps to the same cache entry however it was requested.
+ *
+ * <p>Query parameters carrying per-session auth tokens are dropped, host aliases of the same CDN
+ * are collapsed into one canonical host, and the fragment is dropped. The remaining query
+ * parameters are kept in their original order. A {@link DataSpec#key} set by the caller is used
+ * unchanged.
+ */
+public final class CdnCacheKeyFactory implements CacheKeyFactory {
+
+  /** Builder for {@link CdnCacheKeyFactory} instances. */
+  public static final class Builder {
+
+    private final Set<String> tokenParameters;
+    private final Map<String, String> hostAliases;
+
+    /** Creates a builder that strips {@link #DEFAULT_TOKEN_PARAMETERS}. */
+    public Builder() {
+      tokenParameters = new HashSet<>();
+      for (String tokenParameter : DEFAULT_TOKEN_PARAMETERS) {
+        tokenParameters.add(tokenParameter.toLowerCase(Locale.US));
+      }
+      hostAliases = new HashMap<>();
+    }
+
+    /** Adds a query parameter that is removed from keys. Names are matched ignoring case. */
+    public Builder addTokenParameter(String name) {
+      tokenParameters.add(name.toLowerCase(Locale.US));
+      return this;
+    }
+
+    /** Removes all token parameters, including the defaults. */
+    public Builder clearTokenParameters() {
+      tokenParameters.clear();
+      return this;
+    }
+
+    /**
+     * Adds a host alias. Keys of URIs on {@code aliasHost} use {@code canonicalHost} instead, so
+     * that segments fetched from either host share cache entries. Hosts are matched ignoring case
+     * and port.
+     */
+    public Builder addHostAlias(String aliasHost, String canonicalHost) {
+      hostAliases.put(aliasHost.toLowerCase(Locale.US), canonicalHost.toLowerCase(Locale.US));
+      return this;
+    }
+
+    /** Returns a {@link CdnCacheKeyFactory} with the values of this builder. */
+    public CdnCacheKeyFactory build() {
+      return new CdnCacheKeyFactory(this);
+    }
+  }
+
+  /** Query parameters commonly used by CDNs for auth tokens and signed URL expiry. */
+  public static final String[] DEFAULT_TOKEN_PARAMETERS = {
+    "token",
+    "auth",
+    "hdnts",
+    "hdntl",
+    "wmsAuthSign",
+    "Policy",
+    "Signature",
+    "Key-Pair-Id",
+    "Expires",
+    "md5",
+    "wowzatokenhash",
+    "wowzatokenstarttime",
+    "wowzatokenendtime",
+  };
+
+  private final Set<String> tokenParameters;
+  private final Map<String, String> hostAliases;
+
+  private CdnCacheKeyFactory(Builder builder) {
+    tokenParameters = Collections.unmodifiableSet(new HashSet<>(builder.tokenParameters));
+    hostAliases = Collections.unmodifiableMap(new HashMap<>(builder.hostAliases));
+  }
+
+  @Override
+  public String buildCacheKey(DataSpec dataSpec) {
+    return dataSpec.key != null ? dataSpec.key : getCacheKey(dataSpec.uri.toString());
+  }
+
+  /** Returns the cache key for a URI string. */
+  public String getCacheKey(String uri) {
+    int fragmentStart = uri.indexOf('#');
+    int end = fragmentStart >= 0 ? fragmentStart : uri.length();
+    int queryStart = uri.indexOf('?');
+    if (queryStart > end) {
+      queryStart = -1;
+    }
+    int pathEnd = queryStart >= 0 ? queryStart : end;
+
+    StringBuilder key = new StringBuilder(end);
+    int schemeEnd = uri.indexOf("://");
+    if (schemeEnd >= 0 && schemeEnd < pathEnd) {
+      int hostStart = schemeEnd + 3;
+      int hostEnd = hostStart;
+      while (hostEnd < pathEnd && uri.charAt(hostEnd) != '/') {
+        hostEnd++;
+      }
+      key.append(uri, 0, hostStart)
+          .append(getCanonicalAuthority(uri.substring(hostStart, hostEnd)))
+          .append(uri, hostEnd, pathEnd);
+    } else {
+      key.append(uri, 0, pathEnd);
+    }
+
+    if (queryStart >= 0) {
+      boolean firstParameter = true;
+      int parameterStart = queryStart + 1;
+      while (parameterStart < end) {
+        int parameterEnd = uri.indexOf('&', parameterStart);
+        if (parameterEnd < 0 || parameterEnd > end) {
+          parameterEnd = end;
+        }
+        int nameEnd = uri.indexOf('=', parameterStart);
+        if (nameEnd < 0 || nameEnd > parameterEnd) {
+          nameEnd = parameterEnd;
+        }
+        String name = uri.substring(parameterStart, nameEnd).toLowerCase(Locale.US);
+        if (parameterEnd > parameterStart && !tokenParameters.contains(name)) {
+          key.append(firstParameter ? '?' : '&').append(uri, parameterStart, parameterEnd);
+          firstParameter = false;
+        }
+        parameterStart = parameterEnd + 1;
+      }
+    }
+    return key.toString();
+  }
+
+  /** Returns the authority with the host lower-cased and replaced by its canonical host. */
+  private String getCanonicalAuthority(String authority) {
+    int userInfoEnd = authority.lastIndexOf('@');
+    int portStart = authority.lastIndexOf(':');
+    if (portStart <= userInfoEnd || authority.endsWith("]")) {
+      portStart = -1;
+    }
+    String host =
+        authority
+            .substring(userInfoEnd + 1, portStart >= 0 ? portStart : authority.length())
+            .toLowerCase(Locale.US);
+    String canonicalHost = hostAliases.get(host);
+    if (canonicalHost != null) {
+      // Aliases of the same CDN may listen on different ports, so the port is dropped too.
+      return authority.substring(0, userInfoEnd + 1) + canonicalHost;
+    }
+    return authority.substring(0, userInfoEnd + 1)
+        + host
+        + (portStart >= 0 ? authority.substring(portStart) : "");
+  }
+}
@@ -0,0 +1,30 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+
+/** A live channel or VOD title that can be zapped to. */
+public final class Channel {
+
+  /** The id of the channel, used as its content id. */
+  public final String id;
+  /** The display name of the channel. */
+  public final String name;
+  /** The manifest URI of the channel. */
+  public final Uri uri;
+
+  /**
+   * @param id The id of the channel.
+   * @param name The display name of the channel.
+   * @param uri The manifest URI of the channel.
+   */
+  public Channel(String id, String name, Uri uri) {
+    this.id = id;
+    this.name = name;
+    this.uri = uri;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
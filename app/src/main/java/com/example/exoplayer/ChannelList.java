@@ -0,0 +1,71 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.C;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** An immutable, ordered list of channels. Zapping past either end wraps around. */
+public final class ChannelList {
+
+  private final List<Channel> channels;
+
+  /** @param channels The channels, in zapping order. Must not be empty. */
+  public ChannelList(List<Channel> channels) {
+    if (channels.isEmpty()) {
+      throw new IllegalArgumentException("Empty channel list");
+    }
+    this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+  }
+
+  /**
+   * Returns a list of channels for manifest URIs. Each channel is identified by its URI, and named
+   * after the path segment that precedes the manifest file name.
+   */
+  public static ChannelList fromUris(String[] uris) {
+    List<Channel> channels = new ArrayList<>(uris.length);
+    for (String uriString : uris) {
+      Uri uri = Uri.parse(uriString);
+      List<String> pathSegments = uri.getPathSegments();
+      String name =
+          pathSegments.size() >= 2
+              ? pathSegments.get(pathSegments.size() - 2)
+              : uri.getLastPathSegment();
+      channels.add(new Channel(uriString, name != null ? name : uriString, uri));
+    }
+    return new ChannelList(channels);
+  }
+
+  /** Returns the number of channels. */
+  public int size() {
+    return channels.size();
+  }
+
+  /** Returns the channel at {@code index}. */
+  public Channel get(int index) {
+    return channels.get(index);
+  }
+
+  /** Returns the index of the channel with {@code id}, or {@link C#INDEX_UNSET} if there is none. */
+  public int indexOf(String id) {
+    for (int i = 0; i < channels.size(); i++) {
+      if (channels.get(i).id.equals(id)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /** Returns the index of the channel after {@code index}. */
+  public int getNextIndex(int index) {
+    return (index + 1) % channels.size();
+  }
+
+  /** Returns the index of the channel before {@code index}. */
+  public int getPreviousIndex(int index) {
+    return (index - 1 + channels.size()) % channels.size();
+  }
+}
@@ -0,0 +1,318 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.audio.AudioAttributes;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.DummyExoMediaDrm;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.UnsupportedDrmException;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.source.dash.DashMediaSource;
+import com.google.android.exoplayer2.source.dash.DefaultDashChunkSource;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.hls.HlsMediaSource;
+import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Creates the players and media sources of the channels of a {@link ZappingEngine}, and owns the
+ * state they share: the bandwidth meter, the license prefetcher, the offline licenses and the load
+ * control and key rotation prefetcher of each channel.
+ *
+ * <p>The factory only references the application, so that a zapping engine parked in the {@link
+ * PlayerHolder} keeps working after the activity that created it is destroyed. It must be released
+ * after its zapping engine, by {@link PlayerHolder.Session#release()}. All methods must be called
+ * on the main thread.
+ */
+public final class ChannelPlayerFactory implements ZappingEngine.PlayerFactory {
+
+  private static final UUID DRM_SCHEME = C.WIDEVINE_UUID;
+
+  private final ExoplayerApplication application;
+  private final String drmLicenseUrl;
+  private final String drmUserId;
+  private final String drmMerchantId;
+  private final String drmAppId;
+  @Nullable private final LowLatencyLivePlayback lowLatencyLivePlayback;
+  private final PersistedBandwidthMeter bandwidthMeter;
+  private final LicensePrefetcher licensePrefetcher;
+  /** Loads DASH manifests, serving the prefetched ones and making refreshes conditional. */
+  private final DataSource.Factory manifestDataSourceFactory;
+  private final OfflineLicenseManager offlineLicenseManager;
+  /** The load control of each channel with a player, by channel id. */
+  private final Map<String, AdaptiveLoadControl> adaptiveLoadControls;
+  /** The key rotation prefetcher of each channel with a player, by channel id. */
+  private final Map<String, KeyRotationPrefetcher> keyRotationPrefetchers;
+
+  /**
+   * @param application The application, which must have completed its playback warm-up.
+   * @param drmLicenseUrl The URL of the Widevine license server.
+   * @param lowLatencyLivePlayback The low-latency live playback with which channels are played, or
+   *     null to play them with buffers sized for the device and network.
+   */
+  public ChannelPlayerFactory(
+      ExoplayerApplication application,
+      String drmLicenseUrl,
+      @Nullable LowLatencyLivePlayback lowLatencyLivePlayback) {
+    this.application = application;
+    this.drmLicenseUrl = drmLicenseUrl;
+    this.lowLatencyLivePlayback = lowLatencyLivePlayback;
+    drmUserId = application.getString(R.string.drm_user_id);
+    drmMerchantId = application.getString(R.string.drm_merchant_id);
+    drmAppId = application.getString(R.string.drm_app_id);
+    // Seed the initial track selection of every channel with the bandwidth last measured on this
+    // network.
+    bandwidthMeter =
+        new PersistedBandwidthMeter(application, application.getBandwidthEstimateStore());
+    licensePrefetcher = new LicensePrefetcher(application.buildManifestDataSourceFactory());
+    manifestDataSourceFactory = licensePrefetcher.getDataSourceFactory();
+    offlineLicenseManager =
+        new OfflineLicenseManager(
+            application.getOfflineLicenseStore(),
+            OfflineLicenseManager.newWidevineLicenseDownloader(createMediaDrmCallback()));
+    adaptiveLoadControls = new HashMap<>();
+    keyRotationPrefetchers = new HashMap<>();
+  }
+
+  /** Returns the bandwidth meter shared by the players. */
+  public PersistedBandwidthMeter getBandwidthMeter() {
+    return bandwidthMeter;
+  }
+
+  /** Returns the low-latency live playback of the channels, or null if it is not enabled. */
+  @Nullable
+  public LowLatencyLivePlayback getLowLatencyLivePlayback() {
+    return lowLatencyLivePlayback;
+  }
+
+  /** Returns the load control of the player of {@code channel}, if it has one. */
+  @Nullable
+  public AdaptiveLoadControl getLoadControl(Channel channel) {
+    return adaptiveLoadControls.get(channel.id);
+  }
+
+  /**
+   * Cancels the license prefetches of all channels. Must be called while the players still run,
+   * for example before the zapping engine is parked.
+   */
+  public void cancelPrefetches() {
+    licensePrefetcher.cancel();
+  }
+
+  /**
+   * Persists the bandwidth measurements and releases the prefetch and license threads. Must be
+   * called after the zapping engine is released.
+   */
+  public void release() {
+    bandwidthMeter.persist();
+    licensePrefetcher.release();
+    offlineLicenseManager.release();
+  }
+
+  /**
+   * Returns a new {@link WidevineMediaDrmCallback} for the license server and ids of the players,
+   * for example to download or release the offline licenses of downloads. Each callback sends a
+   * session id of its own, so that the license server can tell playback sessions apart.
+   */
+  public WidevineMediaDrmCallback createMediaDrmCallback() {
+    HttpDataSource.Factory licenseDataSourceFactory = application.buildHttpDataSourceFactory();
+    WidevineMediaDrmCallback drmCallback =
+        new WidevineMediaDrmCallback(
+            drmLicenseUrl,
+            /* forceDefaultLicenseUrl= */ false,
+            licenseDataSourceFactory,
+            LicenseRequestCoalescer.getSharedInstance(),
+            application.getLicenseRequestMetrics(drmLicenseUrl));
+    drmCallback.setCustomData(drmUserId, UUID.randomUUID().toString(), drmMerchantId, drmAppId);
+    return drmCallback;
+  }
+
+  @Override
+  public DefaultTrackSelector createTrackSelector(Context context) {
+    // Avoid video the device cannot decode securely, or that licenses do not grant keys for at its
+    // security and HDCP levels.
+    return new CapabilityTrackSelector(context, application.getDeviceCapabilities());
+  }
+
+  @Override
+  public SimpleExoPlayer createPlayer(
+      StandbyLoadControl loadControl, DefaultTrackSelector trackSelector) {
+    RenderersFactory renderersFactory = application.buildRenderersFactory(false);
+    SimpleExoPlayer player =
+        new SimpleExoPlayer.Builder(application, renderersFactory)
+            .setTrackSelector(trackSelector)
+            .setLoadControl(loadControl)
+            .setBandwidthMeter(bandwidthMeter)
+            .build();
+    player.setAudioAttributes(AudioAttributes.DEFAULT, /* handleAudioFocus= */ true);
+    return player;
+  }
+
+  @Override
+  public LoadControl createLoadControl(Channel channel) {
+    // Buffer sizes follow the device's memory, the network and the content type, and buffers
+    // shrink under memory pressure also when their durations are fixed for low-latency playback.
+    AdaptiveLoadControl loadControl =
+        lowLatencyLivePlayback != null
+            ? LowLatencyLivePlayback.buildLoadControl(
+                application, bandwidthMeter, lowLatencyLivePlayback.getTargetOffsetMs())
+            : new AdaptiveLoadControl(application, bandwidthMeter);
+    adaptiveLoadControls.put(channel.id, loadControl);
+    return loadControl;
+  }
+
+  /**
+   * Returns a media source for {@code channel} on {@code player}, with a DRM session manager of its
+   * own. The manager keeps a session per key period, so that the keys of upcoming periods are
+   * prefetched. The license of a DASH channel is requested as soon as its manifest is fetched.
+   *
+   * <p>The startup of {@code player} is recorded in the {@link StartupTracker} only if it starts
+   * playing right away. Neighbors prepared in standby are not, since their phases would not tell
+   * how long viewers wait for playback, which the zap metrics measure instead.
+   */
+  @Override
+  public MediaSource createMediaSource(Channel channel, SimpleExoPlayer player) {
+    Looper playbackLooper = player.getPlaybackLooper();
+    WidevineMediaDrmCallback mediaDrmCallback = createMediaDrmCallback();
+    if (player.getPlayWhenReady()) {
+      StartupTracker.Session startupSession = application.getStartupTracker().startSession();
+      player.addAnalyticsListener(new StartupAnalyticsListener(startupSession));
+      mediaDrmCallback.setStartupSession(startupSession);
+    }
+    // Playback starts from a persisted offline license of the content's PSSH when there is one.
+    DrmSessionManager<ExoMediaCrypto> drmSessionManager =
+        new RestoringDrmSessionManager(
+            new DefaultDrmSessionManager.Builder()
+                .setUuidAndExoMediaDrmProvider(DRM_SCHEME, buildMediaDrmProvider(mediaDrmCallback))
+                .setMultiSession(true),
+            mediaDrmCallback,
+            offlineLicenseManager,
+            application.getResources().getBoolean(R.bool.persist_licenses));
+    KeyRotationPrefetcher keyRotationPrefetcher =
+        new KeyRotationPrefetcher(drmSessionManager, playbackLooper);
+    keyRotationPrefetchers.put(channel.id, keyRotationPrefetcher);
+    if (Util.inferContentType(channel.uri) == C.TYPE_DASH) {
+      licensePrefetcher.prefetch(channel.uri, drmSessionManager, playbackLooper);
+    }
+    return createMediaSource(
+        channel.uri,
+        drmSessionManager,
+        adaptiveLoadControls.get(channel.id),
+        keyRotationPrefetcher);
+  }
+
+  @Override
+  public void onReleasingPlayer(Channel channel, SimpleExoPlayer player) {
+    adaptiveLoadControls.remove(channel.id);
+    licensePrefetcher.cancel(channel.uri);
+    KeyRotationPrefetcher keyRotationPrefetcher = keyRotationPrefetchers.remove(channel.id);
+    if (keyRotationPrefetcher != null) {
+      keyRotationPrefetcher.release();
+    }
+  }
+
+  /**
+   * Returns a provider of the framework DRM that renews streaming licenses through {@code
+   * mediaDrmCallback} ahead of their expiry. The DRM is opened at L3 on devices that report L1 but
+   * have no secure decoder to use L1 keys with.
+   */
+  private ExoMediaDrm.Provider<FrameworkMediaCrypto> buildMediaDrmProvider(
+      final WidevineMediaDrmCallback mediaDrmCallback) {
+    final boolean forceL3 = application.getDeviceCapabilities().shouldForceL3();
+    return new ExoMediaDrm.Provider<FrameworkMediaCrypto>() {
+      @Override
+      public ExoMediaDrm<FrameworkMediaCrypto> acquireExoMediaDrm(UUID uuid) {
+        try {
+          FrameworkMediaDrm mediaDrm = FrameworkMediaDrm.newInstance(uuid);
+          if (forceL3) {
+            mediaDrm.setPropertyString("securityLevel", DeviceCapabilities.SECURITY_LEVEL_L3);
+          }
+          return new RenewingMediaDrm(mediaDrm, mediaDrmCallback);
+        } catch (UnsupportedDrmException e) {
+          return new DummyExoMediaDrm<>();
+        }
+      }
+    };
+  }
+
+  private MediaSource createMediaSource(
+      Uri uri,
+      DrmSessionManager<?> drmSessionManager,
+      @Nullable final AdaptiveLoadControl loadControl,
+      @Nullable final KeyRotationPrefetcher keyRotationPrefetcher) {
+    @C.ContentType int type = Util.inferContentType(uri);
+    switch (type) {
+      case C.TYPE_DASH:
+        final PlaybackCache.DataSourceFactory segmentDataSourceFactory =
+            application.buildPlaybackDataSourceFactory();
+        final ParsingLoadable.Parser<DashManifest> manifestParser =
+            application.getManifestRefreshCache().newDashManifestParser();
+        // Segments go through the playback cache, the manifest does not.
+        DashMediaSource.Factory dashMediaSourceFactory =
+            new DashMediaSource.Factory(
+                new DefaultDashChunkSource.Factory(segmentDataSourceFactory),
+                manifestDataSourceFactory);
+        if (lowLatencyLivePlayback != null) {
+          // Join live streams at the target offset rather than the manifest's delay.
+          dashMediaSourceFactory.setLivePresentationDelayMs(
+              lowLatencyLivePlayback.getTargetOffsetMs(), /* overridesManifest= */ true);
+        }
+        return dashMediaSourceFactory
+            .setManifestParser(
+                new ParsingLoadable.Parser<DashManifest>() {
+                  @Override
+                  public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+                    DashManifest manifest = manifestParser.parse(uri, inputStream);
+                    segmentDataSourceFactory.setLive(manifest.dynamic);
+                    if (loadControl != null) {
+                      loadControl.setLive(manifest.dynamic);
+                    }
+                    if (keyRotationPrefetcher != null) {
+                      keyRotationPrefetcher.onManifestLoaded(manifest);
+                    }
+                    return manifest;
+                  }
+                })
+            .setDrmSessionManager(drmSessionManager)
+            .createMediaSource(uri);
+      case C.TYPE_SS:
+        return new SsMediaSource.Factory(application.buildDataSourceFactory())
+            .setDrmSessionManager(drmSessionManager)
+            .createMediaSource(uri);
+      case C.TYPE_HLS:
+        return new HlsMediaSource.Factory(application.buildDataSourceFactory())
+            .setDrmSessionManager(drmSessionManager)
+            .createMediaSource(uri);
+      case C.TYPE_OTHER:
+        return new ProgressiveMediaSource.Factory(application.buildPlaybackDataSourceFactory())
+            .setDrmSessionManager(drmSessionManager)
+            .createMediaSource(uri);
+      default:
+        throw new IllegalStateException("Unsupported type: " + type);
+    }
+  }
+}
@@ -0,0 +1,355 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The video decoding and DRM capabilities of the device, as probed by {@link CapabilityProbe}: the
+ * secure and non-secure decoders available per codec and the largest size they decode, the
+ * Widevine security level, and the current and maximum HDCP levels.
+ *
+ * <p>Capabilities are persisted with the fingerprint of the app version and OS build they were
+ * probed on, and are only read back for the same fingerprint. The HDCP levels are not persisted,
+ * since they change as displays are connected, and are set on the capabilities read back with
+ * {@link #withHdcpLevels(String, String)}.
+ */
+public final class DeviceCapabilities {
+
+  /** The decoders available for a codec. */
+  public static final class CodecCapability {
+
+    /** The largest width decoded by a secure decoder, or 0 if there is none. */
+    public final int secureMaxWidth;
+    /** The largest height decoded by a secure decoder, or 0 if there is none. */
+    public final int secureMaxHeight;
+    /** The largest width decoded by a non-secure decoder, or 0 if there is none. */
+    public final int maxWidth;
+    /** The largest height decoded by a non-secure decoder, or 0 if there is none. */
+    public final int maxHeight;
+
+    public CodecCapability(int secureMaxWidth, int secureMaxHeight, int maxWidth, int maxHeight) {
+      this.secureMaxWidth = secureMaxWidth;
+      this.secureMaxHeight = secureMaxHeight;
+      this.maxWidth = maxWidth;
+      this.maxHeight = maxHeight;
+    }
+
+    /** Returns whether there is a secure decoder for the codec. */
+    public boolean hasSecureDecoder() {
+      return secureMaxWidth > 0 && secureMaxHeight > 0;
+    }
+  }
+
+  /** The Widevine security level at which decryption and decoding happen in a secure processor. */
+  public static final String SECURITY_LEVEL_L1 = "L1";
+  /** The Widevine security level at which decryption and decoding happen in software. */
+  public static final String SECURITY_LEVEL_L3 = "L3";
+
+  /** The largest width played without hardware-backed DRM or without output protection. */
+  public static final int SD_MAX_WIDTH = 960;
+  /** The largest height played without hardware-backed DRM or without output protection. */
+  public static final int SD_MAX_HEIGHT = 540;
+  /** The largest width played with output protection older than HDCP 2.2. */
+  public static final int HD_MAX_WIDTH = 1920;
+  /** The largest height played with output protection older than HDCP 2.2. */
+  public static final int HD_MAX_HEIGHT = 1080;
+
+  private static final int VERSION = 2;
+  private static final Pattern HDCP_VERSION_PATTERN = Pattern.compile("(\\d+)\\.(\\d+)");
+
+  /** The app version and OS build the capabilities were probed on. */
+  public final String fingerprint;
+  /** The Widevine security level, or null if Widevine is not supported. */
+  @Nullable public final String widevineSecurityLevel;
+  /** The current HDCP level reported by Widevine, or null if unknown. */
+  @Nullable public final String hdcpLevel;
+  /** The maximum HDCP level reported by Widevine, or null if unknown. */
+  @Nullable public final String maxHdcpLevel;
+  /** The decoders available per video MIME type. */
+  public final Map<String, CodecCapability> codecs;
+
+  /**
+   * @param fingerprint The app version and OS build the capabilities were probed on.
+   * @param widevineSecurityLevel The Widevine security level, or null if Widevine is not supported.
+   * @param hdcpLevel The current HDCP level, or null if unknown.
+   * @param maxHdcpLevel The maximum HDCP level, or null if unknown.
+   * @param codecs The decoders available per video MIME type.
+   */
+  public DeviceCapabilities(
+      String fingerprint,
+      @Nullable String widevineSecurityLevel,
+      @Nullable String hdcpLevel,
+      @Nullable String maxHdcpLevel,
+      Map<String, CodecCapability> codecs) {
+    this.fingerprint = fingerprint;
+    this.widevineSecurityLevel = widevineSecurityLevel;
+    this.hdcpLevel = hdcpLevel;
+    this.maxHdcpLevel = maxHdcpLevel;
+    this.codecs = Collections.unmodifiableMap(new LinkedHashMap<>(codecs));
+  }
+
+  /** Returns whether there is a secure decoder for {@code mimeType}. */
+  public boolean hasSecureDecoder(String mimeType) {
+    CodecCapability codec = codecs.get(mimeType);
+    return codec != null && codec.hasSecureDecoder();
+  }
+
+  /**
+   * Returns whether Widevine reports {@link #SECURITY_LEVEL_L1} although no codec has a secure
+   * decoder, in which case keys obtained at L1 cannot be used and the DRM should be opened at
+   * {@link #SECURITY_LEVEL_L3}.
+   */
+  public boolean shouldForceL3() {
+    if (!SECURITY_LEVEL_L1.equals(widevineSecurityLevel)) {
+      return false;
+    }
+    for (CodecCapability codec : codecs.values()) {
+      if (codec.hasSecureDecoder()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether protected content is decrypted and decoded in a secure processor. */
+  public boolean isHardwareSecure() {
+    return SECURITY_LEVEL_L1.equals(widevineSecurityLevel) && !shouldForceL3();
+  }
+
+  /**
+   * Returns the largest width of {@code mimeType} video that can be decoded for protected content
+   * and that licenses are expected to grant keys for at the device's security and HDCP levels, or
+   * {@link Integer#MAX_VALUE} if unknown.
+   */
+  public int getMaxVideoWidth(String mimeType) {
+    return getMaxVideoSize(mimeType)[0];
+  }
+
+  /**
+   * Returns the largest height of {@code mimeType} video that can be decoded for protected content
+   * and that licenses are expected to grant keys for at the device's security and HDCP levels, or
+   * {@link Integer#MAX_VALUE} if unknown.
+   */
+  public int getMaxVideoHeight(String mimeType) {
+    return getMaxVideoSize(mimeType)[1];
+  }
+
+  /**
+   * Returns the HDCP version that protects the output during playback, as returned by {@link
+   * #parseHdcpVersion(String)}. A display connected later cannot be protected beyond the maximum
+   * HDCP level, so the current level is bounded by it.
+   */
+  public int getEffectiveHdcpVersion() {
+    int hdcpVersion = parseHdcpVersion(hdcpLevel);
+    int maxHdcpVersion = parseHdcpVersion(maxHdcpLevel);
+    if (hdcpVersion == -1) {
+      return maxHdcpVersion;
+    } else if (maxHdcpVersion == -1) {
+      return hdcpVersion;
+    }
+    return Math.min(hdcpVersion, maxHdcpVersion);
+  }
+
+  /** Returns a copy of the capabilities with the given current and maximum HDCP levels. */
+  public DeviceCapabilities withHdcpLevels(
+      @Nullable String hdcpLevel, @Nullable String maxHdcpLevel) {
+    return new DeviceCapabilities(
+        fingerprint, widevineSecurityLevel, hdcpLevel, maxHdcpLevel, codecs);
+  }
+
+  /**
+   * Writes the capabilities to {@code file}, without the HDCP levels.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void write(File file) throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp");
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(VERSION);
+      output.writeUTF(fingerprint);
+      writeNullableUTF(output, widevineSecurityLevel);
+      output.writeInt(codecs.size());
+      for (Map.Entry<String, CodecCapability> entry : codecs.entrySet()) {
+        CodecCapability codec = entry.getValue();
+        output.writeUTF(entry.getKey());
+        output.writeInt(codec.secureMaxWidth);
+        output.writeInt(codec.secureMaxHeight);
+        output.writeInt(codec.maxWidth);
+        output.writeInt(codec.maxHeight);
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Failed to rename " + tempFile);
+        }
+      }
+    } finally {
+      closeQuietly(output);
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Reads capabilities from {@code file}.
+   *
+   * @param file The file.
+   * @param fingerprint The fingerprint of the current app version and OS build.
+   * @return The capabilities, without HDCP levels, or null if the file is missing or corrupt, or
+   *     holds capabilities probed on another app version or OS build.
+   */
+  @Nullable
+  public static DeviceCapabilities read(File file, String fingerprint) {
+    if (!file.exists()) {
+      return null;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != VERSION || !fingerprint.equals(input.readUTF())) {
+        return null;
+      }
+      String widevineSecurityLevel = readNullableUTF(input);
+      int codecCount = input.readInt();
+      Map<String, CodecCapability> codecs = new LinkedHashMap<>();
+      for (int i = 0; i < codecCount; i++) {
+        String mimeType = input.readUTF();
+        codecs.put(
+            mimeType,
+            new CodecCapability(
+                input.readInt(), input.readInt(), input.readInt(), input.readInt()));
+      }
+      return new DeviceCapabilities(
+          fingerprint,
+          widevineSecurityLevel,
+          /* hdcpLevel= */ null,
+          /* maxHdcpLevel= */ null,
+          codecs);
+    } catch (IOException e) {
+      // A corrupt file only costs probing again.
+      return null;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  /**
+   * Returns the HDCP version in {@code hdcpLevel} times 10, for example 22 for {@code "HDCP-2.2"}.
+   * Returns {@link Integer#MAX_VALUE} if there is no external output to protect, 0 if the output
+   * is unprotected, and -1 if {@code hdcpLevel} is null or not recognized.
+   */
+  public static int parseHdcpVersion(@Nullable String hdcpLevel) {
+    if (hdcpLevel == null) {
+      return -1;
+    }
+    String level = hdcpLevel.toLowerCase();
+    if (level.contains("disconnected") || level.contains("no-digital-output")) {
+      return Integer.MAX_VALUE;
+    }
+    if (level.contains("none") || level.contains("unprotected")) {
+      return 0;
+    }
+    Matcher matcher = HDCP_VERSION_PATTERN.matcher(level);
+    if (matcher.find()) {
+      int major = Integer.parseInt(matcher.group(1));
+      int minor = Integer.parseInt(matcher.group(2));
+      return major * 10 + Math.min(9, minor);
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder =
+        new StringBuilder()
+            .append("widevine=")
+            .append(widevineSecurityLevel)
+            .append(", hdcp=")
+            .append(hdcpLevel)
+            .append('/')
+            .append(maxHdcpLevel);
+    for (Map.Entry<String, CodecCapability> entry : codecs.entrySet()) {
+      CodecCapability codec = entry.getValue();
+      builder
+          .append(", ")
+          .append(entry.getKey())
+          .append("=secure:")
+          .append(codec.secureMaxWidth)
+          .append('x')
+          .append(codec.secureMaxHeight)
+          .append(",clear:")
+          .append(codec.maxWidth)
+          .append('x')
+          .append(codec.maxHeight);
+    }
+    return builder.toString();
+  }
+
+  private int[] getMaxVideoSize(String mimeType) {
+    boolean hardwareSecure = isHardwareSecure();
+    int maxWidth = 0;
+    int maxHeight = 0;
+    CodecCapability codec = codecs.get(mimeType);
+    if (codec != null) {
+      maxWidth = hardwareSecure ? codec.secureMaxWidth : codec.maxWidth;
+      maxHeight = hardwareSecure ? codec.secureMaxHeight : codec.maxHeight;
+    }
+    if (maxWidth == 0 || maxHeight == 0) {
+      maxWidth = Integer.MAX_VALUE;
+      maxHeight = Integer.MAX_VALUE;
+    }
+    if (widevineSecurityLevel == null) {
+      // Without Widevine, there are no license restrictions to apply.
+      return new int[] {maxWidth, maxHeight};
+    }
+    int hdcpVersion = getEffectiveHdcpVersion();
+    if (!hardwareSecure || hdcpVersion == 0) {
+      maxWidth = Math.min(maxWidth, SD_MAX_WIDTH);
+      maxHeight = Math.min(maxHeight, SD_MAX_HEIGHT);
+    } else if (hdcpVersion != -1 && hdcpVersion < 22) {
+      maxWidth = Math.min(maxWidth, HD_MAX_WIDTH);
+      maxHeight = Math.min(maxHeight, HD_MAX_HEIGHT);
+    }
+    return new int[] {maxWidth, maxHeight};
+  }
+
+  private static void writeNullableUTF(DataOutputStream output, @Nullable String value)
+      throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readNullableUTF(DataInputStream input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+}
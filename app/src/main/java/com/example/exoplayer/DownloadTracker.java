@@ -0,0 +1,360 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadHelper;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.source.dash.DashUtil;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.upstream.DataSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Starts and removes downloads of DASH content, together with their offline licenses, and reports
+ * download progress to listeners in batches.
+ *
+ * <p>The offline license of protected content is downloaded through the given {@link
+ * MediaDrmCallback} before its media, and persisted in the {@link OfflineLicenseStore} used by
+ * playback. Content whose license cannot be persisted is not downloaded. Removing a download
+ * releases its license, so that it no longer counts towards the limits of the license server.
+ *
+ * <p>{@link DownloadManager} only reports state changes, so progress is polled while downloads are
+ * running, and delivered to listeners at most once per {@link #PROGRESS_INTERVAL_MS} for all
+ * downloads at once.
+ */
+public final class DownloadTracker {
+
+  /** Listener of download changes. Called on the main thread. */
+  public interface Listener {
+
+    /** Called when a download is added, changes state or is removed. */
+    void onDownloadsChanged();
+
+    /**
+     * Called at most once per {@link #PROGRESS_INTERVAL_MS} while downloads are running, with the
+     * progress of all current downloads.
+     */
+    void onDownloadProgress(List<Download> downloads);
+
+    /** Called when a download could not be started. */
+    void onDownloadError(Uri uri, Exception error);
+  }
+
+  /** Creates the {@link OfflineLicenseManager.LicenseDownloader} for a license server. */
+  /* package */ interface LicenseDownloaderFactory {
+
+    OfflineLicenseManager.LicenseDownloader createLicenseDownloader(MediaDrmCallback drmCallback);
+  }
+
+  /** The interval at which progress is reported, in milliseconds. */
+  public static final long PROGRESS_INTERVAL_MS = 1000;
+
+  private static final String TAG = "DownloadTracker";
+
+  private final Context context;
+  private final DownloadManager downloadManager;
+  private final DataSource.Factory dataSourceFactory;
+  private final RenderersFactory renderersFactory;
+  private final OfflineLicenseStore offlineLicenseStore;
+  private final LicenseDownloaderFactory licenseDownloaderFactory;
+  private final CopyOnWriteArraySet<Listener> listeners;
+  private final Handler handler;
+  private final ExecutorService licenseExecutor;
+  private final Runnable reportProgressRunnable;
+
+  private boolean reportingProgress;
+
+  /**
+   * @param context A context.
+   * @param downloadManager The {@link DownloadManager}.
+   * @param dataSourceFactory The factory for data sources from which manifests and DRM init data
+   *     are loaded.
+   * @param renderersFactory The {@link RenderersFactory} whose capabilities drive track selection.
+   * @param offlineLicenseStore The {@link OfflineLicenseStore} in which offline licenses are
+   *     persisted.
+   */
+  public DownloadTracker(
+      Context context,
+      DownloadManager downloadManager,
+      DataSource.Factory dataSourceFactory,
+      RenderersFactory renderersFactory,
+      OfflineLicenseStore offlineLicenseStore) {
+    this(
+        context,
+        downloadManager,
+        dataSourceFactory,
+        renderersFactory,
+        offlineLicenseStore,
+        new LicenseDownloaderFactory() {
+          @Override
+          public OfflineLicenseManager.LicenseDownloader createLicenseDownloader(
+              MediaDrmCallback drmCallback) {
+            return OfflineLicenseManager.newWidevineLicenseDownloader(drmCallback);
+          }
+        });
+  }
+
+  /* package */ DownloadTracker(
+      Context context,
+      DownloadManager downloadManager,
+      DataSource.Factory dataSourceFactory,
+      RenderersFactory renderersFactory,
+      OfflineLicenseStore offlineLicenseStore,
+      LicenseDownloaderFactory licenseDownloaderFactory) {
+    this.context = context.getApplicationContext();
+    this.downloadManager = downloadManager;
+    this.dataSourceFactory = dataSourceFactory;
+    this.renderersFactory = renderersFactory;
+    this.offlineLicenseStore = offlineLicenseStore;
+    this.licenseDownloaderFactory = licenseDownloaderFactory;
+    listeners = new CopyOnWriteArraySet<>();
+    handler = new Handler();
+    licenseExecutor = Executors.newSingleThreadExecutor();
+    reportProgressRunnable =
+        new Runnable() {
+          @Override
+          public void run() {
+            reportProgress();
+          }
+        };
+    downloadManager.addListener(new DownloadManagerListener());
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Returns whether {@code uri} is fully downloaded. */
+  public boolean isDownloaded(Uri uri) {
+    Download download = getDownload(uri);
+    return download != null && download.state == Download.STATE_COMPLETED;
+  }
+
+  /** Returns whether {@code uri} is queued, downloading, downloaded or failed to download. */
+  public boolean hasDownload(Uri uri) {
+    return getDownload(uri) != null;
+  }
+
+  /**
+   * Downloads {@code uri}, after downloading and persisting its offline license if it is protected.
+   * Tracks are selected as for playback. Must be called on the main thread.
+   *
+   * @param uri The URI of the DASH manifest.
+   * @param drmCallback The {@link MediaDrmCallback} through which the offline license is
+   *     requested.
+   */
+  public void download(final Uri uri, final MediaDrmCallback drmCallback) {
+    final DownloadHelper downloadHelper =
+        DownloadHelper.forDash(context, uri, dataSourceFactory, renderersFactory);
+    downloadHelper.prepare(
+        new DownloadHelper.Callback() {
+          @Override
+          public void onPrepared(DownloadHelper helper) {
+            DashManifest manifest = (DashManifest) helper.getManifest();
+            DownloadRequest request = helper.getDownloadRequest(/* data= */ null);
+            helper.release();
+            acquireLicenseAndDownload(request, manifest, drmCallback);
+          }
+
+          @Override
+          public void onPrepareError(DownloadHelper helper, IOException e) {
+            helper.release();
+            onDownloadError(uri, e);
+          }
+        });
+  }
+
+  /**
+   * Removes the download of {@code uri}, and releases its offline license on a background thread.
+   * Must be called on the main thread.
+   *
+   * @param uri The URI of the DASH manifest.
+   * @param drmCallback The {@link MediaDrmCallback} through which the offline license is
+   *     released.
+   */
+  public void remove(Uri uri, MediaDrmCallback drmCallback) {
+    Download download = getDownload(uri);
+    if (download != null && download.request.data.length > 0) {
+      releaseLicense(download.request.data, drmCallback);
+    }
+    DownloadService.sendRemoveDownload(
+        context, OfflineDownloadService.class, uri.toString(), /* foreground= */ false);
+  }
+
+  @Nullable
+  private Download getDownload(Uri uri) {
+    try {
+      return downloadManager.getDownloadIndex().getDownload(uri.toString());
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to load download", e);
+      return null;
+    }
+  }
+
+  private void releaseLicense(final byte[] keySetId, final MediaDrmCallback drmCallback) {
+    licenseExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            OfflineLicenseManager licenseManager =
+                new OfflineLicenseManager(
+                    offlineLicenseStore,
+                    licenseDownloaderFactory.createLicenseDownloader(drmCallback));
+            try {
+              licenseManager.releaseLicense(keySetId);
+            } catch (Exception e) {
+              Log.w(TAG, "Failed to release offline license", e);
+            } finally {
+              licenseManager.release();
+            }
+          }
+        });
+  }
+
+  /**
+   * Downloads the offline license on a background thread, and then starts the download with the
+   * license's key set id as its data. Unprotected content is downloaded straight away.
+   */
+  private void acquireLicenseAndDownload(
+      final DownloadRequest request,
+      final DashManifest manifest,
+      final MediaDrmCallback drmCallback) {
+    licenseExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            final byte[] keySetId;
+            try {
+              keySetId = acquireLicense(request, manifest, drmCallback);
+            } catch (Exception e) {
+              handler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      onDownloadError(request.uri, e);
+                    }
+                  });
+              return;
+            }
+            handler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    startDownload(request, keySetId);
+                  }
+                });
+          }
+        });
+  }
+
+  @Nullable
+  private byte[] acquireLicense(
+      DownloadRequest request, DashManifest manifest, MediaDrmCallback drmCallback)
+      throws Exception {
+    DrmInitData drmInitData =
+        DashUtil.loadDrmInitData(dataSourceFactory.createDataSource(), manifest.getPeriod(0));
+    if (drmInitData == null) {
+      return null;
+    }
+    OfflineLicenseManager licenseManager =
+        new OfflineLicenseManager(
+            offlineLicenseStore, licenseDownloaderFactory.createLicenseDownloader(drmCallback));
+    try {
+      return licenseManager.acquireLicense(drmInitData);
+    } finally {
+      licenseManager.release();
+    }
+  }
+
+  private void startDownload(DownloadRequest request, @Nullable byte[] keySetId) {
+    DownloadRequest requestWithLicense =
+        new DownloadRequest(
+            request.uri.toString(),
+            request.type,
+            request.uri,
+            request.streamKeys,
+            request.customCacheKey,
+            keySetId);
+    DownloadService.sendAddDownload(
+        context, OfflineDownloadService.class, requestWithLicense, /* foreground= */ false);
+  }
+
+  private void onDownloadError(Uri uri, Exception error) {
+    Log.w(TAG, "Failed to start download of " + uri, error);
+    for (Listener listener : listeners) {
+      listener.onDownloadError(uri, error);
+    }
+  }
+
+  private void reportProgress() {
+    List<Download> downloads = new ArrayList<>(downloadManager.getCurrentDownloads());
+    for (Listener listener : listeners) {
+      listener.onDownloadProgress(downloads);
+    }
+    if (reportingProgress) {
+      handler.postDelayed(reportProgressRunnable, PROGRESS_INTERVAL_MS);
+    }
+  }
+
+  private void startReportingProgress() {
+    if (!reportingProgress) {
+      reportingProgress = true;
+      handler.postDelayed(reportProgressRunnable, PROGRESS_INTERVAL_MS);
+    }
+  }
+
+  private void stopReportingProgress() {
+    if (reportingProgress) {
+      reportingProgress = false;
+      handler.removeCallbacks(reportProgressRunnable);
+      // Report the final progress of the downloads that just completed.
+      reportProgress();
+    }
+  }
+
+  private final class DownloadManagerListener implements DownloadManager.Listener {
+
+    @Override
+    public void onDownloadChanged(DownloadManager downloadManager, Download download) {
+      if (download.state == Download.STATE_DOWNLOADING) {
+        startReportingProgress();
+      }
+      for (Listener listener : listeners) {
+        listener.onDownloadsChanged();
+      }
+    }
+
+    @Override
+    public void onDownloadRemoved(DownloadManager downloadManager, Download download) {
+      for (Listener listener : listeners) {
+        listener.onDownloadsChanged();
+      }
+    }
+
+    @Override
+    public void onIdle(DownloadManager downloadManager) {
+      stopReportingProgress();
+    }
+  }
+}
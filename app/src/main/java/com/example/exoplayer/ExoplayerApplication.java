@@ -16,54 +16,253 @@
 package com.example.exoplayer;
 
 import android.app.Application;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.RenderersFactory;
 import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
+import com.google.android.exoplayer2.offline.DefaultDownloadIndex;
+import com.google.android.exoplayer2.offline.DownloadManager;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
-import com.google.android.exoplayer2.upstream.FileDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.cache.Cache;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
 import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
 import com.google.android.exoplayer2.util.Util;
 
 import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import okhttp3.Call;
+import okhttp3.Request;
 
 /**
- * Placeholder application to facilitate overriding Application methods for debugging and testing.
+ * Owns the components shared by all players of the app: the database, the download and playback
+ * caches, the HTTP client, DRM provisioning and the device capabilities, which are warmed up in the
+ * background from {@link #onCreate()}, and the downloads, trackers and stores built on them.
  */
 public class ExoplayerApplication extends Application {
 
+  /** The name of the database warm-up component. */
+  public static final String COMPONENT_DATABASE = "database";
+  /** The name of the download cache warm-up component. */
+  public static final String COMPONENT_DOWNLOAD_CACHE = "downloadCache";
+  /** The name of the playback cache warm-up component. */
+  public static final String COMPONENT_PLAYBACK_CACHE = "playbackCache";
+  /** The name of the HTTP client warm-up component. */
+  public static final String COMPONENT_HTTP_CLIENT = "httpClient";
+  /** The name of the DRM provisioning warm-up component. */
+  public static final String COMPONENT_DRM_PROVISIONING = "drmProvisioning";
+  /** The name of the device capabilities warm-up component. */
+  public static final String COMPONENT_CAPABILITIES = "capabilities";
+  /** The name of the bandwidth estimates warm-up component. */
+  public static final String COMPONENT_BANDWIDTH_ESTIMATES = "bandwidthEstimates";
+
+  private static final int WARM_UP_THREAD_COUNT = 3;
+  private static final int MAX_PARALLEL_DOWNLOADS = 2;
+  /**
+   * The maximum throughput of each download, in bytes per second. Two downloads at this rate leave
+   * room on a typical home connection for a live channel playing at its top bitrate.
+   */
+  private static final long MAX_DOWNLOAD_BYTES_PER_SECOND = 1024 * 1024;
+  private static final String[] PLAYBACK_COMPONENTS = {
+    COMPONENT_DOWNLOAD_CACHE,
+    COMPONENT_PLAYBACK_CACHE,
+    COMPONENT_HTTP_CLIENT,
+    COMPONENT_CAPABILITIES,
+    COMPONENT_BANDWIDTH_ESTIMATES,
+    COMPONENT_DRM_PROVISIONING
+  };
+
   private static final String DOWNLOAD_CONTENT_DIRECTORY = "downloads";
+  private static final String OFFLINE_LICENSE_FILE = "offline_licenses";
+  private static final String PLAYBACK_CACHE_DIRECTORY = "playback_cache";
+  private static final String STARTUP_LOG_FILE = "startup_log";
+  private static final String QOE_SNAPSHOT_FILE = "qoe_snapshots";
+  private static final String BANDWIDTH_ESTIMATE_FILE = "bandwidth_estimates";
+  private static final String CAPABILITIES_FILE = "device_capabilities";
+  private static final String PROVISIONING_STATE_FILE = "provisioning_state";
 
   protected String userAgent;
 
-  private DatabaseProvider databaseProvider;
+  private WarmUpPipeline warmUp;
+  private Future<DatabaseProvider> databaseProvider;
+  private Future<Cache> downloadCache;
+  private Future<PlaybackCache> playbackCache;
+  private Future<SharedHttpClient> sharedHttpClient;
+  private Future<ProvisioningManager> provisioningManager;
+  private Future<DeviceCapabilities> deviceCapabilities;
+  private Future<BandwidthEstimateStore> bandwidthEstimateStore;
   private File downloadDirectory;
-  private Cache downloadCache;
+  private OfflineLicenseStore offlineLicenseStore;
+  private HttpDataSource.Factory httpDataSourceFactory;
+  private ManifestRefreshCache manifestRefreshCache;
+  private PlayerHolder playerHolder;
+  private OfflineDownloaderFactory downloaderFactory;
+  private DownloadManager downloadManager;
+  private DownloadTracker downloadTracker;
+  private StartupTracker startupTracker;
+  private QoeAggregator qoeAggregator;
+  private final Map<String, LicenseRequestMetrics> licenseRequestMetrics = new HashMap<>();
 
   @Override
   public void onCreate() {
     super.onCreate();
     userAgent = Util.getUserAgent(this, "ExoplayerApplication");
+    startWarmUp();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+    if (playerHolder != null) {
+      playerHolder.onTrimMemory(level);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    if (playerHolder != null) {
+      playerHolder.release();
+    }
+  }
+
+  /**
+   * Returns the {@link PlayerHolder} that keeps the player warm while the app is briefly in the
+   * background. Must be called on the main thread.
+   */
+  public PlayerHolder getPlayerHolder() {
+    if (playerHolder == null) {
+      playerHolder = new PlayerHolder();
+    }
+    return playerHolder;
+  }
+
+  /**
+   * Returns the {@link WarmUpPipeline} in which the database, caches, HTTP client and DRM
+   * provisioning are initialized in the background from {@link #onCreate()}.
+   */
+  public WarmUpPipeline getWarmUp() {
+    return warmUp;
+  }
+
+  /**
+   * Returns whether everything needed to build a player is initialized. Initialization may have
+   * failed, in which case {@link #getPlaybackWarmUpError()} returns the error.
+   */
+  public boolean isPlaybackReady() {
+    return warmUp.isReady(PLAYBACK_COMPONENTS);
+  }
+
+  /**
+   * Returns the error with which a component needed to build a player failed to initialize, or
+   * null if none failed.
+   */
+  @Nullable
+  public Throwable getPlaybackWarmUpError() {
+    return warmUp.getError(PLAYBACK_COMPONENTS);
+  }
+
+  /**
+   * Runs {@code callback} on the main thread once everything needed to build a player is
+   * initialized, so that callers need not block on disk I/O.
+   */
+  public void whenPlaybackReady(Runnable callback) {
+    warmUp.whenReady(callback, PLAYBACK_COMPONENTS);
+  }
+
+  /**
+   * Returns the {@link ProvisioningManager} that provisions the device for Widevine in the
+   * background, blocking until its first attempt has completed, or null if Widevine is not
+   * supported by the API level. Callers that must not block check that {@link
+   * #COMPONENT_DRM_PROVISIONING} is ready in {@link #getWarmUp()} first.
+   */
+  @Nullable
+  public ProvisioningManager getProvisioningManager() {
+    return warmUp.await(provisioningManager);
+  }
+
+  /**
+   * Returns the {@link DeviceCapabilities}, read back from the last probe on this app version and
+   * OS build, blocking until they are warmed up.
+   */
+  public DeviceCapabilities getDeviceCapabilities() {
+    return warmUp.await(deviceCapabilities);
   }
 
-  /** Returns a {@link DataSource.Factory}. */
+  /**
+   * Returns a {@link DataSource.Factory} that reads downloaded content from the download cache, and
+   * everything else from the network.
+   */
   public DataSource.Factory buildDataSourceFactory() {
-    DefaultDataSourceFactory upstreamFactory =
-        new DefaultDataSourceFactory(this, buildHttpDataSourceFactory());
-    return buildReadOnlyCacheDataSource(upstreamFactory, getDownloadCache());
+    return buildReadOnlyCacheDataSourceFactory(buildHttpDataSourceFactory());
+  }
+
+  /**
+   * Returns a {@link DataSource.Factory} for the manifest loader of a media source. Every request
+   * for a whole resource made with it is conditional, using the {@link ManifestRefreshCache}, so it
+   * must not be used to load media.
+   */
+  public DataSource.Factory buildManifestDataSourceFactory() {
+    return buildReadOnlyCacheDataSourceFactory(
+        getManifestRefreshCache().buildDataSourceFactory(buildHttpDataSourceFactory()));
+  }
+
+  /**
+   * Returns a {@link PlaybackCache.DataSourceFactory} for media segments, which writes them through
+   * to the playback cache. Manifests must be loaded with {@link #buildManifestDataSourceFactory()}.
+   */
+  public PlaybackCache.DataSourceFactory buildPlaybackDataSourceFactory() {
+    return getPlaybackCache()
+        .buildDataSourceFactory(this, buildHttpDataSourceFactory(), getDownloadCache());
   }
 
-  /** Returns a {@link HttpDataSource.Factory}. */
-  public HttpDataSource.Factory buildHttpDataSourceFactory() {
-    return new DefaultHttpDataSourceFactory(userAgent);
+  /**
+   * Returns a {@link HttpDataSource.Factory} backed by the {@link SharedHttpClient}, so that all
+   * HTTP requests of the app share pooled connections. Calls are made on the client once it is
+   * warmed up, so building the factory does not wait for it.
+   */
+  public synchronized HttpDataSource.Factory buildHttpDataSourceFactory() {
+    if (httpDataSourceFactory == null) {
+      httpDataSourceFactory =
+          new OkHttpDataSourceFactory(
+              new Call.Factory() {
+                @Override
+                public Call newCall(Request request) {
+                  return getSharedHttpClient().getClient().newCall(request);
+                }
+              },
+              userAgent);
+    }
+    return httpDataSourceFactory;
+  }
+
+  /** Returns the {@link ManifestRefreshCache} that makes live manifest refreshes conditional. */
+  public synchronized ManifestRefreshCache getManifestRefreshCache() {
+    if (manifestRefreshCache == null) {
+      manifestRefreshCache = new ManifestRefreshCache();
+    }
+    return manifestRefreshCache;
+  }
+
+  /**
+   * Returns the {@link SharedHttpClient} used by every HTTP data source of the app, blocking until
+   * it is warmed up.
+   */
+  public SharedHttpClient getSharedHttpClient() {
+    return warmUp.await(sharedHttpClient);
   }
 
   /** Returns whether extension renderers should be used. */
@@ -83,23 +282,252 @@ public class ExoplayerApplication extends Application {
         .setExtensionRendererMode(extensionRendererMode);
   }
 
-  protected synchronized Cache getDownloadCache() {
-    if (downloadCache == null) {
-      File downloadContentDirectory = new File(getDownloadDirectory(), DOWNLOAD_CONTENT_DIRECTORY);
-      downloadCache =
-          new SimpleCache(downloadContentDirectory, new NoOpCacheEvictor(), getDatabaseProvider());
+  /**
+   * Returns the {@link DownloadManager} that downloads content into the download cache, blocking
+   * until the cache is warmed up. Must be called on the main thread.
+   */
+  public synchronized DownloadManager getDownloadManager() {
+    initDownloads();
+    return downloadManager;
+  }
+
+  /**
+   * Returns the {@link OfflineDownloaderFactory} of the {@link DownloadManager}, through which the
+   * throughput of downloads is capped. Must be called on the main thread.
+   */
+  public synchronized OfflineDownloaderFactory getDownloaderFactory() {
+    initDownloads();
+    return downloaderFactory;
+  }
+
+  /**
+   * Returns the {@link DownloadTracker} that starts and removes downloads together with their
+   * offline licenses. Must be called on the main thread.
+   */
+  public synchronized DownloadTracker getDownloadTracker() {
+    initDownloads();
+    return downloadTracker;
+  }
+
+  /** Returns the download cache, blocking until it is warmed up. */
+  protected Cache getDownloadCache() {
+    return warmUp.await(downloadCache);
+  }
+
+  /**
+   * Returns the {@link PlaybackCache} in which segments loaded during playback are cached, blocking
+   * until it is warmed up.
+   */
+  public PlaybackCache getPlaybackCache() {
+    return warmUp.await(playbackCache);
+  }
+
+  /**
+   * Returns the {@link StartupTracker} that records the startup timeline of each playback session.
+   * Completed timelines are logged to a file in the app's files directory.
+   */
+  public synchronized StartupTracker getStartupTracker() {
+    if (startupTracker == null) {
+      startupTracker =
+          new StartupTracker(
+              StartupTracker.DEFAULT_CAPACITY, new File(getFilesDir(), STARTUP_LOG_FILE));
     }
-    return downloadCache;
+    return startupTracker;
   }
 
-  private DatabaseProvider getDatabaseProvider() {
-    if (databaseProvider == null) {
-      databaseProvider = new ExoDatabaseProvider(this);
+  /**
+   * Returns the {@link QoeAggregator} that rolls up playback quality per session and per channel.
+   * Session snapshots are written to a file in the app's files directory.
+   */
+  public synchronized QoeAggregator getQoeAggregator() {
+    if (qoeAggregator == null) {
+      qoeAggregator =
+          new QoeAggregator(
+              new File(getFilesDir(), QOE_SNAPSHOT_FILE),
+              QoeAggregator.DEFAULT_BATCH_SIZE,
+              QoeAggregator.DEFAULT_MAX_FILE_SIZE_BYTES);
     }
-    return databaseProvider;
+    return qoeAggregator;
   }
 
-  private File getDownloadDirectory() {
+  /**
+   * Returns the {@link BandwidthEstimateStore} in which bandwidth estimates are persisted, blocking
+   * until its file is read.
+   */
+  public BandwidthEstimateStore getBandwidthEstimateStore() {
+    return warmUp.await(bandwidthEstimateStore);
+  }
+
+  /** Returns the {@link OfflineLicenseStore} in which offline license key set ids are persisted. */
+  public synchronized OfflineLicenseStore getOfflineLicenseStore() {
+    if (offlineLicenseStore == null) {
+      offlineLicenseStore = new OfflineLicenseStore(new File(getFilesDir(), OFFLINE_LICENSE_FILE));
+    }
+    return offlineLicenseStore;
+  }
+
+  /**
+   * Returns the {@link LicenseRequestMetrics} shared by the DRM callbacks of the license server at
+   * {@code licenseUrl}, so that the latency percentiles that hedged requests rely on are learned
+   * across players rather than per player.
+   */
+  public synchronized LicenseRequestMetrics getLicenseRequestMetrics(String licenseUrl) {
+    LicenseRequestMetrics metrics = licenseRequestMetrics.get(licenseUrl);
+    if (metrics == null) {
+      metrics = new LicenseRequestMetrics();
+      licenseRequestMetrics.put(licenseUrl, metrics);
+    }
+    return metrics;
+  }
+
+  /**
+   * Starts initializing the database, the caches that depend on it, the HTTP client and the DRM
+   * provisioning in parallel, off the main thread.
+   */
+  private void startWarmUp() {
+    final Handler mainHandler = new Handler(Looper.getMainLooper());
+    warmUp =
+        new WarmUpPipeline(
+            WARM_UP_THREAD_COUNT,
+            new Executor() {
+              @Override
+              public void execute(Runnable command) {
+                mainHandler.post(command);
+              }
+            });
+    databaseProvider =
+        warmUp.start(
+            COMPONENT_DATABASE,
+            new Callable<DatabaseProvider>() {
+              @Override
+              public DatabaseProvider call() {
+                ExoDatabaseProvider databaseProvider =
+                    new ExoDatabaseProvider(ExoplayerApplication.this);
+                // Opening the database creates or upgrades it.
+                databaseProvider.getWritableDatabase();
+                return databaseProvider;
+              }
+            });
+    sharedHttpClient =
+        warmUp.start(
+            COMPONENT_HTTP_CLIENT,
+            new Callable<SharedHttpClient>() {
+              @Override
+              public SharedHttpClient call() {
+                return new SharedHttpClient.Builder().build();
+              }
+            });
+    deviceCapabilities =
+        warmUp.start(
+            COMPONENT_CAPABILITIES,
+            new Callable<DeviceCapabilities>() {
+              @Override
+              public DeviceCapabilities call() {
+                return CapabilityProbe.getCapabilities(new File(getFilesDir(), CAPABILITIES_FILE));
+              }
+            });
+    bandwidthEstimateStore =
+        warmUp.start(
+            COMPONENT_BANDWIDTH_ESTIMATES,
+            new Callable<BandwidthEstimateStore>() {
+              @Override
+              public BandwidthEstimateStore call() {
+                return new BandwidthEstimateStore(new File(getFilesDir(), BANDWIDTH_ESTIMATE_FILE));
+              }
+            });
+    provisioningManager =
+        warmUp.start(
+            COMPONENT_DRM_PROVISIONING,
+            new Callable<ProvisioningManager>() {
+              @Override
+              public ProvisioningManager call() {
+                return Util.SDK_INT >= 18 ? startProvisioning() : null;
+              }
+            });
+    downloadCache =
+        warmUp.start(
+            COMPONENT_DOWNLOAD_CACHE,
+            new Callable<Cache>() {
+              @Override
+              public Cache call() {
+                File downloadContentDirectory =
+                    new File(getDownloadDirectory(), DOWNLOAD_CONTENT_DIRECTORY);
+                return new SimpleCache(
+                    downloadContentDirectory,
+                    new NoOpCacheEvictor(),
+                    warmUp.await(databaseProvider));
+              }
+            });
+    playbackCache =
+        warmUp.start(
+            COMPONENT_PLAYBACK_CACHE,
+            new Callable<PlaybackCache>() {
+              @Override
+              public PlaybackCache call() {
+                return PlaybackCache.newForDevice(
+                    ExoplayerApplication.this,
+                    new File(getCacheDir(), PLAYBACK_CACHE_DIRECTORY),
+                    warmUp.await(databaseProvider),
+                    new CdnCacheKeyFactory.Builder().build());
+              }
+            });
+    warmUp.finish();
+    warmUp.whenReady(
+        new Runnable() {
+          @Override
+          public void run() {
+            MetricsReporter.reportWarmUp(warmUp);
+          }
+        });
+  }
+
+  /**
+   * Creates the {@link ProvisioningManager} and waits for its first attempt, at the security level
+   * players will open the DRM at. Failed attempts are retried in the background, so that playback
+   * only waits for the first one.
+   */
+  private ProvisioningManager startProvisioning() {
+    DeviceCapabilities capabilities = warmUp.await(deviceCapabilities);
+    String securityLevel =
+        capabilities.shouldForceL3() ? DeviceCapabilities.SECURITY_LEVEL_L3 : null;
+    WidevineMediaDrmCallback provisioningCallback =
+        new WidevineMediaDrmCallback(/* defaultLicenseUrl= */ "", buildHttpDataSourceFactory());
+    ProvisioningManager provisioningManager =
+        new ProvisioningManager(
+            new WidevineProvisioner(provisioningCallback, securityLevel),
+            new File(getFilesDir(), PROVISIONING_STATE_FILE),
+            Build.FINGERPRINT,
+            securityLevel != null ? securityLevel : capabilities.widevineSecurityLevel,
+            ProvisioningManager.DEFAULT_RETRY_POLICY);
+    warmUp.await(provisioningManager.provision());
+    return provisioningManager;
+  }
+
+  private synchronized void initDownloads() {
+    if (downloadManager != null) {
+      return;
+    }
+    downloaderFactory =
+        new OfflineDownloaderFactory(
+            getDownloadCache(),
+            buildHttpDataSourceFactory(),
+            OfflineDownloaderFactory.DEFAULT_WORKER_COUNT,
+            OfflineDownloaderFactory.DEFAULT_MAX_SEGMENTS_IN_FLIGHT);
+    downloaderFactory.setMaxBytesPerSecondPerDownload(MAX_DOWNLOAD_BYTES_PER_SECOND);
+    downloadManager =
+        new DownloadManager(
+            this, new DefaultDownloadIndex(warmUp.await(databaseProvider)), downloaderFactory);
+    downloadManager.setMaxParallelDownloads(MAX_PARALLEL_DOWNLOADS);
+    downloadTracker =
+        new DownloadTracker(
+            this,
+            downloadManager,
+            buildHttpDataSourceFactory(),
+            buildRenderersFactory(/* preferExtensionRenderer= */ false),
+            getOfflineLicenseStore());
+  }
+
+  private synchronized File getDownloadDirectory() {
     if (downloadDirectory == null) {
       downloadDirectory = getExternalFilesDir(null);
       if (downloadDirectory == null) {
@@ -109,14 +537,18 @@ public class ExoplayerApplication extends Application {
     return downloadDirectory;
   }
 
-  protected static CacheDataSourceFactory buildReadOnlyCacheDataSource(
-          DataSource.Factory upstreamFactory, Cache cache) {
-    return new CacheDataSourceFactory(
-        cache,
-        upstreamFactory,
-        new FileDataSource.Factory(),
-        /* cacheWriteDataSinkFactory= */ null,
-        CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
-        /* eventListener= */ null);
+  private DataSource.Factory buildReadOnlyCacheDataSourceFactory(
+      DataSource.Factory httpDataSourceFactory) {
+    final DefaultDataSourceFactory upstreamFactory =
+        new DefaultDataSourceFactory(this, httpDataSourceFactory);
+    // The cache is resolved when a data source is created on a loading thread, so that building
+    // the factory never waits for the cache index to load.
+    return new DataSource.Factory() {
+      @Override
+      public DataSource createDataSource() {
+        return PlaybackCache.buildReadOnlyCacheDataSource(upstreamFactory, getDownloadCache())
+            .createDataSource();
+      }
+    };
   }
 }
@@ -0,0 +1,136 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/**
+ * Counts, per host, the connections opened by an {@link okhttp3.OkHttpClient} and the requests that
+ * reused an already open connection instead.
+ *
+ * <p>A request counts as reused if it completes without opening a connection. A request that first
+ * picks a pooled connection the server has since closed, and then opens a new one, does not.
+ */
+public final class HttpConnectionStats extends EventListener {
+
+  private static final class HostStats {
+
+    private int connectionCount;
+    private int reusedConnectionCount;
+    private int http2ConnectionCount;
+  }
+
+  private final Map<String, HostStats> hostStats;
+  /** The calls in progress that have acquired a connection, and whether they opened one. */
+  private final Map<Call, Boolean> connectedCalls;
+
+  public HttpConnectionStats() {
+    hostStats = new HashMap<>();
+    connectedCalls = new IdentityHashMap<>();
+  }
+
+  @Override
+  public synchronized void connectStart(
+      Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+    connectedCalls.put(call, true);
+  }
+
+  @Override
+  public synchronized void connectEnd(
+      Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+    HostStats stats = getHostStats(call);
+    stats.connectionCount++;
+    if (protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE) {
+      stats.http2ConnectionCount++;
+    }
+  }
+
+  @Override
+  public synchronized void connectionAcquired(Call call, Connection connection) {
+    if (!connectedCalls.containsKey(call)) {
+      connectedCalls.put(call, false);
+    }
+  }
+
+  @Override
+  public synchronized void callEnd(Call call) {
+    onCallFinished(call);
+  }
+
+  @Override
+  public synchronized void callFailed(Call call, IOException ioe) {
+    onCallFinished(call);
+  }
+
+  /** Returns the hosts to which requests have been made. */
+  public synchronized List<String> getHosts() {
+    return new ArrayList<>(hostStats.keySet());
+  }
+
+  /** Returns the number of connections opened to {@code host}. */
+  public synchronized int getConnectionCount(String host) {
+    HostStats stats = hostStats.get(host);
+    return stats == null ? 0 : stats.connectionCount;
+  }
+
+  /** Returns the number of connections opened to {@code host} that negotiated HTTP/2. */
+  public synchronized int getHttp2ConnectionCount(String host) {
+    HostStats stats = hostStats.get(host);
+    return stats == null ? 0 : stats.http2ConnectionCount;
+  }
+
+  /** Returns the number of requests to {@code host} that reused an open connection. */
+  public synchronized int getReusedConnectionCount(String host) {
+    HostStats stats = hostStats.get(host);
+    return stats == null ? 0 : stats.reusedConnectionCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, HostStats> entry : hostStats.entrySet()) {
+      HostStats stats = entry.getValue();
+      if (builder.length() > 0) {
+        builder.append(", ");
+      }
+      builder
+          .append(entry.getKey())
+          .append(": connections=")
+          .append(stats.connectionCount)
+          .append(" (h2=")
+          .append(stats.http2ConnectionCount)
+          .append("), reused=")
+          .append(stats.reusedConnectionCount);
+    }
+    return builder.toString();
+  }
+
+  private void onCallFinished(Call call) {
+    Boolean connected = connectedCalls.remove(call);
+    if (connected != null && !connected) {
+      getHostStats(call).reusedConnectionCount++;
+    }
+  }
+
+  private HostStats getHostStats(Call call) {
+    String host = call.request().url().host();
+    HostStats stats = hostStats.get(host);
+    if (stats == null) {
+      stats = new HostStats();
+      hostStats.put(host, stats);
+    }
+    return stats;
+  }
+}
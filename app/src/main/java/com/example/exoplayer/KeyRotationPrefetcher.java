@@ -0,0 +1,123 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Acquires DRM sessions for the key periods a live DASH manifest announces ahead of the playing
+ * one, so that the licenses of rotated keys are loaded before playback reaches them.
+ *
+ * <p>Each period after the first whose {@code ContentProtection} declares new DRM init data gets a
+ * session from the player's session manager. A {@link RestoringDrmSessionManager} acquires these
+ * sessions from its manager in the default mode, never from the one dedicated to the restored
+ * offline license, since their keys differ from those of the first period. That manager runs in
+ * multi-session mode, so the player reuses the prefetched session when it reaches the period
+ * instead of requesting the license again. Sessions are released once their period leaves the
+ * manifest.
+ */
+public final class KeyRotationPrefetcher {
+
+  private final DrmSessionManager<ExoMediaCrypto> drmSessionManager;
+  private final Handler playbackHandler;
+  /** The prefetched sessions, by DRM init data. Touched on the playback thread only. */
+  private final Map<DrmInitData, DrmSession<ExoMediaCrypto>> sessions;
+
+  private boolean released;
+  private volatile int prefetchCount;
+
+  /**
+   * @param drmSessionManager The session manager used by the player.
+   * @param playbackLooper The looper of the player's playback thread.
+   */
+  public KeyRotationPrefetcher(
+      DrmSessionManager<ExoMediaCrypto> drmSessionManager, Looper playbackLooper) {
+    this.drmSessionManager = drmSessionManager;
+    playbackHandler = new Handler(playbackLooper);
+    sessions = new HashMap<>();
+  }
+
+  /**
+   * Acquires sessions for the key periods announced by a newly loaded manifest, and releases those
+   * of periods it no longer contains. May be called on any thread.
+   */
+  public void onManifestLoaded(DashManifest manifest) {
+    final Set<DrmInitData> announced = new LinkedHashSet<>();
+    for (int i = 1; i < manifest.getPeriodCount(); i++) {
+      DrmInitData drmInitData = LicensePrefetcher.getDrmInitData(manifest.getPeriod(i));
+      if (drmInitData != null) {
+        announced.add(drmInitData);
+      }
+    }
+    playbackHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            updateSessions(announced);
+          }
+        });
+  }
+
+  /** Returns the number of sessions acquired ahead of playback. */
+  public int getPrefetchCount() {
+    return prefetchCount;
+  }
+
+  /**
+   * Releases all prefetched sessions. Must be called before the player is released, so that the
+   * sessions are released on the playback thread before it quits.
+   */
+  public void release() {
+    playbackHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            released = true;
+            releaseSessions(Collections.<DrmInitData>emptySet());
+          }
+        });
+  }
+
+  private void updateSessions(Set<DrmInitData> announced) {
+    if (released) {
+      return;
+    }
+    releaseSessions(announced);
+    for (DrmInitData drmInitData : announced) {
+      if (sessions.containsKey(drmInitData) || !drmSessionManager.canAcquireSession(drmInitData)) {
+        continue;
+      }
+      // Each session holds a reference to the manager, so that it outlives the player's.
+      drmSessionManager.prepare();
+      sessions.put(
+          drmInitData,
+          drmSessionManager.acquireSession(playbackHandler.getLooper(), drmInitData));
+      prefetchCount++;
+    }
+  }
+
+  private void releaseSessions(Set<DrmInitData> retained) {
+    Iterator<Map.Entry<DrmInitData, DrmSession<ExoMediaCrypto>>> iterator =
+        sessions.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<DrmInitData, DrmSession<ExoMediaCrypto>> entry = iterator.next();
+      if (!retained.contains(entry.getKey())) {
+        entry.getValue().release();
+        drmSessionManager.release();
+        iterator.remove();
+      }
+    }
+  }
+}
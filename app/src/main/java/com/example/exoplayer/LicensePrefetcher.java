@@ -0,0 +1,349 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.ByteArrayDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Fetches a DASH manifest ahead of the player and starts the license request for the DRM init data
+ * it declares in its {@code ContentProtection} elements, so that the key request runs in parallel
+ * with the player's own initialization and segment loads rather than after them.
+ *
+ * <p>The fetched manifest is handed to the player through {@link #getDataSourceFactory()}, which
+ * serves the first load of the prefetched manifest URI from memory instead of fetching it again.
+ * Manifests of different URIs are prefetched independently, so that the current channel and its
+ * prepared neighbors each have their own prefetch.
+ */
+public final class LicensePrefetcher {
+
+  private static final String TAG = "LicensePrefetcher";
+
+  private final DataSource.Factory upstreamFactory;
+  private final ParsingLoadable.Parser<DrmInitData> drmInitDataParser;
+  private final ExecutorService executorService;
+
+  /** The manifests fetched and not taken yet, by URI. */
+  private final Map<Uri, FutureTask<byte[]>> manifestTasks;
+  /** The DRM sessions acquired ahead of the players, by manifest URI. */
+  private final Map<Uri, SessionPrefetch> sessionPrefetches;
+
+  /** @param upstreamFactory The factory used to fetch the manifest and all other data. */
+  public LicensePrefetcher(DataSource.Factory upstreamFactory) {
+    this(
+        upstreamFactory,
+        new ParsingLoadable.Parser<DrmInitData>() {
+          @Override
+          public DrmInitData parse(Uri uri, InputStream inputStream) throws IOException {
+            return getDrmInitData(new DashManifestParser().parse(uri, inputStream).getPeriod(0));
+          }
+        });
+  }
+
+  /**
+   * @param upstreamFactory The factory used to fetch the manifest and all other data.
+   * @param drmInitDataParser Parses the DRM init data of the first period from a manifest, or
+   *     returns null if it has none.
+   */
+  /* package */ LicensePrefetcher(
+      DataSource.Factory upstreamFactory, ParsingLoadable.Parser<DrmInitData> drmInitDataParser) {
+    this.upstreamFactory = upstreamFactory;
+    this.drmInitDataParser = drmInitDataParser;
+    executorService = Executors.newSingleThreadExecutor();
+    manifestTasks = new HashMap<>();
+    sessionPrefetches = new HashMap<>();
+  }
+
+  /**
+   * Returns a {@link DataSource.Factory} that serves the first load of a prefetched manifest from
+   * memory, and forwards every other load to the upstream factory.
+   */
+  public DataSource.Factory getDataSourceFactory() {
+    return new DataSource.Factory() {
+      @Override
+      public DataSource createDataSource() {
+        return new PrefetchedManifestDataSource(upstreamFactory.createDataSource());
+      }
+    };
+  }
+
+  /**
+   * Starts fetching the manifest at {@code uri}. Once it has been parsed, a DRM session is acquired
+   * from {@code drmSessionManager} on the playback thread for the DRM init data it declares, which
+   * starts the key request. Cancels any previous prefetch of the same URI.
+   *
+   * @param uri The manifest URI.
+   * @param drmSessionManager The session manager used by the player.
+   * @param playbackLooper The looper of the player's playback thread.
+   */
+  public void prefetch(
+      Uri uri, DrmSessionManager<ExoMediaCrypto> drmSessionManager, Looper playbackLooper) {
+    final Handler playbackHandler = new Handler(playbackLooper);
+    prefetch(
+        uri,
+        drmSessionManager,
+        playbackLooper,
+        new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            playbackHandler.post(command);
+          }
+        });
+  }
+
+  /**
+   * Starts fetching the manifest at {@code uri}, as {@link #prefetch(Uri, DrmSessionManager,
+   * Looper)} does, with the tasks of the playback thread run by {@code playbackExecutor}.
+   */
+  /* package */ synchronized void prefetch(
+      final Uri uri,
+      DrmSessionManager<ExoMediaCrypto> drmSessionManager,
+      Looper playbackLooper,
+      Executor playbackExecutor) {
+    cancel(uri);
+    final FutureTask<byte[]> manifestTask =
+        new FutureTask<>(
+            new Callable<byte[]>() {
+              @Override
+              public byte[] call() throws IOException {
+                DataSpec dataSpec = new DataSpec(uri, DataSpec.FLAG_ALLOW_GZIP);
+                DataSourceInputStream inputStream =
+                    new DataSourceInputStream(upstreamFactory.createDataSource(), dataSpec);
+                try {
+                  return Util.toByteArray(inputStream);
+                } finally {
+                  Util.closeQuietly(inputStream);
+                }
+              }
+            });
+    final SessionPrefetch sessionPrefetch =
+        new SessionPrefetch(drmSessionManager, playbackLooper, playbackExecutor);
+    manifestTasks.put(uri, manifestTask);
+    sessionPrefetches.put(uri, sessionPrefetch);
+    executorService.execute(manifestTask);
+    executorService.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            DrmInitData drmInitData = loadDrmInitData(uri, manifestTask);
+            if (drmInitData != null) {
+              sessionPrefetch.acquire(drmInitData);
+            }
+          }
+        });
+  }
+
+  /**
+   * Cancels the prefetch of {@code uri} and releases its DRM session, if any. Must be called before
+   * the player of the prefetch is released, so that the session is released on the playback
+   * thread before it quits.
+   */
+  public synchronized void cancel(Uri uri) {
+    manifestTasks.remove(uri);
+    SessionPrefetch sessionPrefetch = sessionPrefetches.remove(uri);
+    if (sessionPrefetch != null) {
+      sessionPrefetch.release();
+    }
+  }
+
+  /** Cancels all prefetches, as {@link #cancel(Uri)} does for each of them. */
+  public synchronized void cancel() {
+    manifestTasks.clear();
+    for (SessionPrefetch sessionPrefetch : sessionPrefetches.values()) {
+      sessionPrefetch.release();
+    }
+    sessionPrefetches.clear();
+  }
+
+  /** Cancels all prefetches and releases the prefetch thread. */
+  public void release() {
+    cancel();
+    executorService.shutdown();
+  }
+
+  /**
+   * Returns the prefetched manifest if {@code uri} is the prefetched manifest URI and it has not
+   * been taken yet, blocking until the fetch completes. Returns null otherwise, or if the fetch
+   * failed.
+   */
+  @Nullable
+  private byte[] takeManifest(Uri uri) {
+    FutureTask<byte[]> manifestTask;
+    synchronized (this) {
+      manifestTask = manifestTasks.remove(uri);
+    }
+    if (manifestTask == null) {
+      return null;
+    }
+    try {
+      return manifestTask.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private DrmInitData loadDrmInitData(Uri uri, FutureTask<byte[]> manifestTask) {
+    try {
+      byte[] manifestBytes = manifestTask.get();
+      return drmInitDataParser.parse(uri, new ByteArrayInputStream(manifestBytes));
+    } catch (Exception e) {
+      Log.w(TAG, "Manifest prefetch failed", e);
+      return null;
+    }
+  }
+
+  /** Returns the DRM init data declared for the first protected representation in the period. */
+  @Nullable
+  static DrmInitData getDrmInitData(Period period) {
+    for (AdaptationSet adaptationSet : period.adaptationSets) {
+      List<Representation> representations = adaptationSet.representations;
+      if (!representations.isEmpty() && representations.get(0).format.drmInitData != null) {
+        DrmInitData drmInitData = representations.get(0).format.drmInitData;
+        for (int i = 0; i < drmInitData.schemeDataCount; i++) {
+          if (drmInitData.get(i).matches(C.WIDEVINE_UUID) && drmInitData.get(i).hasData()) {
+            return drmInitData;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A {@link DataSource} that reads the prefetched manifest from memory, or from its upstream
+   * {@link DataSource} for any other request.
+   */
+  private final class PrefetchedManifestDataSource implements DataSource {
+
+    private final DataSource upstream;
+
+    @Nullable private DataSource currentDataSource;
+
+    public PrefetchedManifestDataSource(DataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      byte[] manifestBytes = takeManifest(dataSpec.uri);
+      currentDataSource = manifestBytes != null ? new ByteArrayDataSource(manifestBytes) : upstream;
+      return currentDataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return currentDataSource.read(buffer, offset, readLength);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return currentDataSource != null ? currentDataSource.getUri() : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return currentDataSource != null
+          ? currentDataSource.getResponseHeaders()
+          : upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (currentDataSource != null) {
+        currentDataSource.close();
+        currentDataSource = null;
+      }
+    }
+  }
+
+  /** Holds a DRM session acquired ahead of the player. Touched on the playback thread only. */
+  private static final class SessionPrefetch {
+
+    private final DrmSessionManager<ExoMediaCrypto> drmSessionManager;
+    private final Looper playbackLooper;
+    private final Executor playbackExecutor;
+
+    @Nullable private DrmSession<ExoMediaCrypto> drmSession;
+    private boolean released;
+
+    public SessionPrefetch(
+        DrmSessionManager<ExoMediaCrypto> drmSessionManager,
+        Looper playbackLooper,
+        Executor playbackExecutor) {
+      this.drmSessionManager = drmSessionManager;
+      this.playbackLooper = playbackLooper;
+      this.playbackExecutor = playbackExecutor;
+    }
+
+    public void acquire(final DrmInitData drmInitData) {
+      playbackExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (released || !drmSessionManager.canAcquireSession(drmInitData)) {
+                return;
+              }
+              drmSessionManager.prepare();
+              drmSession = drmSessionManager.acquireSession(playbackLooper, drmInitData);
+            }
+          });
+    }
+
+    public void release() {
+      playbackExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              released = true;
+              if (drmSession != null) {
+                drmSession.release();
+                drmSession = null;
+                drmSessionManager.release();
+              }
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the streaming licenses of DRM sessions ahead of their expiry, so that long live sessions
+ * do not stall when a license runs out.
+ *
+ * <p>A renewal is scheduled when a session loads a license, for when a fraction of the remaining
+ * license duration is left, and at least a minimum time before expiry. Licenses shorter than twice
+ * that minimum are renewed halfway through instead. Each delay is shortened by a random jitter, so
+ * that clients that started together do not renew at the same instant, and delays shorter than a
+ * minimum delay are spread over the minimum delay again. Failed renewals are retried with
+ * exponential backoff until the license expires.
+ */
+public final class LicenseRenewalScheduler {
+
+  /** Queries and renews the licenses of sessions. */
+  public interface Renewer {
+
+    /**
+     * Returns the remaining duration of the license loaded in the session, in seconds, {@link
+     * Long#MAX_VALUE} if it does not expire, or -1 if it is unknown.
+     */
+    long getLicenseDurationRemainingSec(byte[] sessionId) throws Exception;
+
+    /** Requests a renewed license for the session and loads it. */
+    void renew(byte[] sessionId) throws Exception;
+  }
+
+  /** The default fraction of the remaining license duration left when the license is renewed. */
+  public static final float DEFAULT_RENEW_AHEAD_FRACTION = 0.2f;
+  /** The default minimum time before expiry at which the license is renewed, in milliseconds. */
+  public static final long DEFAULT_MIN_RENEW_AHEAD_MS = 60000;
+  /** The default fraction of each delay that is randomized. */
+  public static final float DEFAULT_JITTER_FACTOR = 0.1f;
+  /**
+   * The default minimum delay before a renewal, in milliseconds. Shorter delays are replaced by a
+   * random delay between once and twice the minimum.
+   */
+  public static final long DEFAULT_MIN_RENEWAL_DELAY_MS = 1000;
+
+  private static final String TAG = "LicenseRenewal";
+  private static final long INITIAL_RETRY_DELAY_MS = 5000;
+  /** Durations from this one on are treated as unlimited. */
+  private static final long MAX_DURATION_SEC = Long.MAX_VALUE / 1000;
+
+  private final Renewer renewer;
+  private final ScheduledExecutorService executor;
+  private final float renewAheadFraction;
+  private final long minRenewAheadMs;
+  private final float jitterFactor;
+  private final long minRenewalDelayMs;
+  private final Random random;
+  private final Map<ByteBuffer, ScheduledFuture<?>> scheduledRenewals;
+
+  private boolean released;
+  private int renewalCount;
+  private int failedRenewalCount;
+
+  /**
+   * @param renewer The {@link Renewer}.
+   * @param executor The executor on which renewals run. It is not shut down by {@link #release()}.
+   */
+  public LicenseRenewalScheduler(Renewer renewer, ScheduledExecutorService executor) {
+    this(
+        renewer,
+        executor,
+        DEFAULT_RENEW_AHEAD_FRACTION,
+        DEFAULT_MIN_RENEW_AHEAD_MS,
+        DEFAULT_JITTER_FACTOR,
+        DEFAULT_MIN_RENEWAL_DELAY_MS,
+        new Random());
+  }
+
+  /**
+   * @param renewer The {@link Renewer}.
+   * @param executor The executor on which renewals run. It is not shut down by {@link #release()}.
+   * @param renewAheadFraction The fraction of the remaining license duration left when the license
+   *     is renewed.
+   * @param minRenewAheadMs The minimum time before expiry at which the license is renewed, in
+   *     milliseconds.
+   * @param jitterFactor The fraction of each delay that is randomized.
+   * @param minRenewalDelayMs The minimum delay before a renewal, in milliseconds. Shorter delays
+   *     are replaced by a random delay between once and twice the minimum.
+   * @param random The source of jitter.
+   */
+  public LicenseRenewalScheduler(
+      Renewer renewer,
+      ScheduledExecutorService executor,
+      float renewAheadFraction,
+      long minRenewAheadMs,
+      float jitterFactor,
+      long minRenewalDelayMs,
+      Random random) {
+    this.renewer = renewer;
+    this.executor = executor;
+    this.renewAheadFraction = renewAheadFraction;
+    this.minRenewAheadMs = minRenewAheadMs;
+    this.jitterFactor = jitterFactor;
+    this.minRenewalDelayMs = minRenewalDelayMs;
+    this.random = random;
+    scheduledRenewals = new HashMap<>();
+  }
+
+  /**
+   * Schedules the renewal of the license just loaded in a session, replacing any renewal scheduled
+   * for it. Sessions whose license does not expire, or whose duration is unknown, are not renewed.
+   */
+  public void onLicenseLoaded(byte[] sessionId) {
+    long durationRemainingSec;
+    try {
+      durationRemainingSec = renewer.getLicenseDurationRemainingSec(sessionId);
+    } catch (Exception e) {
+      Log.w(TAG, "Failed to query license duration", e);
+      return;
+    }
+    if (durationRemainingSec < 0 || durationRemainingSec >= MAX_DURATION_SEC) {
+      return;
+    }
+    schedule(sessionId, getRenewalDelayMs(durationRemainingSec * 1000), /* failureCount= */ 0);
+  }
+
+  /** Cancels the renewal scheduled for a session that was closed. */
+  public synchronized void onSessionClosed(byte[] sessionId) {
+    ScheduledFuture<?> renewal = scheduledRenewals.remove(ByteBuffer.wrap(sessionId));
+    if (renewal != null) {
+      renewal.cancel(/* mayInterruptIfRunning= */ false);
+    }
+  }
+
+  /**
+   * Returns the delay after which a license with the given remaining duration is renewed, in
+   * milliseconds.
+   */
+  public long getRenewalDelayMs(long durationRemainingMs) {
+    // Renewing short licenses halfway through, rather than right away, leaves the jitter a delay
+    // to spread.
+    long renewAheadMs =
+        Math.max(
+            Math.min(minRenewAheadMs, durationRemainingMs / 2),
+            (long) (durationRemainingMs * renewAheadFraction));
+    long delayMs = Math.max(0, durationRemainingMs - renewAheadMs);
+    double jitter;
+    synchronized (random) {
+      jitter = random.nextDouble();
+    }
+    delayMs -= (long) (delayMs * jitterFactor * jitter);
+    if (delayMs < minRenewalDelayMs) {
+      // Expired and almost expired licenses would otherwise all be renewed at once.
+      delayMs = minRenewalDelayMs + (long) (minRenewalDelayMs * jitter);
+    }
+    return delayMs;
+  }
+
+  /** Returns the number of successful renewals. */
+  public synchronized int getRenewalCount() {
+    return renewalCount;
+  }
+
+  /** Returns the number of failed renewal attempts. */
+  public synchronized int getFailedRenewalCount() {
+    return failedRenewalCount;
+  }
+
+  /** Returns the number of sessions with a scheduled renewal. */
+  public synchronized int getScheduledRenewalCount() {
+    return scheduledRenewals.size();
+  }
+
+  /** Cancels all scheduled renewals. The scheduler must not be used afterwards. */
+  public synchronized void release() {
+    released = true;
+    for (ScheduledFuture<?> renewal : scheduledRenewals.values()) {
+      renewal.cancel(/* mayInterruptIfRunning= */ false);
+    }
+    scheduledRenewals.clear();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "renewals="
+        + renewalCount
+        + ", failed="
+        + failedRenewalCount
+        + ", scheduled="
+        + scheduledRenewals.size();
+  }
+
+  private synchronized void schedule(
+      final byte[] sessionId, long delayMs, final int failureCount) {
+    if (released) {
+      return;
+    }
+    final ByteBuffer key = ByteBuffer.wrap(sessionId);
+    ScheduledFuture<?> previousRenewal = scheduledRenewals.remove(key);
+    if (previousRenewal != null) {
+      previousRenewal.cancel(/* mayInterruptIfRunning= */ false);
+    }
+    scheduledRenewals.put(
+        key,
+        executor.schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                synchronized (LicenseRenewalScheduler.this) {
+                  if (scheduledRenewals.remove(key) == null) {
+                    // The session was closed.
+                    return;
+                  }
+                }
+                renew(sessionId, failureCount);
+              }
+            },
+            delayMs,
+            TimeUnit.MILLISECONDS));
+  }
+
+  private void renew(byte[] sessionId, int failureCount) {
+    try {
+      renewer.renew(sessionId);
+    } catch (Exception e) {
+      onRenewalFailed(sessionId, failureCount + 1, e);
+      return;
+    }
+    synchronized (this) {
+      renewalCount++;
+    }
+    onLicenseLoaded(sessionId);
+  }
+
+  private void onRenewalFailed(byte[] sessionId, int failureCount, Exception error) {
+    synchronized (this) {
+      failedRenewalCount++;
+    }
+    long durationRemainingSec;
+    try {
+      durationRemainingSec = renewer.getLicenseDurationRemainingSec(sessionId);
+    } catch (Exception e) {
+      durationRemainingSec = -1;
+    }
+    long retryDelayMs = INITIAL_RETRY_DELAY_MS << Math.min(failureCount - 1, 6);
+    if (durationRemainingSec >= 0 && durationRemainingSec < MAX_DURATION_SEC) {
+      // Keep retrying before the license expires.
+      retryDelayMs = Math.min(retryDelayMs, durationRemainingSec * 1000 / 2);
+    }
+    if (durationRemainingSec == 0) {
+      Log.w(TAG, "License expired before it could be renewed", error);
+      return;
+    }
+    Log.w(TAG, "Renewal failed, retrying in " + retryDelayMs + "ms", error);
+    schedule(sessionId, retryDelayMs, failureCount);
+  }
+}
@@ -0,0 +1,233 @@
+package com.example.exoplayer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs license requests on a bounded executor, sharing a single in-flight request between callers
+ * that send the same body with the same headers to the same URL.
+ *
+ * <p>With multi-period DASH, track switches or several players, identical key requests for the
+ * same key id are otherwise sent side by side.
+ */
+public final class LicenseRequestCoalescer {
+
+  /** The default maximum number of requests executed concurrently. */
+  public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+  /** The default maximum number of requests waiting for a thread. */
+  public static final int DEFAULT_MAX_QUEUED_REQUESTS = 32;
+
+  private static LicenseRequestCoalescer sharedInstance;
+
+  private final ThreadPoolExecutor executor;
+  private final Map<RequestKey, RequestTask> inFlightRequests;
+
+  private int coalescedRequestCount;
+
+  /** Returns the instance shared by all license callbacks in the process. */
+  public static synchronized LicenseRequestCoalescer getSharedInstance() {
+    if (sharedInstance == null) {
+      sharedInstance =
+          new LicenseRequestCoalescer(
+              DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_QUEUED_REQUESTS);
+    }
+    return sharedInstance;
+  }
+
+  /**
+   * @param maxConcurrentRequests The maximum number of requests executed concurrently.
+   * @param maxQueuedRequests The maximum number of requests waiting for a thread. Further requests
+   *     are executed on the calling thread.
+   */
+  public LicenseRequestCoalescer(int maxConcurrentRequests, int maxQueuedRequests) {
+    executor =
+        new ThreadPoolExecutor(
+            maxConcurrentRequests,
+            maxConcurrentRequests,
+            /* keepAliveTime= */ 30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(maxQueuedRequests),
+            new LicenseThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.allowCoreThreadTimeOut(true);
+    inFlightRequests = new HashMap<>();
+  }
+
+  /**
+   * Starts a request, or joins an identical request that is already in flight.
+   *
+   * @param url The URL the request is sent to.
+   * @param body The request body.
+   * @param request Executes the request. Not called if an identical request is in flight.
+   * @return A {@link Future} for the response.
+   */
+  public Future<byte[]> submit(String url, byte[] body, Callable<byte[]> request) {
+    return submit(url, Collections.<String, String>emptyMap(), body, request);
+  }
+
+  /**
+   * Starts a request, or joins an identical request that is already in flight.
+   *
+   * @param url The URL the request is sent to.
+   * @param headers The request headers. Must not be modified afterwards.
+   * @param body The request body.
+   * @param request Executes the request. Not called if an identical request is in flight.
+   * @return A {@link Future} for the response.
+   */
+  public Future<byte[]> submit(
+      String url, Map<String, String> headers, byte[] body, Callable<byte[]> request) {
+    RequestKey key = new RequestKey(url, headers, body);
+    RequestTask task;
+    synchronized (inFlightRequests) {
+      task = inFlightRequests.get(key);
+      if (task != null) {
+        coalescedRequestCount++;
+        return task;
+      }
+      task = new RequestTask(key, request);
+      inFlightRequests.put(key, task);
+    }
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Executes a request, or joins an identical request that is already in flight, and blocks until
+   * the response is available.
+   *
+   * @param url The URL the request is sent to.
+   * @param body The request body.
+   * @param request Executes the request. Not called if an identical request is in flight.
+   * @param timeoutMs The maximum time to wait for the response, in milliseconds.
+   * @return The response.
+   * @throws TimeoutException If the response is not available within {@code timeoutMs}. The shared
+   *     request is not cancelled, since other callers may be waiting for it.
+   * @throws Exception If the request failed.
+   */
+  public byte[] execute(String url, byte[] body, Callable<byte[]> request, long timeoutMs)
+      throws Exception {
+    return execute(url, Collections.<String, String>emptyMap(), body, request, timeoutMs);
+  }
+
+  /**
+   * Executes a request, or joins an identical request that is already in flight, and blocks until
+   * the response is available.
+   *
+   * @param url The URL the request is sent to.
+   * @param headers The request headers. Must not be modified afterwards.
+   * @param body The request body.
+   * @param request Executes the request. Not called if an identical request is in flight.
+   * @param timeoutMs The maximum time to wait for the response, in milliseconds.
+   * @return The response.
+   * @throws TimeoutException If the response is not available within {@code timeoutMs}. The shared
+   *     request is not cancelled, since other callers may be waiting for it.
+   * @throws Exception If the request failed.
+   */
+  public byte[] execute(
+      String url,
+      Map<String, String> headers,
+      byte[] body,
+      Callable<byte[]> request,
+      long timeoutMs)
+      throws Exception {
+    Future<byte[]> future = submit(url, headers, body, request);
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+
+  /** Returns the number of requests that joined a request already in flight. */
+  public int getCoalescedRequestCount() {
+    synchronized (inFlightRequests) {
+      return coalescedRequestCount;
+    }
+  }
+
+  /** Returns the number of requests currently in flight. */
+  public int getInFlightRequestCount() {
+    synchronized (inFlightRequests) {
+      return inFlightRequests.size();
+    }
+  }
+
+  private final class RequestTask extends FutureTask<byte[]> {
+
+    private final RequestKey key;
+
+    public RequestTask(RequestKey key, Callable<byte[]> request) {
+      super(request);
+      this.key = key;
+    }
+
+    @Override
+    protected void done() {
+      synchronized (inFlightRequests) {
+        if (inFlightRequests.get(key) == this) {
+          inFlightRequests.remove(key);
+        }
+      }
+    }
+  }
+
+  private static final class RequestKey {
+
+    private final String url;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final int hashCode;
+
+    public RequestKey(String url, Map<String, String> headers, byte[] body) {
+      this.url = url;
+      this.headers = headers;
+      this.body = body;
+      hashCode = 31 * (31 * url.hashCode() + headers.hashCode()) + Arrays.hashCode(body);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      RequestKey other = (RequestKey) obj;
+      return hashCode == other.hashCode
+          && url.equals(other.url)
+          && headers.equals(other.headers)
+          && Arrays.equals(body, other.body);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final class LicenseThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "LicenseRequest:" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
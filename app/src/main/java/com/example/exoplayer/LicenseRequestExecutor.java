@@ -0,0 +1,199 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes license and provisioning requests according to a {@link LicenseRetryPolicy}, recording
+ * every attempt in a {@link LicenseRequestMetrics}.
+ */
+public final class LicenseRequestExecutor {
+
+  private static final ExecutorService hedgeExecutor =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "LicenseRequest:hedge");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private final LicenseRetryPolicy retryPolicy;
+  private final LicenseRequestMetrics metrics;
+  private final Random random;
+
+  /**
+   * @param retryPolicy The {@link LicenseRetryPolicy}.
+   * @param metrics The {@link LicenseRequestMetrics} in which attempts are recorded.
+   */
+  public LicenseRequestExecutor(LicenseRetryPolicy retryPolicy, LicenseRequestMetrics metrics) {
+    this(retryPolicy, metrics, new Random());
+  }
+
+  /**
+   * @param retryPolicy The {@link LicenseRetryPolicy}.
+   * @param metrics The {@link LicenseRequestMetrics} in which attempts are recorded.
+   * @param random The source of backoff jitter.
+   */
+  public LicenseRequestExecutor(
+      LicenseRetryPolicy retryPolicy, LicenseRequestMetrics metrics, Random random) {
+    this.retryPolicy = retryPolicy;
+    this.metrics = metrics;
+    this.random = random;
+  }
+
+  /** Returns the {@link LicenseRetryPolicy}. */
+  public LicenseRetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Executes a request, retrying it as allowed by the retry policy.
+   *
+   * @param attempt Makes one attempt. Must be safe to call concurrently if {@code allowHedging} is
+   *     true.
+   * @param allowHedging Whether hedged attempts may be sent, if enabled by the retry policy.
+   * @return The response of the first successful attempt.
+   * @throws Exception The error of the last attempt, if no attempt succeeded.
+   */
+  public byte[] execute(Callable<byte[]> attempt, boolean allowHedging) throws Exception {
+    return execute(attempt, allowHedging, /* timeoutMs= */ Long.MAX_VALUE);
+  }
+
+  /**
+   * Executes a request, retrying it as allowed by the retry policy for at most {@code timeoutMs}.
+   * A retry is not started if its backoff would end after the timeout, so that a request whose
+   * caller has stopped waiting does not keep retrying in the background. An attempt in flight when
+   * the timeout elapses is not interrupted.
+   *
+   * @param attempt Makes one attempt. Must be safe to call concurrently if {@code allowHedging} is
+   *     true.
+   * @param allowHedging Whether hedged attempts may be sent, if enabled by the retry policy.
+   * @param timeoutMs The time after the first attempt starts after which no retry is started, in
+   *     milliseconds.
+   * @return The response of the first successful attempt.
+   * @throws Exception The error of the last attempt, if no attempt succeeded.
+   */
+  public byte[] execute(Callable<byte[]> attempt, boolean allowHedging, long timeoutMs)
+      throws Exception {
+    boolean hedge = allowHedging && retryPolicy.isHedgingEnabled();
+    long startTimeNs = System.nanoTime();
+    int attemptCount = 0;
+    while (true) {
+      attemptCount++;
+      try {
+        return hedge ? executeHedged(attempt) : executeAttempt(attempt, /* settled= */ null);
+      } catch (Exception e) {
+        long retryDelayMs = retryPolicy.getRetryDelayMs(e, attemptCount, random);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNs);
+        if (retryDelayMs < 0 || retryDelayMs > timeoutMs - elapsedMs) {
+          throw e;
+        }
+        metrics.onRetry();
+        Thread.sleep(retryDelayMs);
+      }
+    }
+  }
+
+  private byte[] executeHedged(final Callable<byte[]> attempt) throws Exception {
+    final AtomicBoolean settled = new AtomicBoolean();
+    Callable<byte[]> measuredAttempt =
+        new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws Exception {
+            return executeAttempt(attempt, settled);
+          }
+        };
+    ExecutorCompletionService<byte[]> completionService =
+        new ExecutorCompletionService<>(hedgeExecutor);
+    Future<byte[]> primary = completionService.submit(measuredAttempt);
+    Future<byte[]> hedge = null;
+    try {
+      Future<byte[]> completed =
+          completionService.poll(retryPolicy.getHedgeDelayMs(metrics), TimeUnit.MILLISECONDS);
+      if (completed == null) {
+        metrics.onHedgeSent();
+        hedge = completionService.submit(measuredAttempt);
+        completed = completionService.take();
+      }
+      try {
+        byte[] response = getResponse(completed);
+        if (completed == hedge) {
+          metrics.onHedgeWon();
+        }
+        return response;
+      } catch (Exception e) {
+        if (hedge == null) {
+          throw e;
+        }
+        // The first attempt to complete failed, so wait for the other one.
+        Future<byte[]> other = completionService.take();
+        byte[] response = getResponse(other);
+        if (other == hedge) {
+          metrics.onHedgeWon();
+        }
+        return response;
+      }
+    } finally {
+      settled.set(true);
+      primary.cancel(/* mayInterruptIfRunning= */ true);
+      if (hedge != null) {
+        hedge.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+  }
+
+  private byte[] executeAttempt(Callable<byte[]> attempt, @Nullable AtomicBoolean settled)
+      throws Exception {
+    long startTimeNs = System.nanoTime();
+    try {
+      byte[] response = attempt.call();
+      onAttemptCompleted(LicenseRequestMetrics.OUTCOME_SUCCESS, startTimeNs, settled);
+      return response;
+    } catch (Exception e) {
+      onAttemptCompleted(getOutcome(e), startTimeNs, settled);
+      throw e;
+    }
+  }
+
+  private void onAttemptCompleted(
+      int outcome, long startTimeNs, @Nullable AtomicBoolean settled) {
+    if (settled != null && settled.get()) {
+      outcome = LicenseRequestMetrics.OUTCOME_CANCELLED;
+    }
+    metrics.onAttemptCompleted(
+        outcome, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNs));
+  }
+
+  private static int getOutcome(Exception error) {
+    if (error instanceof InvalidResponseCodeException) {
+      return LicenseRequestMetrics.OUTCOME_HTTP_ERROR;
+    }
+    return LicenseRetryPolicy.isRetryable(error)
+        ? LicenseRequestMetrics.OUTCOME_NETWORK_ERROR
+        : LicenseRequestMetrics.OUTCOME_OTHER_ERROR;
+  }
+
+  private static byte[] getResponse(Future<byte[]> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+}
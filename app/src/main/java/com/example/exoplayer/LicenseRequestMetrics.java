@@ -0,0 +1,126 @@
+package com.example.exoplayer;
+
+/**
+ * Counts the outcome and latency of each attempt made for license and provisioning requests.
+ *
+ * <p>Latencies are recorded in fixed buckets, so percentiles are reported as the upper bound of
+ * the bucket they fall in.
+ */
+public final class LicenseRequestMetrics {
+
+  /** The attempt returned a response. */
+  public static final int OUTCOME_SUCCESS = 0;
+  /** The server responded with an error status. */
+  public static final int OUTCOME_HTTP_ERROR = 1;
+  /** The attempt failed with a timeout or connection error. */
+  public static final int OUTCOME_NETWORK_ERROR = 2;
+  /** The attempt failed for another reason, for example an unparseable response. */
+  public static final int OUTCOME_OTHER_ERROR = 3;
+  /** The attempt was abandoned because a concurrent hedged attempt completed first. */
+  public static final int OUTCOME_CANCELLED = 4;
+
+  private static final int OUTCOME_COUNT = 5;
+
+  /** The minimum number of recorded latencies before percentiles are reported. */
+  private static final int MIN_PERCENTILE_SAMPLES = 20;
+
+  private static final long[] LATENCY_BUCKET_UPPER_BOUNDS_MS = {
+    25, 50, 100, 200, 300, 500, 750, 1000, 1500, 2000, 3000, 5000, 10000, 20000, Long.MAX_VALUE
+  };
+
+  private final int[] outcomeCounts;
+  private final int[] latencyBucketCounts;
+
+  private int latencySampleCount;
+  private long totalLatencyMs;
+  private int retryCount;
+  private int hedgeCount;
+  private int hedgeWinCount;
+
+  public LicenseRequestMetrics() {
+    outcomeCounts = new int[OUTCOME_COUNT];
+    latencyBucketCounts = new int[LATENCY_BUCKET_UPPER_BOUNDS_MS.length];
+  }
+
+  /**
+   * Records a completed attempt.
+   *
+   * @param outcome The {@code OUTCOME_*} of the attempt.
+   * @param latencyMs The time from sending the request until it completed, in milliseconds.
+   */
+  public synchronized void onAttemptCompleted(int outcome, long latencyMs) {
+    outcomeCounts[outcome]++;
+    if (outcome == OUTCOME_CANCELLED) {
+      return;
+    }
+    latencySampleCount++;
+    totalLatencyMs += latencyMs;
+    for (int i = 0; i < LATENCY_BUCKET_UPPER_BOUNDS_MS.length; i++) {
+      if (latencyMs <= LATENCY_BUCKET_UPPER_BOUNDS_MS[i]) {
+        latencyBucketCounts[i]++;
+        return;
+      }
+    }
+  }
+
+  /** Records that a failed request is retried. */
+  public synchronized void onRetry() {
+    retryCount++;
+  }
+
+  /** Records that a hedged attempt was sent. */
+  public synchronized void onHedgeSent() {
+    hedgeCount++;
+  }
+
+  /** Records that a hedged attempt completed before the attempt it hedged. */
+  public synchronized void onHedgeWon() {
+    hedgeWinCount++;
+  }
+
+  /** Returns the number of attempts that completed with the given {@code OUTCOME_*}. */
+  public synchronized int getOutcomeCount(int outcome) {
+    return outcomeCounts[outcome];
+  }
+
+  /** Returns the number of retries. */
+  public synchronized int getRetryCount() {
+    return retryCount;
+  }
+
+  /** Returns the number of hedged attempts sent. */
+  public synchronized int getHedgeCount() {
+    return hedgeCount;
+  }
+
+  /** Returns the number of hedged attempts that completed first. */
+  public synchronized int getHedgeWinCount() {
+    return hedgeWinCount;
+  }
+
+  /** Returns the mean attempt latency in milliseconds, or -1 if no attempt has completed. */
+  public synchronized long getMeanLatencyMs() {
+    return latencySampleCount == 0 ? -1 : totalLatencyMs / latencySampleCount;
+  }
+
+  /**
+   * Returns the upper bound of the latency bucket containing the given percentile, in milliseconds,
+   * or -1 if too few attempts have completed.
+   *
+   * @param percentile The percentile, between 0 and 1.
+   */
+  public synchronized long getLatencyPercentileMs(float percentile) {
+    if (latencySampleCount < MIN_PERCENTILE_SAMPLES) {
+      return -1;
+    }
+    int targetCount = (int) Math.ceil(percentile * latencySampleCount);
+    int count = 0;
+    for (int i = 0; i < latencyBucketCounts.length - 1; i++) {
+      count += latencyBucketCounts[i];
+      if (count >= targetCount) {
+        return LATENCY_BUCKET_UPPER_BOUNDS_MS[i];
+      }
+    }
+    return LATENCY_BUCKET_UPPER_BOUNDS_MS[LATENCY_BUCKET_UPPER_BOUNDS_MS.length - 2];
+  }
+}
@@ -0,0 +1,347 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.nio.charset.Charset;
+
+/**
+ * Extracts the license from a license server response.
+ *
+ * <p>In {@link #MODE_JSON} the response is a JSON object whose {@code license} field holds the
+ * Base64 encoded license. The decoder scans the response bytes for that field and decodes it
+ * directly into an output buffer of the exact license size, without building a {@link String} or
+ * a JSON tree. Responses without a license are reported as a {@link LicenseResponseException}
+ * carrying the error code and message sent by the server, if any.
+ *
+ * <p>In {@link #MODE_RAW} the response body is the license itself.
+ */
+public final class LicenseResponseDecoder {
+
+  /** The response is a JSON object with a Base64 encoded {@code license} field. */
+  public static final int MODE_JSON = 0;
+  /** The response body is the binary license. */
+  public static final int MODE_RAW = 1;
+
+  /** A decoder for {@link #MODE_JSON} responses. */
+  public static final LicenseResponseDecoder JSON = new LicenseResponseDecoder(MODE_JSON);
+  /** A decoder for {@link #MODE_RAW} responses. */
+  public static final LicenseResponseDecoder RAW = new LicenseResponseDecoder(MODE_RAW);
+
+  /** The maximum number of response bytes included in error messages. */
+  private static final int MAX_LOGGED_RESPONSE_LENGTH = 256;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte[] LICENSE_KEY = getAsciiBytes("license");
+  private static final byte[] ERROR_CODE_KEY = getAsciiBytes("errorCode");
+  private static final byte[] CODE_KEY = getAsciiBytes("code");
+  private static final byte[] STATUS_KEY = getAsciiBytes("status");
+  private static final byte[] MESSAGE_KEY = getAsciiBytes("message");
+  private static final byte[] ERROR_KEY = getAsciiBytes("error");
+
+  private static final byte[] BASE64_DECODE_TABLE = new byte[256];
+
+  static {
+    for (int i = 0; i < BASE64_DECODE_TABLE.length; i++) {
+      BASE64_DECODE_TABLE[i] = -1;
+    }
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      BASE64_DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+    }
+    // Accept the URL safe alphabet too.
+    BASE64_DECODE_TABLE['-'] = 62;
+    BASE64_DECODE_TABLE['_'] = 63;
+  }
+
+  private final int mode;
+
+  private LicenseResponseDecoder(int mode) {
+    this.mode = mode;
+  }
+
+  /** Returns the mode of the decoder. */
+  public int getMode() {
+    return mode;
+  }
+
+  /**
+   * Decodes the license from a response.
+   *
+   * @param response The buffer holding the response.
+   * @param offset The offset of the response in the buffer.
+   * @param length The length of the response.
+   * @return The license.
+   * @throws LicenseResponseException If the response does not contain a license.
+   */
+  public byte[] decode(byte[] response, int offset, int length) throws LicenseResponseException {
+    if (mode == MODE_RAW) {
+      if (length == 0) {
+        throw new LicenseResponseException("Empty license response", null, null);
+      }
+      if (offset == 0 && length == response.length) {
+        return response;
+      }
+      byte[] license = new byte[length];
+      System.arraycopy(response, offset, license, 0, length);
+      return license;
+    }
+    return decodeJson(response, offset, offset + length);
+  }
+
+  private static byte[] decodeJson(byte[] data, int start, int end)
+      throws LicenseResponseException {
+    int licenseStart = -1;
+    int licenseEnd = -1;
+    String errorCode = null;
+    String errorMessage = null;
+
+    int position = skipWhitespace(data, start, end);
+    if (position >= end || data[position] != '{') {
+      throw newMalformedResponseException(data, start, end);
+    }
+    position = skipWhitespace(data, position + 1, end);
+    if (position < end && data[position] == '}') {
+      position = end;
+    }
+    while (position < end) {
+      if (data[position] != '"') {
+        throw newMalformedResponseException(data, start, end);
+      }
+      int keyStart = position + 1;
+      int keyEnd = findStringEnd(data, keyStart, end);
+      position = skipWhitespace(data, keyEnd + 1, end);
+      if (position >= end || data[position] != ':') {
+        throw newMalformedResponseException(data, start, end);
+      }
+      int valueStart = skipWhitespace(data, position + 1, end);
+      int valueEnd = skipValue(data, valueStart, end);
+      if (valueEnd < 0) {
+        throw newMalformedResponseException(data, start, end);
+      }
+      boolean isString = data[valueStart] == '"';
+      if (isString && keyEquals(data, keyStart, keyEnd, LICENSE_KEY)) {
+        licenseStart = valueStart + 1;
+        licenseEnd = valueEnd - 1;
+      } else if (keyEquals(data, keyStart, keyEnd, ERROR_CODE_KEY)
+          || keyEquals(data, keyStart, keyEnd, CODE_KEY)
+          || (keyEquals(data, keyStart, keyEnd, STATUS_KEY) && errorCode == null)) {
+        errorCode = getValueString(data, valueStart, valueEnd, isString);
+      } else if (keyEquals(data, keyStart, keyEnd, MESSAGE_KEY)
+          || keyEquals(data, keyStart, keyEnd, ERROR_KEY)) {
+        errorMessage = getValueString(data, valueStart, valueEnd, isString);
+      }
+      position = skipWhitespace(data, valueEnd, end);
+      if (position < end && data[position] == ',') {
+        position = skipWhitespace(data, position + 1, end);
+      } else if (position < end && data[position] == '}') {
+        break;
+      } else {
+        throw newMalformedResponseException(data, start, end);
+      }
+    }
+
+    if (licenseStart >= 0 && licenseStart == licenseEnd && errorMessage == null) {
+      throw new LicenseResponseException("Empty license in response", null, null);
+    }
+    if (licenseStart < 0 || licenseStart == licenseEnd) {
+      if (errorCode != null || errorMessage != null) {
+        throw new LicenseResponseException(
+            "License server error " + errorCode + ": " + errorMessage, errorCode, errorMessage);
+      }
+      throw new LicenseResponseException(
+          "No license in response: " + getLoggableResponse(data, start, end), null, null);
+    }
+    return decodeBase64(data, licenseStart, licenseEnd);
+  }
+
+  /**
+   * Decodes Base64 from a JSON string value. Whitespace and JSON escapes are tolerated. Each escape,
+   * including a unicode escape, is decoded to its character before that is read as Base64. The
+   * decoded length is computed in a first pass and the output is allocated once.
+   */
+  private static byte[] decodeBase64(byte[] data, int start, int end)
+      throws LicenseResponseException {
+    int symbolCount = 0;
+    for (int i = start; i < end; ) {
+      int c = data[i] & 0xFF;
+      if (c == '\\') {
+        c = unescape(data, i, end);
+        i += getEscapeLength(data, i, end);
+      } else {
+        i++;
+      }
+      if (c == '=') {
+        break;
+      } else if (c >= 0 && c < BASE64_DECODE_TABLE.length && BASE64_DECODE_TABLE[c] >= 0) {
+        symbolCount++;
+      } else if (!isWhitespace(c)) {
+        throw new LicenseResponseException("Invalid Base64 in license", null, null);
+      }
+    }
+    if (symbolCount % 4 == 1) {
+      throw new LicenseResponseException("Truncated Base64 in license", null, null);
+    }
+
+    byte[] output = new byte[symbolCount / 4 * 3 + Math.max(0, symbolCount % 4 - 1)];
+    int outputPosition = 0;
+    int bits = 0;
+    int bitCount = 0;
+    for (int i = start; i < end && outputPosition < output.length; ) {
+      int c = data[i] & 0xFF;
+      if (c == '\\') {
+        c = unescape(data, i, end);
+        i += getEscapeLength(data, i, end);
+      } else {
+        i++;
+      }
+      if (c < 0 || c >= BASE64_DECODE_TABLE.length || BASE64_DECODE_TABLE[c] < 0) {
+        continue;
+      }
+      bits = (bits << 6) | BASE64_DECODE_TABLE[c];
+      bitCount += 6;
+      if (bitCount >= 8) {
+        bitCount -= 8;
+        output[outputPosition++] = (byte) (bits >> bitCount);
+      }
+    }
+    return output;
+  }
+
+  /** Returns the length of the JSON escape sequence starting with the backslash at {@code i}. */
+  private static int getEscapeLength(byte[] data, int i, int end) {
+    return i + 1 < end && data[i + 1] == 'u' ? Math.min(6, end - i) : Math.min(2, end - i);
+  }
+
+  /**
+   * Returns the character of the JSON escape sequence starting with the backslash at {@code i}, or
+   * -1 if the sequence is truncated or malformed.
+   */
+  private static int unescape(byte[] data, int i, int end) {
+    if (i + 1 >= end) {
+      return -1;
+    }
+    switch (data[i + 1]) {
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'u':
+        if (i + 6 > end) {
+          return -1;
+        }
+        int value = 0;
+        for (int j = i + 2; j < i + 6; j++) {
+          int digit = Character.digit(data[j], 16);
+          if (digit < 0) {
+            return -1;
+          }
+          value = (value << 4) | digit;
+        }
+        return value;
+      default:
+        // \", \\ and \/ stand for the character itself.
+        return data[i + 1] & 0xFF;
+    }
+  }
+
+  /** Returns the index of the closing quote of the string whose content starts at {@code start}. */
+  private static int findStringEnd(byte[] data, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (data[i] == '\\') {
+        i++;
+      } else if (data[i] == '"') {
+        return i;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Returns the index just past the JSON value starting at {@code start}, or -1 if the value is not
+   * terminated.
+   */
+  private static int skipValue(byte[] data, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+    if (data[start] == '"') {
+      int stringEnd = findStringEnd(data, start + 1, end);
+      return stringEnd < end ? stringEnd + 1 : -1;
+    }
+    if (data[start] == '{' || data[start] == '[') {
+      int depth = 0;
+      for (int i = start; i < end; i++) {
+        byte b = data[i];
+        if (b == '"') {
+          i = findStringEnd(data, i + 1, end);
+        } else if (b == '{' || b == '[') {
+          depth++;
+        } else if ((b == '}' || b == ']') && --depth == 0) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+    int i = start;
+    while (i < end && data[i] != ',' && data[i] != '}' && !isWhitespace(data[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipWhitespace(byte[] data, int position, int end) {
+    while (position < end && isWhitespace(data[position])) {
+      position++;
+    }
+    return position;
+  }
+
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  private static boolean keyEquals(byte[] data, int start, int end, byte[] key) {
+    if (end - start != key.length) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (data[start + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private static String getValueString(byte[] data, int start, int end, boolean isString) {
+    if (isString) {
+      return new String(data, start + 1, end - start - 2, UTF_8);
+    }
+    String value = new String(data, start, end - start, UTF_8);
+    return "null".equals(value) ? null : value;
+  }
+
+  private static LicenseResponseException newMalformedResponseException(
+      byte[] data, int start, int end) {
+    return new LicenseResponseException(
+        "Malformed license response: " + getLoggableResponse(data, start, end), null, null);
+  }
+
+  /** Returns the start of the response as a string, truncated so that errors stay small. */
+  private static String getLoggableResponse(byte[] data, int start, int end) {
+    int length = Math.min(end - start, MAX_LOGGED_RESPONSE_LENGTH);
+    String response = new String(data, start, length, UTF_8);
+    return length < end - start ? response + "... (" + (end - start) + " bytes)" : response;
+  }
+
+  private static byte[] getAsciiBytes(String value) {
+    return value.getBytes(UTF_8);
+  }
+}
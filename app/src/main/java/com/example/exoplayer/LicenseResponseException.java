@@ -0,0 +1,31 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+/** Thrown when a license response does not contain a license. */
+public final class LicenseResponseException extends IOException {
+
+  /** The error code sent by the license server, or null if it sent none. */
+  @Nullable public final String errorCode;
+  /** The error message sent by the license server, or null if it sent none. */
+  @Nullable public final String serverMessage;
+
+  /**
+   * @param message The detail message.
+   * @param errorCode The error code sent by the license server, or null.
+   * @param serverMessage The error message sent by the license server, or null.
+   */
+  public LicenseResponseException(
+      String message, @Nullable String errorCode, @Nullable String serverMessage) {
+    super(message);
+    this.errorCode = errorCode;
+    this.serverMessage = serverMessage;
+  }
+
+  /** Returns whether the license server reported an error, rather than sending a bad response. */
+  public boolean isServerError() {
+    return errorCode != null || serverMessage != null;
+  }
+}
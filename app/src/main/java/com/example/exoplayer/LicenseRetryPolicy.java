@@ -0,0 +1,231 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.upstream.HttpDataSource.HttpDataSourceException;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides whether and when a failed license or provisioning POST is retried, and whether a hedged
+ * second attempt is sent while the first is slow.
+ *
+ * <p>Only server errors (5xx, 408 and 429), timeouts and connection failures are retried. Client
+ * errors such as a rejected license challenge fail immediately. Retries are delayed with
+ * exponential backoff and jitter, or by the server's {@code Retry-After} header if it sends one.
+ */
+public final class LicenseRetryPolicy {
+
+  /** Builder for {@link LicenseRetryPolicy} instances. */
+  public static final class Builder {
+
+    private int maxAttempts;
+    private long initialBackoffMs;
+    private long maxBackoffMs;
+    private float backoffMultiplier;
+    private float jitterFactor;
+    private long maxRetryAfterMs;
+    private boolean hedgingEnabled;
+    private long hedgeDelayMs;
+    private float hedgeLatencyPercentile;
+
+    /** Creates a builder with default values. */
+    public Builder() {
+      maxAttempts = 3;
+      initialBackoffMs = 500;
+      maxBackoffMs = 5000;
+      backoffMultiplier = 2f;
+      jitterFactor = 0.5f;
+      maxRetryAfterMs = 10000;
+      hedgingEnabled = false;
+      hedgeDelayMs = 2000;
+      hedgeLatencyPercentile = 0.95f;
+    }
+
+    /** Sets the maximum number of attempts, including the first one. */
+    public Builder setMaxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Sets the backoff applied before the first retry, the maximum backoff, and the factor by which
+     * the backoff grows after each retry.
+     */
+    public Builder setBackoff(long initialBackoffMs, long maxBackoffMs, float backoffMultiplier) {
+      this.initialBackoffMs = initialBackoffMs;
+      this.maxBackoffMs = maxBackoffMs;
+      this.backoffMultiplier = backoffMultiplier;
+      return this;
+    }
+
+    /**
+     * Sets the fraction of each backoff that is randomized. A factor of 0.5 yields backoffs between
+     * 50% and 100% of the nominal value.
+     */
+    public Builder setJitterFactor(float jitterFactor) {
+      this.jitterFactor = jitterFactor;
+      return this;
+    }
+
+    /**
+     * Sets the longest {@code Retry-After} delay that is honored. Requests whose response asks for
+     * a longer delay are not retried.
+     */
+    public Builder setMaxRetryAfterMs(long maxRetryAfterMs) {
+      this.maxRetryAfterMs = maxRetryAfterMs;
+      return this;
+    }
+
+    /**
+     * Enables hedged requests. A second attempt is sent if the first has not completed after the
+     * given percentile of observed attempt latencies, or after {@code defaultHedgeDelayMs} until
+     * enough latencies have been observed. The first response to arrive is used.
+     *
+     * @param defaultHedgeDelayMs The hedge delay used before latencies have been observed.
+     * @param latencyPercentile The latency percentile after which a hedged attempt is sent, between
+     *     0 and 1.
+     */
+    public Builder setHedging(long defaultHedgeDelayMs, float latencyPercentile) {
+      this.hedgingEnabled = true;
+      this.hedgeDelayMs = defaultHedgeDelayMs;
+      this.hedgeLatencyPercentile = latencyPercentile;
+      return this;
+    }
+
+    /** Returns a {@link LicenseRetryPolicy} with the values of this builder. */
+    public LicenseRetryPolicy build() {
+      return new LicenseRetryPolicy(this);
+    }
+  }
+
+  /** A policy that never retries or hedges. */
+  public static final LicenseRetryPolicy NO_RETRY = new Builder().setMaxAttempts(1).build();
+
+  private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+  private final int maxAttempts;
+  private final long initialBackoffMs;
+  private final long maxBackoffMs;
+  private final float backoffMultiplier;
+  private final float jitterFactor;
+  private final long maxRetryAfterMs;
+  private final boolean hedgingEnabled;
+  private final long hedgeDelayMs;
+  private final float hedgeLatencyPercentile;
+
+  private LicenseRetryPolicy(Builder builder) {
+    maxAttempts = builder.maxAttempts;
+    initialBackoffMs = builder.initialBackoffMs;
+    maxBackoffMs = builder.maxBackoffMs;
+    backoffMultiplier = builder.backoffMultiplier;
+    jitterFactor = builder.jitterFactor;
+    maxRetryAfterMs = builder.maxRetryAfterMs;
+    hedgingEnabled = builder.hedgingEnabled;
+    hedgeDelayMs = builder.hedgeDelayMs;
+    hedgeLatencyPercentile = builder.hedgeLatencyPercentile;
+  }
+
+  /** Returns the maximum number of attempts, including the first one. */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /** Returns whether hedged attempts are sent. */
+  public boolean isHedgingEnabled() {
+    return hedgingEnabled;
+  }
+
+  /**
+   * Returns the delay after which a hedged attempt is sent.
+   *
+   * @param metrics The metrics from which observed latencies are read.
+   */
+  public long getHedgeDelayMs(LicenseRequestMetrics metrics) {
+    long percentileMs = metrics.getLatencyPercentileMs(hedgeLatencyPercentile);
+    return percentileMs > 0 ? percentileMs : hedgeDelayMs;
+  }
+
+  /** Returns whether the error may be resolved by retrying the request. */
+  public static boolean isRetryable(Exception error) {
+    if (error instanceof InvalidResponseCodeException) {
+      int responseCode = ((InvalidResponseCodeException) error).responseCode;
+      return responseCode >= 500 || responseCode == 408 || responseCode == 429;
+    }
+    Throwable cause = error instanceof HttpDataSourceException ? error.getCause() : error;
+    return cause instanceof InterruptedIOException
+        || cause instanceof ConnectException
+        || cause instanceof SocketException
+        || cause instanceof UnknownHostException;
+  }
+
+  /**
+   * Returns the delay before the next attempt, or a negative value if the request should not be
+   * retried.
+   *
+   * @param error The error of the failed attempt.
+   * @param attemptCount The number of attempts made so far.
+   * @param random The source of jitter.
+   */
+  public long getRetryDelayMs(Exception error, int attemptCount, Random random) {
+    if (attemptCount >= maxAttempts || !isRetryable(error)) {
+      return -1;
+    }
+    long retryAfterMs = getRetryAfterMs(error);
+    if (retryAfterMs >= 0) {
+      return retryAfterMs <= maxRetryAfterMs ? retryAfterMs : -1;
+    }
+    double backoffMs =
+        Math.min(maxBackoffMs, initialBackoffMs * Math.pow(backoffMultiplier, attemptCount - 1));
+    return (long) (backoffMs * (1 - jitterFactor * random.nextDouble()));
+  }
+
+  /** Returns the delay requested by a {@code Retry-After} response header, or -1 if there is none. */
+  private static long getRetryAfterMs(Exception error) {
+    if (!(error instanceof InvalidResponseCodeException)) {
+      return -1;
+    }
+    String value = getHeader(((InvalidResponseCodeException) error).headerFields);
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Math.max(0, Long.parseLong(value.trim()) * 1000);
+    } catch (NumberFormatException e) {
+      // Not a number of seconds, so try an HTTP date.
+    }
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    try {
+      Date date = format.parse(value.trim());
+      return Math.max(0, date.getTime() - System.currentTimeMillis());
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  @Nullable
+  private static String getHeader(@Nullable Map<String, List<String>> headerFields) {
+    if (headerFields == null) {
+      return null;
+    }
+    for (Map.Entry<String, List<String>> header : headerFields.entrySet()) {
+      if (RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey())
+          && header.getValue() != null
+          && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,123 @@
+package com.example.exoplayer;
+
+/**
+ * Decides the playback speed that holds a live stream at a target offset behind the live edge.
+ *
+ * <p>Within a tolerance around the target the speed is 1. Outside it, the speed is adjusted in
+ * proportion to the error, within a narrow range so that the change is not noticeable, and moves
+ * towards the new speed in small steps. When the offset is so far behind the target that catching
+ * up would take too long, the controller asks for a seek back to the live edge instead. Not thread
+ * safe.
+ */
+public final class LiveCatchUpController {
+
+  /** The default target offset behind the live edge, in milliseconds. */
+  public static final long DEFAULT_TARGET_OFFSET_MS = 5000;
+  /** The default offset error within which the speed is 1, in milliseconds. */
+  public static final long DEFAULT_TOLERANCE_MS = 500;
+  /** The default lowest speed. */
+  public static final float DEFAULT_MIN_SPEED = 0.97f;
+  /** The default highest speed. */
+  public static final float DEFAULT_MAX_SPEED = 1.05f;
+  /** The default speed change per second of offset error. */
+  public static final float DEFAULT_PROPORTIONAL_GAIN = 0.01f;
+  /** The default largest speed change per update. */
+  public static final float DEFAULT_MAX_SPEED_STEP = 0.01f;
+  /** The default error past which the controller seeks to the live edge, in milliseconds. */
+  public static final long DEFAULT_RESYNC_THRESHOLD_MS = 20000;
+
+  private final long targetOffsetMs;
+  private final long toleranceMs;
+  private final float minSpeed;
+  private final float maxSpeed;
+  private final float proportionalGain;
+  private final float maxSpeedStep;
+  private final long resyncThresholdMs;
+
+  private float speed;
+
+  /** @param targetOffsetMs The target offset behind the live edge, in milliseconds. */
+  public LiveCatchUpController(long targetOffsetMs) {
+    this(
+        targetOffsetMs,
+        DEFAULT_TOLERANCE_MS,
+        DEFAULT_MIN_SPEED,
+        DEFAULT_MAX_SPEED,
+        DEFAULT_PROPORTIONAL_GAIN,
+        DEFAULT_MAX_SPEED_STEP,
+        DEFAULT_RESYNC_THRESHOLD_MS);
+  }
+
+  /**
+   * @param targetOffsetMs The target offset behind the live edge, in milliseconds.
+   * @param toleranceMs The offset error within which the speed is 1, in milliseconds.
+   * @param minSpeed The lowest speed, used when too close to the live edge.
+   * @param maxSpeed The highest speed, used when too far behind the live edge.
+   * @param proportionalGain The speed change per second of offset error.
+   * @param maxSpeedStep The largest speed change per update.
+   * @param resyncThresholdMs The error past which the controller seeks to the live edge.
+   */
+  public LiveCatchUpController(
+      long targetOffsetMs,
+      long toleranceMs,
+      float minSpeed,
+      float maxSpeed,
+      float proportionalGain,
+      float maxSpeedStep,
+      long resyncThresholdMs) {
+    this.targetOffsetMs = targetOffsetMs;
+    this.toleranceMs = toleranceMs;
+    this.minSpeed = minSpeed;
+    this.maxSpeed = maxSpeed;
+    this.proportionalGain = proportionalGain;
+    this.maxSpeedStep = maxSpeedStep;
+    this.resyncThresholdMs = resyncThresholdMs;
+    speed = 1f;
+  }
+
+  /** Returns the target offset behind the live edge, in milliseconds. */
+  public long getTargetOffsetMs() {
+    return targetOffsetMs;
+  }
+
+  /**
+   * Returns whether {@code liveOffsetMs} is so far behind the target that playback should seek to
+   * the live edge rather than catch up. The speed is reset to 1 if so.
+   */
+  public boolean shouldResync(long liveOffsetMs) {
+    if (liveOffsetMs - targetOffsetMs > resyncThresholdMs) {
+      speed = 1f;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the speed at which to play, given the current offset behind the live edge.
+   *
+   * @param liveOffsetMs The current offset behind the live edge, in milliseconds.
+   */
+  public float updateSpeed(long liveOffsetMs) {
+    long errorMs = liveOffsetMs - targetOffsetMs;
+    float targetSpeed =
+        Math.abs(errorMs) <= toleranceMs
+            ? 1f
+            : Math.max(minSpeed, Math.min(maxSpeed, 1f + proportionalGain * errorMs / 1000f));
+    if (targetSpeed > speed) {
+      speed = Math.min(targetSpeed, speed + maxSpeedStep);
+    } else {
+      speed = Math.max(targetSpeed, speed - maxSpeedStep);
+    }
+    return speed;
+  }
+
+  /** Resets the speed to 1, for example while playback is stalled. */
+  public void reset() {
+    speed = 1f;
+  }
+
+  /** Returns the current speed. */
+  public float getSpeed() {
+    return speed;
+  }
+}
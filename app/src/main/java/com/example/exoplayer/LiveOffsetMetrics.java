@@ -0,0 +1,123 @@
+package com.example.exoplayer;
+
+/**
+ * Records how far playback of live streams is behind the live edge, which approximates the
+ * glass-to-glass latency minus encoding and delivery delays that happen before the live edge.
+ */
+public final class LiveOffsetMetrics {
+
+  /** Upper bounds of the live offset buckets, in milliseconds. */
+  private static final long[] OFFSET_BOUNDS_MS = {
+    2000, 3000, 4000, 5000, 6000, 8000, 10000, 15000, 20000, 30000, 60000
+  };
+
+  private final QoeHistogram offsets;
+
+  private long currentOffsetMs;
+  private long minOffsetMs;
+  private long maxOffsetMs;
+  private long offsetSumMs;
+  private int sampleCount;
+  private int adjustedSampleCount;
+  private int resyncCount;
+
+  public LiveOffsetMetrics() {
+    offsets = new QoeHistogram(OFFSET_BOUNDS_MS);
+    currentOffsetMs = -1;
+    minOffsetMs = Long.MAX_VALUE;
+    maxOffsetMs = -1;
+  }
+
+  /**
+   * Records a live offset sample.
+   *
+   * @param offsetMs The offset behind the live edge, in milliseconds.
+   * @param speed The playback speed chosen for the sample.
+   */
+  public synchronized void onOffsetSample(long offsetMs, float speed) {
+    currentOffsetMs = offsetMs;
+    minOffsetMs = Math.min(minOffsetMs, offsetMs);
+    maxOffsetMs = Math.max(maxOffsetMs, offsetMs);
+    offsetSumMs += offsetMs;
+    sampleCount++;
+    if (speed != 1f) {
+      adjustedSampleCount++;
+    }
+    offsets.add(offsetMs, 1);
+  }
+
+  /** Records a seek back to the live edge. */
+  public synchronized void onResync() {
+    resyncCount++;
+  }
+
+  /** Returns the latest offset, or -1 if there has been no sample. */
+  public synchronized long getCurrentOffsetMs() {
+    return currentOffsetMs;
+  }
+
+  /** Returns the mean offset, or -1 if there has been no sample. */
+  public synchronized long getMeanOffsetMs() {
+    return sampleCount == 0 ? -1 : offsetSumMs / sampleCount;
+  }
+
+  /** Returns the smallest offset, or -1 if there has been no sample. */
+  public synchronized long getMinOffsetMs() {
+    return sampleCount == 0 ? -1 : minOffsetMs;
+  }
+
+  /** Returns the largest offset, or -1 if there has been no sample. */
+  public synchronized long getMaxOffsetMs() {
+    return maxOffsetMs;
+  }
+
+  /** Returns the fraction of samples at which the speed was adjusted. */
+  public synchronized float getAdjustedFraction() {
+    return sampleCount == 0 ? 0 : (float) adjustedSampleCount / sampleCount;
+  }
+
+  /** Returns the number of seeks back to the live edge. */
+  public synchronized int getResyncCount() {
+    return resyncCount;
+  }
+
+  /**
+   * Returns the upper bound of the offset bucket containing the given percentile, in
+   * milliseconds, or -1 if there has been no sample. Offsets past the last bucket are reported as
+   * {@link Long#MAX_VALUE}.
+   *
+   * @param percentile The percentile, between 0 and 1.
+   */
+  public synchronized long getOffsetPercentileMs(float percentile) {
+    if (sampleCount == 0) {
+      return -1;
+    }
+    long targetCount = (long) Math.ceil(percentile * sampleCount);
+    long count = 0;
+    for (int i = 0; i < OFFSET_BOUNDS_MS.length; i++) {
+      count += offsets.getWeight(i);
+      if (count >= targetCount) {
+        return OFFSET_BOUNDS_MS[i];
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "offset="
+        + currentOffsetMs
+        + "ms, mean="
+        + getMeanOffsetMs()
+        + "ms, min="
+        + getMinOffsetMs()
+        + "ms, max="
+        + maxOffsetMs
+        + "ms, p90<="
+        + getOffsetPercentileMs(0.9f)
+        + "ms, adjusted="
+        + getAdjustedFraction()
+        + ", resyncs="
+        + resyncCount;
+  }
+}
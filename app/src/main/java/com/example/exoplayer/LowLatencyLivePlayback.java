@@ -0,0 +1,161 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+
+/**
+ * Holds live playback at a target offset behind the live edge, by playing slightly faster or
+ * slower as decided by a {@link LiveCatchUpController}, and seeking back to the live edge when it
+ * has fallen too far behind. Offsets are recorded in {@link #getMetrics()}.
+ *
+ * <p>The offset is measured against the device clock, so it is only as accurate as the clock is
+ * in sync with the packager. Must be used on the main thread.
+ */
+public final class LowLatencyLivePlayback implements Player.EventListener {
+
+  /** The interval at which the offset is measured and the speed updated, in milliseconds. */
+  public static final long UPDATE_INTERVAL_MS = 1000;
+
+  /** Speed changes smaller than this are not applied, to avoid needless audio resampling. */
+  private static final float MIN_SPEED_CHANGE = 0.005f;
+
+  private final LiveCatchUpController controller;
+  private final LiveOffsetMetrics metrics;
+  private final Handler handler;
+  private final Timeline.Window window;
+  private final Runnable updateRunnable;
+
+  @Nullable private SimpleExoPlayer player;
+
+  /** @param controller The {@link LiveCatchUpController} that decides the speed. */
+  public LowLatencyLivePlayback(LiveCatchUpController controller) {
+    this.controller = controller;
+    metrics = new LiveOffsetMetrics();
+    handler = new Handler(Looper.getMainLooper());
+    window = new Timeline.Window();
+    updateRunnable =
+        new Runnable() {
+          @Override
+          public void run() {
+            update();
+          }
+        };
+  }
+
+  /**
+   * Returns an {@link AdaptiveLoadControl} with buffer durations sized for playback {@code
+   * targetOffsetMs} behind the live edge, where more media than that can never be buffered. Its
+   * byte budget still follows the device's memory and shrinks under memory pressure.
+   *
+   * @param context A context.
+   * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+   * @param targetOffsetMs The target offset behind the live edge, in milliseconds.
+   */
+  public static AdaptiveLoadControl buildLoadControl(
+      Context context, BandwidthMeter bandwidthMeter, long targetOffsetMs) {
+    int maxBufferMs = (int) Math.max(2000, targetOffsetMs);
+    int minBufferMs = Math.max(1000, maxBufferMs / 2);
+    return new AdaptiveLoadControl(
+        context,
+        bandwidthMeter,
+        new BufferSizingPolicy.Sizes(
+            minBufferMs,
+            maxBufferMs,
+            /* bufferForPlaybackMs= */ Math.min(1000, minBufferMs),
+            /* bufferForPlaybackAfterRebufferMs= */ Math.min(2000, minBufferMs),
+            /* targetBufferBytes= */ 0));
+  }
+
+  /** Returns the target offset behind the live edge, in milliseconds. */
+  public long getTargetOffsetMs() {
+    return controller.getTargetOffsetMs();
+  }
+
+  /** Returns the live offset metrics. */
+  public LiveOffsetMetrics getMetrics() {
+    return metrics;
+  }
+
+  /** Starts controlling {@code player}, and stops controlling any player attached before. */
+  public void attach(SimpleExoPlayer player) {
+    detach();
+    this.player = player;
+    player.addListener(this);
+    handler.postDelayed(updateRunnable, UPDATE_INTERVAL_MS);
+  }
+
+  /** Stops controlling the attached player, if any, and restores its normal speed. */
+  public void detach() {
+    handler.removeCallbacks(updateRunnable);
+    if (player != null) {
+      player.removeListener(this);
+      setSpeed(1f);
+      player = null;
+    }
+    controller.reset();
+  }
+
+  @Override
+  public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+    if (playbackState != Player.STATE_READY || !playWhenReady) {
+      // Never speed up into a stall.
+      controller.reset();
+      setSpeed(1f);
+    }
+  }
+
+  private void update() {
+    SimpleExoPlayer player = this.player;
+    if (player == null) {
+      return;
+    }
+    handler.postDelayed(updateRunnable, UPDATE_INTERVAL_MS);
+    long liveOffsetMs = getLiveOffsetMs(player);
+    if (liveOffsetMs == C.TIME_UNSET
+        || player.getPlaybackState() != Player.STATE_READY
+        || !player.getPlayWhenReady()) {
+      return;
+    }
+    if (controller.shouldResync(liveOffsetMs)) {
+      metrics.onResync();
+      setSpeed(1f);
+      player.seekToDefaultPosition();
+      return;
+    }
+    float speed = controller.updateSpeed(liveOffsetMs);
+    metrics.onOffsetSample(liveOffsetMs, speed);
+    setSpeed(speed);
+  }
+
+  private long getLiveOffsetMs(SimpleExoPlayer player) {
+    Timeline timeline = player.getCurrentTimeline();
+    if (timeline.isEmpty()) {
+      return C.TIME_UNSET;
+    }
+    timeline.getWindow(player.getCurrentWindowIndex(), window);
+    if (!window.isDynamic || window.windowStartTimeMs == C.TIME_UNSET) {
+      return C.TIME_UNSET;
+    }
+    return System.currentTimeMillis() - (window.windowStartTimeMs + player.getCurrentPosition());
+  }
+
+  private void setSpeed(float speed) {
+    if (player == null) {
+      return;
+    }
+    float currentSpeed = player.getPlaybackParameters().speed;
+    if (speed == 1f ? currentSpeed != 1f : Math.abs(currentSpeed - speed) >= MIN_SPEED_CHANGE) {
+      player.setPlaybackParameters(new PlaybackParameters(speed));
+    }
+  }
+}
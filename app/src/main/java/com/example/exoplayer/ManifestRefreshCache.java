@@ -0,0 +1,378 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Avoids re-downloading and re-parsing live manifests that have not changed since the previous
+ * refresh.
+ *
+ * <p>Data sources from {@link #buildDataSourceFactory(HttpDataSource.Factory)} send {@code
+ * If-None-Match} and {@code If-Modified-Since} with every request for a whole resource, using the
+ * validators of the previous response for the same URI, and so must only load manifests. A {@code 304 Not Modified} response is answered with the
+ * previous response body from memory. Parsers from {@link #newDashManifestParser()} then return the
+ * previously parsed manifest when the body is unchanged, instead of parsing it again.
+ */
+public final class ManifestRefreshCache {
+
+  /** Counts manifest refreshes, the bytes they transfer and the time spent parsing them. */
+  public static final class Metrics {
+
+    private int loadCount;
+    private int notModifiedCount;
+    private long bytesDownloaded;
+    private long bytesSaved;
+    private int parseCount;
+    private int parseSkippedCount;
+    private long parseTimeMs;
+
+    private synchronized void onLoaded(long bytes) {
+      loadCount++;
+      bytesDownloaded += bytes;
+    }
+
+    private synchronized void onNotModified(long bytes) {
+      loadCount++;
+      notModifiedCount++;
+      bytesSaved += bytes;
+    }
+
+    private synchronized void onParsed(long parseTimeMs) {
+      parseCount++;
+      this.parseTimeMs += parseTimeMs;
+    }
+
+    private synchronized void onParseSkipped() {
+      parseSkippedCount++;
+    }
+
+    /** Returns the number of manifest loads. */
+    public synchronized int getLoadCount() {
+      return loadCount;
+    }
+
+    /** Returns the number of manifest loads answered with {@code 304 Not Modified}. */
+    public synchronized int getNotModifiedCount() {
+      return notModifiedCount;
+    }
+
+    /** Returns the number of manifest body bytes downloaded. */
+    public synchronized long getBytesDownloaded() {
+      return bytesDownloaded;
+    }
+
+    /** Returns the number of manifest body bytes served from memory after a 304 response. */
+    public synchronized long getBytesSaved() {
+      return bytesSaved;
+    }
+
+    /** Returns the number of manifests parsed. */
+    public synchronized int getParseCount() {
+      return parseCount;
+    }
+
+    /** Returns the number of unchanged manifests for which the previous parse result was used. */
+    public synchronized int getParseSkippedCount() {
+      return parseSkippedCount;
+    }
+
+    /** Returns the total time spent parsing manifests. */
+    public synchronized long getParseTimeMs() {
+      return parseTimeMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "loads="
+          + loadCount
+          + ", notModified="
+          + notModifiedCount
+          + ", downloaded="
+          + bytesDownloaded
+          + "B, saved="
+          + bytesSaved
+          + "B, parsed="
+          + parseCount
+          + " in "
+          + parseTimeMs
+          + "ms, parseSkipped="
+          + parseSkippedCount;
+    }
+  }
+
+  /** The number of manifest URIs whose last response is kept. */
+  private static final int MAX_ENTRIES = 8;
+
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  private static final class Entry {
+
+    @Nullable private final String etag;
+    @Nullable private final String lastModified;
+    private final byte[] body;
+
+    private Entry(@Nullable String etag, @Nullable String lastModified, byte[] body) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.body = body;
+    }
+  }
+
+  private final Map<String, Entry> entries;
+  private final Metrics metrics;
+
+  public ManifestRefreshCache() {
+    entries =
+        new LinkedHashMap<String, Entry>(
+            /* initialCapacity= */ MAX_ENTRIES, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+          }
+        };
+    metrics = new Metrics();
+  }
+
+  /**
+   * Returns a {@link DataSource.Factory} that makes conditional requests for whole resources, for
+   * use as the data source of a manifest loader. Requests for part of a resource are passed to the
+   * upstream data sources unchanged.
+   *
+   * @param upstreamFactory The factory for the HTTP data sources that requests are made with.
+   */
+  public DataSource.Factory buildDataSourceFactory(final HttpDataSource.Factory upstreamFactory) {
+    return new DataSource.Factory() {
+      @Override
+      public DataSource createDataSource() {
+        return new ConditionalDataSource(upstreamFactory.createDataSource());
+      }
+    };
+  }
+
+  /**
+   * Returns a DASH manifest parser that returns its previous result when the manifest is unchanged.
+   * Each media source should use its own parser.
+   */
+  public ParsingLoadable.Parser<DashManifest> newDashManifestParser() {
+    return new ReusingDashManifestParser();
+  }
+
+  /** Returns the refresh metrics. */
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  @Nullable
+  private Entry getEntry(String key) {
+    synchronized (entries) {
+      return entries.get(key);
+    }
+  }
+
+  private void putEntry(String key, Entry entry) {
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  private static boolean isWholeResourceRequest(DataSpec dataSpec) {
+    return dataSpec.position == 0 && dataSpec.length == C.LENGTH_UNSET;
+  }
+
+  @Nullable
+  private static String getHeader(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey())
+          && header.getValue() != null
+          && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  private final class ConditionalDataSource implements DataSource {
+
+    private final HttpDataSource upstream;
+
+    @Nullable private String key;
+    @Nullable private Uri uri;
+    @Nullable private byte[] notModifiedBody;
+    private int notModifiedReadPosition;
+    @Nullable private ByteArrayOutputStream body;
+    @Nullable private String etag;
+    @Nullable private String lastModified;
+    private long bytesTransferred;
+    private boolean upstreamOpened;
+    private boolean endOfInput;
+
+    private ConditionalDataSource(HttpDataSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      uri = dataSpec.uri;
+      upstream.clearRequestProperty(IF_NONE_MATCH);
+      upstream.clearRequestProperty(IF_MODIFIED_SINCE);
+      if (!isWholeResourceRequest(dataSpec)) {
+        key = null;
+        long length = upstream.open(dataSpec);
+        upstreamOpened = true;
+        return length;
+      }
+
+      key = dataSpec.uri.toString();
+      Entry entry = getEntry(key);
+      if (entry != null) {
+        if (entry.etag != null) {
+          upstream.setRequestProperty(IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+          upstream.setRequestProperty(IF_MODIFIED_SINCE, entry.lastModified);
+        }
+      }
+      long length;
+      try {
+        length = upstream.open(dataSpec);
+      } catch (InvalidResponseCodeException e) {
+        if (e.responseCode == 304 && entry != null) {
+          notModifiedBody = entry.body;
+          notModifiedReadPosition = 0;
+          metrics.onNotModified(entry.body.length);
+          return entry.body.length;
+        }
+        throw e;
+      }
+      upstreamOpened = true;
+      Map<String, List<String>> headers = upstream.getResponseHeaders();
+      etag = getHeader(headers, ETAG);
+      lastModified = getHeader(headers, LAST_MODIFIED);
+      if (etag != null || lastModified != null) {
+        body =
+            new ByteArrayOutputStream(
+                length != C.LENGTH_UNSET && length <= Integer.MAX_VALUE ? (int) length : 4096);
+      }
+      return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      if (notModifiedBody != null) {
+        int remaining = notModifiedBody.length - notModifiedReadPosition;
+        if (remaining == 0) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        int bytesRead = Math.min(readLength, remaining);
+        System.arraycopy(notModifiedBody, notModifiedReadPosition, buffer, offset, bytesRead);
+        notModifiedReadPosition += bytesRead;
+        return bytesRead;
+      }
+      int bytesRead = upstream.read(buffer, offset, readLength);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        endOfInput = true;
+      } else {
+        bytesTransferred += bytesRead;
+        if (body != null) {
+          body.write(buffer, offset, bytesRead);
+        }
+      }
+      return bytesRead;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return notModifiedBody != null ? uri : upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return upstreamOpened
+          ? upstream.getResponseHeaders()
+          : Collections.<String, List<String>>emptyMap();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (upstreamOpened) {
+          upstream.close();
+        }
+      } finally {
+        if (key != null && endOfInput) {
+          metrics.onLoaded(bytesTransferred);
+          if (body != null) {
+            putEntry(key, new Entry(etag, lastModified, body.toByteArray()));
+          }
+        }
+        key = null;
+        notModifiedBody = null;
+        body = null;
+        etag = null;
+        lastModified = null;
+        bytesTransferred = 0;
+        upstreamOpened = false;
+        endOfInput = false;
+      }
+    }
+  }
+
+  private final class ReusingDashManifestParser implements ParsingLoadable.Parser<DashManifest> {
+
+    private final DashManifestParser parser;
+
+    @Nullable private byte[] lastBody;
+    @Nullable private DashManifest lastManifest;
+
+    private ReusingDashManifestParser() {
+      parser = new DashManifestParser();
+    }
+
+    @Override
+    public DashManifest parse(Uri uri, InputStream inputStream) throws IOException {
+      byte[] body = Util.toByteArray(inputStream);
+      if (lastManifest != null && Arrays.equals(body, lastBody)) {
+        metrics.onParseSkipped();
+        return lastManifest;
+      }
+      long startTimeMs = SystemClock.elapsedRealtime();
+      DashManifest manifest = parser.parse(uri, new ByteArrayInputStream(body));
+      metrics.onParsed(SystemClock.elapsedRealtime() - startTimeMs);
+      lastBody = body;
+      lastManifest = manifest;
+      return manifest;
+    }
+  }
+}
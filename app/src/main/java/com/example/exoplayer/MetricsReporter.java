@@ -0,0 +1,87 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Logs the metrics collected by the playback components, in debug builds only. Metrics are read
+ * without blocking, so components that are not initialized yet are left out of a report.
+ */
+public final class MetricsReporter {
+
+  private static final String TAG = "Metrics";
+
+  private MetricsReporter() {}
+
+  /** Logs the time the components of {@code warmUp} took to initialize. */
+  public static void reportWarmUp(WarmUpPipeline warmUp) {
+    if (BuildConfig.DEBUG) {
+      Log.d(TAG, "Warm-up: " + warmUp);
+    }
+  }
+
+  /**
+   * Logs the metrics of the playback session of {@code zappingEngine}, which is stopping.
+   *
+   * @param application The application.
+   * @param zappingEngine The zapping engine of the session.
+   * @param playerFactory The player factory of the zapping engine.
+   */
+  public static void reportPlayback(
+      ExoplayerApplication application,
+      ZappingEngine zappingEngine,
+      ChannelPlayerFactory playerFactory) {
+    if (!BuildConfig.DEBUG) {
+      return;
+    }
+    // The player is only built once these components are initialized, so reading them does not
+    // block.
+    PlaybackCache playbackCache = application.getPlaybackCache();
+    StringBuilder report =
+        new StringBuilder("Playback:")
+            .append("\n  VOD cache: ")
+            .append(playbackCache.getVodMetrics())
+            .append("\n  live cache: ")
+            .append(playbackCache.getLiveMetrics())
+            .append("\n  HTTP connections: ")
+            .append(application.getSharedHttpClient().getConnectionStats())
+            .append("\n  manifest refreshes: ")
+            .append(application.getManifestRefreshCache().getMetrics())
+            .append("\n  zapping: ")
+            .append(zappingEngine.getMetrics())
+            .append("\n  startup: ")
+            .append(application.getStartupTracker())
+            .append("\n  QoE: ")
+            .append(application.getQoeAggregator());
+    ProvisioningManager provisioningManager = getProvisioningManagerIfReady(application);
+    if (provisioningManager != null) {
+      report.append("\n  provisioning: ").append(provisioningManager);
+    }
+    Channel channel = zappingEngine.getCurrentChannel();
+    AdaptiveLoadControl loadControl =
+        channel != null ? playerFactory.getLoadControl(channel) : null;
+    if (loadControl != null) {
+      report.append("\n  buffer: ").append(loadControl);
+    }
+    LowLatencyLivePlayback lowLatencyLivePlayback = playerFactory.getLowLatencyLivePlayback();
+    if (lowLatencyLivePlayback != null) {
+      report.append("\n  live offset: ").append(lowLatencyLivePlayback.getMetrics());
+    }
+    Log.d(TAG, report.toString());
+  }
+
+  @Nullable
+  private static ProvisioningManager getProvisioningManagerIfReady(
+      ExoplayerApplication application) {
+    if (!application.getWarmUp().isReady(ExoplayerApplication.COMPONENT_DRM_PROVISIONING)) {
+      return null;
+    }
+    try {
+      return application.getProvisioningManager();
+    } catch (IllegalStateException e) {
+      // Provisioning failed to initialize.
+      return null;
+    }
+  }
+}
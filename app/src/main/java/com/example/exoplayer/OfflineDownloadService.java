@@ -0,0 +1,63 @@
+package com.example.exoplayer;
+
+import android.app.Notification;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.scheduler.PlatformScheduler;
+import com.google.android.exoplayer2.scheduler.Scheduler;
+import com.google.android.exoplayer2.ui.DownloadNotificationHelper;
+import com.google.android.exoplayer2.util.Util;
+
+import java.util.List;
+
+/**
+ * The {@link DownloadService} that runs the downloads of the app's {@link DownloadManager} in the
+ * foreground, and restarts them after the process is killed.
+ */
+public class OfflineDownloadService extends DownloadService {
+
+  private static final String CHANNEL_ID = "download_channel";
+  private static final int JOB_ID = 1;
+  private static final int FOREGROUND_NOTIFICATION_ID = 1;
+
+  private DownloadNotificationHelper notificationHelper;
+
+  public OfflineDownloadService() {
+    super(
+        FOREGROUND_NOTIFICATION_ID,
+        DEFAULT_FOREGROUND_NOTIFICATION_UPDATE_INTERVAL,
+        CHANNEL_ID,
+        R.string.exo_download_notification_channel_name,
+        /* channelDescriptionResourceId= */ 0);
+  }
+
+  @Override
+  public void onCreate() {
+    super.onCreate();
+    notificationHelper = new DownloadNotificationHelper(this, CHANNEL_ID);
+  }
+
+  @Override
+  protected DownloadManager getDownloadManager() {
+    return ((ExoplayerApplication) getApplication()).getDownloadManager();
+  }
+
+  @Nullable
+  @Override
+  protected Scheduler getScheduler() {
+    return Util.SDK_INT >= 21 ? new PlatformScheduler(this, JOB_ID) : null;
+  }
+
+  @Override
+  protected Notification getForegroundNotification(List<Download> downloads) {
+    return notificationHelper.buildProgressNotification(
+        android.R.drawable.stat_sys_download,
+        /* contentIntent= */ null,
+        /* message= */ null,
+        downloads);
+  }
+}
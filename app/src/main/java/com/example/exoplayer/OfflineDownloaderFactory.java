@@ -0,0 +1,102 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.offline.DefaultDownloaderFactory;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.Downloader;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.offline.DownloaderFactory;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link DownloaderFactory} that creates {@link ParallelDashDownloader} instances for DASH
+ * content, sharing one bounded worker pool, and the default downloaders for other content.
+ *
+ * <p>Each download gets a {@link ThroughputLimiter} of its own, so that a single download cannot
+ * take all the bandwidth of the device.
+ */
+public final class OfflineDownloaderFactory implements DownloaderFactory {
+
+  /** The default number of worker threads shared by all downloads. */
+  public static final int DEFAULT_WORKER_COUNT = 4;
+  /** The default maximum number of segments each download keeps in flight. */
+  public static final int DEFAULT_MAX_SEGMENTS_IN_FLIGHT = 3;
+
+  private final Cache cache;
+  private final DataSource.Factory upstreamFactory;
+  private final ExecutorService workerExecutor;
+  private final int maxSegmentsInFlight;
+
+  private volatile long maxBytesPerSecondPerDownload;
+
+  /**
+   * @param cache The cache into which content is downloaded.
+   * @param upstreamFactory The factory for network data sources.
+   * @param workerCount The number of worker threads shared by all downloads.
+   * @param maxSegmentsInFlight The maximum number of segments each download keeps in flight.
+   */
+  public OfflineDownloaderFactory(
+      Cache cache, DataSource.Factory upstreamFactory, int workerCount, int maxSegmentsInFlight) {
+    this.cache = cache;
+    this.upstreamFactory = upstreamFactory;
+    this.maxSegmentsInFlight = maxSegmentsInFlight;
+    ThreadPoolExecutor workerExecutor =
+        new ThreadPoolExecutor(
+            workerCount,
+            workerCount,
+            /* keepAliveTime= */ 30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new WorkerThreadFactory());
+    // Idle workers exit, so that the pool costs nothing while nothing is downloading.
+    workerExecutor.allowCoreThreadTimeOut(true);
+    this.workerExecutor = workerExecutor;
+    maxBytesPerSecondPerDownload = ThroughputLimiter.UNLIMITED;
+  }
+
+  /**
+   * Sets the maximum throughput of each download. Applies to downloads started afterwards.
+   *
+   * @param maxBytesPerSecond The maximum throughput, in bytes per second, or {@link
+   *     ThroughputLimiter#UNLIMITED}.
+   */
+  public void setMaxBytesPerSecondPerDownload(long maxBytesPerSecond) {
+    maxBytesPerSecondPerDownload = maxBytesPerSecond;
+  }
+
+  @Override
+  public Downloader createDownloader(DownloadRequest request) {
+    long maxBytesPerSecond = maxBytesPerSecondPerDownload;
+    DataSource.Factory downloadUpstreamFactory =
+        maxBytesPerSecond == ThroughputLimiter.UNLIMITED
+            ? upstreamFactory
+            : new ThrottledDataSource.Factory(
+                upstreamFactory, new ThroughputLimiter(maxBytesPerSecond));
+    DownloaderConstructorHelper constructorHelper =
+        new DownloaderConstructorHelper(cache, downloadUpstreamFactory);
+    if (DownloadRequest.TYPE_DASH.equals(request.type)) {
+      return new ParallelDashDownloader(
+          request.uri, request.streamKeys, constructorHelper, workerExecutor, maxSegmentsInFlight);
+    }
+    return new DefaultDownloaderFactory(constructorHelper).createDownloader(request);
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "OfflineDownload:" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
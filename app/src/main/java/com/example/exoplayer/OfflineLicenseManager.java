@@ -0,0 +1,293 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.drm.OfflineLicenseHelper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Restores persisted offline licenses into a {@link DefaultDrmSessionManager}, and persists the
+ * offline licenses that playback sessions obtain or that are downloaded for content without one.
+ *
+ * <p>Licenses are keyed by the Widevine PSSH of the content rather than by its URI, so that content
+ * reachable through several URIs shares one license, and content whose keys change gets a new one.
+ *
+ * <p>Content whose license policy does not allow persistence fails to download an offline license.
+ * Such content is remembered for the lifetime of the manager, and keeps using streaming licenses
+ * obtained by the session manager.
+ */
+public final class OfflineLicenseManager {
+
+  /** Downloads offline licenses. */
+  public interface LicenseDownloader {
+
+    /**
+     * Downloads an offline license for the given {@link DrmInitData}.
+     *
+     * @return The key set id of the downloaded license.
+     */
+    byte[] downloadLicense(DrmInitData drmInitData) throws Exception;
+
+    /**
+     * Returns the remaining license duration of the given license in seconds, {@link
+     * Long#MAX_VALUE} if it does not expire, or {@link C#TIME_UNSET} if it is unknown.
+     */
+    long getLicenseDurationRemainingSec(byte[] keySetId) throws Exception;
+
+    /** Releases the given license, so that the license server no longer counts it as in use. */
+    void releaseLicense(byte[] keySetId) throws Exception;
+
+    /** Releases the resources held by the downloader. */
+    void release();
+  }
+
+  private static final String TAG = "OfflineLicenseManager";
+
+  /** How long a license whose duration cannot be queried is kept, in milliseconds. */
+  private static final long UNKNOWN_DURATION_EXPIRY_MS = 24 * 60 * 60 * 1000;
+
+  private final OfflineLicenseStore store;
+  private final LicenseDownloader licenseDownloader;
+  private final ExecutorService executorService;
+  /** The ids of the content whose license could not be persisted. */
+  private final Set<String> unpersistableContentIds;
+
+  /**
+   * @param store The store in which key set ids are persisted.
+   * @param licenseDownloader The {@link LicenseDownloader} used when a license is missing or has
+   *     expired.
+   */
+  public OfflineLicenseManager(OfflineLicenseStore store, LicenseDownloader licenseDownloader) {
+    this.store = store;
+    this.licenseDownloader = licenseDownloader;
+    executorService = Executors.newSingleThreadExecutor();
+    unpersistableContentIds = Collections.synchronizedSet(new HashSet<String>());
+  }
+
+  /** Returns the underlying {@link OfflineLicenseStore}. */
+  public OfflineLicenseStore getStore() {
+    return store;
+  }
+
+  /**
+   * Returns the id under which the license for {@code drmInitData} is persisted, or null if it has
+   * no Widevine PSSH data.
+   */
+  @Nullable
+  public static String getContentId(DrmInitData drmInitData) {
+    for (int i = 0; i < drmInitData.schemeDataCount; i++) {
+      DrmInitData.SchemeData schemeData = drmInitData.get(i);
+      if (schemeData.matches(C.WIDEVINE_UUID) && schemeData.data != null) {
+        return sha256Hex(schemeData.data);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Configures {@code drmSessionManager} to restore the persisted license for {@code drmInitData},
+   * if there is a valid one. Must be called before the session manager acquires any session.
+   *
+   * @return Whether a persisted license will be used.
+   */
+  public boolean restoreLicense(
+      DefaultDrmSessionManager<?> drmSessionManager, DrmInitData drmInitData) {
+    String contentId = getContentId(drmInitData);
+    if (contentId == null) {
+      return false;
+    }
+    byte[] keySetId = store.getKeySetId(contentId, System.currentTimeMillis());
+    if (keySetId == null) {
+      return false;
+    }
+    drmSessionManager.setMode(DefaultDrmSessionManager.MODE_PLAYBACK, keySetId);
+    return true;
+  }
+
+  /**
+   * Returns the key set id of a valid persisted license for {@code drmInitData}, downloading and
+   * persisting a new license if there is none. Blocks until the license is available.
+   *
+   * <p>The lookup does not count towards the store's hit and miss counters, which only count the
+   * lookups made by {@link #restoreLicense}.
+   *
+   * @throws IllegalArgumentException If {@code drmInitData} has no Widevine PSSH data.
+   */
+  public byte[] acquireLicense(DrmInitData drmInitData) throws Exception {
+    String contentId = getContentId(drmInitData);
+    if (contentId == null) {
+      throw new IllegalArgumentException("No Widevine PSSH data");
+    }
+    long nowMs = System.currentTimeMillis();
+    byte[] keySetId = store.peekKeySetId(contentId, nowMs);
+    if (keySetId != null) {
+      return keySetId;
+    }
+    keySetId = licenseDownloader.downloadLicense(drmInitData);
+    long durationRemainingSec = licenseDownloader.getLicenseDurationRemainingSec(keySetId);
+    store.put(contentId, keySetId, getExpiryTimeMs(nowMs, durationRemainingSec));
+    return keySetId;
+  }
+
+  /**
+   * Returns whether a license for {@code drmInitData} may be requested as an offline license, which
+   * is the case unless it has no Widevine PSSH data or its license could not be persisted before.
+   */
+  public boolean canPersistLicense(DrmInitData drmInitData) {
+    String contentId = getContentId(drmInitData);
+    return contentId != null && !unpersistableContentIds.contains(contentId);
+  }
+
+  /**
+   * Persists a license that a session obtained for {@code drmInitData} on a background thread.
+   *
+   * @param drmInitData The DRM init data of the session.
+   * @param keySetId The key set id of the offline license, or null if the license server answered
+   *     with a license that cannot be persisted.
+   * @param durationRemainingSec The remaining license duration in seconds, {@link Long#MAX_VALUE}
+   *     if it does not expire, or {@link C#TIME_UNSET} if it is unknown.
+   */
+  public void persistLicense(
+      DrmInitData drmInitData, @Nullable final byte[] keySetId, final long durationRemainingSec) {
+    final String contentId = getContentId(drmInitData);
+    if (contentId == null) {
+      return;
+    }
+    if (keySetId == null || keySetId.length == 0) {
+      onLicenseNotPersisted(drmInitData);
+      return;
+    }
+    final long nowMs = System.currentTimeMillis();
+    executorService.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            store.put(contentId, keySetId, getExpiryTimeMs(nowMs, durationRemainingSec));
+          }
+        });
+  }
+
+  /**
+   * Records that the license for {@code drmInitData} could not be persisted, so that {@link
+   * #canPersistLicense} returns false for it from then on.
+   */
+  public void onLicenseNotPersisted(DrmInitData drmInitData) {
+    String contentId = getContentId(drmInitData);
+    if (contentId != null && unpersistableContentIds.add(contentId)) {
+      Log.w(TAG, "License policy does not allow persistence");
+    }
+  }
+
+  /**
+   * Removes the persisted license for {@code drmInitData}. Should be called if a restored license is
+   * rejected by the CDM.
+   */
+  public void invalidateLicense(DrmInitData drmInitData) {
+    String contentId = getContentId(drmInitData);
+    if (contentId != null) {
+      store.remove(contentId);
+    }
+  }
+
+  /**
+   * Releases the persisted license with key set id {@code keySetId}, and removes it from the store.
+   * The license is removed from the store even if the license server cannot be reached, since the
+   * content it was downloaded for is going away. Blocks until the license server has answered.
+   */
+  public void releaseLicense(byte[] keySetId) throws Exception {
+    store.removeKeySetId(keySetId);
+    licenseDownloader.releaseLicense(keySetId);
+  }
+
+  /**
+   * Releases the background thread and the {@link LicenseDownloader}, once any pending license has
+   * been persisted.
+   */
+  public void release() {
+    executorService.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            licenseDownloader.release();
+          }
+        });
+    executorService.shutdown();
+  }
+
+  /**
+   * Returns a {@link LicenseDownloader} that downloads Widevine offline licenses using the given
+   * {@link MediaDrmCallback}.
+   */
+  public static LicenseDownloader newWidevineLicenseDownloader(MediaDrmCallback mediaDrmCallback) {
+    final OfflineLicenseHelper<FrameworkMediaCrypto> offlineLicenseHelper =
+        new OfflineLicenseHelper<>(
+            C.WIDEVINE_UUID,
+            FrameworkMediaDrm.DEFAULT_PROVIDER,
+            mediaDrmCallback,
+            /* optionalKeyRequestParameters= */ null);
+    return new LicenseDownloader() {
+      @Override
+      public byte[] downloadLicense(DrmInitData drmInitData) throws Exception {
+        return offlineLicenseHelper.downloadLicense(drmInitData);
+      }
+
+      @Override
+      public long getLicenseDurationRemainingSec(byte[] keySetId) throws Exception {
+        Pair<Long, Long> durationRemainingSec =
+            offlineLicenseHelper.getLicenseDurationRemainingSec(keySetId);
+        return durationRemainingSec != null ? durationRemainingSec.first : C.TIME_UNSET;
+      }
+
+      @Override
+      public void releaseLicense(byte[] keySetId) throws Exception {
+        offlineLicenseHelper.releaseLicense(keySetId);
+      }
+
+      @Override
+      public void release() {
+        offlineLicenseHelper.release();
+      }
+    };
+  }
+
+  private static long getExpiryTimeMs(long nowMs, long durationRemainingSec) {
+    if (durationRemainingSec == Long.MAX_VALUE) {
+      return OfflineLicenseStore.NO_EXPIRY;
+    } else if (durationRemainingSec == C.TIME_UNSET) {
+      return nowMs + UNKNOWN_DURATION_EXPIRY_MS;
+    } else {
+      return nowMs + durationRemainingSec * 1000;
+    }
+  }
+
+  private static String sha256Hex(byte[] data) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest(data)) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
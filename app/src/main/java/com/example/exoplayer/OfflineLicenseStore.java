@@ -0,0 +1,234 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Persists offline license key set ids, keyed by content id, so that a channel that has already
+ * been licensed can be restored without a license round-trip.
+ *
+ * <p>Entries are written to a single file. Expired entries are dropped on lookup.
+ */
+public final class OfflineLicenseStore {
+
+  /** Expiry time used for licenses that do not expire. */
+  public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+  /** Version 1 stores were keyed by manifest URI, and are discarded on read. */
+  private static final int VERSION = 2;
+
+  private final File file;
+  private final Map<String, Entry> entries;
+
+  private int hitCount;
+  private int missCount;
+  private int expiredCount;
+
+  /**
+   * @param file The file in which entries are persisted. Existing entries are loaded from it if it
+   *     exists.
+   */
+  public OfflineLicenseStore(File file) {
+    this.file = file;
+    this.entries = new HashMap<>();
+    readEntries();
+  }
+
+  /**
+   * Returns the key set id stored for {@code contentId}, or null if there is none or it has
+   * expired. Updates the hit and miss counters.
+   *
+   * @param contentId The content id.
+   * @param nowMs The current wall clock time, in milliseconds.
+   */
+  @Nullable
+  public synchronized byte[] getKeySetId(String contentId, long nowMs) {
+    byte[] keySetId = peekKeySetId(contentId, nowMs);
+    if (keySetId == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return keySetId;
+  }
+
+  /**
+   * Returns the key set id stored for {@code contentId}, or null if there is none or it has
+   * expired. Does not update the hit and miss counters.
+   *
+   * @param contentId The content id.
+   * @param nowMs The current wall clock time, in milliseconds.
+   */
+  @Nullable
+  public synchronized byte[] peekKeySetId(String contentId, long nowMs) {
+    Entry entry = entries.get(contentId);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiryTimeMs <= nowMs) {
+      entries.remove(contentId);
+      writeEntries();
+      expiredCount++;
+      return null;
+    }
+    return entry.keySetId;
+  }
+
+  /**
+   * Stores a key set id for {@code contentId}, replacing any existing entry.
+   *
+   * @param contentId The content id.
+   * @param keySetId The offline license key set id.
+   * @param expiryTimeMs The wall clock time at which the license expires, in milliseconds, or
+   *     {@link #NO_EXPIRY}.
+   */
+  public synchronized void put(String contentId, byte[] keySetId, long expiryTimeMs) {
+    entries.put(contentId, new Entry(keySetId, expiryTimeMs));
+    writeEntries();
+  }
+
+  /** Removes the entry for {@code contentId}, if any. */
+  public synchronized void remove(String contentId) {
+    if (entries.remove(contentId) != null) {
+      writeEntries();
+    }
+  }
+
+  /** Removes all entries whose key set id is {@code keySetId}. */
+  public synchronized void removeKeySetId(byte[] keySetId) {
+    boolean changed = false;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (Arrays.equals(iterator.next().keySetId, keySetId)) {
+        iterator.remove();
+        changed = true;
+      }
+    }
+    if (changed) {
+      writeEntries();
+    }
+  }
+
+  /** Removes all entries that have expired at {@code nowMs}. */
+  public synchronized void removeExpired(long nowMs) {
+    boolean changed = false;
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().expiryTimeMs <= nowMs) {
+        iterator.remove();
+        expiredCount++;
+        changed = true;
+      }
+    }
+    if (changed) {
+      writeEntries();
+    }
+  }
+
+  /** Returns the number of stored entries, including any that have expired but not been read. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Returns the number of lookups that returned a valid key set id. */
+  public synchronized int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that found no entry, or an expired one. */
+  public synchronized int getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of entries dropped because they had expired. */
+  public synchronized int getExpiredCount() {
+    return expiredCount;
+  }
+
+  private void readEntries() {
+    if (!file.exists()) {
+      return;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != VERSION) {
+        return;
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        String contentId = input.readUTF();
+        byte[] keySetId = new byte[input.readInt()];
+        input.readFully(keySetId);
+        long expiryTimeMs = input.readLong();
+        entries.put(contentId, new Entry(keySetId, expiryTimeMs));
+      }
+    } catch (IOException e) {
+      // A corrupt store only costs a license round-trip, so start again from empty.
+      entries.clear();
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  private void writeEntries() {
+    File tempFile = new File(file.getPath() + ".tmp");
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(VERSION);
+      output.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeInt(entry.getValue().keySetId.length);
+        output.write(entry.getValue().keySetId);
+        output.writeLong(entry.getValue().expiryTimeMs);
+      }
+      output.close();
+      output = null;
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        tempFile.renameTo(file);
+      }
+    } catch (IOException e) {
+      // Entries remain valid in memory for this process.
+      tempFile.delete();
+    } finally {
+      closeQuietly(output);
+    }
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private static final class Entry {
+
+    public final byte[] keySetId;
+    public final long expiryTimeMs;
+
+    public Entry(byte[] keySetId, long expiryTimeMs) {
+      this.keySetId = keySetId;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+}
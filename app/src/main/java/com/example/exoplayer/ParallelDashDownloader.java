@@ -0,0 +1,358 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+import android.util.Pair;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.offline.DownloadException;
+import com.google.android.exoplayer2.offline.Downloader;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.source.dash.DashSegmentIndex;
+import com.google.android.exoplayer2.source.dash.DashUtil;
+import com.google.android.exoplayer2.source.dash.DashWrappingSegmentIndex;
+import com.google.android.exoplayer2.source.dash.manifest.AdaptationSet;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.source.dash.manifest.Period;
+import com.google.android.exoplayer2.source.dash.manifest.RangedUri;
+import com.google.android.exoplayer2.source.dash.manifest.Representation;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Downloader} for DASH content that downloads segments in parallel on a shared worker
+ * pool, rather than one after the other.
+ *
+ * <p>Each download keeps at most a fixed number of segments in flight, so that parallel downloads
+ * interleave on the pool instead of the first one occupying it. Segments that are already fully
+ * cached are skipped and partially cached segments are resumed, so a download interrupted by a
+ * process kill continues where it stopped.
+ */
+public final class ParallelDashDownloader implements Downloader {
+
+  private static final int BUFFER_SIZE_BYTES = 128 * 1024;
+
+  /** Buffers of the worker threads, reused across segments and downloads. */
+  private static final ThreadLocal<byte[]> buffers =
+      new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+          return new byte[BUFFER_SIZE_BYTES];
+        }
+      };
+
+  private final DataSpec manifestDataSpec;
+  private final List<StreamKey> streamKeys;
+  private final DownloaderConstructorHelper constructorHelper;
+  private final Cache cache;
+  @Nullable private final CacheKeyFactory cacheKeyFactory;
+  private final PriorityTaskManager priorityTaskManager;
+  private final ExecutorService workerExecutor;
+  private final int maxSegmentsInFlight;
+  private final AtomicBoolean isCanceled;
+
+  /**
+   * @param manifestUri The URI of the manifest.
+   * @param streamKeys The keys of the representations to download, or an empty list to download
+   *     all of them.
+   * @param constructorHelper The {@link DownloaderConstructorHelper} providing the cache and the
+   *     data sources.
+   * @param workerExecutor The worker pool on which segments are downloaded.
+   * @param maxSegmentsInFlight The maximum number of segments downloaded at once.
+   */
+  public ParallelDashDownloader(
+      Uri manifestUri,
+      List<StreamKey> streamKeys,
+      DownloaderConstructorHelper constructorHelper,
+      ExecutorService workerExecutor,
+      int maxSegmentsInFlight) {
+    this.manifestDataSpec =
+        new DataSpec(
+            manifestUri,
+            /* absoluteStreamPosition= */ 0,
+            C.LENGTH_UNSET,
+            /* key= */ null,
+            DataSpec.FLAG_ALLOW_GZIP);
+    this.streamKeys = new ArrayList<>(streamKeys);
+    this.constructorHelper = constructorHelper;
+    this.workerExecutor = workerExecutor;
+    this.maxSegmentsInFlight = maxSegmentsInFlight;
+    cache = constructorHelper.getCache();
+    cacheKeyFactory = constructorHelper.getCacheKeyFactory();
+    priorityTaskManager = constructorHelper.getPriorityTaskManager();
+    isCanceled = new AtomicBoolean();
+  }
+
+  @Override
+  public void download(@Nullable ProgressListener progressListener)
+      throws InterruptedException, IOException {
+    priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+    try {
+      DataSource dataSource = constructorHelper.createCacheDataSource();
+      DashManifest manifest = loadManifest(dataSource);
+      List<DataSpec> segments = getSegments(dataSource, manifest, /* allowIncompleteList= */ false);
+
+      // Skip the segments that are fully downloaded.
+      int totalSegments = segments.size();
+      int segmentsDownloaded = 0;
+      long contentLength = 0;
+      long bytesDownloaded = 0;
+      List<DataSpec> remainingSegments = new ArrayList<>();
+      for (DataSpec segment : segments) {
+        Pair<Long, Long> lengthAndBytesCached =
+            CacheUtil.getCached(segment, cache, cacheKeyFactory);
+        long segmentLength = lengthAndBytesCached.first;
+        long segmentBytesCached = lengthAndBytesCached.second;
+        bytesDownloaded += segmentBytesCached;
+        if (segmentLength != C.LENGTH_UNSET) {
+          if (segmentLength == segmentBytesCached) {
+            segmentsDownloaded++;
+          } else {
+            remainingSegments.add(segment);
+          }
+          if (contentLength != C.LENGTH_UNSET) {
+            contentLength += segmentLength;
+          }
+        } else {
+          contentLength = C.LENGTH_UNSET;
+          remainingSegments.add(segment);
+        }
+      }
+
+      ProgressNotifier progressNotifier =
+          progressListener != null
+              ? new ProgressNotifier(
+                  progressListener,
+                  contentLength,
+                  totalSegments,
+                  bytesDownloaded,
+                  segmentsDownloaded)
+              : null;
+      downloadSegments(remainingSegments, progressNotifier);
+    } finally {
+      priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+    }
+  }
+
+  @Override
+  public void cancel() {
+    isCanceled.set(true);
+  }
+
+  @Override
+  public void remove() throws InterruptedException {
+    DataSource dataSource = constructorHelper.createOfflineCacheDataSource();
+    try {
+      DashManifest manifest = loadManifest(dataSource);
+      for (DataSpec segment : getSegments(dataSource, manifest, /* allowIncompleteList= */ true)) {
+        CacheUtil.remove(segment, cache, cacheKeyFactory);
+      }
+    } catch (IOException e) {
+      // Ignore exceptions when removing.
+    } finally {
+      CacheUtil.remove(manifestDataSpec, cache, cacheKeyFactory);
+    }
+  }
+
+  /**
+   * Downloads {@code segments} on the worker pool, keeping at most {@link #maxSegmentsInFlight} of
+   * them in flight, and cancels the others as soon as one fails.
+   */
+  private void downloadSegments(
+      List<DataSpec> segments, @Nullable ProgressNotifier progressNotifier)
+      throws InterruptedException, IOException {
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(workerExecutor);
+    List<Future<Void>> inFlight = new ArrayList<>();
+    int nextSegmentIndex = 0;
+    try {
+      while (nextSegmentIndex < segments.size() || !inFlight.isEmpty()) {
+        while (nextSegmentIndex < segments.size() && inFlight.size() < maxSegmentsInFlight) {
+          inFlight.add(
+              completionService.submit(
+                  newSegmentTask(segments.get(nextSegmentIndex++), progressNotifier)));
+        }
+        Future<Void> completed = completionService.take();
+        inFlight.remove(completed);
+        try {
+          completed.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+    } finally {
+      for (Future<Void> future : inFlight) {
+        future.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+  }
+
+  private Callable<Void> newSegmentTask(
+      final DataSpec segment, @Nullable final ProgressNotifier progressNotifier) {
+    return new Callable<Void>() {
+      @Override
+      public Void call() throws IOException, InterruptedException {
+        // Cache data sources are not thread safe, so each segment gets its own.
+        CacheDataSource dataSource = constructorHelper.createCacheDataSource();
+        CacheUtil.cache(
+            segment,
+            cache,
+            cacheKeyFactory,
+            dataSource,
+            buffers.get(),
+            priorityTaskManager,
+            C.PRIORITY_DOWNLOAD,
+            progressNotifier,
+            isCanceled,
+            /* enableEOFException= */ true);
+        if (progressNotifier != null) {
+          progressNotifier.onSegmentDownloaded();
+        }
+        return null;
+      }
+    };
+  }
+
+  private DashManifest loadManifest(DataSource dataSource) throws IOException {
+    DashManifest manifest =
+        ParsingLoadable.load(
+            dataSource, new DashManifestParser(), manifestDataSpec, C.DATA_TYPE_MANIFEST);
+    return streamKeys.isEmpty() ? manifest : manifest.copy(streamKeys);
+  }
+
+  private static List<DataSpec> getSegments(
+      DataSource dataSource, DashManifest manifest, boolean allowIncompleteList)
+      throws InterruptedException, IOException {
+    List<DataSpec> segments = new ArrayList<>();
+    for (int i = 0; i < manifest.getPeriodCount(); i++) {
+      Period period = manifest.getPeriod(i);
+      long periodStartUs = C.msToUs(period.startMs);
+      long periodDurationUs = manifest.getPeriodDurationUs(i);
+      for (AdaptationSet adaptationSet : period.adaptationSets) {
+        for (Representation representation : adaptationSet.representations) {
+          DashSegmentIndex index;
+          try {
+            index = getSegmentIndex(dataSource, adaptationSet.type, representation);
+            if (index == null) {
+              throw new DownloadException("Missing segment index");
+            }
+          } catch (IOException e) {
+            if (!allowIncompleteList) {
+              throw e;
+            }
+            continue;
+          }
+          int segmentCount = index.getSegmentCount(periodDurationUs);
+          if (segmentCount == DashSegmentIndex.INDEX_UNBOUNDED) {
+            throw new DownloadException("Unbounded segment index");
+          }
+          String baseUrl = representation.baseUrl;
+          addSegment(baseUrl, representation.getInitializationUri(), segments);
+          addSegment(baseUrl, representation.getIndexUri(), segments);
+          long firstSegmentNum = index.getFirstSegmentNum();
+          long lastSegmentNum = firstSegmentNum + segmentCount - 1;
+          for (long j = firstSegmentNum; j <= lastSegmentNum; j++) {
+            addSegment(baseUrl, index.getSegmentUrl(j), segments);
+          }
+        }
+      }
+    }
+    return segments;
+  }
+
+  private static void addSegment(
+      String baseUrl, @Nullable RangedUri rangedUri, List<DataSpec> segments) {
+    if (rangedUri != null) {
+      segments.add(
+          new DataSpec(
+              rangedUri.resolveUri(baseUrl), rangedUri.start, rangedUri.length, /* key= */ null));
+    }
+  }
+
+  @Nullable
+  private static DashSegmentIndex getSegmentIndex(
+      DataSource dataSource, int trackType, Representation representation)
+      throws IOException, InterruptedException {
+    DashSegmentIndex index = representation.getIndex();
+    if (index != null) {
+      return index;
+    }
+    ChunkIndex chunkIndex = DashUtil.loadChunkIndex(dataSource, trackType, representation);
+    return chunkIndex == null
+        ? null
+        : new DashWrappingSegmentIndex(chunkIndex, representation.presentationTimeOffsetUs);
+  }
+
+  /** Aggregates the progress of the segments downloaded in parallel. */
+  private static final class ProgressNotifier implements CacheUtil.ProgressListener {
+
+    private final ProgressListener progressListener;
+    private final long contentLength;
+    private final int totalSegments;
+
+    private long bytesDownloaded;
+    private int segmentsDownloaded;
+
+    public ProgressNotifier(
+        ProgressListener progressListener,
+        long contentLength,
+        int totalSegments,
+        long bytesDownloaded,
+        int segmentsDownloaded) {
+      this.progressListener = progressListener;
+      this.contentLength = contentLength;
+      this.totalSegments = totalSegments;
+      this.bytesDownloaded = bytesDownloaded;
+      this.segmentsDownloaded = segmentsDownloaded;
+    }
+
+    @Override
+    public synchronized void onProgress(long requestLength, long bytesCached, long newBytesCached) {
+      bytesDownloaded += newBytesCached;
+      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+    }
+
+    public synchronized void onSegmentDownloaded() {
+      segmentsDownloaded++;
+      progressListener.onProgress(contentLength, bytesDownloaded, getPercentDownloaded());
+    }
+
+    private float getPercentDownloaded() {
+      if (contentLength != C.LENGTH_UNSET && contentLength != 0) {
+        return (bytesDownloaded * 100f) / contentLength;
+      } else if (totalSegments != 0) {
+        return (segmentsDownloaded * 100f) / totalSegments;
+      } else {
+        return C.PERCENTAGE_UNSET;
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.TelephonyManager;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link BandwidthMeter} whose initial estimate for each network type is the estimate last
+ * measured on that network, as persisted in a {@link BandwidthEstimateStore}, so that the first
+ * track selection of a session matches the network instead of a default guess.
+ *
+ * <p>Cellular networks are keyed by network type and operator, and other networks by type only.
+ * Measurements are blended into the store as they are made, and written in the background by
+ * {@link #persist()}.
+ * Must be created on a thread with a {@link Looper}.
+ */
+public final class PersistedBandwidthMeter implements BandwidthMeter {
+
+  private static final int[] SEEDED_NETWORK_TYPES = {
+    C.NETWORK_TYPE_WIFI,
+    C.NETWORK_TYPE_ETHERNET,
+    C.NETWORK_TYPE_2G,
+    C.NETWORK_TYPE_3G,
+    C.NETWORK_TYPE_4G
+  };
+
+  private final Context context;
+  private final BandwidthEstimateStore store;
+  private final DefaultBandwidthMeter delegate;
+  @Nullable private final String operator;
+
+  /**
+   * @param context A context.
+   * @param store The {@link BandwidthEstimateStore} from which initial estimates are read, and
+   *     into which measurements are blended.
+   */
+  public PersistedBandwidthMeter(Context context, BandwidthEstimateStore store) {
+    this.context = context.getApplicationContext();
+    this.store = store;
+    operator = getOperator(this.context);
+    long nowMs = System.currentTimeMillis();
+    DefaultBandwidthMeter.Builder builder = new DefaultBandwidthMeter.Builder(this.context);
+    for (int networkType : SEEDED_NETWORK_TYPES) {
+      String networkKey = getNetworkKey(networkType, operator);
+      if (store.hasEstimate(networkKey, nowMs)) {
+        long estimate =
+            store.getEstimate(
+                networkKey, nowMs, DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE);
+        builder.setInitialBitrateEstimate(networkType, estimate);
+      }
+    }
+    // Reset to the seeded estimate of the new network when the network type changes.
+    delegate = builder.setResetOnNetworkTypeChange(true).build();
+    delegate.addEventListener(
+        new Handler(),
+        new EventListener() {
+          @Override
+          public void onBandwidthSample(int elapsedMs, long bytesTransferred, long bitrate) {
+            onSample(bitrate);
+          }
+        });
+  }
+
+  /**
+   * Writes the measurements blended into the store since it was last written, on a background
+   * thread.
+   */
+  public void persist() {
+    store.writeAsync();
+  }
+
+  @Override
+  public long getBitrateEstimate() {
+    return delegate.getBitrateEstimate();
+  }
+
+  @Override
+  @Nullable
+  public TransferListener getTransferListener() {
+    return delegate.getTransferListener();
+  }
+
+  @Override
+  public void addEventListener(Handler eventHandler, EventListener eventListener) {
+    delegate.addEventListener(eventHandler, eventListener);
+  }
+
+  @Override
+  public void removeEventListener(EventListener eventListener) {
+    delegate.removeEventListener(eventListener);
+  }
+
+  private void onSample(long bitrate) {
+    int networkType = Util.getNetworkType(context);
+    if (networkType == C.NETWORK_TYPE_OFFLINE || networkType == C.NETWORK_TYPE_UNKNOWN) {
+      return;
+    }
+    store.addSample(getNetworkKey(networkType, operator), bitrate, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns the key of a network in the store.
+   *
+   * @param networkType The {@code C.NETWORK_TYPE_*} of the network.
+   * @param operator The MCC+MNC of the cellular operator, or null if unknown.
+   */
+  /* package */ static String getNetworkKey(int networkType, @Nullable String operator) {
+    switch (networkType) {
+      case C.NETWORK_TYPE_WIFI:
+        return "wifi";
+      case C.NETWORK_TYPE_ETHERNET:
+        return "ethernet";
+      case C.NETWORK_TYPE_2G:
+      case C.NETWORK_TYPE_3G:
+      case C.NETWORK_TYPE_4G:
+      case C.NETWORK_TYPE_CELLULAR_UNKNOWN:
+        return "cellular" + networkType + ":" + (operator != null ? operator : "unknown");
+      default:
+        return "other" + networkType;
+    }
+  }
+
+  @Nullable
+  private static String getOperator(Context context) {
+    TelephonyManager telephonyManager =
+        (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+    if (telephonyManager == null) {
+      return null;
+    }
+    String operator = telephonyManager.getNetworkOperator();
+    return operator == null || operator.isEmpty() ? null : operator;
+  }
+}
@@ -0,0 +1,292 @@
+package com.example.exoplayer;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.StatFs;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-through disk cache for media segments loaded during playback, so that rewinds, replays and
+ * re-opened titles are served from disk instead of the CDN.
+ *
+ * <p>VOD and live segments are kept in separate {@link SimpleCache} instances, each bounded by a
+ * {@link LeastRecentlyUsedCacheEvictor}, so that live segments, which are rarely read twice, cannot
+ * evict VOD segments. The budgets are chosen from the storage class of the device by {@link
+ * #newForDevice(Context, File, DatabaseProvider, CacheKeyFactory)}. Entries are keyed by a {@link
+ * CacheKeyFactory}, such as a {@link CdnCacheKeyFactory} that ignores per-session CDN tokens.
+ *
+ * <p>Manifests must not be loaded through this cache, since live manifests change between loads.
+ */
+public final class PlaybackCache {
+
+  /** Routes segment loads to the VOD or the live cache. */
+  public static final class DataSourceFactory implements DataSource.Factory {
+
+    private final DataSource.Factory vodFactory;
+    private final DataSource.Factory liveFactory;
+
+    private volatile boolean live;
+
+    private DataSourceFactory(DataSource.Factory vodFactory, DataSource.Factory liveFactory) {
+      this.vodFactory = vodFactory;
+      this.liveFactory = liveFactory;
+    }
+
+    /**
+     * Sets whether the content being played is live. Loads opened after this call go to the
+     * corresponding cache. May be called from any thread.
+     */
+    public void setLive(boolean live) {
+      this.live = live;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new RoutingDataSource(
+          this, vodFactory.createDataSource(), liveFactory.createDataSource());
+    }
+  }
+
+  private static final String VOD_DIRECTORY = "vod";
+  private static final String LIVE_DIRECTORY = "live";
+
+  private static final long MB = 1024 * 1024;
+  private static final long GB = 1024 * MB;
+  /** The largest fraction of the free space on the cache volume that the caches may use. */
+  private static final int MAX_AVAILABLE_SPACE_DIVISOR = 10;
+
+  private final SimpleCache vodCache;
+  private final SimpleCache liveCache;
+  private final PlaybackCacheMetrics vodMetrics;
+  private final PlaybackCacheMetrics liveMetrics;
+  private final CacheKeyFactory cacheKeyFactory;
+
+  /**
+   * @param directory The directory in which the caches are stored. It must not be used by any other
+   *     cache.
+   * @param databaseProvider Provides the database in which the cache index is stored.
+   * @param vodBudgetBytes The maximum size of the VOD segment cache.
+   * @param liveBudgetBytes The maximum size of the live segment cache.
+   * @param cacheKeyFactory Derives the cache keys of segments.
+   */
+  public PlaybackCache(
+      File directory,
+      DatabaseProvider databaseProvider,
+      long vodBudgetBytes,
+      long liveBudgetBytes,
+      CacheKeyFactory cacheKeyFactory) {
+    vodCache =
+        new SimpleCache(
+            new File(directory, VOD_DIRECTORY),
+            new LeastRecentlyUsedCacheEvictor(vodBudgetBytes),
+            databaseProvider);
+    liveCache =
+        new SimpleCache(
+            new File(directory, LIVE_DIRECTORY),
+            new LeastRecentlyUsedCacheEvictor(liveBudgetBytes),
+            databaseProvider);
+    vodMetrics = new PlaybackCacheMetrics();
+    liveMetrics = new PlaybackCacheMetrics();
+    this.cacheKeyFactory = cacheKeyFactory;
+  }
+
+  /**
+   * Returns a cache whose budgets suit the device: larger on devices with more storage, smaller on
+   * low-RAM devices, and never more than a tenth of the free space on the cache volume.
+   */
+  public static PlaybackCache newForDevice(
+      Context context,
+      File directory,
+      DatabaseProvider databaseProvider,
+      CacheKeyFactory cacheKeyFactory) {
+    directory.mkdirs();
+    long totalBytes = getTotalBytes(directory);
+    ActivityManager activityManager =
+        (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    boolean lowRamDevice =
+        Util.SDK_INT >= 19 && activityManager != null && activityManager.isLowRamDevice();
+
+    long vodBudgetBytes;
+    long liveBudgetBytes;
+    if (lowRamDevice || totalBytes < 16 * GB) {
+      vodBudgetBytes = 64 * MB;
+      liveBudgetBytes = 16 * MB;
+    } else if (totalBytes < 64 * GB) {
+      vodBudgetBytes = 256 * MB;
+      liveBudgetBytes = 48 * MB;
+    } else {
+      vodBudgetBytes = 512 * MB;
+      liveBudgetBytes = 96 * MB;
+    }
+    long maxBytes = directory.getUsableSpace() / MAX_AVAILABLE_SPACE_DIVISOR;
+    if (vodBudgetBytes + liveBudgetBytes > maxBytes) {
+      vodBudgetBytes = maxBytes * 4 / 5;
+      liveBudgetBytes = maxBytes - vodBudgetBytes;
+    }
+    return new PlaybackCache(
+        directory, databaseProvider, vodBudgetBytes, liveBudgetBytes, cacheKeyFactory);
+  }
+
+  /**
+   * Returns a factory for segment data sources that write through to this cache.
+   *
+   * @param context A context.
+   * @param baseFactory The factory for network data sources.
+   * @param readOnlyCache A cache that is read before this one, such as the download cache, or null.
+   */
+  public DataSourceFactory buildDataSourceFactory(
+      Context context, DataSource.Factory baseFactory, @Nullable Cache readOnlyCache) {
+    return new DataSourceFactory(
+        buildCacheDataSourceFactory(context, baseFactory, vodCache, vodMetrics, readOnlyCache),
+        buildCacheDataSourceFactory(context, baseFactory, liveCache, liveMetrics, readOnlyCache));
+  }
+
+  /**
+   * Returns a factory for data sources that read from {@code cache} and fall back to {@code
+   * upstreamFactory}, without writing to the cache.
+   */
+  public static CacheDataSourceFactory buildReadOnlyCacheDataSource(
+      DataSource.Factory upstreamFactory, Cache cache) {
+    return new CacheDataSourceFactory(
+        cache,
+        upstreamFactory,
+        new FileDataSource.Factory(),
+        /* cacheWriteDataSinkFactory= */ null,
+        CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+        /* eventListener= */ null);
+  }
+
+  /** Returns the metrics of the VOD segment cache. */
+  public PlaybackCacheMetrics getVodMetrics() {
+    return vodMetrics;
+  }
+
+  /** Returns the metrics of the live segment cache. */
+  public PlaybackCacheMetrics getLiveMetrics() {
+    return liveMetrics;
+  }
+
+  /** Releases the caches. The instance must not be used afterwards. */
+  public void release() {
+    vodCache.release();
+    liveCache.release();
+  }
+
+  private DataSource.Factory buildCacheDataSourceFactory(
+      Context context,
+      DataSource.Factory baseFactory,
+      Cache cache,
+      PlaybackCacheMetrics metrics,
+      @Nullable Cache readOnlyCache) {
+    DataSource.Factory factory =
+        new CacheDataSourceFactory(
+            cache,
+            new DefaultDataSourceFactory(context, metrics, baseFactory),
+            new FileDataSource.Factory(),
+            new CacheDataSinkFactory(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE),
+            CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+            metrics,
+            cacheKeyFactory);
+    if (readOnlyCache != null) {
+      factory = buildReadOnlyCacheDataSource(factory, readOnlyCache);
+    }
+    return factory;
+  }
+
+  @SuppressWarnings("deprecation")
+  private static long getTotalBytes(File directory) {
+    StatFs statFs = new StatFs(directory.getPath());
+    return Util.SDK_INT >= 18
+        ? statFs.getTotalBytes()
+        : (long) statFs.getBlockCount() * statFs.getBlockSize();
+  }
+
+  /** Opens each load on the VOD or the live cache, depending on the state of its factory. */
+  private static final class RoutingDataSource implements DataSource {
+
+    private final DataSourceFactory factory;
+    private final DataSource vodDataSource;
+    private final DataSource liveDataSource;
+
+    @Nullable private DataSource openedDataSource;
+
+    private RoutingDataSource(
+        DataSourceFactory factory, DataSource vodDataSource, DataSource liveDataSource) {
+      this.factory = factory;
+      this.vodDataSource = vodDataSource;
+      this.liveDataSource = liveDataSource;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      vodDataSource.addTransferListener(transferListener);
+      liveDataSource.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openedDataSource = factory.live ? liveDataSource : vodDataSource;
+      return openedDataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+      return getOpenedDataSource().read(buffer, offset, readLength);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return openedDataSource == null ? null : openedDataSource.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return openedDataSource == null
+          ? Collections.<String, List<String>>emptyMap()
+          : openedDataSource.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (openedDataSource != null) {
+        try {
+          openedDataSource.close();
+        } finally {
+          openedDataSource = null;
+        }
+      }
+    }
+
+    private DataSource getOpenedDataSource() {
+      if (openedDataSource == null) {
+        throw new IllegalStateException();
+      }
+      return openedDataSource;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+
+/**
+ * Counts the bytes a playback cache serves from disk and the bytes it fetches from the network,
+ * from which the cache hit ratio is derived.
+ *
+ * <p>Register an instance as the {@link CacheDataSource.EventListener} of the cache data sources
+ * and as the {@link TransferListener} of their upstream data sources.
+ */
+public final class PlaybackCacheMetrics implements CacheDataSource.EventListener, TransferListener {
+
+  private long bytesReadFromCache;
+  private long bytesReadFromNetwork;
+  private long cacheSizeBytes;
+  private int cacheIgnoredCount;
+
+  @Override
+  public synchronized void onCachedBytesRead(long cacheSizeBytes, long cachedBytesRead) {
+    this.cacheSizeBytes = cacheSizeBytes;
+    bytesReadFromCache += cachedBytesRead;
+  }
+
+  @Override
+  public synchronized void onCacheIgnored(int reason) {
+    cacheIgnoredCount++;
+  }
+
+  @Override
+  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    // Do nothing.
+  }
+
+  @Override
+  public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    // Do nothing.
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    if (isNetwork) {
+      bytesReadFromNetwork += bytesTransferred;
+    }
+  }
+
+  @Override
+  public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    // Do nothing.
+  }
+
+  /** Returns the number of bytes served from the cache. */
+  public synchronized long getBytesReadFromCache() {
+    return bytesReadFromCache;
+  }
+
+  /** Returns the number of bytes fetched from the network. */
+  public synchronized long getBytesReadFromNetwork() {
+    return bytesReadFromNetwork;
+  }
+
+  /**
+   * Returns the size of the cache when bytes were last served from it, or 0 if none have been
+   * served yet.
+   */
+  public synchronized long getCacheSizeBytes() {
+    return cacheSizeBytes;
+  }
+
+  /** Returns the number of requests for which the cache was bypassed, for example after an error. */
+  public synchronized int getCacheIgnoredCount() {
+    return cacheIgnoredCount;
+  }
+
+  /**
+   * Returns the fraction of bytes served from the cache, between 0 and 1, or 0 if no bytes have
+   * been read.
+   */
+  public synchronized float getHitRatio() {
+    long totalBytes = bytesReadFromCache + bytesReadFromNetwork;
+    return totalBytes == 0 ? 0 : (float) bytesReadFromCache / totalBytes;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "cache="
+        + bytesReadFromCache
+        + "B, network="
+        + bytesReadFromNetwork
+        + "B, hitRatio="
+        + getHitRatio()
+        + ", ignored="
+        + cacheIgnoredCount;
+  }
+}
@@ -7,56 +7,140 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Pair;
+import android.view.KeyEvent;
 import android.widget.Toast;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.PlaybackPreparer;
-import com.google.android.exoplayer2.RenderersFactory;
 import com.google.android.exoplayer2.SimpleExoPlayer;
-import com.google.android.exoplayer2.audio.AudioAttributes;
-import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
-import com.google.android.exoplayer2.drm.DrmSessionManager;
-import com.google.android.exoplayer2.drm.ExoMediaCrypto;
-import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
-import com.google.android.exoplayer2.drm.MediaDrmCallback;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecUtil;
-import com.google.android.exoplayer2.source.MediaSource;
-import com.google.android.exoplayer2.source.ProgressiveMediaSource;
-import com.google.android.exoplayer2.source.dash.DashMediaSource;
-import com.google.android.exoplayer2.source.hls.HlsMediaSource;
-import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
-import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
-import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.offline.Download;
 import com.google.android.exoplayer2.ui.PlayerControlView;
 import com.google.android.exoplayer2.ui.PlayerView;
-import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.util.ErrorMessageProvider;
 import com.google.android.exoplayer2.util.Util;
 
-import java.util.UUID;
+import java.util.Arrays;
+import java.util.List;
 
 public class PlayerActivity extends AppCompatActivity implements PlaybackPreparer, PlayerControlView.VisibilityListener {
 
+    /** Intent extra that enables low-latency playback of live channels. */
+    public static final String EXTRA_LOW_LATENCY_LIVE = "low_latency_live";
+    /** Intent extra with the target offset behind the live edge, in milliseconds. */
+    public static final String EXTRA_TARGET_LIVE_OFFSET_MS = "target_live_offset_ms";
+    /**
+     * Intent extra with the manifest URIs of the channels, replacing the built-in channel list.
+     * Only read in debug builds, since any app can start this activity.
+     */
+    public static final String EXTRA_CHANNEL_URIS = "channel_uris";
+    /**
+     * Intent extra with the URL of the license server, replacing the built-in one. Only read in
+     * debug builds, since any app can start this activity.
+     */
+    public static final String EXTRA_LICENSE_URL = "license_url";
+
+    // Saved instance state keys.
+    private static final String KEY_URI = "uri";
+    private static final String KEY_WINDOW = "window";
+    private static final String KEY_POSITION = "position";
+
     private PlayerView playerView;
     private SimpleExoPlayer player;
 
-    private MediaSource mediaSource;
-    private DataSource.Factory dataSourceFactory;
+    private ZappingEngine zappingEngine;
+    // Owned by the zapping engine's session, which may outlive this activity in the PlayerHolder.
+    private ChannelPlayerFactory playerFactory;
+    private ChannelList channelList;
+    private QoeAnalyticsListener qoeListener;
+    private DownloadTracker downloadTracker;
+
+    private Uri uri;
+    private String drmLicenseUrl;
+    private boolean lowLatencyLive;
+    private long targetLiveOffsetMs;
+
+    private int startWindow;
+    private long startPosition;
+
+    /** Whether the player is waiting for warm-up to complete before it is initialized. */
+    private boolean playerRequested;
+
+    private final Runnable initializePlayerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (playerRequested) {
+                playerRequested = false;
+                initializePlayer();
+            }
+        }
+    };
+
+    private final ZappingEngine.Listener channelListener = new ZappingEngine.Listener() {
+        @Override
+        public void onChannelChanged(Channel channel, SimpleExoPlayer newPlayer) {
+            player = newPlayer;
+            uri = channel.uri;
+            playerView.setPlayer(player);
+            playerView.setPlaybackPreparer(PlayerActivity.this);
+            qoeListener.attach(player, channel.id);
+            LowLatencyLivePlayback lowLatencyLivePlayback =
+                    playerFactory.getLowLatencyLivePlayback();
+            if (lowLatencyLivePlayback != null) {
+                lowLatencyLivePlayback.attach(player);
+            }
+        }
+    };
+
+    private final DownloadTracker.Listener downloadListener = new DownloadTracker.Listener() {
+        @Override
+        public void onDownloadsChanged() {}
 
-    private Uri uri = Uri.parse("http://123.30.235.196:5635/live_pro/vtv1.stream/manifest.mpd");
-    private String drmLicenseUrl = "https://license.sigmadrm.com/license/verify/widevine";
-    private UUID drmScheme = Util.getDrmUuid("widevine");
+        @Override
+        public void onDownloadProgress(List<Download> downloads) {}
 
-    private int startWindow = 0;
-    private long startPosition = 0;
+        @Override
+        public void onDownloadError(Uri uri, Exception error) {
+            showToast(R.string.download_failed);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        dataSourceFactory = buildDataSourceFactory();
+        // Debug builds can override the endpoints from the intent, for example to point the app at
+        // a local stand-in for the origin and the license server.
+        String[] channelUris =
+                BuildConfig.DEBUG ? getIntent().getStringArrayExtra(EXTRA_CHANNEL_URIS) : null;
+        if (channelUris == null) {
+            channelUris = getResources().getStringArray(R.array.channel_uris);
+        }
+        Uri data = getIntent().getData();
+        if (data != null && !Arrays.asList(channelUris).contains(data.toString())) {
+            // Content opened from elsewhere plays as a channel of its own, after the others.
+            channelUris = Arrays.copyOf(channelUris, channelUris.length + 1);
+            channelUris[channelUris.length - 1] = data.toString();
+        }
+        channelList = ChannelList.fromUris(channelUris);
+        uri = data != null ? data : channelList.get(0).uri;
+        if (savedInstanceState != null) {
+            uri = Uri.parse(savedInstanceState.getString(KEY_URI));
+            startWindow = savedInstanceState.getInt(KEY_WINDOW);
+            startPosition = savedInstanceState.getLong(KEY_POSITION);
+        } else {
+            clearStartPosition();
+        }
+        drmLicenseUrl = BuildConfig.DEBUG ? getIntent().getStringExtra(EXTRA_LICENSE_URL) : null;
+        if (drmLicenseUrl == null) {
+            drmLicenseUrl = getString(R.string.license_url);
+        }
+        lowLatencyLive = getIntent().getBooleanExtra(EXTRA_LOW_LATENCY_LIVE, false);
+        targetLiveOffsetMs = getIntent().getLongExtra(
+                EXTRA_TARGET_LIVE_OFFSET_MS, LiveCatchUpController.DEFAULT_TARGET_OFFSET_MS);
+        qoeListener = new QoeAnalyticsListener(
+                ((ExoplayerApplication) getApplication()).getQoeAggregator());
         setContentView(R.layout.activity_player);
 
         playerView = findViewById(R.id.player_view);
@@ -109,11 +193,89 @@ public class PlayerActivity extends AppCompatActivity implements PlaybackPrepare
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (downloadTracker != null) {
+            downloadTracker.removeListener(downloadListener);
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        updateStartPosition();
+        outState.putString(KEY_URI, uri.toString());
+        outState.putInt(KEY_WINDOW, startWindow);
+        outState.putLong(KEY_POSITION, startPosition);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (zappingEngine != null && event.getAction() == KeyEvent.ACTION_DOWN) {
+            if (event.getKeyCode() == KeyEvent.KEYCODE_CHANNEL_UP) {
+                zappingEngine.zapToNext();
+                return true;
+            } else if (event.getKeyCode() == KeyEvent.KEYCODE_CHANNEL_DOWN) {
+                zappingEngine.zapToPrevious();
+                return true;
+            } else if (event.getKeyCode() == KeyEvent.KEYCODE_MEDIA_RECORD) {
+                toggleDownload();
+                return true;
+            }
+        }
+        return super.dispatchKeyEvent(event);
+    }
+
+    /**
+     * Downloads the current channel together with its offline license, or removes its download and
+     * releases the license if it already has one.
+     */
+    private void toggleDownload() {
+        if (downloadTracker == null) {
+            // The player is built, so the download cache and database are warmed up and this does
+            // not block.
+            downloadTracker = ((ExoplayerApplication) getApplication()).getDownloadTracker();
+            downloadTracker.addListener(downloadListener);
+        }
+        if (downloadTracker.hasDownload(uri)) {
+            downloadTracker.remove(uri, playerFactory.createMediaDrmCallback());
+            showToast(R.string.download_removed);
+        } else {
+            downloadTracker.download(uri, playerFactory.createMediaDrmCallback());
+            showToast(R.string.download_started);
+        }
+    }
+
     private void releasePlayer() {
-        if (player != null) {
-            player.release();
+        playerRequested = false;
+        if (zappingEngine != null) {
+            playerFactory.cancelPrefetches();
+            ExoplayerApplication application = (ExoplayerApplication) getApplication();
+            MetricsReporter.reportPlayback(application, zappingEngine, playerFactory);
+            application.getStartupTracker().flushLog();
+            qoeListener.detach();
+            application.getQoeAggregator().flush();
+            playerFactory.getBandwidthMeter().persist();
+            updateStartPosition();
+            LowLatencyLivePlayback lowLatencyLivePlayback =
+                    playerFactory.getLowLatencyLivePlayback();
+            if (lowLatencyLivePlayback != null) {
+                lowLatencyLivePlayback.detach();
+            }
+            zappingEngine.removeListener(channelListener);
+            PlayerHolder.Session session =
+                    new PlayerHolder.Session(uri.toString(), zappingEngine, playerFactory);
+            if (isFinishing()) {
+                session.release();
+            } else {
+                // Keep the player warm, so that coming back resumes without a cold start.
+                playerView.setPlayer(null);
+                getPlayerHolder().park(session);
+            }
+            zappingEngine = null;
+            playerFactory = null;
             player = null;
-            mediaSource = null;
         }
     }
 
@@ -145,99 +307,85 @@ public class PlayerActivity extends AppCompatActivity implements PlaybackPrepare
     }
 
     private void initializePlayer() {
-        if (player == null) {
-            mediaSource = createLeafMediaSource();
-
-            if (mediaSource == null) {
-                return;
-            }
-            DefaultTrackSelector trackSelector = new DefaultTrackSelector(getApplicationContext(), new AdaptiveTrackSelection.Factory());
-
-            RenderersFactory renderersFactory =
-                    ((ExoplayerApplication) getApplication()).buildRenderersFactory(false);
-            player =
-                    new SimpleExoPlayer.Builder(/* context= */ this, renderersFactory)
-                            .setTrackSelector(trackSelector)
-                            .build();
-            player.setAudioAttributes(AudioAttributes.DEFAULT, /* handleAudioFocus= */ true);
-            player.setPlayWhenReady(true);
-            playerView.setPlayer(player);
-            playerView.setPlaybackPreparer(this);
+        if (zappingEngine != null || resumeParkedPlayer()) {
+            return;
         }
-
-        boolean haveStartPosition = startWindow != C.INDEX_UNSET;
-        if (haveStartPosition) {
+        ExoplayerApplication application = (ExoplayerApplication) getApplication();
+        if (!application.isPlaybackReady()) {
+            // Build the player once the caches and HTTP client are warmed up, rather than block
+            // the main thread on their disk I/O.
+            playerRequested = true;
+            application.whenPlaybackReady(initializePlayerRunnable);
+            return;
+        }
+        if (application.getPlaybackWarmUpError() != null) {
+            // Components the player needs could not be initialized, so report it in the player
+            // view instead of failing on their first use.
+            playerView.setCustomErrorMessage(getString(R.string.error_warm_up));
+            return;
+        }
+        int drmErrorStringId = getDrmErrorStringId();
+        if (drmErrorStringId != 0) {
+            showToast(drmErrorStringId);
+            finish();
+            return;
+        }
+        playerFactory = new ChannelPlayerFactory(application, drmLicenseUrl,
+                lowLatencyLive
+                        ? new LowLatencyLivePlayback(new LiveCatchUpController(targetLiveOffsetMs))
+                        : null);
+        zappingEngine =
+                new ZappingEngine.Builder(getApplicationContext()).build(channelList, playerFactory);
+        zappingEngine.addListener(channelListener);
+        int channelIndex = channelList.indexOf(uri.toString());
+        zappingEngine.start(channelIndex != C.INDEX_UNSET ? channelIndex : 0);
+        // The channel listener has attached the channel's player.
+        if (startWindow != C.INDEX_UNSET) {
             player.seekTo(startWindow, startPosition);
         }
-        player.prepare(mediaSource, !haveStartPosition, false);
     }
 
-    private MediaSource createLeafMediaSource() {
-        int errorStringId = R.string.error_drm_unknown;
-        DrmSessionManager<ExoMediaCrypto> drmSessionManager = null;
-
-        MediaDrmCallback mediaDrmCallback =
-                createMediaDrmCallback(drmLicenseUrl, null);
-        drmSessionManager =
-                new DefaultDrmSessionManager.Builder()
-                        .setUuidAndExoMediaDrmProvider(drmScheme, FrameworkMediaDrm.DEFAULT_PROVIDER)
-                        .setMultiSession(false)
-                        .build(mediaDrmCallback);
-
-
-        if (drmSessionManager == null) {
-            showToast(errorStringId);
-            finish();
-            return null;
+    private void updateStartPosition() {
+        if (player != null) {
+            startWindow = player.getCurrentWindowIndex();
+            startPosition = Math.max(0, player.getContentPosition());
         }
+    }
 
-        return createLeafMediaSource(uri, "", drmSessionManager);
+    private void clearStartPosition() {
+        startWindow = C.INDEX_UNSET;
+        startPosition = C.TIME_UNSET;
     }
 
-    private MediaSource createLeafMediaSource(
-            Uri uri, String extension, DrmSessionManager<?> drmSessionManager) {
-        @C.ContentType int type = Util.inferContentType(uri, extension);
-        switch (type) {
-            case C.TYPE_DASH:
-                return new DashMediaSource.Factory(dataSourceFactory)
-                        .setDrmSessionManager(drmSessionManager)
-                        .createMediaSource(uri);
-            case C.TYPE_SS:
-                return new SsMediaSource.Factory(dataSourceFactory)
-                        .setDrmSessionManager(drmSessionManager)
-                        .createMediaSource(uri);
-            case C.TYPE_HLS:
-                return new HlsMediaSource.Factory(dataSourceFactory)
-                        .setDrmSessionManager(drmSessionManager)
-                        .createMediaSource(uri);
-            case C.TYPE_OTHER:
-                return new ProgressiveMediaSource.Factory(dataSourceFactory)
-                        .setDrmSessionManager(drmSessionManager)
-                        .createMediaSource(uri);
-            default:
-                throw new IllegalStateException("Unsupported type: " + type);
+    /**
+     * Returns the id of the message that explains why protected channels cannot play on this device,
+     * or 0 if they can.
+     */
+    private int getDrmErrorStringId() {
+        if (Util.SDK_INT < 18) {
+            return R.string.error_drm_unsupported_before_api_18;
         }
+        // The capability probe found no Widevine security level if the DRM could not be opened.
+        DeviceCapabilities capabilities =
+                ((ExoplayerApplication) getApplication()).getDeviceCapabilities();
+        return capabilities.widevineSecurityLevel == null ? R.string.error_drm_unknown : 0;
     }
 
-    private WidevineMediaDrmCallback createMediaDrmCallback(
-            String licenseUrl, String[] keyRequestPropertiesArray) {
-        HttpDataSource.Factory licenseDataSourceFactory =
-                ((ExoplayerApplication) getApplication()).buildHttpDataSourceFactory();
-        WidevineMediaDrmCallback drmCallback =
-                new WidevineMediaDrmCallback(licenseUrl, licenseDataSourceFactory);
-        if (keyRequestPropertiesArray != null) {
-            for (int i = 0; i < keyRequestPropertiesArray.length - 1; i += 2) {
-                drmCallback.setKeyRequestProperty(keyRequestPropertiesArray[i],
-                        keyRequestPropertiesArray[i + 1]);
-            }
+    /** Resumes the zapping engine parked in the {@link PlayerHolder} for {@link #uri}, if any. */
+    private boolean resumeParkedPlayer() {
+        PlayerHolder.Session session = getPlayerHolder().unpark(uri.toString());
+        if (session == null) {
+            return false;
         }
-        return drmCallback;
+        zappingEngine = session.zappingEngine;
+        playerFactory = session.playerFactory;
+        zappingEngine.addListener(channelListener);
+        zappingEngine.resume();
+        return true;
     }
 
-
-    /** Returns a new DataSource factory. */
-    private DataSource.Factory buildDataSourceFactory() {
-        return ((ExoplayerApplication) getApplication()).buildDataSourceFactory();
+    private PlayerHolder getPlayerHolder() {
+        return ((ExoplayerApplication) getApplication()).getPlayerHolder();
     }
 
     private class PlayerErrorMessageProvider implements ErrorMessageProvider<ExoPlaybackException> {
@@ -0,0 +1,141 @@
+package com.example.exoplayer;
+
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Keeps a paused player, with its media source, buffered media and DRM session, warm for a grace
+ * period after the activity that owned it stops, so that returning to it resumes playback without
+ * rebuilding the player, re-initializing decoders or requesting a new license.
+ *
+ * <p>At most one player is kept. It is released when the grace period ends, when a player for
+ * different content is requested, or when the system reports memory pressure through {@link
+ * #onTrimMemory(int)}. All methods must be called on the main thread.
+ */
+public final class PlayerHolder {
+
+  /** A player kept by the holder, with the zapping engine that owns it. */
+  public static final class Session {
+
+    /** The id of the content the current player is prepared with. */
+    public final String contentId;
+    /** The zapping engine that owns the player. */
+    public final ZappingEngine zappingEngine;
+    /** The factory of the players and media sources of the zapping engine. */
+    public final ChannelPlayerFactory playerFactory;
+
+    public Session(
+        String contentId, ZappingEngine zappingEngine, ChannelPlayerFactory playerFactory) {
+      this.contentId = contentId;
+      this.zappingEngine = zappingEngine;
+      this.playerFactory = playerFactory;
+    }
+
+    /** Releases the zapping engine, and then the player factory. */
+    public void release() {
+      zappingEngine.release();
+      playerFactory.release();
+    }
+  }
+
+  /** The default time for which a parked player is kept, in milliseconds. */
+  public static final long DEFAULT_GRACE_PERIOD_MS = 30000;
+
+  private static final String TAG = "PlayerHolder";
+
+  private final Handler handler;
+  private final Runnable releaseRunnable;
+
+  private long gracePeriodMs;
+  @Nullable private Session parkedSession;
+
+  public PlayerHolder() {
+    handler = new Handler(Looper.getMainLooper());
+    releaseRunnable =
+        new Runnable() {
+          @Override
+          public void run() {
+            releaseParkedSession("grace period ended");
+          }
+        };
+    gracePeriodMs = DEFAULT_GRACE_PERIOD_MS;
+  }
+
+  /** Sets the time for which a parked player is kept. 0 releases players as soon as they stop. */
+  public void setGracePeriodMs(long gracePeriodMs) {
+    this.gracePeriodMs = gracePeriodMs;
+  }
+
+  /**
+   * Pauses the player of {@code session} and keeps it for the grace period. The prepared
+   * neighbors of the zapping engine are released right away. Any player parked earlier is
+   * released.
+   */
+  public void park(Session session) {
+    releaseParkedSession("replaced");
+    if (gracePeriodMs <= 0) {
+      session.release();
+      return;
+    }
+    session.zappingEngine.pause();
+    parkedSession = session;
+    handler.postDelayed(releaseRunnable, gracePeriodMs);
+  }
+
+  /**
+   * Returns the parked session for {@code contentId} and hands its ownership back to the caller,
+   * or returns null if there is none. A parked session for other content is released.
+   */
+  @Nullable
+  public Session unpark(String contentId) {
+    if (parkedSession == null) {
+      return null;
+    }
+    if (!parkedSession.contentId.equals(contentId)) {
+      releaseParkedSession("different content");
+      return null;
+    }
+    handler.removeCallbacks(releaseRunnable);
+    Session session = parkedSession;
+    parkedSession = null;
+    return session;
+  }
+
+  /** Returns whether a player is parked. */
+  public boolean hasParkedSession() {
+    return parkedSession != null;
+  }
+
+  /**
+   * Releases the parked player if {@code level} reports that the app is in the background list or
+   * that the device is running low on memory.
+   *
+   * @param level The level passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+   */
+  public void onTrimMemory(int level) {
+    boolean runningLow =
+        level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+            && level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+    if (runningLow || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      releaseParkedSession("trim memory level " + level);
+    }
+  }
+
+  /** Releases the parked player, if any. */
+  public void release() {
+    releaseParkedSession("released");
+  }
+
+  private void releaseParkedSession(String reason) {
+    handler.removeCallbacks(releaseRunnable);
+    if (parkedSession != null) {
+      Log.d(TAG, "Releasing parked player: " + reason);
+      parkedSession.release();
+      parkedSession = null;
+    }
+  }
+}
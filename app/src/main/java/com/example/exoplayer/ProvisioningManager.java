@@ -0,0 +1,363 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provisions the device for DRM once, in the background, so that the first playback does not pay
+ * for a provisioning round-trip before its license request.
+ *
+ * <p>Concurrent callers share a single in-flight attempt. An attempt first checks whether the
+ * device is already provisioned, and only sends a provisioning request if it is not. Attempts that
+ * fail with a retryable error are retried in the background according to a {@link
+ * LicenseRetryPolicy}.
+ *
+ * <p>Once the device is provisioned, that is persisted with the fingerprint of the OS build and the
+ * security level, so that later cold starts neither check nor provision again until the OS is
+ * updated or the DRM is opened at another security level.
+ */
+public final class ProvisioningManager {
+
+  /** Checks and provisions the device. */
+  public interface Provisioner {
+
+    /** Returns whether the device is provisioned. */
+    boolean isProvisioned() throws Exception;
+
+    /** Provisions the device. */
+    void provision() throws Exception;
+  }
+
+  /** No attempt has completed yet. */
+  public static final int STATE_UNKNOWN = 0;
+  /** The device is provisioned. */
+  public static final int STATE_PROVISIONED = 1;
+  /** The last attempt failed, and another one is scheduled. */
+  public static final int STATE_RETRY_SCHEDULED = 2;
+  /** The last attempt failed, and no other one is scheduled. */
+  public static final int STATE_FAILED = 3;
+
+  /**
+   * The default policy for retrying failed attempts. Retries are spread over several minutes, so
+   * that a device that was offline at startup is provisioned once it is back online.
+   */
+  public static final LicenseRetryPolicy DEFAULT_RETRY_POLICY =
+      new LicenseRetryPolicy.Builder()
+          .setMaxAttempts(6)
+          .setBackoff(
+              /* initialBackoffMs= */ 5000,
+              /* maxBackoffMs= */ 5 * 60 * 1000,
+              /* backoffMultiplier= */ 3)
+          .setMaxRetryAfterMs(10 * 60 * 1000)
+          .build();
+
+  private static final String TAG = "ProvisioningManager";
+  private static final int VERSION = 2;
+
+  private final Provisioner provisioner;
+  private final File stateFile;
+  private final String fingerprint;
+  @Nullable private final String securityLevel;
+  private final LicenseRetryPolicy retryPolicy;
+  private final Random random;
+  private final ScheduledExecutorService executor;
+
+  private int state;
+  private boolean stateRead;
+  @Nullable private Attempt inFlightAttempt;
+  @Nullable private ScheduledFuture<?> scheduledRetry;
+  private int consecutiveFailureCount;
+  private int attemptCount;
+  private int provisionRequestCount;
+  private int joinedCount;
+  private long provisioningDurationMs;
+
+  /**
+   * @param provisioner The {@link Provisioner}.
+   * @param stateFile The file in which the provisioning state is persisted.
+   * @param fingerprint The fingerprint of the OS build. The persisted state is ignored if it was
+   *     written on another build.
+   * @param securityLevel The security level the DRM is provisioned at, or null if unknown. The
+   *     persisted state is ignored if it was written for another security level.
+   * @param retryPolicy The {@link LicenseRetryPolicy} for failed attempts.
+   */
+  public ProvisioningManager(
+      Provisioner provisioner,
+      File stateFile,
+      String fingerprint,
+      @Nullable String securityLevel,
+      LicenseRetryPolicy retryPolicy) {
+    this(provisioner, stateFile, fingerprint, securityLevel, retryPolicy, new Random());
+  }
+
+  /**
+   * @param provisioner The {@link Provisioner}.
+   * @param stateFile The file in which the provisioning state is persisted.
+   * @param fingerprint The fingerprint of the OS build. The persisted state is ignored if it was
+   *     written on another build.
+   * @param securityLevel The security level the DRM is provisioned at, or null if unknown. The
+   *     persisted state is ignored if it was written for another security level.
+   * @param retryPolicy The {@link LicenseRetryPolicy} for failed attempts.
+   * @param random The source of backoff jitter.
+   */
+  public ProvisioningManager(
+      Provisioner provisioner,
+      File stateFile,
+      String fingerprint,
+      @Nullable String securityLevel,
+      LicenseRetryPolicy retryPolicy,
+      Random random) {
+    this.provisioner = provisioner;
+    this.stateFile = stateFile;
+    this.fingerprint = fingerprint;
+    this.securityLevel = securityLevel;
+    this.retryPolicy = retryPolicy;
+    this.random = random;
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ProvisioningManager");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    state = STATE_UNKNOWN;
+    provisioningDurationMs = -1;
+  }
+
+  /**
+   * Ensures the device is provisioned. Joins the attempt in flight if there is one, and runs a
+   * scheduled retry straight away.
+   *
+   * @return A {@link Future} that is true if the device is provisioned, or false if the attempt
+   *     failed. Retries may still be scheduled after a failed attempt.
+   */
+  public synchronized Future<Boolean> provision() {
+    if (inFlightAttempt != null) {
+      joinedCount++;
+      return inFlightAttempt;
+    }
+    if (state == STATE_PROVISIONED) {
+      Attempt attempt = new Attempt(/* provisioned= */ true);
+      attempt.run();
+      return attempt;
+    }
+    if (scheduledRetry != null) {
+      scheduledRetry.cancel(/* mayInterruptIfRunning= */ false);
+      scheduledRetry = null;
+    }
+    inFlightAttempt = new Attempt(/* provisioned= */ false);
+    executor.execute(inFlightAttempt);
+    return inFlightAttempt;
+  }
+
+  /** Returns whether the device is known to be provisioned. */
+  public synchronized boolean isProvisioned() {
+    return state == STATE_PROVISIONED;
+  }
+
+  /**
+   * Returns the state, one of {@link #STATE_UNKNOWN}, {@link #STATE_PROVISIONED}, {@link
+   * #STATE_RETRY_SCHEDULED} and {@link #STATE_FAILED}.
+   */
+  public synchronized int getState() {
+    return state;
+  }
+
+  /** Returns the number of attempts made, including attempts that found the device provisioned. */
+  public synchronized int getAttemptCount() {
+    return attemptCount;
+  }
+
+  /** Returns the number of provisioning requests sent. */
+  public synchronized int getProvisionRequestCount() {
+    return provisionRequestCount;
+  }
+
+  /** Returns the number of callers that joined an attempt already in flight. */
+  public synchronized int getJoinedCount() {
+    return joinedCount;
+  }
+
+  /**
+   * Returns the time the successful provisioning request took, in milliseconds, or -1 if no request
+   * has succeeded.
+   */
+  public synchronized long getProvisioningDurationMs() {
+    return provisioningDurationMs;
+  }
+
+  /** Cancels any scheduled retry. The manager must not be used afterwards. */
+  public void release() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "state="
+        + state
+        + ", attempts="
+        + attemptCount
+        + ", requests="
+        + provisionRequestCount
+        + ", joined="
+        + joinedCount
+        + ", provisioning="
+        + provisioningDurationMs
+        + "ms";
+  }
+
+  private void runAttempt() throws Exception {
+    synchronized (this) {
+      attemptCount++;
+      if (!stateRead) {
+        stateRead = true;
+        if (readProvisioned()) {
+          state = STATE_PROVISIONED;
+          return;
+        }
+      }
+    }
+    if (provisioner.isProvisioned()) {
+      return;
+    }
+    synchronized (this) {
+      provisionRequestCount++;
+    }
+    long startTimeNs = System.nanoTime();
+    provisioner.provision();
+    long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNs);
+    synchronized (this) {
+      provisioningDurationMs = durationMs;
+    }
+  }
+
+  private synchronized void onAttemptSucceeded() {
+    inFlightAttempt = null;
+    consecutiveFailureCount = 0;
+    if (state != STATE_PROVISIONED) {
+      state = STATE_PROVISIONED;
+      writeProvisioned();
+    }
+  }
+
+  private synchronized void onAttemptFailed(Exception error) {
+    inFlightAttempt = null;
+    consecutiveFailureCount++;
+    long retryDelayMs = retryPolicy.getRetryDelayMs(error, consecutiveFailureCount, random);
+    if (retryDelayMs < 0 || executor.isShutdown()) {
+      Log.w(TAG, "Provisioning failed", error);
+      state = STATE_FAILED;
+      return;
+    }
+    Log.w(TAG, "Provisioning failed, retrying in " + retryDelayMs + "ms", error);
+    state = STATE_RETRY_SCHEDULED;
+    scheduledRetry =
+        executor.schedule(
+            new Runnable() {
+              @Override
+              public void run() {
+                synchronized (ProvisioningManager.this) {
+                  scheduledRetry = null;
+                }
+                provision();
+              }
+            },
+            retryDelayMs,
+            TimeUnit.MILLISECONDS);
+  }
+
+  private boolean readProvisioned() {
+    if (!stateFile.exists()) {
+      return false;
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+      return input.readInt() == VERSION
+          && fingerprint.equals(input.readUTF())
+          && getSecurityLevelKey().equals(input.readUTF())
+          && input.readBoolean();
+    } catch (IOException e) {
+      // A corrupt file only costs checking again.
+      return false;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  private void writeProvisioned() {
+    DataOutputStream output = null;
+    try {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stateFile)));
+      output.writeInt(VERSION);
+      output.writeUTF(fingerprint);
+      output.writeUTF(getSecurityLevelKey());
+      output.writeBoolean(true);
+    } catch (IOException e) {
+      // The device is checked again on the next cold start.
+      Log.w(TAG, "Failed to persist provisioning state", e);
+    } finally {
+      closeQuietly(output);
+    }
+  }
+
+  private String getSecurityLevelKey() {
+    return securityLevel != null ? securityLevel : "";
+  }
+
+  private static void closeQuietly(@Nullable Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+    }
+  }
+
+  private final class Attempt extends FutureTask<Boolean> {
+
+    public Attempt(final boolean provisioned) {
+      super(
+          new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+              if (provisioned) {
+                return true;
+              }
+              try {
+                runAttempt();
+                onAttemptSucceeded();
+                return true;
+              } catch (Exception e) {
+                onAttemptFailed(e);
+                return false;
+              }
+            }
+          });
+    }
+  }
+}
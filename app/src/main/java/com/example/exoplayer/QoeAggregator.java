@@ -0,0 +1,300 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Aggregates quality of experience events of playback sessions into {@link QoeCounters}, rolled up
+ * per session, per channel and in total.
+ *
+ * <p>Events only update primitive counters and fixed-bucket histograms. When a session ends, a
+ * one-line snapshot of its counters is queued, and queued snapshots are appended to a file on a
+ * background thread once a batch is complete or on {@link #flush()}.
+ *
+ * <p>Event times are {@code elapsedRealtime} timestamps, in milliseconds. Methods may be called
+ * from any thread.
+ */
+public final class QoeAggregator {
+
+  /** The default number of session snapshots written together. */
+  public static final int DEFAULT_BATCH_SIZE = 8;
+  /** The default size past which the snapshot file is moved aside, in bytes. */
+  public static final long DEFAULT_MAX_FILE_SIZE_BYTES = 256 * 1024;
+
+  private static final String TAG = "QoeAggregator";
+
+  private static final int STATE_IDLE = 0;
+  private static final int STATE_STARTING = 1;
+  private static final int STATE_PLAYING = 2;
+  private static final int STATE_REBUFFERING = 3;
+  private static final int STATE_PAUSED = 4;
+
+  @Nullable private final File snapshotFile;
+  private final long maxFileSizeBytes;
+  private final int batchSize;
+  private final ExecutorService writeExecutor;
+  private final QoeCounters sessionCounters;
+  private final QoeCounters totalCounters;
+  private final Map<String, QoeCounters> channelCounters;
+  private final List<String> pendingSnapshots;
+
+  @Nullable private String channelId;
+  private long sessionStartWallClockMs;
+  private int state;
+  private long stateStartTimeMs;
+  private long rebufferStartTimeMs;
+  private int bitrate;
+  private boolean hasPlayed;
+
+  /** Creates an aggregator that keeps its counters in memory only. */
+  public QoeAggregator() {
+    this(/* snapshotFile= */ null, DEFAULT_BATCH_SIZE, DEFAULT_MAX_FILE_SIZE_BYTES);
+  }
+
+  /**
+   * @param snapshotFile The file to which session snapshots are appended, or null to not write
+   *     them.
+   * @param batchSize The number of snapshots queued before they are written.
+   * @param maxFileSizeBytes The size past which the snapshot file is moved aside, replacing the
+   *     previously moved file, and a new one is started.
+   */
+  public QoeAggregator(@Nullable File snapshotFile, int batchSize, long maxFileSizeBytes) {
+    this.snapshotFile = snapshotFile;
+    this.batchSize = batchSize;
+    this.maxFileSizeBytes = maxFileSizeBytes;
+    writeExecutor = Executors.newSingleThreadExecutor();
+    sessionCounters = new QoeCounters();
+    totalCounters = new QoeCounters();
+    channelCounters = new HashMap<>();
+    pendingSnapshots = new ArrayList<>();
+    bitrate = -1;
+  }
+
+  /**
+   * Ends the current session, if any, and starts a session for {@code channelId}. The session is
+   * starting, rather than rebuffering, until playback first starts.
+   */
+  public synchronized void startSession(String channelId, long nowMs) {
+    endSession(nowMs);
+    this.channelId = channelId;
+    sessionStartWallClockMs = System.currentTimeMillis();
+    state = STATE_STARTING;
+    stateStartTimeMs = nowMs;
+    bitrate = -1;
+    hasPlayed = false;
+    sessionCounters.clear();
+    sessionCounters.sessionCount = 1;
+  }
+
+  /**
+   * Ends the current session, if any, rolls its counters up into its channel and the total, and
+   * queues a snapshot of them.
+   */
+  public synchronized void endSession(long nowMs) {
+    if (channelId == null) {
+      return;
+    }
+    advanceTo(nowMs);
+    setState(STATE_IDLE, nowMs);
+    totalCounters.addAll(sessionCounters);
+    QoeCounters counters = channelCounters.get(channelId);
+    if (counters == null) {
+      counters = new QoeCounters();
+      channelCounters.put(channelId, counters);
+    }
+    counters.addAll(sessionCounters);
+
+    if (snapshotFile != null) {
+      StringBuilder snapshot = new StringBuilder();
+      snapshot
+          .append("start=")
+          .append(sessionStartWallClockMs)
+          .append(" channel=")
+          .append(channelId)
+          .append(' ');
+      sessionCounters.appendTo(snapshot);
+      pendingSnapshots.add(snapshot.toString());
+      if (pendingSnapshots.size() >= batchSize) {
+        flush();
+      }
+    }
+    channelId = null;
+  }
+
+  /** Records that the player is buffering. */
+  public synchronized void onBuffering(long nowMs) {
+    if (state == STATE_IDLE || state == STATE_STARTING || state == STATE_REBUFFERING) {
+      return;
+    }
+    advanceTo(nowMs);
+    // Buffering after a pause before playback ever started is still part of startup.
+    setState(hasPlayed ? STATE_REBUFFERING : STATE_STARTING, nowMs);
+  }
+
+  /** Records that the player is playing. */
+  public synchronized void onPlaying(long nowMs) {
+    if (state == STATE_IDLE || state == STATE_PLAYING) {
+      return;
+    }
+    advanceTo(nowMs);
+    setState(STATE_PLAYING, nowMs);
+    hasPlayed = true;
+  }
+
+  /** Records that playback is paused, or has stopped or ended. */
+  public synchronized void onPaused(long nowMs) {
+    if (state == STATE_IDLE || state == STATE_PAUSED) {
+      return;
+    }
+    advanceTo(nowMs);
+    setState(STATE_PAUSED, nowMs);
+  }
+
+  /** Records that {@code count} video frames were dropped. */
+  public synchronized void onDroppedFrames(int count) {
+    if (state != STATE_IDLE) {
+      sessionCounters.droppedFrameCount += count;
+    }
+  }
+
+  /**
+   * Records that the video bitrate being played changed.
+   *
+   * @param nowMs The time of the change.
+   * @param bitrate The new bitrate, in bits per second.
+   */
+  public synchronized void onVideoBitrateChanged(long nowMs, int bitrate) {
+    if (state == STATE_IDLE || bitrate == this.bitrate) {
+      return;
+    }
+    advanceTo(nowMs);
+    if (this.bitrate != -1) {
+      sessionCounters.bitrateSwitchCount++;
+    }
+    this.bitrate = bitrate;
+  }
+
+  /** Records a bandwidth estimate, in bits per second. */
+  public synchronized void onBandwidthEstimate(long bitrateEstimate) {
+    if (state == STATE_IDLE) {
+      return;
+    }
+    sessionCounters.bandwidthEstimateCount++;
+    sessionCounters.bandwidthEstimateSum += bitrateEstimate;
+    sessionCounters.bandwidthEstimates.add(bitrateEstimate, 1);
+  }
+
+  /** Returns a copy of the counters of the current session, including time up to {@code nowMs}. */
+  public synchronized QoeCounters getSessionCounters(long nowMs) {
+    if (channelId != null) {
+      advanceTo(nowMs);
+    }
+    return sessionCounters.copy();
+  }
+
+  /** Returns a copy of the counters of ended sessions of {@code channelId}. */
+  public synchronized QoeCounters getChannelCounters(String channelId) {
+    QoeCounters counters = channelCounters.get(channelId);
+    return counters != null ? counters.copy() : new QoeCounters();
+  }
+
+  /** Returns a copy of the counters of all ended sessions. */
+  public synchronized QoeCounters getTotalCounters() {
+    return totalCounters.copy();
+  }
+
+  /**
+   * Appends queued snapshots to the snapshot file on a background thread.
+   *
+   * @return A {@link Future} that completes when the snapshots are written.
+   */
+  public synchronized Future<?> flush() {
+    final List<String> snapshots = new ArrayList<>(pendingSnapshots);
+    pendingSnapshots.clear();
+    return writeExecutor.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            if (!snapshots.isEmpty()) {
+              writeSnapshots(snapshots);
+            }
+          }
+        });
+  }
+
+  /** Stops the write thread once pending writes complete. Queued snapshots are not written. */
+  public void release() {
+    writeExecutor.shutdown();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return totalCounters.toString();
+  }
+
+  private void advanceTo(long nowMs) {
+    long elapsedMs = Math.max(0, nowMs - stateStartTimeMs);
+    stateStartTimeMs = nowMs;
+    if (state == STATE_PLAYING) {
+      sessionCounters.playTimeMs += elapsedMs;
+      if (bitrate != -1) {
+        sessionCounters.bitratePlayTimeMs += elapsedMs;
+        sessionCounters.bitrateTimeProduct += bitrate * elapsedMs;
+        sessionCounters.bitratePlayTimes.add(bitrate, elapsedMs);
+      }
+    } else if (state == STATE_REBUFFERING) {
+      sessionCounters.rebufferTimeMs += elapsedMs;
+    }
+  }
+
+  private void setState(int newState, long nowMs) {
+    if (state == STATE_REBUFFERING) {
+      sessionCounters.rebufferDurations.add(nowMs - rebufferStartTimeMs, 1);
+    }
+    if (newState == STATE_REBUFFERING) {
+      sessionCounters.rebufferCount++;
+      rebufferStartTimeMs = nowMs;
+    }
+    state = newState;
+  }
+
+  private void writeSnapshots(List<String> snapshots) {
+    File file = snapshotFile;
+    try {
+      if (file.length() >= maxFileSizeBytes) {
+        File previousFile = new File(file.getPath() + ".1");
+        if ((previousFile.exists() && !previousFile.delete()) || !file.renameTo(previousFile)) {
+          throw new IOException("Failed to move " + file);
+        }
+      }
+      Writer writer =
+          new BufferedWriter(
+              new OutputStreamWriter(new FileOutputStream(file, /* append= */ true), "UTF-8"));
+      try {
+        for (String snapshot : snapshots) {
+          writer.write(snapshot);
+          writer.write('\n');
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write QoE snapshots", e);
+    }
+  }
+}
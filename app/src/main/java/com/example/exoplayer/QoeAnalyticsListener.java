@@ -0,0 +1,93 @@
+package com.example.exoplayer;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.MediaLoadData;
+
+/**
+ * An {@link AnalyticsListener} that feeds the state changes, dropped frames, video format changes
+ * and bandwidth estimates of the player currently on screen into a {@link QoeAggregator}. Must be
+ * used on the main thread.
+ */
+public final class QoeAnalyticsListener implements AnalyticsListener {
+
+  private final QoeAggregator aggregator;
+
+  @Nullable private SimpleExoPlayer player;
+
+  /** @param aggregator The {@link QoeAggregator} into which events are fed. */
+  public QoeAnalyticsListener(QoeAggregator aggregator) {
+    this.aggregator = aggregator;
+  }
+
+  /**
+   * Starts a session for {@code channelId} playing on {@code player}, ending the session of the
+   * player previously attached.
+   */
+  public void attach(SimpleExoPlayer player, String channelId) {
+    detach();
+    this.player = player;
+    long nowMs = SystemClock.elapsedRealtime();
+    aggregator.startSession(channelId, nowMs);
+    player.addAnalyticsListener(this);
+    // A player that was prepared ahead may already be playing.
+    onStateChanged(nowMs, player.getPlayWhenReady(), player.getPlaybackState());
+    Format videoFormat = player.getVideoFormat();
+    if (videoFormat != null && videoFormat.bitrate != Format.NO_VALUE) {
+      aggregator.onVideoBitrateChanged(nowMs, videoFormat.bitrate);
+    }
+  }
+
+  /** Ends the session of the attached player, if any. */
+  public void detach() {
+    if (player != null) {
+      player.removeAnalyticsListener(this);
+      player = null;
+      aggregator.endSession(SystemClock.elapsedRealtime());
+    }
+  }
+
+  @Override
+  public void onPlayerStateChanged(EventTime eventTime, boolean playWhenReady, int playbackState) {
+    onStateChanged(eventTime.realtimeMs, playWhenReady, playbackState);
+  }
+
+  @Override
+  public void onDroppedVideoFrames(EventTime eventTime, int droppedFrames, long elapsedMs) {
+    aggregator.onDroppedFrames(droppedFrames);
+  }
+
+  @Override
+  public void onDownstreamFormatChanged(EventTime eventTime, MediaLoadData mediaLoadData) {
+    if (mediaLoadData.trackType == C.TRACK_TYPE_VIDEO
+        && mediaLoadData.trackFormat != null
+        && mediaLoadData.trackFormat.bitrate != Format.NO_VALUE) {
+      aggregator.onVideoBitrateChanged(eventTime.realtimeMs, mediaLoadData.trackFormat.bitrate);
+    }
+  }
+
+  @Override
+  public void onBandwidthEstimate(
+      EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {
+    aggregator.onBandwidthEstimate(bitrateEstimate);
+  }
+
+  private void onStateChanged(long nowMs, boolean playWhenReady, int playbackState) {
+    if (!playWhenReady
+        || playbackState == Player.STATE_IDLE
+        || playbackState == Player.STATE_ENDED) {
+      aggregator.onPaused(nowMs);
+    } else if (playbackState == Player.STATE_BUFFERING) {
+      aggregator.onBuffering(nowMs);
+    } else {
+      aggregator.onPlaying(nowMs);
+    }
+  }
+}
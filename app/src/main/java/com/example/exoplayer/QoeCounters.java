@@ -0,0 +1,142 @@
+package com.example.exoplayer;
+
+/**
+ * Quality of experience counters of one or more playback sessions: play and rebuffer time,
+ * dropped frames, video bitrate switches and bandwidth estimates. Not thread safe; {@link
+ * QoeAggregator} hands out copies.
+ */
+public final class QoeCounters {
+
+  /** Upper bounds of the rebuffer duration buckets, in milliseconds. */
+  private static final long[] REBUFFER_DURATION_BOUNDS_MS = {250, 500, 1000, 2000, 5000, 10000};
+  /** Upper bounds of the bitrate buckets, in bits per second. */
+  private static final long[] BITRATE_BOUNDS = {
+    300000, 700000, 1500000, 3000000, 6000000, 12000000
+  };
+
+  /** The number of sessions. */
+  public int sessionCount;
+  /** The time spent playing, in milliseconds. */
+  public long playTimeMs;
+  /** The time spent rebuffering after playback started, in milliseconds. */
+  public long rebufferTimeMs;
+  /** The number of rebuffers. */
+  public int rebufferCount;
+  /** The number of dropped video frames. */
+  public long droppedFrameCount;
+  /** The number of changes of the video bitrate being played. */
+  public int bitrateSwitchCount;
+  /** The sum over play time of the video bitrate, in bit milliseconds per second. */
+  public long bitrateTimeProduct;
+  /** The play time for which the video bitrate was known, in milliseconds. */
+  public long bitratePlayTimeMs;
+  /** The number of bandwidth estimates. */
+  public int bandwidthEstimateCount;
+  /** The sum of the bandwidth estimates, in bits per second. */
+  public long bandwidthEstimateSum;
+
+  /** Rebuffer counts, bucketed by rebuffer duration. */
+  public final QoeHistogram rebufferDurations;
+  /** Play time in milliseconds, bucketed by the video bitrate played. */
+  public final QoeHistogram bitratePlayTimes;
+  /** Bandwidth estimate counts, bucketed by estimate. */
+  public final QoeHistogram bandwidthEstimates;
+
+  public QoeCounters() {
+    rebufferDurations = new QoeHistogram(REBUFFER_DURATION_BOUNDS_MS);
+    bitratePlayTimes = new QoeHistogram(BITRATE_BOUNDS);
+    bandwidthEstimates = new QoeHistogram(BITRATE_BOUNDS);
+  }
+
+  /** Returns the fraction of time spent rebuffering rather than playing, or 0 if neither. */
+  public float getRebufferRatio() {
+    long totalTimeMs = playTimeMs + rebufferTimeMs;
+    return totalTimeMs == 0 ? 0 : (float) rebufferTimeMs / totalTimeMs;
+  }
+
+  /** Returns the play time weighted mean video bitrate, or -1 if it is unknown. */
+  public long getMeanBitrate() {
+    return bitratePlayTimeMs == 0 ? -1 : bitrateTimeProduct / bitratePlayTimeMs;
+  }
+
+  /** Returns the mean bandwidth estimate, or -1 if there has been none. */
+  public long getMeanBandwidthEstimate() {
+    return bandwidthEstimateCount == 0 ? -1 : bandwidthEstimateSum / bandwidthEstimateCount;
+  }
+
+  /** Adds the counters of {@code other}. */
+  public void addAll(QoeCounters other) {
+    sessionCount += other.sessionCount;
+    playTimeMs += other.playTimeMs;
+    rebufferTimeMs += other.rebufferTimeMs;
+    rebufferCount += other.rebufferCount;
+    droppedFrameCount += other.droppedFrameCount;
+    bitrateSwitchCount += other.bitrateSwitchCount;
+    bitrateTimeProduct += other.bitrateTimeProduct;
+    bitratePlayTimeMs += other.bitratePlayTimeMs;
+    bandwidthEstimateCount += other.bandwidthEstimateCount;
+    bandwidthEstimateSum += other.bandwidthEstimateSum;
+    rebufferDurations.addAll(other.rebufferDurations);
+    bitratePlayTimes.addAll(other.bitratePlayTimes);
+    bandwidthEstimates.addAll(other.bandwidthEstimates);
+  }
+
+  /** Returns a copy of the counters. */
+  public QoeCounters copy() {
+    QoeCounters copy = new QoeCounters();
+    copy.addAll(this);
+    return copy;
+  }
+
+  /** Resets all counters to zero. */
+  public void clear() {
+    sessionCount = 0;
+    playTimeMs = 0;
+    rebufferTimeMs = 0;
+    rebufferCount = 0;
+    droppedFrameCount = 0;
+    bitrateSwitchCount = 0;
+    bitrateTimeProduct = 0;
+    bitratePlayTimeMs = 0;
+    bandwidthEstimateCount = 0;
+    bandwidthEstimateSum = 0;
+    rebufferDurations.clear();
+    bitratePlayTimes.clear();
+    bandwidthEstimates.clear();
+  }
+
+  /** Appends the counters to {@code builder} as space separated {@code key=value} pairs. */
+  public void appendTo(StringBuilder builder) {
+    builder
+        .append("sessions=")
+        .append(sessionCount)
+        .append(" playMs=")
+        .append(playTimeMs)
+        .append(" rebufferMs=")
+        .append(rebufferTimeMs)
+        .append(" rebuffers=")
+        .append(rebufferCount)
+        .append(" droppedFrames=")
+        .append(droppedFrameCount)
+        .append(" bitrateSwitches=")
+        .append(bitrateSwitchCount)
+        .append(" meanBitrate=")
+        .append(getMeanBitrate())
+        .append(" meanBandwidth=")
+        .append(getMeanBandwidthEstimate())
+        .append(" rebufferHist=");
+    rebufferDurations.appendTo(builder);
+    builder.append(" bitrateHist=");
+    bitratePlayTimes.appendTo(builder);
+    builder.append(" bandwidthHist=");
+    bandwidthEstimates.appendTo(builder);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder);
+    builder.append(" rebufferRatio=").append(getRebufferRatio());
+    return builder.toString();
+  }
+}
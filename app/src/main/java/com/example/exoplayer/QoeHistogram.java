@@ -0,0 +1,78 @@
+package com.example.exoplayer;
+
+import java.util.Arrays;
+
+/**
+ * A histogram with fixed bucket bounds. Each recorded value adds a weight to the first bucket
+ * whose upper bound is at least the value; the last bucket is unbounded. Not thread safe.
+ */
+public final class QoeHistogram {
+
+  private final long[] upperBounds;
+  private final long[] weights;
+
+  /**
+   * @param upperBounds The inclusive upper bound of each bucket but the last, in ascending order.
+   */
+  public QoeHistogram(long... upperBounds) {
+    this.upperBounds = upperBounds;
+    weights = new long[upperBounds.length + 1];
+  }
+
+  /** Adds {@code weight} to the bucket of {@code value}. */
+  public void add(long value, long weight) {
+    for (int i = 0; i < upperBounds.length; i++) {
+      if (value <= upperBounds[i]) {
+        weights[i] += weight;
+        return;
+      }
+    }
+    weights[upperBounds.length] += weight;
+  }
+
+  /** Adds the weights of {@code other}, which must have the same bucket bounds. */
+  public void addAll(QoeHistogram other) {
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] += other.weights[i];
+    }
+  }
+
+  /** Sets the weights to those of {@code other}, which must have the same bucket bounds. */
+  public void set(QoeHistogram other) {
+    System.arraycopy(other.weights, 0, weights, 0, weights.length);
+  }
+
+  /** Clears all weights. */
+  public void clear() {
+    Arrays.fill(weights, 0);
+  }
+
+  /** Returns the number of buckets. */
+  public int getBucketCount() {
+    return weights.length;
+  }
+
+  /** Returns the weight of the bucket at {@code index}. */
+  public long getWeight(int index) {
+    return weights[index];
+  }
+
+  /** Returns the sum of all weights. */
+  public long getTotalWeight() {
+    long total = 0;
+    for (long weight : weights) {
+      total += weight;
+    }
+    return total;
+  }
+
+  /** Appends the weights to {@code builder}, separated by commas. */
+  public void appendTo(StringBuilder builder) {
+    for (int i = 0; i < weights.length; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append(weights[i]);
+    }
+  }
+}
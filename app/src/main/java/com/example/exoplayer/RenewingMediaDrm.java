@@ -0,0 +1,251 @@
+package com.example.exoplayer;
+
+import android.annotation.TargetApi;
+import android.media.DeniedByServerException;
+import android.media.MediaCryptoException;
+import android.media.MediaDrmException;
+import android.media.NotProvisionedException;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaCrypto;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ExoMediaDrm} that renews the streaming licenses of its sessions ahead of their expiry,
+ * through a {@link LicenseRenewalScheduler}.
+ *
+ * <p>Renewal requests are generated by asking the CDM for a key request on a session that already
+ * holds a license, and are sent through the same {@link WidevineMediaDrmCallback} as the initial
+ * requests. Offline licenses are left to the session manager. All other calls are forwarded to the
+ * wrapped {@link FrameworkMediaDrm}.
+ */
+@TargetApi(18)
+public final class RenewingMediaDrm implements ExoMediaDrm<FrameworkMediaCrypto> {
+
+  private static final String PROPERTY_LICENSE_DURATION_REMAINING = "LicenseDurationRemaining";
+
+  /** Runs the renewals of all instances. Its single thread only exists while work is pending. */
+  private static final ScheduledExecutorService renewalExecutor = newRenewalExecutor();
+
+  private final FrameworkMediaDrm mediaDrm;
+  private final WidevineMediaDrmCallback callback;
+  private final LicenseRenewalScheduler renewalScheduler;
+  /** The scheme data of the streaming license requested for each session, by session id. */
+  private final Map<ByteBuffer, List<DrmInitData.SchemeData>> streamingSessions;
+
+  private int referenceCount;
+
+  /**
+   * @param mediaDrm The wrapped {@link FrameworkMediaDrm}. Released with this instance.
+   * @param callback The {@link WidevineMediaDrmCallback} through which renewals are requested.
+   */
+  public RenewingMediaDrm(FrameworkMediaDrm mediaDrm, WidevineMediaDrmCallback callback) {
+    this.mediaDrm = mediaDrm;
+    this.callback = callback;
+    renewalScheduler = new LicenseRenewalScheduler(new SessionRenewer(), renewalExecutor);
+    streamingSessions = new HashMap<>();
+    referenceCount = 1;
+  }
+
+  /** Returns the {@link LicenseRenewalScheduler} of the sessions. */
+  public LicenseRenewalScheduler getRenewalScheduler() {
+    return renewalScheduler;
+  }
+
+  @Override
+  public void setOnEventListener(OnEventListener<? super FrameworkMediaCrypto> listener) {
+    mediaDrm.setOnEventListener(listener);
+  }
+
+  @Override
+  public void setOnKeyStatusChangeListener(
+      OnKeyStatusChangeListener<? super FrameworkMediaCrypto> listener) {
+    mediaDrm.setOnKeyStatusChangeListener(listener);
+  }
+
+  @Override
+  public byte[] openSession() throws MediaDrmException {
+    return mediaDrm.openSession();
+  }
+
+  @Override
+  public void closeSession(byte[] sessionId) {
+    synchronized (this) {
+      streamingSessions.remove(ByteBuffer.wrap(sessionId));
+    }
+    renewalScheduler.onSessionClosed(sessionId);
+    mediaDrm.closeSession(sessionId);
+  }
+
+  @Override
+  public KeyRequest getKeyRequest(
+      byte[] scope,
+      @Nullable List<DrmInitData.SchemeData> schemeDatas,
+      int keyType,
+      @Nullable HashMap<String, String> optionalParameters)
+      throws NotProvisionedException {
+    if (keyType == KEY_TYPE_STREAMING && schemeDatas != null) {
+      synchronized (this) {
+        streamingSessions.put(ByteBuffer.wrap(scope.clone()), schemeDatas);
+      }
+    }
+    return mediaDrm.getKeyRequest(scope, schemeDatas, keyType, optionalParameters);
+  }
+
+  @Nullable
+  @Override
+  public byte[] provideKeyResponse(byte[] scope, byte[] response)
+      throws NotProvisionedException, DeniedByServerException {
+    byte[] keySetId = mediaDrm.provideKeyResponse(scope, response);
+    boolean streaming;
+    synchronized (this) {
+      streaming = streamingSessions.containsKey(ByteBuffer.wrap(scope));
+    }
+    if (streaming) {
+      renewalScheduler.onLicenseLoaded(scope);
+    }
+    return keySetId;
+  }
+
+  @Override
+  public ProvisionRequest getProvisionRequest() {
+    return mediaDrm.getProvisionRequest();
+  }
+
+  @Override
+  public void provideProvisionResponse(byte[] response) throws DeniedByServerException {
+    mediaDrm.provideProvisionResponse(response);
+  }
+
+  @Override
+  public Map<String, String> queryKeyStatus(byte[] sessionId) {
+    return mediaDrm.queryKeyStatus(sessionId);
+  }
+
+  @Override
+  public void acquire() {
+    synchronized (this) {
+      referenceCount++;
+    }
+    mediaDrm.acquire();
+  }
+
+  @Override
+  public void release() {
+    synchronized (this) {
+      if (--referenceCount == 0) {
+        renewalScheduler.release();
+        streamingSessions.clear();
+      }
+    }
+    mediaDrm.release();
+  }
+
+  @Override
+  public void restoreKeys(byte[] sessionId, byte[] keySetId) {
+    mediaDrm.restoreKeys(sessionId, keySetId);
+  }
+
+  @Override
+  public String getPropertyString(String propertyName) {
+    return mediaDrm.getPropertyString(propertyName);
+  }
+
+  @Override
+  public byte[] getPropertyByteArray(String propertyName) {
+    return mediaDrm.getPropertyByteArray(propertyName);
+  }
+
+  @Override
+  public void setPropertyString(String propertyName, String value) {
+    mediaDrm.setPropertyString(propertyName, value);
+  }
+
+  @Override
+  public void setPropertyByteArray(String propertyName, byte[] value) {
+    mediaDrm.setPropertyByteArray(propertyName, value);
+  }
+
+  @Override
+  public FrameworkMediaCrypto createMediaCrypto(byte[] initData) throws MediaCryptoException {
+    return mediaDrm.createMediaCrypto(initData);
+  }
+
+  @Override
+  public Class<FrameworkMediaCrypto> getExoMediaCryptoType() {
+    return mediaDrm.getExoMediaCryptoType();
+  }
+
+  @Override
+  public String toString() {
+    return renewalScheduler.toString();
+  }
+
+  private static ScheduledExecutorService newRenewalExecutor() {
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            /* corePoolSize= */ 1,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LicenseRenewal");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private final class SessionRenewer implements LicenseRenewalScheduler.Renewer {
+
+    @Override
+    public long getLicenseDurationRemainingSec(byte[] sessionId) {
+      Map<String, String> keyStatus = mediaDrm.queryKeyStatus(sessionId);
+      String durationRemaining =
+          keyStatus != null ? keyStatus.get(PROPERTY_LICENSE_DURATION_REMAINING) : null;
+      if (durationRemaining == null) {
+        return -1;
+      }
+      try {
+        return Long.parseLong(durationRemaining);
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
+
+    @Override
+    public void renew(byte[] sessionId) throws Exception {
+      List<DrmInitData.SchemeData> schemeDatas;
+      synchronized (RenewingMediaDrm.this) {
+        schemeDatas = streamingSessions.get(ByteBuffer.wrap(sessionId));
+      }
+      if (schemeDatas == null) {
+        // The session was closed.
+        return;
+      }
+      // The CDM answers a key request on a licensed session with a renewal request.
+      KeyRequest request =
+          mediaDrm.getKeyRequest(
+              sessionId, schemeDatas, KEY_TYPE_STREAMING, /* optionalParameters= */ null);
+      byte[] response =
+          callback
+              .executeKeyRequestAsync(request)
+              .get(WidevineMediaDrmCallback.DEFAULT_KEY_REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      mediaDrm.provideKeyResponse(sessionId, response);
+    }
+  }
+}
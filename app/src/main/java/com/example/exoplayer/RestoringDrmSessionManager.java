@@ -0,0 +1,204 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Pair;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionEventListener;
+import com.google.android.exoplayer2.drm.DefaultDrmSessionManager;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+import com.google.android.exoplayer2.drm.WidevineUtil;
+
+import java.io.IOException;
+
+/**
+ * A {@link DrmSessionManager} that plays the content's PSSH from a persisted offline license when
+ * there is one, and otherwise requests its license as an offline license and persists it for the
+ * next time the content is opened.
+ *
+ * <p>The offline license is handled by a {@link DefaultDrmSessionManager} dedicated to the PSSH of
+ * the first session, since a manager's mode applies to every session it acquires. Sessions for any
+ * other PSSH, such as the rotated keys of later live periods, are acquired from a manager in the
+ * default mode, so that they request their own licenses.
+ *
+ * <p>The DRM init data is only known once the manifest has loaded, and the license must be restored
+ * before the dedicated manager acquires any session. Doing both at the first acquisition covers the
+ * player, the license prefetch and the key rotation prefetch alike, whichever comes first.
+ */
+public final class RestoringDrmSessionManager implements DrmSessionManager<ExoMediaCrypto> {
+
+  private final DefaultDrmSessionManager<ExoMediaCrypto> drmSessionManager;
+  private final DefaultDrmSessionManager<ExoMediaCrypto> offlineDrmSessionManager;
+  private final OfflineLicenseManager offlineLicenseManager;
+  private final boolean persistLicenses;
+
+  // The fields below are touched on the playback thread only.
+
+  /** Whether the persisted license has been looked up. */
+  private boolean restoreAttempted;
+  /** Whether the dedicated manager is used, and so prepared along with the wrapped one. */
+  private boolean offlineManagerUsed;
+  /** The content id whose sessions are acquired from the dedicated manager, if any. */
+  @Nullable private String offlineContentId;
+  /** The first session acquired from the dedicated manager, until its keys are loaded. */
+  @Nullable private DrmSession<ExoMediaCrypto> offlineSession;
+
+  private int prepareCount;
+
+  /**
+   * @param drmSessionManagerBuilder The builder of the wrapped session managers.
+   * @param mediaDrmCallback The callback that executes the key and provisioning requests.
+   * @param offlineLicenseManager The manager of the persisted offline licenses.
+   * @param persistLicenses Whether licenses missing from the store are requested as offline
+   *     licenses and persisted. Must only be set if the license server's policy grants persistent
+   *     licenses, since playback of content whose license cannot be persisted fails once.
+   */
+  public RestoringDrmSessionManager(
+      DefaultDrmSessionManager.Builder drmSessionManagerBuilder,
+      MediaDrmCallback mediaDrmCallback,
+      OfflineLicenseManager offlineLicenseManager,
+      boolean persistLicenses) {
+    this.offlineLicenseManager = offlineLicenseManager;
+    this.persistLicenses = persistLicenses;
+    drmSessionManager = drmSessionManagerBuilder.build(mediaDrmCallback);
+    offlineDrmSessionManager = drmSessionManagerBuilder.build(mediaDrmCallback);
+  }
+
+  @Override
+  public void prepare() {
+    if (prepareCount++ == 0 && offlineManagerUsed) {
+      offlineDrmSessionManager.prepare();
+    }
+    drmSessionManager.prepare();
+  }
+
+  @Override
+  public void release() {
+    drmSessionManager.release();
+    if (--prepareCount == 0 && offlineManagerUsed) {
+      offlineDrmSessionManager.release();
+    }
+  }
+
+  @Override
+  public boolean canAcquireSession(DrmInitData drmInitData) {
+    return drmSessionManager.canAcquireSession(drmInitData);
+  }
+
+  @Nullable
+  @Override
+  public DrmSession<ExoMediaCrypto> acquirePlaceholderSession(
+      Looper playbackLooper, int trackType) {
+    return drmSessionManager.acquirePlaceholderSession(playbackLooper, trackType);
+  }
+
+  @Override
+  public DrmSession<ExoMediaCrypto> acquireSession(
+      Looper playbackLooper, DrmInitData drmInitData) {
+    if (!restoreAttempted) {
+      restoreAttempted = true;
+      setUpOfflineLicense(playbackLooper, drmInitData);
+    }
+    if (offlineContentId != null
+        && offlineContentId.equals(OfflineLicenseManager.getContentId(drmInitData))) {
+      DrmSession<ExoMediaCrypto> drmSession =
+          offlineDrmSessionManager.acquireSession(playbackLooper, drmInitData);
+      if (offlineSession == null) {
+        offlineSession = drmSession;
+      }
+      return drmSession;
+    }
+    return drmSessionManager.acquireSession(playbackLooper, drmInitData);
+  }
+
+  @Nullable
+  @Override
+  public Class<? extends ExoMediaCrypto> getExoMediaCryptoType(DrmInitData drmInitData) {
+    return drmSessionManager.getExoMediaCryptoType(drmInitData);
+  }
+
+  private void setUpOfflineLicense(Looper playbackLooper, DrmInitData drmInitData) {
+    String contentId = OfflineLicenseManager.getContentId(drmInitData);
+    if (contentId == null) {
+      return;
+    }
+    boolean restored = offlineLicenseManager.restoreLicense(offlineDrmSessionManager, drmInitData);
+    if (!restored) {
+      if (!persistLicenses || !offlineLicenseManager.canPersistLicense(drmInitData)) {
+        return;
+      }
+      // The session's own key request asks for an offline license, which is persisted once
+      // loaded, rather than a second license being downloaded alongside it.
+      offlineDrmSessionManager.setMode(
+          DefaultDrmSessionManager.MODE_DOWNLOAD, /* offlineLicenseKeySetId= */ null);
+    }
+    offlineContentId = contentId;
+    offlineManagerUsed = true;
+    offlineDrmSessionManager.addListener(
+        new Handler(playbackLooper), new OfflineSessionListener(drmInitData, restored));
+    if (prepareCount > 0) {
+      offlineDrmSessionManager.prepare();
+    }
+  }
+
+  /**
+   * Persists the license of the first session of the dedicated manager, or gives up on the offline
+   * license if the session fails to open. Stops listening once the session has opened or failed.
+   */
+  private final class OfflineSessionListener implements DefaultDrmSessionEventListener {
+
+    private final DrmInitData drmInitData;
+    private final boolean restored;
+
+    public OfflineSessionListener(DrmInitData drmInitData, boolean restored) {
+      this.drmInitData = drmInitData;
+      this.restored = restored;
+    }
+
+    @Override
+    public void onDrmKeysRestored() {
+      stopListening();
+    }
+
+    @Override
+    public void onDrmKeysLoaded() {
+      // A restored license close to its expiry is renewed, which loads keys rather than restores
+      // them.
+      if (!restored && offlineSession != null) {
+        Pair<Long, Long> durationRemainingSec =
+            WidevineUtil.getLicenseDurationRemainingSec(offlineSession);
+        offlineLicenseManager.persistLicense(
+            drmInitData,
+            offlineSession.getOfflineLicenseKeySetId(),
+            durationRemainingSec != null ? durationRemainingSec.first : C.TIME_UNSET);
+      }
+      stopListening();
+    }
+
+    @Override
+    public void onDrmSessionManagerError(Exception error) {
+      if (!restored) {
+        offlineLicenseManager.onLicenseNotPersisted(drmInitData);
+      } else if (!(error instanceof IOException)) {
+        // The CDM rejected the restored license. Network errors, of provisioning for example, say
+        // nothing about the license.
+        offlineLicenseManager.invalidateLicense(drmInitData);
+      }
+      // Sessions acquired when the player retries request streaming licenses.
+      offlineContentId = null;
+      stopListening();
+    }
+
+    private void stopListening() {
+      offlineSession = null;
+      offlineDrmSessionManager.removeListener(this);
+    }
+  }
+}
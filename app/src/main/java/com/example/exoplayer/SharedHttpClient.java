@@ -0,0 +1,125 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.util.Clock;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+
+/**
+ * The {@link OkHttpClient} shared by every HTTP data source of the app, so that segment loads,
+ * manifest refreshes and license requests reuse pooled keep-alive connections instead of each
+ * paying for its own TCP and TLS handshakes. HTTP/2 is negotiated with servers that support it,
+ * in which case concurrent requests to a host are multiplexed over one connection.
+ */
+public final class SharedHttpClient {
+
+  /** Builder for {@link SharedHttpClient} instances. */
+  public static final class Builder {
+
+    private int maxIdleConnections;
+    private long keepAliveDurationMs;
+    private long connectTimeoutMs;
+    private long readTimeoutMs;
+    private long dnsCacheTtlMs;
+    private Dns dns;
+    private Clock clock;
+
+    /** Creates a builder with default values. */
+    public Builder() {
+      maxIdleConnections = 8;
+      keepAliveDurationMs = 5 * 60 * 1000;
+      connectTimeoutMs = 8000;
+      readTimeoutMs = 8000;
+      dnsCacheTtlMs = 60 * 1000;
+      dns = Dns.SYSTEM;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept in the pool, and how long an idle
+     * connection is kept before it is closed.
+     */
+    public Builder setConnectionPool(int maxIdleConnections, long keepAliveDurationMs) {
+      this.maxIdleConnections = maxIdleConnections;
+      this.keepAliveDurationMs = keepAliveDurationMs;
+      return this;
+    }
+
+    /** Sets the connect and read timeouts. */
+    public Builder setTimeouts(long connectTimeoutMs, long readTimeoutMs) {
+      this.connectTimeoutMs = connectTimeoutMs;
+      this.readTimeoutMs = readTimeoutMs;
+      return this;
+    }
+
+    /** Sets how long DNS lookups are cached. 0 disables caching. */
+    public Builder setDnsCacheTtlMs(long dnsCacheTtlMs) {
+      this.dnsCacheTtlMs = dnsCacheTtlMs;
+      return this;
+    }
+
+    /** Sets the {@link Dns} used for lookups that are not cached. */
+    public Builder setDns(Dns dns) {
+      this.dns = dns;
+      return this;
+    }
+
+    /** Sets the {@link Clock} against which cached DNS lookups expire. */
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /** Returns a {@link SharedHttpClient} with the values of this builder. */
+    public SharedHttpClient build() {
+      return new SharedHttpClient(this);
+    }
+  }
+
+  private final OkHttpClient client;
+  private final HttpConnectionStats connectionStats;
+
+  private SharedHttpClient(Builder builder) {
+    connectionStats = new HttpConnectionStats();
+    Dns dns =
+        builder.dnsCacheTtlMs > 0
+            ? new CachingDns(builder.dns, builder.dnsCacheTtlMs, builder.clock)
+            : builder.dns;
+    client =
+        new OkHttpClient.Builder()
+            .connectionPool(
+                new ConnectionPool(
+                    builder.maxIdleConnections,
+                    builder.keepAliveDurationMs,
+                    TimeUnit.MILLISECONDS))
+            .dns(dns)
+            .connectTimeout(builder.connectTimeoutMs, TimeUnit.MILLISECONDS)
+            .readTimeout(builder.readTimeoutMs, TimeUnit.MILLISECONDS)
+            .eventListener(connectionStats)
+            .build();
+  }
+
+  /** Returns the shared client. */
+  public OkHttpClient getClient() {
+    return client;
+  }
+
+  /** Returns the per-host connection reuse stats of the shared client. */
+  public HttpConnectionStats getConnectionStats() {
+    return connectionStats;
+  }
+
+  /**
+   * Returns a {@link HttpDataSource.Factory} whose data sources use the shared client.
+   *
+   * @param userAgent The user agent sent with requests.
+   */
+  public HttpDataSource.Factory buildHttpDataSourceFactory(String userAgent) {
+    return new OkHttpDataSourceFactory(client, userAgent);
+  }
+}
@@ -0,0 +1,96 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+
+/**
+ * A {@link LoadControl} that behaves like its delegate, except that while in standby it stops
+ * loading once a small buffer has been filled. Used for players that are prepared ahead of being
+ * shown, so that they do not compete for memory and bandwidth with the player on screen.
+ */
+public final class StandbyLoadControl implements LoadControl {
+
+  private final LoadControl delegate;
+  private final long standbyBufferUs;
+
+  private volatile boolean standby;
+
+  /**
+   * @param delegate The {@link LoadControl} that decides when not in standby.
+   * @param standbyBufferMs The duration of media buffered in standby.
+   */
+  public StandbyLoadControl(LoadControl delegate, int standbyBufferMs) {
+    this.delegate = delegate;
+    this.standbyBufferUs = C.msToUs(standbyBufferMs);
+  }
+
+  /** Returns a control that delegates to a {@link DefaultLoadControl}. */
+  public StandbyLoadControl(int standbyBufferMs) {
+    this(new DefaultLoadControl.Builder().createDefaultLoadControl(), standbyBufferMs);
+  }
+
+  /** Sets whether the control is in standby. May be called from any thread. */
+  public void setStandby(boolean standby) {
+    this.standby = standby;
+  }
+
+  /** Returns whether the control is in standby. */
+  public boolean isStandby() {
+    return standby;
+  }
+
+  @Override
+  public void onPrepared() {
+    delegate.onPrepared();
+  }
+
+  @Override
+  public void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+    delegate.onTracksSelected(renderers, trackGroups, trackSelections);
+  }
+
+  @Override
+  public void onStopped() {
+    delegate.onStopped();
+  }
+
+  @Override
+  public void onReleased() {
+    delegate.onReleased();
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return delegate.getAllocator();
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return delegate.getBackBufferDurationUs();
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return delegate.retainBackBufferFromKeyframe();
+  }
+
+  @Override
+  public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+    if (standby && bufferedDurationUs >= standbyBufferUs) {
+      return false;
+    }
+    return delegate.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+    return delegate.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering);
+  }
+}
@@ -0,0 +1,76 @@
+package com.example.exoplayer;
+
+import android.view.Surface;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.MediaLoadData;
+
+/**
+ * An {@link AnalyticsListener} that records the startup phases reported by a player into a
+ * {@link StartupTracker.Session}. Provisioning and license phases are recorded by {@link
+ * WidevineMediaDrmCallback}, which sees the requests themselves.
+ */
+public final class StartupAnalyticsListener implements AnalyticsListener {
+
+  private final StartupTracker.Session session;
+
+  /** @param session The session into which phases are recorded. */
+  public StartupAnalyticsListener(StartupTracker.Session session) {
+    this.session = session;
+  }
+
+  @Override
+  public void onLoadStarted(
+      EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData) {
+    if (mediaLoadData.dataType == C.DATA_TYPE_MANIFEST) {
+      session.record(StartupTracker.PHASE_MANIFEST_REQUESTED);
+    }
+  }
+
+  @Override
+  public void onLoadCompleted(
+      EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData) {
+    if (mediaLoadData.dataType == C.DATA_TYPE_MANIFEST) {
+      session.record(StartupTracker.PHASE_MANIFEST_LOADED);
+    } else if (mediaLoadData.dataType == C.DATA_TYPE_MEDIA) {
+      session.record(StartupTracker.PHASE_FIRST_MEDIA_LOADED);
+    }
+  }
+
+  @Override
+  public void onDrmSessionAcquired(EventTime eventTime) {
+    session.record(StartupTracker.PHASE_DRM_SESSION_ACQUIRED);
+  }
+
+  @Override
+  public void onDrmKeysLoaded(EventTime eventTime) {
+    session.record(StartupTracker.PHASE_KEYS_LOADED);
+  }
+
+  @Override
+  public void onDecoderInitialized(
+      EventTime eventTime, int trackType, String decoderName, long initializationDurationMs) {
+    if (trackType == C.TRACK_TYPE_VIDEO) {
+      session.record(StartupTracker.PHASE_VIDEO_DECODER_INITIALIZED);
+    } else if (trackType == C.TRACK_TYPE_AUDIO) {
+      session.record(StartupTracker.PHASE_AUDIO_DECODER_INITIALIZED);
+    }
+  }
+
+  @Override
+  public void onPlayerStateChanged(EventTime eventTime, boolean playWhenReady, int playbackState) {
+    if (playbackState == Player.STATE_READY) {
+      session.record(StartupTracker.PHASE_READY);
+    }
+  }
+
+  @Override
+  public void onRenderedFirstFrame(EventTime eventTime, @Nullable Surface surface) {
+    session.record(StartupTracker.PHASE_FIRST_FRAME);
+  }
+}
@@ -0,0 +1,150 @@
+package com.example.exoplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact append-only file of {@link StartupTimeline}s.
+ *
+ * <p>Each timeline is written as its wall clock start time, a bit mask of the phases that
+ * happened and a variable length offset for each of them, which typically takes under 30 bytes.
+ * When the file grows past its maximum size it is moved aside, replacing the previously moved
+ * file, and a new one is started.
+ */
+public final class StartupLog {
+
+  /** The default maximum size of the log file, in bytes. */
+  public static final long DEFAULT_MAX_SIZE_BYTES = 64 * 1024;
+
+  private static final int VERSION = 1;
+
+  private final File file;
+  private final File previousFile;
+  private final long maxSizeBytes;
+
+  /** @param file The log file. */
+  public StartupLog(File file) {
+    this(file, DEFAULT_MAX_SIZE_BYTES);
+  }
+
+  /**
+   * @param file The log file.
+   * @param maxSizeBytes The size past which the file is moved aside and a new one is started.
+   */
+  public StartupLog(File file, long maxSizeBytes) {
+    this.file = file;
+    this.previousFile = new File(file.getPath() + ".1");
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /** Appends {@code timelines} to the file. */
+  public synchronized void append(List<StartupTimeline> timelines) throws IOException {
+    if (file.length() >= maxSizeBytes) {
+      if (previousFile.exists() && !previousFile.delete()) {
+        throw new IOException("Failed to delete " + previousFile);
+      }
+      if (!file.renameTo(previousFile)) {
+        throw new IOException("Failed to move " + file);
+      }
+    }
+    boolean newFile = !file.exists() || file.length() == 0;
+    DataOutputStream output =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file, /* append= */ true)));
+    try {
+      if (newFile) {
+        output.writeByte(VERSION);
+      }
+      for (StartupTimeline timeline : timelines) {
+        write(output, timeline);
+      }
+    } finally {
+      output.close();
+    }
+  }
+
+  /** Returns the timelines in the file, oldest first, or an empty list if there is none. */
+  public synchronized List<StartupTimeline> read() throws IOException {
+    List<StartupTimeline> timelines = new ArrayList<>();
+    if (!file.exists() || file.length() == 0) {
+      return timelines;
+    }
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      int version = input.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unsupported startup log version: " + version);
+      }
+      while (true) {
+        long wallClockStartTimeMs;
+        try {
+          wallClockStartTimeMs = input.readLong();
+        } catch (EOFException e) {
+          return timelines;
+        }
+        int phaseMask = input.readUnsignedShort();
+        long[] offsetsMs = new long[StartupTracker.PHASE_COUNT];
+        for (int phase = 0; phase < StartupTracker.PHASE_COUNT; phase++) {
+          offsetsMs[phase] =
+              (phaseMask & (1 << phase)) != 0 ? readVarLong(input) : StartupTracker.UNKNOWN;
+        }
+        timelines.add(new StartupTimeline(timelines.size(), wallClockStartTimeMs, offsetsMs));
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  private static void write(DataOutputStream output, StartupTimeline timeline)
+      throws IOException {
+    int phaseMask = 0;
+    for (int phase = 0; phase < StartupTracker.PHASE_COUNT; phase++) {
+      if (timeline.getOffsetMs(phase) != StartupTracker.UNKNOWN) {
+        phaseMask |= 1 << phase;
+      }
+    }
+    output.writeLong(timeline.wallClockStartTimeMs);
+    output.writeShort(phaseMask);
+    for (int phase = 0; phase < StartupTracker.PHASE_COUNT; phase++) {
+      if ((phaseMask & (1 << phase)) != 0) {
+        // Phases recorded from a different thread may precede the start by a little.
+        writeVarLong(output, Math.max(0, timeline.getOffsetMs(phase)));
+      }
+    }
+  }
+
+  private static void writeVarLong(OutputStream output, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private static long readVarLong(InputStream input) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.read();
+      if (b == -1) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed startup log");
+  }
+}
@@ -0,0 +1,62 @@
+package com.example.exoplayer;
+
+/** An immutable snapshot of when each startup phase of a playback session happened. */
+public final class StartupTimeline {
+
+  /** The sequence number of the session. Sessions read from a log are numbered by position. */
+  public final long sequence;
+  /** The wall clock time at which the session started, in milliseconds since the epoch. */
+  public final long wallClockStartTimeMs;
+
+  private final long[] offsetsMs;
+
+  /**
+   * @param sequence The sequence number of the session.
+   * @param wallClockStartTimeMs The wall clock time at which the session started.
+   * @param offsetsMs For each phase, the time from the start of the session to the phase, or
+   *     {@link StartupTracker#UNKNOWN} if the phase has not happened.
+   */
+  public StartupTimeline(long sequence, long wallClockStartTimeMs, long[] offsetsMs) {
+    this.sequence = sequence;
+    this.wallClockStartTimeMs = wallClockStartTimeMs;
+    this.offsetsMs = offsetsMs;
+  }
+
+  /**
+   * Returns the time from the start of the session to {@code phase}, or {@link
+   * StartupTracker#UNKNOWN} if the phase has not happened.
+   */
+  public long getOffsetMs(int phase) {
+    return offsetsMs[phase];
+  }
+
+  /**
+   * Returns the time from {@code fromPhase} to {@code toPhase}, or {@link StartupTracker#UNKNOWN}
+   * if either has not happened.
+   */
+  public long getDurationMs(int fromPhase, int toPhase) {
+    long fromOffsetMs = offsetsMs[fromPhase];
+    long toOffsetMs = offsetsMs[toPhase];
+    if (fromOffsetMs == StartupTracker.UNKNOWN || toOffsetMs == StartupTracker.UNKNOWN) {
+      return StartupTracker.UNKNOWN;
+    }
+    return toOffsetMs - fromOffsetMs;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("session ").append(sequence).append(':');
+    for (int phase = 0; phase < offsetsMs.length; phase++) {
+      if (offsetsMs[phase] != StartupTracker.UNKNOWN) {
+        builder
+            .append(' ')
+            .append(StartupTracker.getPhaseName(phase))
+            .append('=')
+            .append(offsetsMs[phase])
+            .append("ms");
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,334 @@
+package com.example.exoplayer;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records when each phase of playback startup happens, per playback session, so that the time to
+ * first frame can be broken down into manifest fetch, provisioning, license request, decoder
+ * initialization and first buffer.
+ *
+ * <p>Timelines are kept in a fixed ring of the most recent sessions. All storage is allocated up
+ * front, and {@link Session#record(int)} only performs compare-and-set operations, so recording
+ * neither locks nor allocates on the playback, DRM or main thread. A session is overwritten once as
+ * many sessions as the ring holds have been started after it.
+ */
+public final class StartupTracker {
+
+  /** The session was started, when the player was created. */
+  public static final int PHASE_START = 0;
+  /** The first manifest request was sent. */
+  public static final int PHASE_MANIFEST_REQUESTED = 1;
+  /** The first manifest was loaded. */
+  public static final int PHASE_MANIFEST_LOADED = 2;
+  /** A DRM session was acquired. */
+  public static final int PHASE_DRM_SESSION_ACQUIRED = 3;
+  /** A provisioning request was sent. */
+  public static final int PHASE_PROVISIONING_REQUESTED = 4;
+  /** The device was provisioned. */
+  public static final int PHASE_PROVISIONED = 5;
+  /** A license request was sent. */
+  public static final int PHASE_LICENSE_REQUESTED = 6;
+  /** A license response was received. */
+  public static final int PHASE_LICENSE_RECEIVED = 7;
+  /** The DRM keys were loaded into the session. */
+  public static final int PHASE_KEYS_LOADED = 8;
+  /** The audio decoder was initialized. */
+  public static final int PHASE_AUDIO_DECODER_INITIALIZED = 9;
+  /** The video decoder was initialized. */
+  public static final int PHASE_VIDEO_DECODER_INITIALIZED = 10;
+  /** The first media chunk was loaded. */
+  public static final int PHASE_FIRST_MEDIA_LOADED = 11;
+  /** The player became ready. */
+  public static final int PHASE_READY = 12;
+  /** The first video frame was rendered. */
+  public static final int PHASE_FIRST_FRAME = 13;
+
+  /** The number of phases. */
+  public static final int PHASE_COUNT = 14;
+
+  /** The default number of sessions kept. */
+  public static final int DEFAULT_CAPACITY = 64;
+
+  /** Returned by {@link #getPercentileMs} when no session has both phases. */
+  public static final long UNKNOWN = -1;
+
+  private static final String[] PHASE_NAMES = {
+    "start",
+    "manifestRequested",
+    "manifestLoaded",
+    "drmSessionAcquired",
+    "provisioningRequested",
+    "provisioned",
+    "licenseRequested",
+    "licenseReceived",
+    "keysLoaded",
+    "audioDecoderInitialized",
+    "videoDecoderInitialized",
+    "firstMediaLoaded",
+    "ready",
+    "firstFrame"
+  };
+
+  private static final String TAG = "StartupTracker";
+
+  /** Marks a phase that has not happened in a slot. */
+  private static final long UNSET = Long.MIN_VALUE;
+  /** Marks a slot that holds no session, or one that is being reset. */
+  private static final long NO_SESSION = -1;
+
+  /** A playback session whose startup phases are recorded. */
+  public static final class Session {
+
+    private final StartupTracker tracker;
+    private final long sequence;
+
+    private Session(StartupTracker tracker, long sequence) {
+      this.tracker = tracker;
+      this.sequence = sequence;
+    }
+
+    /**
+     * Records that {@code phase} happened now. Only the first occurrence of each phase is kept.
+     * Does not lock or allocate, and may be called from any thread.
+     *
+     * @param phase One of the {@code PHASE_*} constants.
+     */
+    public void record(int phase) {
+      tracker.record(sequence, phase, System.nanoTime());
+    }
+
+    /**
+     * Records that {@code phase} happened at {@code timestampNs}.
+     *
+     * @param phase One of the {@code PHASE_*} constants.
+     * @param timestampNs The time of the phase, in the {@link System#nanoTime()} time base.
+     */
+    public void record(int phase, long timestampNs) {
+      tracker.record(sequence, phase, timestampNs);
+    }
+  }
+
+  private final int capacity;
+  private final AtomicLong nextSequence;
+  private final AtomicLongArray slotSequences;
+  private final AtomicLongArray timestampsNs;
+  private final long[] wallClockStartTimesMs;
+  /** The sequence of the session last logged from each slot. Only accessed on logExecutor. */
+  private final long[] loggedSequences;
+  private final ExecutorService logExecutor;
+
+  @Nullable private final StartupLog log;
+
+  /**
+   * @param capacity The number of sessions kept.
+   * @param logFile The file to which completed timelines are appended by {@link #flushLog()}, or
+   *     null to keep them in memory only.
+   */
+  public StartupTracker(int capacity, @Nullable File logFile) {
+    this.capacity = capacity;
+    nextSequence = new AtomicLong();
+    slotSequences = new AtomicLongArray(capacity);
+    timestampsNs = new AtomicLongArray(capacity * PHASE_COUNT);
+    wallClockStartTimesMs = new long[capacity];
+    loggedSequences = new long[capacity];
+    logExecutor = Executors.newSingleThreadExecutor();
+    log = logFile != null ? new StartupLog(logFile) : null;
+    for (int i = 0; i < capacity; i++) {
+      slotSequences.set(i, NO_SESSION);
+      loggedSequences[i] = NO_SESSION;
+    }
+  }
+
+  /** Returns the name of {@code phase}. */
+  public static String getPhaseName(int phase) {
+    return PHASE_NAMES[phase];
+  }
+
+  /** Starts a session, and records its {@link #PHASE_START} now. */
+  public Session startSession() {
+    return startSession(System.nanoTime());
+  }
+
+  /**
+   * Starts a session.
+   *
+   * @param startTimeNs The time the session started, in the {@link System#nanoTime()} time base.
+   */
+  public Session startSession(long startTimeNs) {
+    long sequence = nextSequence.getAndIncrement();
+    int slot = (int) (sequence % capacity);
+    // Invalidate the slot first, so that readers and late writers of the overwritten session
+    // ignore it while it is reset.
+    slotSequences.set(slot, NO_SESSION);
+    int offset = slot * PHASE_COUNT;
+    for (int i = 0; i < PHASE_COUNT; i++) {
+      timestampsNs.set(offset + i, UNSET);
+    }
+    timestampsNs.set(offset + PHASE_START, startTimeNs);
+    wallClockStartTimesMs[slot] = System.currentTimeMillis();
+    slotSequences.set(slot, sequence);
+    return new Session(this, sequence);
+  }
+
+  /**
+   * Returns the timelines of the sessions kept, oldest first, including sessions that are still
+   * starting.
+   */
+  public List<StartupTimeline> getTimelines() {
+    long endSequence = nextSequence.get();
+    long startSequence = Math.max(0, endSequence - capacity);
+    List<StartupTimeline> timelines = new ArrayList<>((int) (endSequence - startSequence));
+    for (long sequence = startSequence; sequence < endSequence; sequence++) {
+      StartupTimeline timeline = getTimeline(sequence);
+      if (timeline != null) {
+        timelines.add(timeline);
+      }
+    }
+    return timelines;
+  }
+
+  /**
+   * Returns the given percentile of the time from {@code fromPhase} to {@code toPhase}, over the
+   * sessions kept in which both phases happened, or {@link #UNKNOWN} if there are none.
+   *
+   * @param fromPhase The phase from which time is measured.
+   * @param toPhase The phase to which time is measured.
+   * @param percentile The percentile, between 0 and 1.
+   */
+  public long getPercentileMs(int fromPhase, int toPhase, float percentile) {
+    List<StartupTimeline> timelines = getTimelines();
+    long[] durationsMs = new long[timelines.size()];
+    int count = 0;
+    for (int i = 0; i < timelines.size(); i++) {
+      long durationMs = timelines.get(i).getDurationMs(fromPhase, toPhase);
+      if (durationMs != UNKNOWN) {
+        durationsMs[count++] = durationMs;
+      }
+    }
+    if (count == 0) {
+      return UNKNOWN;
+    }
+    Arrays.sort(durationsMs, 0, count);
+    int index = (int) Math.ceil(percentile * count) - 1;
+    return durationsMs[Math.max(0, Math.min(count - 1, index))];
+  }
+
+  /**
+   * Appends the timelines of sessions that have rendered their first frame since the last flush
+   * to the log file, on a background thread. Sessions that never reach their first frame are not
+   * logged. Does nothing if the tracker has no log file.
+   *
+   * @return A {@link Future} that completes when the timelines are written.
+   */
+  public Future<?> flushLog() {
+    return logExecutor.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            writeCompletedTimelines();
+          }
+        });
+  }
+
+  /** Returns the timelines in the log file, oldest first, or an empty list if there is none. */
+  public List<StartupTimeline> readLog() throws IOException {
+    return log != null ? log.read() : new ArrayList<StartupTimeline>();
+  }
+
+  /** Stops the log thread once pending flushes complete. */
+  public void release() {
+    logExecutor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    List<StartupTimeline> timelines = getTimelines();
+    StringBuilder builder = new StringBuilder();
+    builder.append("sessions=").append(timelines.size());
+    for (int phase = PHASE_START + 1; phase < PHASE_COUNT; phase++) {
+      long p50 = getPercentileMs(PHASE_START, phase, 0.5f);
+      if (p50 != UNKNOWN) {
+        builder
+            .append(", ")
+            .append(PHASE_NAMES[phase])
+            .append("=p50:")
+            .append(p50)
+            .append("/p90:")
+            .append(getPercentileMs(PHASE_START, phase, 0.9f))
+            .append("ms");
+      }
+    }
+    return builder.toString();
+  }
+
+  private void record(long sequence, int phase, long timestampNs) {
+    int slot = (int) (sequence % capacity);
+    if (slotSequences.get(slot) != sequence) {
+      // The session has been overwritten.
+      return;
+    }
+    int index = slot * PHASE_COUNT + phase;
+    if (timestampsNs.compareAndSet(index, UNSET, timestampNs)
+        && slotSequences.get(slot) != sequence) {
+      // The slot was reset for a new session between the check and the compare-and-set, so the
+      // timestamp must not be attributed to the new session.
+      timestampsNs.compareAndSet(index, timestampNs, UNSET);
+    }
+  }
+
+  @Nullable
+  private StartupTimeline getTimeline(long sequence) {
+    int slot = (int) (sequence % capacity);
+    if (slotSequences.get(slot) != sequence) {
+      return null;
+    }
+    long startTimeNs = timestampsNs.get(slot * PHASE_COUNT + PHASE_START);
+    long wallClockStartTimeMs = wallClockStartTimesMs[slot];
+    long[] offsetsMs = new long[PHASE_COUNT];
+    for (int phase = 0; phase < PHASE_COUNT; phase++) {
+      long timestampNs = timestampsNs.get(slot * PHASE_COUNT + phase);
+      offsetsMs[phase] = timestampNs == UNSET ? UNKNOWN : (timestampNs - startTimeNs) / 1000000;
+    }
+    // The slot may have been reused while it was read.
+    if (slotSequences.get(slot) != sequence) {
+      return null;
+    }
+    return new StartupTimeline(sequence, wallClockStartTimeMs, offsetsMs);
+  }
+
+  private void writeCompletedTimelines() {
+    if (log == null) {
+      return;
+    }
+    List<StartupTimeline> completed = new ArrayList<>();
+    for (StartupTimeline timeline : getTimelines()) {
+      int slot = (int) (timeline.sequence % capacity);
+      if (loggedSequences[slot] != timeline.sequence
+          && timeline.getOffsetMs(PHASE_FIRST_FRAME) != UNKNOWN) {
+        loggedSequences[slot] = timeline.sequence;
+        completed.add(timeline);
+      }
+    }
+    if (completed.isEmpty()) {
+      return;
+    }
+    try {
+      log.append(completed);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write startup log", e);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.example.exoplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+
+/** A {@link DataSource} whose reads are capped by a {@link ThroughputLimiter}. */
+public final class ThrottledDataSource implements DataSource {
+
+  /** A factory for {@link ThrottledDataSource} instances sharing one {@link ThroughputLimiter}. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final ThroughputLimiter limiter;
+
+    /**
+     * @param upstreamFactory The factory for the data sources whose reads are capped.
+     * @param limiter The {@link ThroughputLimiter} shared by the data sources.
+     */
+    public Factory(DataSource.Factory upstreamFactory, ThroughputLimiter limiter) {
+      this.upstreamFactory = upstreamFactory;
+      this.limiter = limiter;
+    }
+
+    @Override
+    public ThrottledDataSource createDataSource() {
+      return new ThrottledDataSource(upstreamFactory.createDataSource(), limiter);
+    }
+  }
+
+  private final DataSource upstream;
+  private final ThroughputLimiter limiter;
+
+  /**
+   * @param upstream The data source whose reads are capped.
+   * @param limiter The {@link ThroughputLimiter}.
+   */
+  public ThrottledDataSource(DataSource upstream, ThroughputLimiter limiter) {
+    this.upstream = upstream;
+    this.limiter = limiter;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    return upstream.open(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    int bytesRead = upstream.read(buffer, offset, readLength);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      try {
+        limiter.acquire(bytesRead);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+    return bytesRead;
+  }
+
+  @Nullable
+  @Override
+  public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    upstream.close();
+  }
+}
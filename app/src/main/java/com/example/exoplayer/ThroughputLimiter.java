@@ -0,0 +1,81 @@
+package com.example.exoplayer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the throughput of the loads sharing it, such as the parallel segment loads of a download,
+ * with a token bucket.
+ *
+ * <p>The bucket holds at most one second of throughput. Loads that read more than the bucket holds
+ * go into debt, and the next load waits until the debt is repaid, so that concurrent loads share
+ * the cap fairly.
+ */
+public final class ThroughputLimiter {
+
+  /** A limit that does not cap throughput. */
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  private final long maxBytesPerSecond;
+
+  private double availableBytes;
+  private long lastRefillTimeNs;
+  private long throttledNs;
+
+  /**
+   * @param maxBytesPerSecond The maximum throughput, in bytes per second, or {@link #UNLIMITED}.
+   */
+  public ThroughputLimiter(long maxBytesPerSecond) {
+    this.maxBytesPerSecond = maxBytesPerSecond;
+    availableBytes = maxBytesPerSecond;
+    lastRefillTimeNs = -1;
+  }
+
+  /** Returns the maximum throughput, in bytes per second, or {@link #UNLIMITED}. */
+  public long getMaxBytesPerSecond() {
+    return maxBytesPerSecond;
+  }
+
+  /**
+   * Takes {@code byteCount} bytes from the bucket, blocking until the throughput they represent is
+   * within the cap.
+   *
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public void acquire(int byteCount) throws InterruptedException {
+    long waitNs = reserve(byteCount, System.nanoTime());
+    if (waitNs > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNs);
+    }
+  }
+
+  /**
+   * Takes {@code byteCount} bytes from the bucket, and returns how long the caller must wait before
+   * they are within the cap.
+   *
+   * @param byteCount The number of bytes loaded.
+   * @param nowNs The current time, in nanoseconds.
+   * @return The time to wait, in nanoseconds.
+   */
+  public synchronized long reserve(int byteCount, long nowNs) {
+    if (maxBytesPerSecond == UNLIMITED) {
+      return 0;
+    }
+    if (lastRefillTimeNs != -1) {
+      double refilledBytes = (nowNs - lastRefillTimeNs) / 1e9 * maxBytesPerSecond;
+      availableBytes = Math.min(maxBytesPerSecond, availableBytes + refilledBytes);
+    }
+    lastRefillTimeNs = nowNs;
+    availableBytes -= byteCount;
+    if (availableBytes >= 0) {
+      return 0;
+    }
+    long waitNs = (long) (-availableBytes * 1e9 / maxBytesPerSecond);
+    throttledNs += waitNs;
+    return waitNs;
+  }
+
+  /** Returns the total time loads were made to wait, in milliseconds. */
+  public synchronized long getThrottledMs() {
+    return TimeUnit.NANOSECONDS.toMillis(throttledNs);
+  }
+}
@@ -0,0 +1,62 @@
+package com.example.exoplayer;
+
+/**
+ * Tracks how much throughput varies, as the coefficient of variation of an exponentially weighted
+ * moving mean and variance of bandwidth samples. Recent samples dominate, so a network that settles
+ * down is soon treated as steady again.
+ */
+public final class ThroughputVariance {
+
+  /** The default weight of a new sample. */
+  public static final float DEFAULT_SAMPLE_WEIGHT = 0.2f;
+  /** The number of samples needed before variation is reported. */
+  public static final int MIN_SAMPLE_COUNT = 3;
+
+  private final float sampleWeight;
+
+  private double mean;
+  private double variance;
+  private int sampleCount;
+
+  public ThroughputVariance() {
+    this(DEFAULT_SAMPLE_WEIGHT);
+  }
+
+  /** @param sampleWeight The weight of a new sample, between 0 and 1. */
+  public ThroughputVariance(float sampleWeight) {
+    this.sampleWeight = sampleWeight;
+  }
+
+  /** Adds a bandwidth sample, in bits per second. */
+  public void addSample(long bitrate) {
+    if (sampleCount == 0) {
+      mean = bitrate;
+    } else {
+      double difference = bitrate - mean;
+      double increment = sampleWeight * difference;
+      mean += increment;
+      variance = (1 - sampleWeight) * (variance + difference * increment);
+    }
+    sampleCount++;
+  }
+
+  /** Returns the weighted mean of the samples, or 0 if there are none. */
+  public long getMean() {
+    return Math.round(mean);
+  }
+
+  /**
+   * Returns the standard deviation of the samples divided by their mean, or 0 if there are fewer
+   * than {@link #MIN_SAMPLE_COUNT} samples.
+   */
+  public float getCoefficientOfVariation() {
+    return sampleCount < MIN_SAMPLE_COUNT || mean <= 0 ? 0f : (float) (Math.sqrt(variance) / mean);
+  }
+
+  /** Clears the samples. */
+  public void reset() {
+    mean = 0;
+    variance = 0;
+    sampleCount = 0;
+  }
+}
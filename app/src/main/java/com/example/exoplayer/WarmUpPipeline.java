@@ -0,0 +1,296 @@
+package com.example.exoplayer;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.Clock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Initializes named components in parallel on background threads, so that expensive disk, database
+ * and network setup happens off the thread that first needs the component.
+ *
+ * <p>Each component is exposed as a {@link Future}. Callers that must not block register a callback
+ * with {@link #whenReady(Runnable, String...)}, which runs on the callback executor once the
+ * components it names have finished. The time each component waited in the queue, the time it
+ * took to initialize, and the time callers spent blocked in {@link #await(Future)} are recorded.
+ *
+ * <p>Components may wait for components started before them, since those are dequeued first.
+ */
+public final class WarmUpPipeline {
+
+  private final ExecutorService executor;
+  private final Executor callbackExecutor;
+  private final Clock clock;
+  private final Map<String, Component<?>> components;
+  private final List<PendingCallback> pendingCallbacks;
+
+  private long blockedMs;
+
+  /**
+   * @param threadCount The number of threads on which components are initialized.
+   * @param callbackExecutor The executor on which readiness callbacks run.
+   */
+  public WarmUpPipeline(int threadCount, Executor callbackExecutor) {
+    this(threadCount, callbackExecutor, Clock.DEFAULT);
+  }
+
+  /**
+   * @param threadCount The number of threads on which components are initialized.
+   * @param callbackExecutor The executor on which readiness callbacks run.
+   * @param clock The clock with which the metrics are measured.
+   */
+  public WarmUpPipeline(int threadCount, Executor callbackExecutor, Clock clock) {
+    this.callbackExecutor = callbackExecutor;
+    this.clock = clock;
+    executor = Executors.newFixedThreadPool(threadCount);
+    components = new LinkedHashMap<>();
+    pendingCallbacks = new ArrayList<>();
+  }
+
+  /**
+   * Starts initializing a component.
+   *
+   * @param name The name of the component, used in callbacks and metrics.
+   * @param initializer Initializes and returns the component.
+   * @return A {@link Future} for the component.
+   */
+  public synchronized <T> Future<T> start(String name, Callable<T> initializer) {
+    Component<T> component = new Component<>(name, initializer, clock.elapsedRealtime());
+    components.put(name, component);
+    executor.execute(component);
+    return component;
+  }
+
+  /**
+   * Stops accepting components. The threads exit once the components already started are
+   * initialized.
+   */
+  public void finish() {
+    executor.shutdown();
+  }
+
+  /**
+   * Runs {@code callback} on the callback executor once the named components are initialized,
+   * whether successfully or not. The callback is posted straight away if they already are.
+   *
+   * @param callback The callback.
+   * @param names The names of the components to wait for, or none to wait for all components
+   *     started so far.
+   */
+  public synchronized void whenReady(Runnable callback, String... names) {
+    List<Component<?>> waitingFor = new ArrayList<>();
+    for (String name : names.length > 0 ? Arrays.asList(names) : components.keySet()) {
+      Component<?> component = components.get(name);
+      if (component == null) {
+        throw new IllegalArgumentException("Unknown component: " + name);
+      }
+      if (!component.isDone()) {
+        waitingFor.add(component);
+      }
+    }
+    if (waitingFor.isEmpty()) {
+      callbackExecutor.execute(callback);
+    } else {
+      pendingCallbacks.add(new PendingCallback(callback, waitingFor));
+    }
+  }
+
+  /**
+   * Returns whether the named components are initialized, whether successfully or not.
+   *
+   * @param names The names of the components, or none for all components started so far.
+   */
+  public synchronized boolean isReady(String... names) {
+    for (String name : names.length > 0 ? Arrays.asList(names) : components.keySet()) {
+      Component<?> component = components.get(name);
+      if (component == null || !component.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the error with which the first of the named components that failed to initialize
+   * failed, or null if none of them failed. Components that are not initialized yet have not
+   * failed.
+   *
+   * @param names The names of the components, or none for all components started so far.
+   */
+  @Nullable
+  public synchronized Throwable getError(String... names) {
+    for (String name : names.length > 0 ? Arrays.asList(names) : components.keySet()) {
+      Component<?> component = components.get(name);
+      if (component != null && component.error != null) {
+        return component.error;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the initialized component, blocking until it is ready.
+   *
+   * @throws IllegalStateException If initialization failed.
+   */
+  public <T> T await(Future<T> component) {
+    long startMs = clock.elapsedRealtime();
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return component.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    } finally {
+      long elapsedMs = clock.elapsedRealtime() - startMs;
+      synchronized (this) {
+        blockedMs += elapsedMs;
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the time the named component took to initialize, in milliseconds, or -1 if it is
+   * unknown or not yet initialized.
+   */
+  public synchronized long getDurationMs(String name) {
+    Component<?> component = components.get(name);
+    return component != null ? component.getDurationMs() : -1;
+  }
+
+  /**
+   * Returns the time the named component waited for a thread, in milliseconds, or -1 if it is
+   * unknown or not yet started.
+   */
+  public synchronized long getQueuedMs(String name) {
+    Component<?> component = components.get(name);
+    return component != null ? component.getQueuedMs() : -1;
+  }
+
+  /** Returns the total time callers spent blocked waiting for components, in milliseconds. */
+  public synchronized long getBlockedMs() {
+    return blockedMs;
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (Component<?> component : components.values()) {
+      builder.append(component.name).append('=');
+      long durationMs = component.getDurationMs();
+      if (durationMs != -1) {
+        builder.append(durationMs).append("ms");
+        if (component.error != null) {
+          builder.append(" (failed)");
+        }
+      } else {
+        builder.append("pending");
+      }
+      builder.append(", queued=").append(component.getQueuedMs()).append("ms, ");
+    }
+    return builder.append("blocked=").append(getBlockedMs()).append("ms").toString();
+  }
+
+  private synchronized void onComponentDone(Component<?> component) {
+    Iterator<PendingCallback> iterator = pendingCallbacks.iterator();
+    while (iterator.hasNext()) {
+      PendingCallback pendingCallback = iterator.next();
+      pendingCallback.waitingFor.remove(component);
+      if (pendingCallback.waitingFor.isEmpty()) {
+        iterator.remove();
+        callbackExecutor.execute(pendingCallback.callback);
+      }
+    }
+  }
+
+  private final class Component<T> extends FutureTask<T> {
+
+    private final String name;
+    private final long submitTimeMs;
+
+    private volatile long startTimeMs;
+    private volatile long endTimeMs;
+    @Nullable private volatile Throwable error;
+
+    public Component(String name, Callable<T> initializer, long submitTimeMs) {
+      super(initializer);
+      this.name = name;
+      this.submitTimeMs = submitTimeMs;
+      startTimeMs = -1;
+      endTimeMs = -1;
+    }
+
+    @Override
+    public void run() {
+      startTimeMs = clock.elapsedRealtime();
+      super.run();
+    }
+
+    // The end time is recorded before the component is done, so that it is known to callers that
+    // see it done.
+
+    @Override
+    protected void set(T value) {
+      endTimeMs = clock.elapsedRealtime();
+      super.set(value);
+    }
+
+    @Override
+    protected void setException(Throwable error) {
+      this.error = error;
+      endTimeMs = clock.elapsedRealtime();
+      super.setException(error);
+    }
+
+    @Override
+    protected void done() {
+      onComponentDone(this);
+    }
+
+    public long getQueuedMs() {
+      long startTimeMs = this.startTimeMs;
+      return startTimeMs == -1 ? -1 : startTimeMs - submitTimeMs;
+    }
+
+    public long getDurationMs() {
+      long startTimeMs = this.startTimeMs;
+      long endTimeMs = this.endTimeMs;
+      if (endTimeMs == -1) {
+        return -1;
+      }
+      return startTimeMs == -1 ? 0 : endTimeMs - startTimeMs;
+    }
+  }
+
+  private static final class PendingCallback {
+
+    public final Runnable callback;
+    public final List<Component<?>> waitingFor;
+
+    public PendingCallback(Runnable callback, List<Component<?>> waitingFor) {
+      this.callback = callback;
+      this.waitingFor = waitingFor;
+    }
+  }
+}
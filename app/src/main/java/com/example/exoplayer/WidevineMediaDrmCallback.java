@@ -6,14 +6,14 @@ import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
 import com.google.android.exoplayer2.drm.ExoMediaDrm.ProvisionRequest;
 import com.google.android.exoplayer2.drm.MediaDrmCallback;
-import com.google.android.exoplayer2.upstream.DataSourceInputStream;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
-import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 
@@ -21,9 +21,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * A {@link MediaDrmCallback} that makes requests using {@link HttpDataSource} instances.
@@ -31,10 +36,31 @@ import java.util.UUID;
 @TargetApi(18)
 public final class WidevineMediaDrmCallback implements MediaDrmCallback {
 
+  /** The default maximum time to wait for a key response, in milliseconds. */
+  public static final long DEFAULT_KEY_REQUEST_TIMEOUT_MS = 20000;
+
+  private static final int INITIAL_RESPONSE_BUFFER_SIZE = 4096;
+
   private final HttpDataSource.Factory dataSourceFactory;
   private final String defaultLicenseUrl;
   private final boolean forceDefaultLicenseUrl;
   private final Map<String, String> keyRequestProperties;
+  private final LicenseRequestCoalescer requestCoalescer;
+  private final LicenseRequestMetrics requestMetrics;
+
+  // Guarded by keyRequestProperties.
+  private String userId;
+  private String sessionId;
+  private String merchantId;
+  private String appId;
+  private String customData;
+
+  /** Immutable snapshot of all key request headers, replaced whenever one of them changes. */
+  private volatile Map<String, String> keyRequestHeaders;
+  private volatile long keyRequestTimeoutMs;
+  private volatile LicenseResponseDecoder licenseResponseDecoder;
+  private volatile LicenseRequestExecutor requestExecutor;
+  @Nullable private volatile StartupTracker.Session startupSession;
 
   /**
    * @param defaultLicenseUrl The default license URL. Used for key requests that do not specify
@@ -55,10 +81,136 @@ public final class WidevineMediaDrmCallback implements MediaDrmCallback {
    */
   public WidevineMediaDrmCallback(String defaultLicenseUrl, boolean forceDefaultLicenseUrl,
                                   HttpDataSource.Factory dataSourceFactory) {
+    this(defaultLicenseUrl, forceDefaultLicenseUrl, dataSourceFactory,
+        LicenseRequestCoalescer.getSharedInstance());
+  }
+
+  /**
+   * @param defaultLicenseUrl The default license URL. Used for key requests that do not specify
+   *     their own license URL, or for all key requests if {@code forceDefaultLicenseUrl} is
+   *     set to true.
+   * @param forceDefaultLicenseUrl Whether to use {@code defaultLicenseUrl} for key requests that
+   *     include their own license URL.
+   * @param dataSourceFactory A factory from which to obtain {@link HttpDataSource} instances.
+   * @param requestCoalescer The {@link LicenseRequestCoalescer} on which key requests are executed.
+   */
+  public WidevineMediaDrmCallback(String defaultLicenseUrl, boolean forceDefaultLicenseUrl,
+                                  HttpDataSource.Factory dataSourceFactory,
+                                  LicenseRequestCoalescer requestCoalescer) {
+    this(defaultLicenseUrl, forceDefaultLicenseUrl, dataSourceFactory, requestCoalescer,
+        new LicenseRequestMetrics());
+  }
+
+  /**
+   * @param defaultLicenseUrl The default license URL. Used for key requests that do not specify
+   *     their own license URL, or for all key requests if {@code forceDefaultLicenseUrl} is
+   *     set to true.
+   * @param forceDefaultLicenseUrl Whether to use {@code defaultLicenseUrl} for key requests that
+   *     include their own license URL.
+   * @param dataSourceFactory A factory from which to obtain {@link HttpDataSource} instances.
+   * @param requestCoalescer The {@link LicenseRequestCoalescer} on which key requests are executed.
+   * @param requestMetrics The {@link LicenseRequestMetrics} in which request attempts are recorded,
+   *     and from which the hedging delay is derived. Should be shared by all callbacks of the same
+   *     license server.
+   */
+  public WidevineMediaDrmCallback(String defaultLicenseUrl, boolean forceDefaultLicenseUrl,
+                                  HttpDataSource.Factory dataSourceFactory,
+                                  LicenseRequestCoalescer requestCoalescer,
+                                  LicenseRequestMetrics requestMetrics) {
     this.dataSourceFactory = dataSourceFactory;
     this.defaultLicenseUrl = defaultLicenseUrl;
     this.forceDefaultLicenseUrl = forceDefaultLicenseUrl;
     this.keyRequestProperties = new HashMap<>();
+    this.keyRequestHeaders = buildKeyRequestHeaders(keyRequestProperties, null);
+    this.requestCoalescer = requestCoalescer;
+    this.keyRequestTimeoutMs = DEFAULT_KEY_REQUEST_TIMEOUT_MS;
+    this.licenseResponseDecoder = LicenseResponseDecoder.JSON;
+    this.requestMetrics = requestMetrics;
+    this.requestExecutor =
+        new LicenseRequestExecutor(new LicenseRetryPolicy.Builder().build(), requestMetrics);
+  }
+
+  /**
+   * Sets the {@link LicenseRetryPolicy} applied to key and provisioning requests. Hedged attempts
+   * are only sent for key requests.
+   *
+   * @param retryPolicy The {@link LicenseRetryPolicy}.
+   */
+  public void setRetryPolicy(LicenseRetryPolicy retryPolicy) {
+    requestExecutor = new LicenseRequestExecutor(retryPolicy, requestMetrics);
+  }
+
+  /**
+   * Returns the latency and outcome metrics of every request attempt made by the callback, and by
+   * the other callbacks sharing them.
+   */
+  public LicenseRequestMetrics getRequestMetrics() {
+    return requestMetrics;
+  }
+
+  /**
+   * Sets the playback session into which the provisioning and license phases of startup are
+   * recorded.
+   *
+   * @param startupSession The {@link StartupTracker.Session}, or null to stop recording.
+   */
+  public void setStartupSession(@Nullable StartupTracker.Session startupSession) {
+    this.startupSession = startupSession;
+  }
+
+  /**
+   * Sets the format of license server responses.
+   *
+   * @param mode {@link LicenseResponseDecoder#MODE_JSON} if responses are JSON objects with a
+   *     Base64 encoded {@code license} field, or {@link LicenseResponseDecoder#MODE_RAW} if the
+   *     response body is the license itself.
+   */
+  public void setLicenseResponseMode(int mode) {
+    licenseResponseDecoder =
+        mode == LicenseResponseDecoder.MODE_RAW
+            ? LicenseResponseDecoder.RAW
+            : LicenseResponseDecoder.JSON;
+  }
+
+  /**
+   * Sets the maximum time {@link #executeKeyRequest} waits for a key response. Failed attempts are
+   * not retried after this time.
+   *
+   * @param keyRequestTimeoutMs The timeout, in milliseconds.
+   */
+  public void setKeyRequestTimeoutMs(long keyRequestTimeoutMs) {
+    this.keyRequestTimeoutMs = keyRequestTimeoutMs;
+  }
+
+  /**
+   * Sets the ids sent in the {@code custom-data} header of key requests. The header is encoded once
+   * here, and only encoded again when the ids change.
+   *
+   * @param userId The user id.
+   * @param sessionId The session id.
+   * @param merchantId The merchant id.
+   * @param appId The app id.
+   */
+  public void setCustomData(String userId, String sessionId, String merchantId, String appId) {
+    Assertions.checkNotNull(userId);
+    Assertions.checkNotNull(sessionId);
+    Assertions.checkNotNull(merchantId);
+    Assertions.checkNotNull(appId);
+    synchronized (keyRequestProperties) {
+      if (customData != null
+          && userId.equals(this.userId)
+          && sessionId.equals(this.sessionId)
+          && merchantId.equals(this.merchantId)
+          && appId.equals(this.appId)) {
+        return;
+      }
+      this.userId = userId;
+      this.sessionId = sessionId;
+      this.merchantId = merchantId;
+      this.appId = appId;
+      customData = encodeCustomData(userId, sessionId, merchantId, appId);
+      keyRequestHeaders = buildKeyRequestHeaders(keyRequestProperties, customData);
+    }
   }
 
   /**
@@ -72,6 +224,7 @@ public final class WidevineMediaDrmCallback implements MediaDrmCallback {
     Assertions.checkNotNull(value);
     synchronized (keyRequestProperties) {
       keyRequestProperties.put(name, value);
+      keyRequestHeaders = buildKeyRequestHeaders(keyRequestProperties, customData);
     }
   }
 
@@ -84,6 +237,7 @@ public final class WidevineMediaDrmCallback implements MediaDrmCallback {
     Assertions.checkNotNull(name);
     synchronized (keyRequestProperties) {
       keyRequestProperties.remove(name);
+      keyRequestHeaders = buildKeyRequestHeaders(keyRequestProperties, customData);
     }
   }
 
@@ -93,79 +247,232 @@ public final class WidevineMediaDrmCallback implements MediaDrmCallback {
   public void clearAllKeyRequestProperties() {
     synchronized (keyRequestProperties) {
       keyRequestProperties.clear();
+      keyRequestHeaders = buildKeyRequestHeaders(keyRequestProperties, customData);
     }
   }
 
   @Override
   public byte[] executeProvisionRequest(UUID uuid, ProvisionRequest request) throws IOException {
+    StartupTracker.Session startupSession = this.startupSession;
+    if (startupSession != null) {
+      startupSession.record(StartupTracker.PHASE_PROVISIONING_REQUESTED);
+    }
     String url =
-        request.getDefaultUrl() + "&signedRequest=" + Util.fromUtf8Bytes(request.getData());
-    return executePost(dataSourceFactory, url, Util.EMPTY_BYTE_ARRAY, null);
+        Uri.parse(request.getDefaultUrl())
+            .buildUpon()
+            .appendQueryParameter("signedRequest", Util.fromUtf8Bytes(request.getData()))
+            .build()
+            .toString();
+    byte[] response =
+        executePost(
+            url,
+            Util.EMPTY_BYTE_ARRAY,
+            null,
+            /* allowHedging= */ false,
+            /* timeoutMs= */ Long.MAX_VALUE);
+    if (startupSession != null) {
+      startupSession.record(StartupTracker.PHASE_PROVISIONED);
+    }
+    return response;
   }
 
   @Override
   public byte[] executeKeyRequest(UUID uuid, KeyRequest request) throws Exception {
+    StartupTracker.Session startupSession = this.startupSession;
+    if (startupSession != null) {
+      startupSession.record(StartupTracker.PHASE_LICENSE_REQUESTED);
+    }
+    String url = getLicenseUrl(request);
+    Map<String, String> headers = keyRequestHeaders;
+    byte[] license =
+        requestCoalescer.execute(
+            url,
+            headers,
+            request.getData(),
+            newKeyRequestTask(url, headers, request),
+            keyRequestTimeoutMs);
+    if (startupSession != null) {
+      startupSession.record(StartupTracker.PHASE_LICENSE_RECEIVED);
+    }
+    return license;
+  }
+
+  /**
+   * Starts a key request on the shared license executor and returns immediately. Joins an identical
+   * request to the same license URL if one is already in flight.
+   *
+   * @param request The key request.
+   * @return A {@link Future} for the key response.
+   */
+  public Future<byte[]> executeKeyRequestAsync(KeyRequest request) {
+    String url = getLicenseUrl(request);
+    Map<String, String> headers = keyRequestHeaders;
+    return requestCoalescer.submit(
+        url, headers, request.getData(), newKeyRequestTask(url, headers, request));
+  }
+
+  private String getLicenseUrl(KeyRequest request) {
     String url = request.getLicenseServerUrl();
     if (forceDefaultLicenseUrl || TextUtils.isEmpty(url)) {
       url = defaultLicenseUrl;
     }
-    Map<String, String> requestProperties = new HashMap<>();
-    // Add standard request properties for supported schemes.
-    String contentType = "application/octet-stream";
-    requestProperties.put("Content-Type", contentType);
-    JSONObject customData = new JSONObject();
-    requestProperties.put("custom-data", getCustomData());
+    return url;
+  }
 
-    // Add additional request properties.
-    synchronized (keyRequestProperties) {
-      requestProperties.putAll(keyRequestProperties);
+  private Callable<byte[]> newKeyRequestTask(
+      final String url, final Map<String, String> headers, final KeyRequest request) {
+    return new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        return executeKeyRequest(url, headers, request);
+      }
+    };
+  }
+
+  private byte[] executeKeyRequest(String url, Map<String, String> headers, KeyRequest request)
+      throws Exception {
+    // Retries stop once the caller of executeKeyRequest has stopped waiting for the response.
+    byte[] bytes =
+        executePost(url, request.getData(), headers, /* allowHedging= */ true, keyRequestTimeoutMs);
+    try {
+      return licenseResponseDecoder.decode(bytes, 0, bytes.length);
+    } catch (LicenseResponseException e) {
+      Log.e("DRM Callback", "Error while parsing DRMtoday response", e);
+      throw e;
     }
-    byte[] bytes = executePost(dataSourceFactory, url, request.getData(), requestProperties);
+  }
+
+  private byte[] executePost(final String url, final byte[] data,
+      final Map<String, String> requestProperties, boolean allowHedging, long timeoutMs)
+      throws IOException {
     try {
-      JSONObject jsonObject = new JSONObject(new String(bytes));
-      return Base64.decode(jsonObject.getString("license"), Base64.DEFAULT);
-    } catch (JSONException e) {
-      Log.e("DRM Callback", "Error while parsing DRMtoday response: " + new String(bytes), e);
-      throw new RuntimeException("Error while parsing response", e);
+      return requestExecutor.execute(
+          new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+              return executePost(dataSourceFactory, url, data, requestProperties);
+            }
+          },
+          allowHedging,
+          timeoutMs);
+    } catch (IOException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (Exception e) {
+      throw new IOException(e);
     }
   }
 
-  private static byte[] executePost(HttpDataSource.Factory dataSourceFactory, String url,
-      byte[] data, Map<String, String> requestProperties) throws IOException {
+  /**
+   * Returns the data source of the next key request, with the current headers set, without opening
+   * it. Used by benchmarks of how key requests are built.
+   */
+  /* package */ HttpDataSource newKeyRequestDataSource() {
+    return newPostDataSource(dataSourceFactory, keyRequestHeaders);
+  }
+
+  /**
+   * Returns the spec of the POST of {@code request}. Used by benchmarks of how key requests are
+   * built.
+   */
+  /* package */ DataSpec newKeyRequestDataSpec(KeyRequest request) {
+    return newPostDataSpec(getLicenseUrl(request), request.getData());
+  }
+
+  /** Returns a data source of {@code dataSourceFactory} with {@code requestProperties} set. */
+  /* package */ static HttpDataSource newPostDataSource(
+      HttpDataSource.Factory dataSourceFactory, @Nullable Map<String, String> requestProperties) {
     HttpDataSource dataSource = dataSourceFactory.createDataSource();
     if (requestProperties != null) {
       for (Map.Entry<String, String> requestProperty : requestProperties.entrySet()) {
         dataSource.setRequestProperty(requestProperty.getKey(), requestProperty.getValue());
       }
     }
+    return dataSource;
+  }
 
+  private static DataSpec newPostDataSpec(String url, byte[] data) {
+    return new DataSpec(
+        Uri.parse(url),
+        data,
+        /* absoluteStreamPosition= */ 0,
+        /* position= */ 0,
+        /* length= */ C.LENGTH_UNSET,
+        /* key= */ null,
+        DataSpec.FLAG_ALLOW_GZIP);
+  }
+
+  private static byte[] executePost(HttpDataSource.Factory dataSourceFactory, String url,
+      byte[] data, @Nullable Map<String, String> requestProperties) throws IOException {
+    HttpDataSource dataSource = newPostDataSource(dataSourceFactory, requestProperties);
+    DataSpec dataSpec = newPostDataSpec(url, data);
+    try {
+      long length = dataSource.open(dataSpec);
+      return readResponse(dataSource, length);
+    } finally {
+      Util.closeQuietly(dataSource);
+    }
+  }
+
+  /**
+   * Reads a response into a buffer of exactly its size when the length is known up front, so that
+   * it is not copied again.
+   */
+  private static byte[] readResponse(HttpDataSource dataSource, long length) throws IOException {
+    if (length != C.LENGTH_UNSET && length <= Integer.MAX_VALUE) {
+      byte[] response = new byte[(int) length];
+      int position = 0;
+      while (position < response.length) {
+        int bytesRead = dataSource.read(response, position, response.length - position);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          return Arrays.copyOf(response, position);
+        }
+        position += bytesRead;
+      }
+      return response;
+    }
+    byte[] response = new byte[INITIAL_RESPONSE_BUFFER_SIZE];
+    int position = 0;
     while (true) {
-      DataSpec dataSpec =
-          new DataSpec(
-              Uri.parse(url),
-              data,
-              /* absoluteStreamPosition= */ 0,
-              /* position= */ 0,
-              /* length= */ C.LENGTH_UNSET,
-              /* key= */ null,
-              DataSpec.FLAG_ALLOW_GZIP);
-      DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, dataSpec);
-      try {
-        return Util.toByteArray(inputStream);
-      } catch (InvalidResponseCodeException e) {
-        throw e;
-      } finally {
-        Util.closeQuietly(inputStream);
+      if (position == response.length) {
+        response = Arrays.copyOf(response, response.length * 2);
       }
+      int bytesRead = dataSource.read(response, position, response.length - position);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        return position == response.length ? response : Arrays.copyOf(response, position);
+      }
+      position += bytesRead;
+    }
+  }
+
+  private static Map<String, String> buildKeyRequestHeaders(
+      Map<String, String> keyRequestProperties, String customData) {
+    Map<String, String> requestProperties = new HashMap<>();
+    // Add standard request properties for supported schemes.
+    String contentType = "application/octet-stream";
+    requestProperties.put("Content-Type", contentType);
+    if (customData != null) {
+      requestProperties.put("custom-data", customData);
     }
+
+    // Add additional request properties.
+    requestProperties.putAll(keyRequestProperties);
+    return Collections.unmodifiableMap(requestProperties);
   }
-  private String getCustomData() throws Exception {
-    JSONObject customData = new JSONObject();
-    customData.put("userId", "1-6849382");
-    customData.put("sessionId", "exoplayer_sessionId_123456");
-    customData.put("merchantId", "d5321abd-6676-4bc1-a39e-6bb763029e54");
-    customData.put("appId", "3930f331-e337-42b7-9619-00a0c12c16cb");
-    String customHeader = Base64.encodeToString(customData.toString().getBytes(), Base64.NO_WRAP);
-    return customHeader;
+
+  private static String encodeCustomData(
+      String userId, String sessionId, String merchantId, String appId) {
+    try {
+      JSONObject customData = new JSONObject();
+      customData.put("userId", userId);
+      customData.put("sessionId", sessionId);
+      customData.put("merchantId", merchantId);
+      customData.put("appId", appId);
+      return Base64.encodeToString(Util.getUtf8Bytes(customData.toString()), Base64.NO_WRAP);
+    } catch (JSONException e) {
+      throw new IllegalArgumentException(e);
+    }
   }
 }
@@ -0,0 +1,66 @@
+package com.example.exoplayer;
+
+import android.annotation.TargetApi;
+import android.media.NotProvisionedException;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.ExoMediaDrm;
+import com.google.android.exoplayer2.drm.FrameworkMediaDrm;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+
+/**
+ * A {@link ProvisioningManager.Provisioner} for Widevine, which sends provisioning requests through
+ * a {@link MediaDrmCallback}.
+ */
+@TargetApi(18)
+public final class WidevineProvisioner implements ProvisioningManager.Provisioner {
+
+  private final MediaDrmCallback callback;
+  @Nullable private final String securityLevel;
+
+  /**
+   * @param callback The {@link MediaDrmCallback} that executes provisioning requests.
+   * @param securityLevel The security level at which the DRM is opened by players, or null for the
+   *     default level. Each level is provisioned separately.
+   */
+  public WidevineProvisioner(MediaDrmCallback callback, @Nullable String securityLevel) {
+    this.callback = callback;
+    this.securityLevel = securityLevel;
+  }
+
+  @Override
+  public boolean isProvisioned() throws Exception {
+    FrameworkMediaDrm mediaDrm = newMediaDrm();
+    try {
+      byte[] sessionId = mediaDrm.openSession();
+      mediaDrm.closeSession(sessionId);
+      return true;
+    } catch (NotProvisionedException e) {
+      return false;
+    } finally {
+      mediaDrm.release();
+    }
+  }
+
+  @Override
+  public void provision() throws Exception {
+    FrameworkMediaDrm mediaDrm = newMediaDrm();
+    try {
+      ExoMediaDrm.ProvisionRequest request = mediaDrm.getProvisionRequest();
+      mediaDrm.provideProvisionResponse(
+          callback.executeProvisionRequest(C.WIDEVINE_UUID, request));
+    } finally {
+      mediaDrm.release();
+    }
+  }
+
+  private FrameworkMediaDrm newMediaDrm() throws Exception {
+    FrameworkMediaDrm mediaDrm = FrameworkMediaDrm.newInstance(C.WIDEVINE_UUID);
+    if (securityLevel != null) {
+      mediaDrm.setPropertyString("securityLevel", securityLevel);
+    }
+    return mediaDrm;
+  }
+}
@@ -0,0 +1,92 @@
+package com.example.exoplayer;
+
+import java.util.Arrays;
+
+/**
+ * Records zap latencies: the time from a channel change to the first frame of the new channel, or
+ * to the player becoming ready for channels without video.
+ */
+public final class ZapMetrics {
+
+  /** The number of most recent latencies from which percentiles are computed. */
+  private static final int MAX_SAMPLES = 128;
+
+  private final long[] latenciesMs;
+
+  private int zapCount;
+  private int preparedZapCount;
+  private long totalLatencyMs;
+  private long totalPreparedLatencyMs;
+
+  public ZapMetrics() {
+    latenciesMs = new long[MAX_SAMPLES];
+  }
+
+  /**
+   * Records a completed zap.
+   *
+   * @param latencyMs The zap latency.
+   * @param prepared Whether the channel had been prepared ahead of the zap.
+   */
+  public synchronized void onZapCompleted(long latencyMs, boolean prepared) {
+    latenciesMs[zapCount % MAX_SAMPLES] = latencyMs;
+    zapCount++;
+    totalLatencyMs += latencyMs;
+    if (prepared) {
+      preparedZapCount++;
+      totalPreparedLatencyMs += latencyMs;
+    }
+  }
+
+  /** Returns the number of completed zaps. */
+  public synchronized int getZapCount() {
+    return zapCount;
+  }
+
+  /** Returns the number of completed zaps to channels that had been prepared ahead. */
+  public synchronized int getPreparedZapCount() {
+    return preparedZapCount;
+  }
+
+  /** Returns the mean zap latency, or -1 if there have been no zaps. */
+  public synchronized long getMeanLatencyMs() {
+    return zapCount == 0 ? -1 : totalLatencyMs / zapCount;
+  }
+
+  /** Returns the mean latency of zaps to prepared channels, or -1 if there have been none. */
+  public synchronized long getMeanPreparedLatencyMs() {
+    return preparedZapCount == 0 ? -1 : totalPreparedLatencyMs / preparedZapCount;
+  }
+
+  /**
+   * Returns the given percentile of the most recent zap latencies, or -1 if there have been no
+   * zaps.
+   *
+   * @param percentile The percentile, between 0 and 1.
+   */
+  public synchronized long getLatencyPercentileMs(float percentile) {
+    int sampleCount = Math.min(zapCount, MAX_SAMPLES);
+    if (sampleCount == 0) {
+      return -1;
+    }
+    long[] samples = Arrays.copyOf(latenciesMs, sampleCount);
+    Arrays.sort(samples);
+    int index = (int) Math.ceil(percentile * sampleCount) - 1;
+    return samples[Math.max(0, Math.min(sampleCount - 1, index))];
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "zaps="
+        + zapCount
+        + ", prepared="
+        + preparedZapCount
+        + ", mean="
+        + getMeanLatencyMs()
+        + "ms, preparedMean="
+        + getMeanPreparedLatencyMs()
+        + "ms, p90="
+        + getLatencyPercentileMs(0.9f)
+        + "ms";
+  }
+}
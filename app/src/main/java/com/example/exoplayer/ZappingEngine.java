@@ -0,0 +1,556 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.video.VideoListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Plays one channel of a {@link ChannelList} and keeps its neighbors prepared, so that zapping to
+ * the next or previous channel only has to attach the already prepared player to the screen.
+ *
+ * <p>A prepared neighbor has its manifest loaded, its license obtained through its DRM session
+ * manager, and a small buffer of audio filled. Its video renderer is disabled, so that neighbors do
+ * not hold video decoders, of which devices often have a single secure instance, and its video is
+ * only loaded once it is zapped to. The number of neighbors kept prepared is derived from a memory
+ * and a bandwidth budget. Neighbours are prepared once the current channel is
+ * playing, so that they do not slow down its startup. Zap latencies are recorded in {@link
+ * #getMetrics()}.
+ *
+ * <p>All methods must be called on the main thread.
+ */
+public final class ZappingEngine {
+
+  /** Creates the players and media sources of channels. */
+  public interface PlayerFactory {
+
+    /** Returns a new track selector for a player. */
+    DefaultTrackSelector createTrackSelector(Context context);
+
+    /**
+     * Returns a new player that uses {@code loadControl} and {@code trackSelector}.
+     *
+     * @param loadControl The load control of the player.
+     * @param trackSelector The track selector of the player.
+     */
+    SimpleExoPlayer createPlayer(StandbyLoadControl loadControl, DefaultTrackSelector trackSelector);
+
+    /**
+     * Returns a new {@link LoadControl} that decides buffering for {@code channel} while it is not
+     * in standby.
+     */
+    LoadControl createLoadControl(Channel channel);
+
+    /**
+     * Returns a new media source that plays {@code channel} on {@code player}, with its own DRM
+     * session manager.
+     *
+     * @param channel The channel.
+     * @param player The player returned by {@link #createPlayer} for the channel, which plays the
+     *     media source and on whose playback thread its DRM sessions are acquired. Its play when
+     *     ready state is set, and is false for a neighbor prepared in standby.
+     */
+    MediaSource createMediaSource(Channel channel, SimpleExoPlayer player);
+
+    /**
+     * Called on the main thread before the player of {@code channel} is released, while its
+     * playback thread still runs.
+     */
+    void onReleasingPlayer(Channel channel, SimpleExoPlayer player);
+  }
+
+  /** Listener of channel changes. */
+  public interface Listener {
+
+    /**
+     * Called when a channel starts playing on {@code player}. The previous player, if any, must no
+     * longer be shown.
+     */
+    void onChannelChanged(Channel channel, SimpleExoPlayer player);
+  }
+
+  /** Builder for {@link ZappingEngine} instances. */
+  public static final class Builder {
+
+    private final Context context;
+
+    private long memoryBudgetBytes;
+    private long bandwidthBudgetBitsPerSecond;
+    private int standbyBitrate;
+    private int standbyBufferMs;
+    private int maxPreparedNeighbors;
+
+    /** @param context A context. */
+    public Builder(Context context) {
+      this.context = context.getApplicationContext();
+      memoryBudgetBytes = 24 * 1024 * 1024;
+      bandwidthBudgetBitsPerSecond = 2000000;
+      standbyBitrate = 128000;
+      standbyBufferMs = 2000;
+      maxPreparedNeighbors = 2;
+    }
+
+    /** Sets the memory that prepared neighbors may use in total. */
+    public Builder setMemoryBudgetBytes(long memoryBudgetBytes) {
+      this.memoryBudgetBytes = memoryBudgetBytes;
+      return this;
+    }
+
+    /** Sets the bandwidth that prepared neighbors may use in total while buffering. */
+    public Builder setBandwidthBudgetBitsPerSecond(long bandwidthBudgetBitsPerSecond) {
+      this.bandwidthBudgetBitsPerSecond = bandwidthBudgetBitsPerSecond;
+      return this;
+    }
+
+    /**
+     * Sets the bitrate of the media buffered by prepared neighbors, which only load audio, used to
+     * derive how many neighbors fit in the budgets.
+     */
+    public Builder setStandbyBitrate(int standbyBitrate) {
+      this.standbyBitrate = standbyBitrate;
+      return this;
+    }
+
+    /** Sets the duration of media buffered by prepared neighbors. */
+    public Builder setStandbyBufferMs(int standbyBufferMs) {
+      this.standbyBufferMs = standbyBufferMs;
+      return this;
+    }
+
+    /** Sets the maximum number of prepared neighbors, at most 2. */
+    public Builder setMaxPreparedNeighbors(int maxPreparedNeighbors) {
+      this.maxPreparedNeighbors = maxPreparedNeighbors;
+      return this;
+    }
+
+    /**
+     * Returns a {@link ZappingEngine} with the values of this builder.
+     *
+     * @param channelList The channels.
+     * @param playerFactory Creates the players and media sources of channels.
+     */
+    public ZappingEngine build(ChannelList channelList, PlayerFactory playerFactory) {
+      return new ZappingEngine(this, channelList, playerFactory);
+    }
+  }
+
+  private static final String TAG = "ZappingEngine";
+
+  /**
+   * Memory used by a prepared neighbor in addition to its buffer, mostly by its audio decoder and
+   * its extractors, as its video renderer is disabled.
+   */
+  private static final long PLAYER_OVERHEAD_BYTES = 2 * 1024 * 1024;
+
+  private final Context context;
+  private final ChannelList channelList;
+  private final PlayerFactory playerFactory;
+  private final int standbyBufferMs;
+  private final int maxPreparedNeighbors;
+  private final List<Slot> neighbors;
+  private final CopyOnWriteArrayList<Listener> listeners;
+  private final ZapMetrics metrics;
+
+  @Nullable private Slot current;
+  @Nullable private ZapTimer zapTimer;
+  private boolean paused;
+
+  private ZappingEngine(Builder builder, ChannelList channelList, PlayerFactory playerFactory) {
+    this.context = builder.context;
+    this.channelList = channelList;
+    this.playerFactory = playerFactory;
+    standbyBufferMs = builder.standbyBufferMs;
+    maxPreparedNeighbors =
+        getMaxPreparedNeighbors(
+            builder.maxPreparedNeighbors,
+            builder.memoryBudgetBytes,
+            builder.bandwidthBudgetBitsPerSecond,
+            builder.standbyBitrate,
+            builder.standbyBufferMs);
+    neighbors = new ArrayList<>();
+    listeners = new CopyOnWriteArrayList<>();
+    metrics = new ZapMetrics();
+  }
+
+  /**
+   * Returns how many neighbors fit in the memory and bandwidth budgets.
+   *
+   * @param maxPreparedNeighbors The maximum number of neighbors, at most 2.
+   * @param memoryBudgetBytes The memory that prepared neighbors may use in total.
+   * @param bandwidthBudgetBitsPerSecond The bandwidth that neighbors may use in total.
+   * @param standbyBitrate The bitrate of the media buffered by a neighbor.
+   * @param standbyBufferMs The duration of media buffered by a neighbor.
+   */
+  static int getMaxPreparedNeighbors(
+      int maxPreparedNeighbors,
+      long memoryBudgetBytes,
+      long bandwidthBudgetBitsPerSecond,
+      int standbyBitrate,
+      int standbyBufferMs) {
+    long bytesPerNeighbor = PLAYER_OVERHEAD_BYTES + (long) standbyBitrate * standbyBufferMs / 8000;
+    long neighborsInMemoryBudget = memoryBudgetBytes / bytesPerNeighbor;
+    long neighborsInBandwidthBudget =
+        standbyBitrate > 0 ? bandwidthBudgetBitsPerSecond / standbyBitrate : 2;
+    return (int)
+        Math.max(
+            0,
+            Math.min(
+                Math.min(maxPreparedNeighbors, 2),
+                Math.min(neighborsInMemoryBudget, neighborsInBandwidthBudget)));
+  }
+
+  /** Adds a listener of channel changes. */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /** Removes a listener of channel changes. */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Starts playing the channel at {@code index}, releasing any other players.
+   *
+   * @return The player on which the channel plays.
+   */
+  public SimpleExoPlayer start(int index) {
+    releaseNeighbors();
+    if (current != null) {
+      releaseSlot(current);
+    }
+    current = createSlot(index, /* standby= */ false);
+    paused = false;
+    startPlayback(current, SystemClock.elapsedRealtime(), /* recordZap= */ false);
+    return current.player;
+  }
+
+  /** Zaps to the next channel, and returns its player. */
+  public SimpleExoPlayer zapToNext() {
+    return zapTo(channelList.getNextIndex(getCurrentIndex()));
+  }
+
+  /** Zaps to the previous channel, and returns its player. */
+  public SimpleExoPlayer zapToPrevious() {
+    return zapTo(channelList.getPreviousIndex(getCurrentIndex()));
+  }
+
+  /**
+   * Zaps to the channel at {@code index}. If it is a prepared neighbor, its player is shown
+   * immediately, and moved to the live edge if the channel is live. Otherwise a new player is
+   * prepared for it.
+   *
+   * @return The player on which the channel plays.
+   */
+  public SimpleExoPlayer zapTo(int index) {
+    Slot previous = current;
+    if (previous == null) {
+      return start(index);
+    }
+    if (previous.index == index) {
+      return previous.player;
+    }
+    long zapStartTimeMs = SystemClock.elapsedRealtime();
+    Slot target = removeNeighbor(index);
+    boolean prepared = target != null;
+    if (target == null) {
+      target = createSlot(index, /* standby= */ false);
+    } else {
+      target.setStandby(false);
+      if (target.player.isCurrentWindowDynamic()) {
+        // The neighbor was paused while the live edge moved on.
+        target.player.seekToDefaultPosition();
+      }
+    }
+    target.prepared = prepared;
+    current = target;
+    startPlayback(target, zapStartTimeMs, /* recordZap= */ true);
+
+    // The previous channel is a neighbor of the new one, so keep it prepared if the budget allows.
+    if (maxPreparedNeighbors > 0 && getNeighborIndices().contains(previous.index)) {
+      previous.setStandby(true);
+      previous.player.setPlayWhenReady(false);
+      neighbors.add(previous);
+    } else {
+      releaseSlot(previous);
+    }
+    Log.d(TAG, "Zapped to " + target.channel + (prepared ? " (prepared)" : ""));
+    return target.player;
+  }
+
+  /** Returns the player of the current channel, or null if the engine has not been started. */
+  @Nullable
+  public SimpleExoPlayer getCurrentPlayer() {
+    return current != null ? current.player : null;
+  }
+
+  /** Returns the current channel, or null if the engine has not been started. */
+  @Nullable
+  public Channel getCurrentChannel() {
+    return current != null ? current.channel : null;
+  }
+
+  /** Returns the index of the current channel, or 0 if the engine has not been started. */
+  public int getCurrentIndex() {
+    return current != null ? current.index : 0;
+  }
+
+  /** Returns the number of neighbors kept prepared within the budgets. */
+  public int getMaxPreparedNeighbors() {
+    return maxPreparedNeighbors;
+  }
+
+  /** Returns the zap latency metrics. */
+  public ZapMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Pauses the current channel and releases the prepared neighbors, for example while the app is
+   * in the background.
+   */
+  public void pause() {
+    paused = true;
+    cancelZapTimer();
+    releaseNeighbors();
+    if (current != null) {
+      current.player.setPlayWhenReady(false);
+    }
+  }
+
+  /** Resumes the current channel after {@link #pause()}, and prepares its neighbors again. */
+  public void resume() {
+    paused = false;
+    if (current != null) {
+      startPlayback(current, SystemClock.elapsedRealtime(), /* recordZap= */ false);
+    }
+  }
+
+  /** Releases all players. The engine must not be used afterwards. */
+  public void release() {
+    cancelZapTimer();
+    releaseNeighbors();
+    if (current != null) {
+      releaseSlot(current);
+      current = null;
+    }
+  }
+
+  private Slot createSlot(int index, boolean standby) {
+    Channel channel = channelList.get(index);
+    StandbyLoadControl loadControl =
+        new StandbyLoadControl(playerFactory.createLoadControl(channel), standbyBufferMs);
+    DefaultTrackSelector trackSelector = playerFactory.createTrackSelector(context);
+    SimpleExoPlayer player = playerFactory.createPlayer(loadControl, trackSelector);
+    Slot slot = new Slot(index, channel, player, loadControl, trackSelector);
+    slot.setStandby(standby);
+    player.setPlayWhenReady(!standby);
+    player.prepare(playerFactory.createMediaSource(channel, player));
+    return slot;
+  }
+
+  private void startPlayback(Slot slot, long startTimeMs, boolean recordZap) {
+    cancelZapTimer();
+    zapTimer = new ZapTimer(slot, startTimeMs, recordZap);
+    slot.player.addListener(zapTimer);
+    slot.player.addVideoListener(zapTimer);
+    slot.player.setPlayWhenReady(true);
+    for (Listener listener : listeners) {
+      listener.onChannelChanged(slot.channel, slot.player);
+    }
+    // A prepared player without video may already be ready, in which case no state change follows.
+    zapTimer.maybeCompleteOnReady(slot.player.getPlaybackState());
+  }
+
+  private void onCurrentChannelStarted() {
+    if (paused || current == null) {
+      return;
+    }
+    List<Integer> neighborIndices = getNeighborIndices();
+    for (int i = neighbors.size() - 1; i >= 0; i--) {
+      Slot neighbor = neighbors.get(i);
+      if (!neighborIndices.contains(neighbor.index)) {
+        releaseSlot(neighbors.remove(i));
+      }
+    }
+    for (int index : neighborIndices) {
+      if (findNeighbor(index) == null) {
+        neighbors.add(createSlot(index, /* standby= */ true));
+      }
+    }
+  }
+
+  /** Returns the indices of the neighbors to keep prepared, next channel first. */
+  private List<Integer> getNeighborIndices() {
+    List<Integer> indices = new ArrayList<>(2);
+    if (current == null) {
+      return indices;
+    }
+    int next = channelList.getNextIndex(current.index);
+    int previous = channelList.getPreviousIndex(current.index);
+    if (maxPreparedNeighbors >= 1 && next != current.index) {
+      indices.add(next);
+    }
+    if (maxPreparedNeighbors >= 2 && previous != current.index && previous != next) {
+      indices.add(previous);
+    }
+    return indices;
+  }
+
+  @Nullable
+  private Slot findNeighbor(int index) {
+    for (Slot neighbor : neighbors) {
+      if (neighbor.index == index) {
+        return neighbor;
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private Slot removeNeighbor(int index) {
+    Slot neighbor = findNeighbor(index);
+    if (neighbor != null) {
+      neighbors.remove(neighbor);
+    }
+    return neighbor;
+  }
+
+  private void releaseNeighbors() {
+    for (Slot neighbor : neighbors) {
+      releaseSlot(neighbor);
+    }
+    neighbors.clear();
+  }
+
+  private void releaseSlot(Slot slot) {
+    playerFactory.onReleasingPlayer(slot.channel, slot.player);
+    slot.release();
+  }
+
+  private void cancelZapTimer() {
+    if (zapTimer != null) {
+      zapTimer.remove();
+      zapTimer = null;
+    }
+  }
+
+  /** A player with the controls used to move it in and out of standby. */
+  private static final class Slot {
+
+    private final int index;
+    private final Channel channel;
+    private final SimpleExoPlayer player;
+    private final StandbyLoadControl loadControl;
+    private final DefaultTrackSelector trackSelector;
+
+    private boolean prepared;
+
+    private Slot(
+        int index,
+        Channel channel,
+        SimpleExoPlayer player,
+        StandbyLoadControl loadControl,
+        DefaultTrackSelector trackSelector) {
+      this.index = index;
+      this.channel = channel;
+      this.player = player;
+      this.loadControl = loadControl;
+      this.trackSelector = trackSelector;
+    }
+
+    private void setStandby(boolean standby) {
+      loadControl.setStandby(standby);
+      DefaultTrackSelector.ParametersBuilder parametersBuilder =
+          trackSelector.buildUponParameters();
+      for (int i = 0; i < player.getRendererCount(); i++) {
+        if (player.getRendererType(i) == C.TRACK_TYPE_VIDEO) {
+          parametersBuilder.setRendererDisabled(i, standby);
+        }
+      }
+      trackSelector.setParameters(parametersBuilder);
+    }
+
+    private void release() {
+      player.release();
+    }
+  }
+
+  /**
+   * Measures the time until the first frame of a channel is rendered, or until its player is ready
+   * if it has no video, and then prepares the neighbors of the channel.
+   */
+  private final class ZapTimer implements Player.EventListener, VideoListener {
+
+    private final Slot slot;
+    private final long startTimeMs;
+    private final boolean recordZap;
+    private final boolean awaitVideo;
+
+    private ZapTimer(Slot slot, long startTimeMs, boolean recordZap) {
+      this.slot = slot;
+      this.startTimeMs = startTimeMs;
+      this.recordZap = recordZap;
+      // A neighbor zapped to is ready with audio only until its video renderer is enabled again.
+      awaitVideo = recordZap && slot.prepared && hasVideo(slot.player.getCurrentTrackGroups());
+    }
+
+    @Override
+    public void onRenderedFirstFrame() {
+      complete();
+    }
+
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+      maybeCompleteOnReady(playbackState);
+    }
+
+    private void maybeCompleteOnReady(int playbackState) {
+      if (playbackState == Player.STATE_READY
+          && slot.player.getVideoFormat() == null
+          && !awaitVideo) {
+        complete();
+      }
+    }
+
+    private void complete() {
+      remove();
+      if (zapTimer == this) {
+        zapTimer = null;
+      }
+      if (recordZap) {
+        metrics.onZapCompleted(SystemClock.elapsedRealtime() - startTimeMs, slot.prepared);
+      }
+      onCurrentChannelStarted();
+    }
+
+    private void remove() {
+      slot.player.removeListener(this);
+      slot.player.removeVideoListener(this);
+    }
+
+    private boolean hasVideo(TrackGroupArray trackGroups) {
+      for (int i = 0; i < trackGroups.length; i++) {
+        if (MimeTypes.isVideo(trackGroups.get(i).getFormat(0).sampleMimeType)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
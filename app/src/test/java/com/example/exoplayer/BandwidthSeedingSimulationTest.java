@@ -0,0 +1,127 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Measures the effect of seeding the initial bandwidth estimate from a {@link
+ * BandwidthEstimateStore}, by replaying throughput traces through {@link BandwidthTraceSimulator}
+ * once cold and once seeded with the estimate persisted by a previous session.
+ */
+public class BandwidthSeedingSimulationTest {
+
+  /** The initial estimate of the default bandwidth meter. */
+  private static final long DEFAULT_INITIAL_ESTIMATE = 1000000;
+  private static final int SEGMENT_COUNT = 30;
+  private static final long HOUR_MS = 60 * 60 * 1000;
+  private static final long DAY_MS = 24 * HOUR_MS;
+
+  private File storeFile;
+
+  @Before
+  public void setUp() throws Exception {
+    storeFile = File.createTempFile("bandwidth", ".bin");
+    storeFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    storeFile.delete();
+  }
+
+  @Test
+  public void fastNetwork_seededSessionStartsAtHigherBitrate() throws Exception {
+    long[] trace = BandwidthTraceSimulator.loadTrace("wifi_home");
+    BandwidthTraceSimulator.Result cold =
+        BandwidthTraceSimulator.simulate(trace, DEFAULT_INITIAL_ESTIMATE, SEGMENT_COUNT);
+    BandwidthTraceSimulator.Result seeded =
+        simulateSeeded(trace, "wifi", cold.finalEstimate, /* ageMs= */ HOUR_MS);
+
+    assertTrue(seeded.firstBitrate > cold.firstBitrate);
+    assertTrue(seeded.earlyMeanBitrate > cold.earlyMeanBitrate);
+    assertEquals(0, seeded.rebufferCount);
+  }
+
+  @Test
+  public void slowNetwork_seededSessionStartsSoonerWithoutMoreRebuffering() throws Exception {
+    long[] trace = BandwidthTraceSimulator.loadTrace("cellular_congested");
+    BandwidthTraceSimulator.Result cold =
+        BandwidthTraceSimulator.simulate(trace, DEFAULT_INITIAL_ESTIMATE, SEGMENT_COUNT);
+    BandwidthTraceSimulator.Result seeded =
+        simulateSeeded(trace, "cellular4:45204", cold.finalEstimate, /* ageMs= */ HOUR_MS);
+
+    assertTrue(seeded.firstBitrate < cold.firstBitrate);
+    assertTrue(seeded.startupTimeMs < cold.startupTimeMs);
+    assertTrue(seeded.rebufferTimeMs <= cold.rebufferTimeMs);
+  }
+
+  @Test
+  public void staleEstimate_fallsBackToColdStart() throws Exception {
+    long[] trace = BandwidthTraceSimulator.loadTrace("wifi_home");
+    BandwidthTraceSimulator.Result cold =
+        BandwidthTraceSimulator.simulate(trace, DEFAULT_INITIAL_ESTIMATE, SEGMENT_COUNT);
+    BandwidthTraceSimulator.Result stale =
+        simulateSeeded(trace, "wifi", cold.finalEstimate, /* ageMs= */ 8 * DAY_MS);
+
+    assertEquals(cold.firstBitrate, stale.firstBitrate);
+    assertEquals(cold.earlyMeanBitrate, stale.earlyMeanBitrate);
+  }
+
+  @Test
+  public void store_decaysEstimateTowardsDefaultAndPersists() {
+    BandwidthEstimateStore store =
+        new BandwidthEstimateStore(storeFile, /* halfLifeMs= */ DAY_MS, /* maxAgeMs= */ 7 * DAY_MS);
+    store.addSample("wifi", 9000000, /* nowMs= */ 0);
+    store.addSample("wifi", 19000000, /* nowMs= */ 0);
+    store.write();
+
+    BandwidthEstimateStore reloaded =
+        new BandwidthEstimateStore(storeFile, /* halfLifeMs= */ DAY_MS, /* maxAgeMs= */ 7 * DAY_MS);
+    assertEquals(12000000, reloaded.getEstimate("wifi", 0, DEFAULT_INITIAL_ESTIMATE));
+    assertEquals(6500000, reloaded.getEstimate("wifi", DAY_MS, DEFAULT_INITIAL_ESTIMATE));
+    assertTrue(reloaded.hasEstimate("wifi", 7 * DAY_MS));
+    assertFalse(reloaded.hasEstimate("wifi", 7 * DAY_MS + 1));
+    assertEquals(
+        DEFAULT_INITIAL_ESTIMATE,
+        reloaded.getEstimate("cellular4:45204", 0, DEFAULT_INITIAL_ESTIMATE));
+  }
+
+  @Test
+  public void store_writeAsync_persistsInBackground() throws Exception {
+    BandwidthEstimateStore store = new BandwidthEstimateStore(storeFile);
+    store.addSample("wifi", 9000000, /* nowMs= */ 0);
+    store.writeAsync().get();
+    // Samples added after the write are not lost, and are written by the next one.
+    store.addSample("ethernet", 20000000, /* nowMs= */ 0);
+    store.writeAsync().get();
+    store.release();
+
+    BandwidthEstimateStore reloaded = new BandwidthEstimateStore(storeFile);
+    assertEquals(9000000, reloaded.getEstimate("wifi", 0, DEFAULT_INITIAL_ESTIMATE));
+    assertEquals(20000000, reloaded.getEstimate("ethernet", 0, DEFAULT_INITIAL_ESTIMATE));
+  }
+
+  /**
+   * Persists {@code previousEstimate} as a previous session would, and replays {@code trace} with
+   * the initial estimate read back from the store {@code ageMs} later.
+   */
+  private BandwidthTraceSimulator.Result simulateSeeded(
+      long[] trace, String networkKey, long previousEstimate, long ageMs) {
+    long sessionEndTimeMs = 1000 * DAY_MS;
+    BandwidthEstimateStore store = new BandwidthEstimateStore(storeFile);
+    store.addSample(networkKey, previousEstimate, sessionEndTimeMs);
+    store.write();
+
+    long initialEstimate =
+        new BandwidthEstimateStore(storeFile)
+            .getEstimate(networkKey, sessionEndTimeMs + ageMs, DEFAULT_INITIAL_ESTIMATE);
+    return BandwidthTraceSimulator.simulate(trace, initialEstimate, SEGMENT_COUNT);
+  }
+}
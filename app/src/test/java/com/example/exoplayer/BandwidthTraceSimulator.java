@@ -0,0 +1,232 @@
+package com.example.exoplayer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Replays a throughput trace through a simplified model of adaptive streaming with the default
+ * bandwidth meter, track selection and load control parameters, to compare how the initial
+ * bandwidth estimate affects a session.
+ *
+ * <p>The bandwidth estimate is the weighted median of per-segment throughput samples, and is the
+ * initial estimate until 2 seconds or 512 KB have been transferred. Each segment is requested at
+ * the highest bitrate within 70% of the estimate. Playback starts, and resumes after a rebuffer,
+ * once 2.5 seconds are buffered.
+ */
+/* package */ final class BandwidthTraceSimulator {
+
+  /** The bitrates of the video ladder, in bits per second. */
+  public static final int[] LADDER = {200000, 400000, 800000, 1500000, 3000000, 6000000};
+
+  private static final int SEGMENT_DURATION_MS = 2000;
+  private static final int BUFFER_FOR_PLAYBACK_MS = 2500;
+  private static final int MAX_BUFFER_MS = 30000;
+  private static final float BANDWIDTH_FRACTION = 0.7f;
+  private static final long ELAPSED_MS_FOR_ESTIMATE = 2000;
+  private static final long BYTES_FOR_ESTIMATE = 512 * 1024;
+  private static final int MAX_SAMPLE_WEIGHT = 2000;
+  /** The number of leading segments whose bitrates make up {@link Result#earlyMeanBitrate}. */
+  private static final int EARLY_SEGMENT_COUNT = 10;
+
+  /** The outcome of a simulated session. */
+  public static final class Result {
+
+    /** The time from the first request until playback started. */
+    public long startupTimeMs;
+    /** The time spent rebuffering after playback started. */
+    public long rebufferTimeMs;
+    /** The number of rebuffers. */
+    public int rebufferCount;
+    /** The bitrate of the first segment. */
+    public int firstBitrate;
+    /** The mean bitrate of the first segments. */
+    public long earlyMeanBitrate;
+    /** The bandwidth estimate at the end of the session. */
+    public long finalEstimate;
+
+    @Override
+    public String toString() {
+      return "startup="
+          + startupTimeMs
+          + "ms, rebuffer="
+          + rebufferTimeMs
+          + "ms ("
+          + rebufferCount
+          + "), firstBitrate="
+          + firstBitrate
+          + ", earlyMeanBitrate="
+          + earlyMeanBitrate
+          + ", finalEstimate="
+          + finalEstimate;
+    }
+  }
+
+  private BandwidthTraceSimulator() {}
+
+  /**
+   * Loads a trace from the test resources. A trace holds one throughput sample in kbit/s per line,
+   * each covering one second. Lines starting with {@code #} are comments.
+   */
+  public static long[] loadTrace(String name) throws IOException {
+    InputStream inputStream =
+        BandwidthTraceSimulator.class.getResourceAsStream("/bandwidth_traces/" + name + ".csv");
+    if (inputStream == null) {
+      throw new IOException("Missing trace: " + name);
+    }
+    List<Long> samples = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          samples.add(Long.parseLong(line));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    long[] traceKbps = new long[samples.size()];
+    for (int i = 0; i < traceKbps.length; i++) {
+      traceKbps[i] = samples.get(i);
+    }
+    return traceKbps;
+  }
+
+  /**
+   * Simulates a session.
+   *
+   * @param traceKbps The throughput trace, which is looped if the session outlasts it.
+   * @param initialEstimate The initial bandwidth estimate, in bits per second.
+   * @param segmentCount The number of segments loaded in the session.
+   */
+  public static Result simulate(long[] traceKbps, long initialEstimate, int segmentCount) {
+    Result result = new Result();
+    List<long[]> samples = new ArrayList<>();
+    long estimate = initialEstimate;
+    long totalElapsedMs = 0;
+    long totalBytes = 0;
+    long timeMs = 0;
+    long bufferMs = 0;
+    boolean playing = false;
+    boolean started = false;
+    long earlyBitrateSum = 0;
+
+    for (int segment = 0; segment < segmentCount; segment++) {
+      if (playing && bufferMs > MAX_BUFFER_MS - SEGMENT_DURATION_MS) {
+        long waitMs = bufferMs - (MAX_BUFFER_MS - SEGMENT_DURATION_MS);
+        timeMs += waitMs;
+        bufferMs -= waitMs;
+      }
+      int bitrate = selectBitrate(estimate);
+      if (segment == 0) {
+        result.firstBitrate = bitrate;
+      }
+      if (segment < EARLY_SEGMENT_COUNT) {
+        earlyBitrateSum += bitrate;
+      }
+
+      long bytes = (long) bitrate * SEGMENT_DURATION_MS / 8000;
+      long downloadMs = download(traceKbps, timeMs, bytes);
+      timeMs += downloadMs;
+      if (playing) {
+        if (bufferMs >= downloadMs) {
+          bufferMs -= downloadMs;
+        } else {
+          result.rebufferTimeMs += downloadMs - bufferMs;
+          result.rebufferCount++;
+          bufferMs = 0;
+          playing = false;
+        }
+      } else if (started) {
+        result.rebufferTimeMs += downloadMs;
+      }
+      bufferMs += SEGMENT_DURATION_MS;
+      if (!playing && bufferMs >= BUFFER_FOR_PLAYBACK_MS) {
+        playing = true;
+        if (!started) {
+          started = true;
+          result.startupTimeMs = timeMs;
+        }
+      }
+
+      totalElapsedMs += downloadMs;
+      totalBytes += bytes;
+      samples.add(new long[] {(long) Math.sqrt(bytes), bytes * 8000 / Math.max(1, downloadMs)});
+      if (totalElapsedMs >= ELAPSED_MS_FOR_ESTIMATE || totalBytes >= BYTES_FOR_ESTIMATE) {
+        estimate = getWeightedMedian(samples);
+      }
+    }
+    result.earlyMeanBitrate = earlyBitrateSum / Math.min(segmentCount, EARLY_SEGMENT_COUNT);
+    result.finalEstimate = estimate;
+    return result;
+  }
+
+  private static int selectBitrate(long estimate) {
+    long effectiveBitrate = (long) (estimate * BANDWIDTH_FRACTION);
+    int selected = LADDER[0];
+    for (int bitrate : LADDER) {
+      if (bitrate <= effectiveBitrate) {
+        selected = bitrate;
+      }
+    }
+    return selected;
+  }
+
+  /** Returns the time to download {@code bytes} starting at {@code startTimeMs}. */
+  private static long download(long[] traceKbps, long startTimeMs, long bytes) {
+    long timeMs = startTimeMs;
+    double remainingBytes = bytes;
+    while (true) {
+      long kbps = Math.max(1, traceKbps[(int) ((timeMs / 1000) % traceKbps.length)]);
+      double bytesPerMs = kbps / 8.0;
+      long msLeftInSecond = 1000 - timeMs % 1000;
+      if (bytesPerMs * msLeftInSecond >= remainingBytes) {
+        timeMs += (long) Math.ceil(remainingBytes / bytesPerMs);
+        return Math.max(1, timeMs - startTimeMs);
+      }
+      remainingBytes -= bytesPerMs * msLeftInSecond;
+      timeMs += msLeftInSecond;
+    }
+  }
+
+  /**
+   * Returns the weighted median of the most recent samples, each a {weight, bitrate} pair, whose
+   * total weight is within {@link #MAX_SAMPLE_WEIGHT}.
+   */
+  private static long getWeightedMedian(List<long[]> samples) {
+    List<long[]> window = new ArrayList<>();
+    long totalWeight = 0;
+    for (int i = samples.size() - 1; i >= 0; i--) {
+      long[] sample = samples.get(i);
+      if (!window.isEmpty() && totalWeight + sample[0] > MAX_SAMPLE_WEIGHT) {
+        break;
+      }
+      window.add(sample);
+      totalWeight += sample[0];
+    }
+    long[][] sorted = window.toArray(new long[0][]);
+    Arrays.sort(
+        sorted,
+        new Comparator<long[]>() {
+          @Override
+          public int compare(long[] a, long[] b) {
+            return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+          }
+        });
+    long weight = 0;
+    for (long[] sample : sorted) {
+      weight += sample[0];
+      if (weight * 2 >= totalWeight) {
+        return sample[1];
+      }
+    }
+    return sorted[sorted.length - 1][1];
+  }
+}
@@ -0,0 +1,128 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link BufferSizingPolicy} and {@link ThroughputVariance}. */
+public class BufferSizingPolicyTest {
+
+  private static final int MB = 1024 * 1024;
+
+  @Test
+  public void byteBudget_followsMemoryClass() {
+    assertEquals(32 * MB, getSizes(128, false).targetBufferBytes);
+    assertEquals(64 * MB, getSizes(256, false).targetBufferBytes);
+    // Low-RAM devices get half the share of their memory class.
+    assertEquals(12 * MB, getSizes(96, true).targetBufferBytes);
+    // The budget is clamped at both ends.
+    assertEquals(96 * MB, getSizes(1024, false).targetBufferBytes);
+    assertEquals(4 * MB, getSizes(16, true).targetBufferBytes);
+  }
+
+  @Test
+  public void steadyVod_usesDefaultDurations() {
+    BufferSizingPolicy.Sizes sizes = getSizes(128, false);
+
+    assertEquals(15000, sizes.minBufferMs);
+    assertEquals(50000, sizes.maxBufferMs);
+    assertEquals(2500, sizes.bufferForPlaybackMs);
+    assertEquals(5000, sizes.bufferForPlaybackAfterRebufferMs);
+  }
+
+  @Test
+  public void live_buffersLessThanVod() {
+    BufferSizingPolicy.Sizes sizes =
+        new BufferSizingPolicy(128, false)
+            .getSizes(/* live= */ true, 0, BufferSizingPolicy.MEMORY_PRESSURE_NONE);
+
+    assertEquals(6000, sizes.minBufferMs);
+    assertEquals(20000, sizes.maxBufferMs);
+  }
+
+  @Test
+  public void throughputVariation_growsDurationsUpToCap() {
+    BufferSizingPolicy policy = new BufferSizingPolicy(128, false);
+
+    BufferSizingPolicy.Sizes flaky =
+        policy.getSizes(/* live= */ false, 0.5f, BufferSizingPolicy.MEMORY_PRESSURE_NONE);
+    assertEquals(22500, flaky.minBufferMs);
+    assertEquals(75000, flaky.maxBufferMs);
+
+    BufferSizingPolicy.Sizes veryFlaky =
+        policy.getSizes(/* live= */ false, 3f, BufferSizingPolicy.MEMORY_PRESSURE_NONE);
+    assertEquals(30000, veryFlaky.minBufferMs);
+    assertEquals(100000, veryFlaky.maxBufferMs);
+
+    BufferSizingPolicy.Sizes flakyLive =
+        policy.getSizes(/* live= */ true, 1f, BufferSizingPolicy.MEMORY_PRESSURE_NONE);
+    assertEquals(12000, flakyLive.minBufferMs);
+    assertEquals(30000, flakyLive.maxBufferMs);
+    // The byte budget does not grow with variation.
+    assertEquals(32 * MB, veryFlaky.targetBufferBytes);
+  }
+
+  @Test
+  public void memoryPressure_shrinksBytesAndDurations() {
+    BufferSizingPolicy policy = new BufferSizingPolicy(128, false);
+
+    BufferSizingPolicy.Sizes moderate =
+        policy.getSizes(/* live= */ false, 0, BufferSizingPolicy.MEMORY_PRESSURE_MODERATE);
+    assertEquals(16 * MB, moderate.targetBufferBytes);
+    assertEquals(7500, moderate.minBufferMs);
+    assertEquals(25000, moderate.maxBufferMs);
+
+    BufferSizingPolicy.Sizes critical =
+        policy.getSizes(/* live= */ false, 0, BufferSizingPolicy.MEMORY_PRESSURE_CRITICAL);
+    assertEquals(8 * MB, critical.targetBufferBytes);
+    assertEquals(3750, critical.minBufferMs);
+    assertEquals(12500, critical.maxBufferMs);
+  }
+
+  @Test
+  public void memoryPressure_keepsEnoughBufferToStartPlayback() {
+    BufferSizingPolicy.Sizes sizes =
+        new BufferSizingPolicy(96, true)
+            .getSizes(/* live= */ true, 0, BufferSizingPolicy.MEMORY_PRESSURE_CRITICAL);
+
+    assertEquals(4 * MB, sizes.targetBufferBytes);
+    assertEquals(2500, sizes.minBufferMs);
+    assertEquals(5000, sizes.maxBufferMs);
+    assertEquals(2500, sizes.bufferForPlaybackMs);
+    assertEquals(2500, sizes.bufferForPlaybackAfterRebufferMs);
+  }
+
+  @Test
+  public void throughputVariance_isZeroForSteadyOrFewSamples() {
+    ThroughputVariance variance = new ThroughputVariance();
+    variance.addSample(4000000);
+    variance.addSample(1000000);
+    assertEquals(0f, variance.getCoefficientOfVariation(), 0);
+
+    variance.reset();
+    for (int i = 0; i < 10; i++) {
+      variance.addSample(4000000);
+    }
+    assertEquals(0f, variance.getCoefficientOfVariation(), 1e-6);
+    assertEquals(4000000, variance.getMean());
+  }
+
+  @Test
+  public void throughputVariance_growsWithSwings() {
+    ThroughputVariance mild = new ThroughputVariance();
+    ThroughputVariance wild = new ThroughputVariance();
+    for (int i = 0; i < 20; i++) {
+      mild.addSample(i % 2 == 0 ? 3600000 : 4400000);
+      wild.addSample(i % 2 == 0 ? 1000000 : 7000000);
+    }
+
+    assertTrue(mild.getCoefficientOfVariation() < 0.15f);
+    assertTrue(wild.getCoefficientOfVariation() > 0.5f);
+  }
+
+  private static BufferSizingPolicy.Sizes getSizes(int memoryClassMb, boolean lowRamDevice) {
+    return new BufferSizingPolicy(memoryClassMb, lowRamDevice)
+        .getSizes(/* live= */ false, 0, BufferSizingPolicy.MEMORY_PRESSURE_NONE);
+  }
+}
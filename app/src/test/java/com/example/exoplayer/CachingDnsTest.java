@@ -0,0 +1,102 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.Dns;
+
+/** Unit tests for {@link CachingDns}. */
+public class CachingDnsTest {
+
+  private static final long TTL_MS = 60000;
+
+  private FakeClock clock;
+  private StubDns delegate;
+  private CachingDns dns;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 1000);
+    delegate = new StubDns();
+    dns = new CachingDns(delegate, TTL_MS, clock);
+  }
+
+  @Test
+  public void lookupWithinTtl_isCached() throws Exception {
+    List<InetAddress> first = dns.lookup("example.com");
+    clock.advanceTime(TTL_MS - 1);
+
+    assertSame(first, dns.lookup("example.com"));
+    assertEquals(1, delegate.lookupCount);
+  }
+
+  @Test
+  public void lookupAfterTtl_isRepeated() throws Exception {
+    dns.lookup("example.com");
+    clock.advanceTime(TTL_MS);
+
+    dns.lookup("example.com");
+
+    assertEquals(2, delegate.lookupCount);
+  }
+
+  @Test
+  public void differentHosts_areCachedSeparately() throws Exception {
+    dns.lookup("a.example.com");
+    dns.lookup("b.example.com");
+    dns.lookup("a.example.com");
+
+    assertEquals(2, delegate.lookupCount);
+  }
+
+  @Test
+  public void failedLookup_isNotCached() throws Exception {
+    delegate.fail = true;
+    try {
+      dns.lookup("example.com");
+      fail();
+    } catch (UnknownHostException e) {
+      // Expected.
+    }
+    delegate.fail = false;
+
+    dns.lookup("example.com");
+
+    assertEquals(2, delegate.lookupCount);
+  }
+
+  @Test
+  public void clear_removesCachedLookups() throws Exception {
+    dns.lookup("example.com");
+
+    dns.clear();
+    dns.lookup("example.com");
+
+    assertEquals(2, delegate.lookupCount);
+  }
+
+  private static final class StubDns implements Dns {
+
+    public int lookupCount;
+    public boolean fail;
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+      lookupCount++;
+      if (fail) {
+        throw new UnknownHostException(hostname);
+      }
+      return Collections.singletonList(
+          InetAddress.getByAddress(hostname, new byte[] {10, 0, 0, 1}));
+    }
+  }
+}
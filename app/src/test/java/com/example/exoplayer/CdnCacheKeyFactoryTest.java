@@ -0,0 +1,94 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/** Unit tests for {@link CdnCacheKeyFactory}. */
+public class CdnCacheKeyFactoryTest {
+
+  private static final String SEGMENT_URI =
+      "http://123.30.235.196:5635/live_pro/vtv1.stream/chunk_ctvideo_ridp0va0br1500000_cn42_mpd.m4s";
+
+  @Test
+  public void getCacheKey_stripsTokenParameters() {
+    CdnCacheKeyFactory cacheKeyFactory = new CdnCacheKeyFactory.Builder().build();
+
+    assertEquals(
+        SEGMENT_URI + "?bitrate=1500",
+        cacheKeyFactory.getCacheKey(
+            SEGMENT_URI + "?token=abc&bitrate=1500&wowzatokenendtime=1700000000#t=10"));
+    assertEquals(SEGMENT_URI, cacheKeyFactory.getCacheKey(SEGMENT_URI + "?hdnts=st%3D1~exp%3D2"));
+    assertEquals(SEGMENT_URI, cacheKeyFactory.getCacheKey(SEGMENT_URI + "?TOKEN=abc"));
+    assertEquals(SEGMENT_URI, cacheKeyFactory.getCacheKey(SEGMENT_URI));
+  }
+
+  @Test
+  public void getCacheKey_withCustomTokenParameter_stripsOnlyThatParameter() {
+    CdnCacheKeyFactory cacheKeyFactory =
+        new CdnCacheKeyFactory.Builder().clearTokenParameters().addTokenParameter("sid").build();
+
+    assertEquals(
+        SEGMENT_URI + "?token=abc",
+        cacheKeyFactory.getCacheKey(SEGMENT_URI + "?sid=1&token=abc"));
+  }
+
+  @Test
+  public void getCacheKey_collapsesHostAliases() {
+    CdnCacheKeyFactory cacheKeyFactory =
+        new CdnCacheKeyFactory.Builder()
+            .addHostAlias("edge1.cdn.example.com", "cdn.example.com")
+            .addHostAlias("edge2.cdn.example.com", "cdn.example.com")
+            .build();
+
+    String expectedKey = "https://cdn.example.com/vod/title/seg-1.m4s";
+    assertEquals(
+        expectedKey,
+        cacheKeyFactory.getCacheKey("https://EDGE1.cdn.example.com/vod/title/seg-1.m4s?token=a"));
+    assertEquals(
+        expectedKey,
+        cacheKeyFactory.getCacheKey("https://edge2.cdn.example.com:8443/vod/title/seg-1.m4s"));
+    assertEquals(
+        "https://other.example.com:8443/vod/title/seg-1.m4s",
+        cacheKeyFactory.getCacheKey("https://other.example.com:8443/vod/title/seg-1.m4s"));
+  }
+
+  @Test
+  public void replayWithRotatedTokens_hitsCache() {
+    CdnCacheKeyFactory cacheKeyFactory =
+        new CdnCacheKeyFactory.Builder()
+            .addHostAlias("edge1.cdn.example.com", "cdn.example.com")
+            .addHostAlias("edge2.cdn.example.com", "cdn.example.com")
+            .build();
+    Set<String> urlKeyedCache = new HashSet<>();
+    Set<String> normalizedKeyedCache = new HashSet<>();
+    int urlKeyedHits = 0;
+    int normalizedKeyedHits = 0;
+    int requestCount = 0;
+
+    // Three sessions play the same 100 segments, each with its own token and edge host.
+    for (int session = 0; session < 3; session++) {
+      String host = session % 2 == 0 ? "edge1.cdn.example.com" : "edge2.cdn.example.com";
+      for (int segment = 0; segment < 100; segment++) {
+        String uri =
+            "https://" + host + "/vod/title/seg-" + segment + ".m4s?token=session" + session;
+        requestCount++;
+        if (!urlKeyedCache.add(uri)) {
+          urlKeyedHits++;
+        }
+        if (!normalizedKeyedCache.add(cacheKeyFactory.getCacheKey(uri))) {
+          normalizedKeyedHits++;
+        }
+      }
+    }
+
+    assertEquals(0, urlKeyedHits);
+    assertEquals(200, normalizedKeyedHits);
+    assertTrue((float) normalizedKeyedHits / requestCount > 0.66f);
+    assertEquals(100, normalizedKeyedCache.size());
+  }
+}
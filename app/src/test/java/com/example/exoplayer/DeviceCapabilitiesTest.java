@@ -0,0 +1,201 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Unit tests for {@link DeviceCapabilities}. */
+public class DeviceCapabilitiesTest {
+
+  private static final String AVC = "video/avc";
+  private static final String HEVC = "video/hevc";
+
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = File.createTempFile("capabilities", ".bin");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void l1WithModernHdcp_isLimitedBySecureDecoders() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L1", "HDCP-2.2", codecs(3840, 2160, 3840, 2160, 1920, 1080, 4096, 2160));
+
+    assertTrue(capabilities.isHardwareSecure());
+    assertFalse(capabilities.shouldForceL3());
+    assertEquals(3840, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(2160, capabilities.getMaxVideoHeight(AVC));
+  }
+
+  @Test
+  public void l1WithOldHdcp_isLimitedToHd() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L1", "HDCP-1.4", codecs(3840, 2160, 3840, 2160, 0, 0, 0, 0));
+
+    assertEquals(1920, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(1080, capabilities.getMaxVideoHeight(AVC));
+  }
+
+  @Test
+  public void unprotectedOutput_isLimitedToSd() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L1", "HDCP_NONE", codecs(1920, 1080, 1920, 1080, 0, 0, 0, 0));
+
+    assertEquals(960, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(540, capabilities.getMaxVideoHeight(AVC));
+  }
+
+  @Test
+  public void l3_isLimitedToSdAndUsesNonSecureDecoders() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L3", "Disconnected", codecs(0, 0, 640, 360, 0, 0, 0, 0));
+
+    assertFalse(capabilities.isHardwareSecure());
+    assertEquals(640, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(360, capabilities.getMaxVideoHeight(AVC));
+  }
+
+  @Test
+  public void l1WithoutSecureDecoder_shouldForceL3() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L1", "HDCP-2.2", codecs(0, 0, 1920, 1080, 0, 0, 1920, 1080));
+
+    assertTrue(capabilities.shouldForceL3());
+    assertFalse(capabilities.isHardwareSecure());
+    assertFalse(capabilities.hasSecureDecoder(AVC));
+    assertEquals(960, capabilities.getMaxVideoWidth(AVC));
+  }
+
+  @Test
+  public void maxVideoSize_isLimitedPerCodec() {
+    DeviceCapabilities capabilities =
+        newCapabilities("L1", "HDCP-2.2", codecs(1920, 1080, 1920, 1080, 3840, 2160, 3840, 2160));
+
+    assertEquals(1920, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(1080, capabilities.getMaxVideoHeight(AVC));
+    assertEquals(3840, capabilities.getMaxVideoWidth(HEVC));
+    assertEquals(2160, capabilities.getMaxVideoHeight(HEVC));
+    assertEquals(Integer.MAX_VALUE, capabilities.getMaxVideoWidth("video/x-vnd.on2.vp9"));
+  }
+
+  @Test
+  public void hdcpLevel_isBoundedByMaxHdcpLevel() {
+    Map<String, DeviceCapabilities.CodecCapability> codecs =
+        codecs(3840, 2160, 3840, 2160, 0, 0, 0, 0);
+
+    DeviceCapabilities disconnected =
+        new DeviceCapabilities("42/build", "L1", "Disconnected", "HDCP-1.4", codecs);
+    assertEquals(14, disconnected.getEffectiveHdcpVersion());
+    assertEquals(1920, disconnected.getMaxVideoWidth(AVC));
+
+    DeviceCapabilities unknownCurrentLevel =
+        new DeviceCapabilities("42/build", "L1", null, "HDCP-2.2", codecs);
+    assertEquals(22, unknownCurrentLevel.getEffectiveHdcpVersion());
+    assertEquals(3840, unknownCurrentLevel.getMaxVideoWidth(AVC));
+
+    DeviceCapabilities unknownMaxLevel =
+        new DeviceCapabilities("42/build", "L1", "HDCP-1.4", null, codecs);
+    assertEquals(14, unknownMaxLevel.getEffectiveHdcpVersion());
+  }
+
+  @Test
+  public void noWidevine_appliesOnlyDecoderLimits() {
+    DeviceCapabilities capabilities =
+        newCapabilities(null, null, codecs(0, 0, 1280, 720, 0, 0, 0, 0));
+
+    assertEquals(1280, capabilities.getMaxVideoWidth(AVC));
+    assertEquals(720, capabilities.getMaxVideoHeight(AVC));
+  }
+
+  @Test
+  public void parseHdcpVersion() {
+    assertEquals(22, DeviceCapabilities.parseHdcpVersion("HDCP-2.2"));
+    assertEquals(14, DeviceCapabilities.parseHdcpVersion("HDCP-1.4"));
+    assertEquals(23, DeviceCapabilities.parseHdcpVersion("HDCP-V2.3"));
+    assertEquals(0, DeviceCapabilities.parseHdcpVersion("HDCP-None"));
+    assertEquals(0, DeviceCapabilities.parseHdcpVersion("Unprotected"));
+    assertEquals(Integer.MAX_VALUE, DeviceCapabilities.parseHdcpVersion("Disconnected"));
+    assertEquals(Integer.MAX_VALUE, DeviceCapabilities.parseHdcpVersion("HDCP-No-Digital-Output"));
+    assertEquals(-1, DeviceCapabilities.parseHdcpVersion("Unknown"));
+    assertEquals(-1, DeviceCapabilities.parseHdcpVersion(null));
+  }
+
+  @Test
+  public void writeAndRead_roundTripsForSameFingerprintWithoutHdcpLevels() throws Exception {
+    DeviceCapabilities capabilities =
+        new DeviceCapabilities(
+            "42/build", "L1", "HDCP-2.2", "HDCP-2.3", codecs(1920, 1080, 3840, 2160, 0, 0, 0, 0));
+    capabilities.write(file);
+
+    DeviceCapabilities read = DeviceCapabilities.read(file, "42/build");
+
+    assertEquals("L1", read.widevineSecurityLevel);
+    assertNull(read.hdcpLevel);
+    assertNull(read.maxHdcpLevel);
+    assertEquals(2, read.codecs.size());
+    assertEquals(1920, read.codecs.get(AVC).secureMaxWidth);
+    assertEquals(2160, read.codecs.get(AVC).maxHeight);
+    assertFalse(read.hasSecureDecoder(HEVC));
+    assertEquals(
+        capabilities.toString(), read.withHdcpLevels("HDCP-2.2", "HDCP-2.3").toString());
+  }
+
+  @Test
+  public void read_otherFingerprintOrCorruptFile_returnsNull() throws Exception {
+    assertNull(DeviceCapabilities.read(file, "42/build"));
+
+    newCapabilities(null, null, codecs(0, 0, 0, 0, 0, 0, 0, 0)).write(file);
+    assertNull(DeviceCapabilities.read(file, "43/build"));
+
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(new byte[] {0, 0, 0, 1, 0});
+    output.close();
+    assertNull(DeviceCapabilities.read(file, "42/build"));
+  }
+
+  private static DeviceCapabilities newCapabilities(
+      String securityLevel,
+      String hdcpLevel,
+      Map<String, DeviceCapabilities.CodecCapability> codecs) {
+    return new DeviceCapabilities("42/build", securityLevel, hdcpLevel, hdcpLevel, codecs);
+  }
+
+  /** Returns AVC and HEVC capabilities, as secure and non-secure sizes of each. */
+  private static Map<String, DeviceCapabilities.CodecCapability> codecs(
+      int avcSecureWidth,
+      int avcSecureHeight,
+      int avcWidth,
+      int avcHeight,
+      int hevcSecureWidth,
+      int hevcSecureHeight,
+      int hevcWidth,
+      int hevcHeight) {
+    Map<String, DeviceCapabilities.CodecCapability> codecs = new LinkedHashMap<>();
+    codecs.put(
+        AVC,
+        new DeviceCapabilities.CodecCapability(
+            avcSecureWidth, avcSecureHeight, avcWidth, avcHeight));
+    codecs.put(
+        HEVC,
+        new DeviceCapabilities.CodecCapability(
+            hevcSecureWidth, hevcSecureHeight, hevcWidth, hevcHeight));
+    return codecs;
+  }
+}
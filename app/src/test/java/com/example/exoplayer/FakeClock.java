@@ -0,0 +1,45 @@
+package com.example.exoplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+
+/** A {@link Clock} whose time only moves when the test advances it. */
+/* package */ final class FakeClock implements Clock {
+
+  private long timeMs;
+
+  /** @param initialTimeMs The initial elapsed realtime, in milliseconds. */
+  public FakeClock(long initialTimeMs) {
+    timeMs = initialTimeMs;
+  }
+
+  /** Advances the time by {@code timeDiffMs}. */
+  public synchronized void advanceTime(long timeDiffMs) {
+    timeMs += timeDiffMs;
+  }
+
+  @Override
+  public synchronized long elapsedRealtime() {
+    return timeMs;
+  }
+
+  @Override
+  public synchronized long uptimeMillis() {
+    return timeMs;
+  }
+
+  @Override
+  public void sleep(long sleepTimeMs) {
+    advanceTime(sleepTimeMs);
+  }
+
+  @Override
+  public HandlerWrapper createHandler(Looper looper, @Nullable Handler.Callback callback) {
+    throw new UnsupportedOperationException();
+  }
+}
@@ -0,0 +1,396 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.DrmSession;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.drm.ExoMediaCrypto;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Unit tests for {@link LicensePrefetcher}. */
+public class LicensePrefetcherTest {
+
+  private static final UUID WIDEVINE_UUID = new UUID(0xEDEF8BA979D64ACEL, 0xA3C827DCD51D21EDL);
+  private static final Uri MANIFEST_URI = Uri.parse("http://origin/live/manifest.mpd");
+  private static final byte[] MANIFEST = "<MPD/>".getBytes();
+  private static final DrmInitData DRM_INIT_DATA =
+      new DrmInitData(new DrmInitData.SchemeData(WIDEVINE_UUID, "video/mp4", new byte[] {1, 2}));
+
+  private FakeUpstreamFactory upstreamFactory;
+  private AtomicInteger parseCount;
+  private RecordingDrmSessionManager drmSessionManager;
+  private PlaybackThread playbackThread;
+  private LicensePrefetcher licensePrefetcher;
+
+  @Before
+  public void setUp() {
+    upstreamFactory = new FakeUpstreamFactory();
+    parseCount = new AtomicInteger();
+    drmSessionManager = new RecordingDrmSessionManager();
+    playbackThread = new PlaybackThread();
+    licensePrefetcher =
+        new LicensePrefetcher(
+            upstreamFactory,
+            new ParsingLoadable.Parser<DrmInitData>() {
+              @Override
+              public DrmInitData parse(Uri uri, InputStream inputStream) throws IOException {
+                assertArrayEquals(MANIFEST, Util.toByteArray(inputStream));
+                parseCount.incrementAndGet();
+                return DRM_INIT_DATA;
+              }
+            });
+  }
+
+  @After
+  public void tearDown() {
+    licensePrefetcher.release();
+    playbackThread.release();
+  }
+
+  @Test
+  public void prefetch_acquiresSessionBeforePlayerLoadsManifest() throws Exception {
+    licensePrefetcher.prefetch(
+        MANIFEST_URI, drmSessionManager, /* playbackLooper= */ null, playbackThread);
+
+    // The player has not loaded the manifest yet, so the key request is ahead of it.
+    assertTrue(drmSessionManager.awaitAcquire());
+    assertSame(DRM_INIT_DATA, drmSessionManager.acquiredDrmInitData.get(0));
+    assertEquals("Playback", drmSessionManager.acquireThreadName);
+    assertEquals(1, drmSessionManager.prepareCount.get());
+  }
+
+  @Test
+  public void playerManifestLoad_isServedFromPrefetch() throws Exception {
+    licensePrefetcher.prefetch(
+        MANIFEST_URI, drmSessionManager, /* playbackLooper= */ null, playbackThread);
+    assertTrue(drmSessionManager.awaitAcquire());
+
+    // The first load is the player's initial load, the second a refresh of the manifest.
+    assertArrayEquals(MANIFEST, loadManifestAsPlayer());
+    assertEquals(1, upstreamFactory.getOpenCount(MANIFEST_URI));
+    assertArrayEquals(MANIFEST, loadManifestAsPlayer());
+    assertEquals(2, upstreamFactory.getOpenCount(MANIFEST_URI));
+    assertEquals(1, parseCount.get());
+  }
+
+  @Test
+  public void playerManifestLoad_duringPrefetch_waitsForPrefetchedManifest() throws Exception {
+    upstreamFactory.blockOpens();
+    licensePrefetcher.prefetch(
+        MANIFEST_URI, drmSessionManager, /* playbackLooper= */ null, playbackThread);
+    ExecutorService player = Executors.newSingleThreadExecutor();
+    try {
+      Future<byte[]> manifest =
+          player.submit(
+              new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                  return loadManifestAsPlayer();
+                }
+              });
+
+      upstreamFactory.unblockOpens();
+
+      assertArrayEquals(MANIFEST, manifest.get(5, TimeUnit.SECONDS));
+      assertEquals(1, upstreamFactory.getOpenCount(MANIFEST_URI));
+      assertTrue(drmSessionManager.awaitAcquire());
+    } finally {
+      player.shutdownNow();
+    }
+  }
+
+  @Test
+  public void cancel_releasesSessionOnPlaybackThread() throws Exception {
+    licensePrefetcher.prefetch(
+        MANIFEST_URI, drmSessionManager, /* playbackLooper= */ null, playbackThread);
+    assertTrue(drmSessionManager.awaitAcquire());
+
+    licensePrefetcher.cancel(MANIFEST_URI);
+
+    assertTrue(playbackThread.runPostedTasks(/* count= */ 2));
+    assertEquals("Playback", drmSessionManager.releaseThreadName);
+    assertEquals(0, drmSessionManager.prepareCount.get());
+  }
+
+  @Test
+  public void cancel_beforeManifestLoaded_acquiresNoSessionAndFetchesAgain() throws Exception {
+    upstreamFactory.blockOpens();
+    licensePrefetcher.prefetch(
+        MANIFEST_URI, drmSessionManager, /* playbackLooper= */ null, playbackThread);
+
+    licensePrefetcher.cancel(MANIFEST_URI);
+    upstreamFactory.unblockOpens();
+
+    // The cancelled prefetch still completes its fetch, but its session is never acquired and the
+    // player fetches the manifest itself. The release and the acquisition are both posted.
+    assertArrayEquals(MANIFEST, loadManifestAsPlayer());
+    assertTrue(playbackThread.runPostedTasks(/* count= */ 2));
+    assertEquals(2, upstreamFactory.getOpenCount(MANIFEST_URI));
+    assertEquals(0, drmSessionManager.acquiredDrmInitData.size());
+    assertEquals(0, drmSessionManager.prepareCount.get());
+  }
+
+  /** Loads the manifest through the prefetcher's data source, as the player's manifest loader. */
+  private byte[] loadManifestAsPlayer() throws IOException {
+    DataSourceInputStream inputStream =
+        new DataSourceInputStream(
+            licensePrefetcher.getDataSourceFactory().createDataSource(),
+            new DataSpec(MANIFEST_URI));
+    try {
+      return Util.toByteArray(inputStream);
+    } finally {
+      Util.closeQuietly(inputStream);
+    }
+  }
+
+  /** Runs the tasks of the playback thread on a thread of its own, counting them. */
+  private static final class PlaybackThread implements Executor {
+
+    private final ExecutorService executorService;
+    private final Semaphore postedTasks;
+
+    public PlaybackThread() {
+      executorService =
+          Executors.newSingleThreadExecutor(
+              new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  return new Thread(runnable, "Playback");
+                }
+              });
+      postedTasks = new Semaphore(0);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      executorService.execute(command);
+      postedTasks.release();
+    }
+
+    /** Waits for {@code count} tasks to be posted, and for all tasks posted so far to run. */
+    public boolean runPostedTasks(int count) throws Exception {
+      if (!postedTasks.tryAcquire(count, 5, TimeUnit.SECONDS)) {
+        return false;
+      }
+      executorService
+          .submit(
+              new Runnable() {
+                @Override
+                public void run() {}
+              })
+          .get(5, TimeUnit.SECONDS);
+      return true;
+    }
+
+    public void release() {
+      executorService.shutdownNow();
+    }
+  }
+
+  /** Serves {@link #MANIFEST} for every URI, optionally blocking opens until released. */
+  private static final class FakeUpstreamFactory implements DataSource.Factory {
+
+    private final Map<Uri, AtomicInteger> openCounts =
+        Collections.synchronizedMap(new HashMap<Uri, AtomicInteger>());
+
+    private volatile CountDownLatch opensBlocked = new CountDownLatch(0);
+
+    public void blockOpens() {
+      opensBlocked = new CountDownLatch(1);
+    }
+
+    public void unblockOpens() {
+      opensBlocked.countDown();
+    }
+
+    public int getOpenCount(Uri uri) {
+      AtomicInteger openCount = openCounts.get(uri);
+      return openCount != null ? openCount.get() : 0;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new DataSource() {
+
+        private int position;
+        @Nullable private Uri uri;
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {}
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+          try {
+            opensBlocked.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+          }
+          synchronized (openCounts) {
+            AtomicInteger openCount = openCounts.get(dataSpec.uri);
+            if (openCount == null) {
+              openCount = new AtomicInteger();
+              openCounts.put(dataSpec.uri, openCount);
+            }
+            openCount.incrementAndGet();
+          }
+          uri = dataSpec.uri;
+          position = 0;
+          return MANIFEST.length;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) {
+          if (position == MANIFEST.length) {
+            return C.RESULT_END_OF_INPUT;
+          }
+          int bytesRead = Math.min(readLength, MANIFEST.length - position);
+          System.arraycopy(MANIFEST, position, buffer, offset, bytesRead);
+          position += bytesRead;
+          return bytesRead;
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+          return uri;
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+          return Collections.emptyMap();
+        }
+
+        @Override
+        public void close() {
+          uri = null;
+        }
+      };
+    }
+  }
+
+  /** Records the sessions acquired and released, and the threads they are acquired on. */
+  private static final class RecordingDrmSessionManager
+      implements DrmSessionManager<ExoMediaCrypto> {
+
+    private final CountDownLatch acquired = new CountDownLatch(1);
+
+    public final List<DrmInitData> acquiredDrmInitData = new CopyOnWriteArrayList<>();
+    public final AtomicInteger prepareCount = new AtomicInteger();
+    @Nullable public volatile String acquireThreadName;
+    @Nullable public volatile String releaseThreadName;
+
+    @Override
+    public void prepare() {
+      prepareCount.incrementAndGet();
+    }
+
+    @Override
+    public void release() {
+      prepareCount.decrementAndGet();
+    }
+
+    @Override
+    public boolean canAcquireSession(DrmInitData drmInitData) {
+      return true;
+    }
+
+    @Override
+    public DrmSession<ExoMediaCrypto> acquireSession(
+        Looper playbackLooper, DrmInitData drmInitData) {
+      acquireThreadName = Thread.currentThread().getName();
+      acquiredDrmInitData.add(drmInitData);
+      acquired.countDown();
+      return new ReleaseRecordingDrmSession();
+    }
+
+    @Nullable
+    @Override
+    public Class<? extends ExoMediaCrypto> getExoMediaCryptoType(DrmInitData drmInitData) {
+      return null;
+    }
+
+    public boolean awaitAcquire() throws InterruptedException {
+      return acquired.await(5, TimeUnit.SECONDS);
+    }
+
+    /** A session that only records its release. */
+    private final class ReleaseRecordingDrmSession implements DrmSession<ExoMediaCrypto> {
+
+      @Override
+      public int getState() {
+        return STATE_OPENING;
+      }
+
+      @Nullable
+      @Override
+      public DrmSessionException getError() {
+        return null;
+      }
+
+      @Nullable
+      @Override
+      public ExoMediaCrypto getMediaCrypto() {
+        return null;
+      }
+
+      @Nullable
+      @Override
+      public Map<String, String> queryKeyStatus() {
+        return null;
+      }
+
+      @Nullable
+      @Override
+      public byte[] getOfflineLicenseKeySetId() {
+        return null;
+      }
+
+      @Override
+      public void acquire() {}
+
+      @Override
+      public void release() {
+        releaseThreadName = Thread.currentThread().getName();
+      }
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+/** Unit tests for {@link LicenseRenewalScheduler}. */
+public class LicenseRenewalSchedulerTest {
+
+  private static final byte[] SESSION_ID = new byte[] {1, 2, 3};
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void renewalDelay_leavesFractionOfRemainingDuration() {
+    LicenseRenewalScheduler scheduler = newScheduler(new FakeRenewer(3600), /* jitter= */ 0);
+
+    assertEquals(2880000, scheduler.getRenewalDelayMs(3600000));
+  }
+
+  @Test
+  public void renewalDelay_ofShortLicense_leavesMinimumTimeBeforeExpiry() {
+    LicenseRenewalScheduler scheduler = newScheduler(new FakeRenewer(120), /* jitter= */ 0);
+
+    assertEquals(60000, scheduler.getRenewalDelayMs(120000));
+  }
+
+  @Test
+  public void renewalDelay_ofLicenseWithinMinimumTimeBeforeExpiry_renewsHalfway() {
+    LicenseRenewalScheduler scheduler = newScheduler(new FakeRenewer(60), /* jitter= */ 0);
+
+    assertEquals(30000, scheduler.getRenewalDelayMs(60000));
+    assertEquals(15000, scheduler.getRenewalDelayMs(30000));
+  }
+
+  @Test
+  public void renewalDelay_ofLicenseWithinMinimumTimeBeforeExpiry_isShortenedByJitter() {
+    LicenseRenewalScheduler scheduler = newJitteredScheduler(new FixedRandom(0.5));
+
+    assertEquals(30000 - 1500, scheduler.getRenewalDelayMs(60000));
+    assertEquals(15000 - 750, scheduler.getRenewalDelayMs(30000));
+  }
+
+  @Test
+  public void renewalDelay_ofExpiringLicense_isSpreadOverMinimumDelay() {
+    LicenseRenewalScheduler scheduler = newJitteredScheduler(new FixedRandom(0.5));
+
+    assertEquals(1500, scheduler.getRenewalDelayMs(0));
+    assertEquals(1500, scheduler.getRenewalDelayMs(1000));
+    assertEquals(1000, newJitteredScheduler(new FixedRandom(0)).getRenewalDelayMs(0));
+    assertEquals(1990, newJitteredScheduler(new FixedRandom(0.99)).getRenewalDelayMs(0));
+  }
+
+  @Test
+  public void renewalDelay_isShortenedByJitter() {
+    LicenseRenewalScheduler scheduler = newJitteredScheduler(new FixedRandom(0.5));
+
+    assertEquals(2880000 - 144000, scheduler.getRenewalDelayMs(3600000));
+  }
+
+  @Test
+  public void loadedLicense_isRenewedAndRescheduled() throws Exception {
+    FakeRenewer renewer = new FakeRenewer(/* durationRemainingSec= */ 1);
+    renewer.renewals = new CountDownLatch(2);
+    LicenseRenewalScheduler scheduler = newFastScheduler(renewer);
+
+    scheduler.onLicenseLoaded(SESSION_ID);
+
+    assertTrue(renewer.renewals.await(5, TimeUnit.SECONDS));
+    assertTrue(scheduler.getRenewalCount() >= 1);
+  }
+
+  @Test
+  public void unlimitedLicense_isNotRenewed() {
+    LicenseRenewalScheduler scheduler = newFastScheduler(new FakeRenewer(Long.MAX_VALUE));
+
+    scheduler.onLicenseLoaded(SESSION_ID);
+
+    assertEquals(0, scheduler.getScheduledRenewalCount());
+  }
+
+  @Test
+  public void closedSession_cancelsRenewal() throws Exception {
+    FakeRenewer renewer = new FakeRenewer(/* durationRemainingSec= */ 1);
+    LicenseRenewalScheduler scheduler = newFastScheduler(renewer);
+
+    scheduler.onLicenseLoaded(SESSION_ID);
+    scheduler.onSessionClosed(new byte[] {1, 2, 3});
+    Thread.sleep(300);
+
+    assertEquals(0, scheduler.getScheduledRenewalCount());
+    assertEquals(0, renewer.renewCount.get());
+  }
+
+  @Test
+  public void failedRenewal_isRetriedBeforeExpiry() throws Exception {
+    FakeRenewer renewer = new FakeRenewer(/* durationRemainingSec= */ 1);
+    renewer.failuresLeft = 1;
+    renewer.renewals = new CountDownLatch(2);
+    LicenseRenewalScheduler scheduler = newFastScheduler(renewer);
+
+    scheduler.onLicenseLoaded(SESSION_ID);
+
+    // The retry runs within half the remaining duration rather than after the backoff.
+    assertTrue(renewer.renewals.await(2, TimeUnit.SECONDS));
+    assertEquals(1, scheduler.getFailedRenewalCount());
+  }
+
+  private LicenseRenewalScheduler newScheduler(FakeRenewer renewer, float jitter) {
+    return new LicenseRenewalScheduler(
+        renewer,
+        executor,
+        LicenseRenewalScheduler.DEFAULT_RENEW_AHEAD_FRACTION,
+        LicenseRenewalScheduler.DEFAULT_MIN_RENEW_AHEAD_MS,
+        jitter,
+        LicenseRenewalScheduler.DEFAULT_MIN_RENEWAL_DELAY_MS,
+        new Random());
+  }
+
+  /** Returns a scheduler with the default parameters and the given source of jitter. */
+  private LicenseRenewalScheduler newJitteredScheduler(Random random) {
+    return new LicenseRenewalScheduler(
+        new FakeRenewer(3600),
+        executor,
+        LicenseRenewalScheduler.DEFAULT_RENEW_AHEAD_FRACTION,
+        LicenseRenewalScheduler.DEFAULT_MIN_RENEW_AHEAD_MS,
+        LicenseRenewalScheduler.DEFAULT_JITTER_FACTOR,
+        LicenseRenewalScheduler.DEFAULT_MIN_RENEWAL_DELAY_MS,
+        random);
+  }
+
+  /** Returns a scheduler that renews a one second license after 100ms. */
+  private LicenseRenewalScheduler newFastScheduler(FakeRenewer renewer) {
+    return new LicenseRenewalScheduler(
+        renewer,
+        executor,
+        /* renewAheadFraction= */ 0.9f,
+        /* minRenewAheadMs= */ 0,
+        /* jitterFactor= */ 0,
+        /* minRenewalDelayMs= */ 0,
+        new Random());
+  }
+
+  private static final class FakeRenewer implements LicenseRenewalScheduler.Renewer {
+
+    private final long durationRemainingSec;
+    private final AtomicInteger renewCount;
+
+    private volatile int failuresLeft;
+    private volatile CountDownLatch renewals;
+
+    private FakeRenewer(long durationRemainingSec) {
+      this.durationRemainingSec = durationRemainingSec;
+      renewCount = new AtomicInteger();
+      renewals = new CountDownLatch(1);
+    }
+
+    @Override
+    public long getLicenseDurationRemainingSec(byte[] sessionId) {
+      return durationRemainingSec;
+    }
+
+    @Override
+    public void renew(byte[] sessionId) throws Exception {
+      renewCount.incrementAndGet();
+      renewals.countDown();
+      if (failuresLeft > 0) {
+        failuresLeft--;
+        throw new Exception("License server unavailable");
+      }
+    }
+  }
+
+  private static final class FixedRandom extends Random {
+
+    private final double value;
+
+    private FixedRandom(double value) {
+      this.value = value;
+    }
+
+    @Override
+    public double nextDouble() {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/** Unit tests for {@link LicenseRequestCoalescer}. */
+public class LicenseRequestCoalescerTest {
+
+  private static final int REQUEST_COUNT = 16;
+  private static final byte[] KEY_REQUEST = new byte[] {1, 2, 3, 4};
+
+  private MockWebServer server;
+  private LicenseRequestCoalescer coalescer;
+  private ExecutorService callers;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    coalescer = new LicenseRequestCoalescer(/* maxConcurrentRequests= */ 2, 8);
+    callers = Executors.newFixedThreadPool(REQUEST_COUNT);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    callers.shutdownNow();
+    server.shutdown();
+  }
+
+  @Test
+  public void concurrentIdenticalRequests_sendSinglePost() throws Exception {
+    server.enqueue(
+        new MockResponse().setBody("license").setBodyDelay(500, TimeUnit.MILLISECONDS));
+    final String url = server.url("/license").toString();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<byte[]>> responses = new ArrayList<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      responses.add(
+          callers.submit(
+              new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                  startLatch.await();
+                  return coalescer.execute(url, KEY_REQUEST.clone(), newPost(url), 5000);
+                }
+              }));
+    }
+
+    startLatch.countDown();
+
+    for (Future<byte[]> response : responses) {
+      assertArrayEquals("license".getBytes("UTF-8"), response.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(REQUEST_COUNT - 1, coalescer.getCoalescedRequestCount());
+    assertEquals(0, coalescer.getInFlightRequestCount());
+  }
+
+  @Test
+  public void requestsWithDifferentBodies_areNotCoalesced() throws Exception {
+    server.enqueue(new MockResponse().setBody("first"));
+    server.enqueue(new MockResponse().setBody("second"));
+    String url = server.url("/license").toString();
+
+    Future<byte[]> first = coalescer.submit(url, new byte[] {1}, newPost(url));
+    Future<byte[]> second = coalescer.submit(url, new byte[] {2}, newPost(url));
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals(0, coalescer.getCoalescedRequestCount());
+  }
+
+  @Test
+  public void execute_slowResponse_timesOut() throws Exception {
+    server.enqueue(new MockResponse().setBody("license").setBodyDelay(2, TimeUnit.SECONDS));
+    String url = server.url("/license").toString();
+
+    try {
+      coalescer.execute(url, KEY_REQUEST, newPost(url), /* timeoutMs= */ 100);
+      fail();
+    } catch (TimeoutException e) {
+      // Expected.
+    }
+  }
+
+  /** Returns a {@link Callable} that posts {@link #KEY_REQUEST} to {@code url}. */
+  private static Callable<byte[]> newPost(String url) {
+    return TestUtil.newPost(url, KEY_REQUEST, /* readTimeoutMs= */ 0);
+  }
+}
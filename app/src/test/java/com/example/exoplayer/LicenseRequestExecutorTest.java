@@ -0,0 +1,201 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/** Unit tests for {@link LicenseRequestExecutor}, run against a local {@link MockWebServer}. */
+public class LicenseRequestExecutorTest {
+
+  private MockWebServer server;
+  private LicenseRequestMetrics metrics;
+  private Callable<byte[]> post;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    metrics = new LicenseRequestMetrics();
+    post =
+        TestUtil.newPost(
+            server.url("/license").toString(), new byte[] {1, 2, 3}, /* readTimeoutMs= */ 500);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void serverError_isRetried() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(503));
+    server.enqueue(new MockResponse().setBody("license"));
+
+    byte[] response = newExecutor(newRetryPolicy().build()).execute(post, false);
+
+    assertArrayEquals("license".getBytes("UTF-8"), response);
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, metrics.getRetryCount());
+    assertEquals(1, metrics.getOutcomeCount(LicenseRequestMetrics.OUTCOME_HTTP_ERROR));
+    assertEquals(1, metrics.getOutcomeCount(LicenseRequestMetrics.OUTCOME_SUCCESS));
+  }
+
+  @Test
+  public void clientError_isNotRetried() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(403));
+    server.enqueue(new MockResponse().setBody("license"));
+
+    try {
+      newExecutor(newRetryPolicy().build()).execute(post, false);
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(403, e.responseCode);
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(0, metrics.getRetryCount());
+  }
+
+  @Test
+  public void serverError_afterMaxAttempts_fails() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(new MockResponse().setResponseCode(500));
+    }
+
+    try {
+      newExecutor(newRetryPolicy().setMaxAttempts(3).build()).execute(post, false);
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(500, e.responseCode);
+    }
+    assertEquals(3, server.getRequestCount());
+  }
+
+  @Test
+  public void serverError_retryBeyondTimeout_isNotStarted() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setResponseCode(503));
+    }
+    LicenseRetryPolicy retryPolicy =
+        new LicenseRetryPolicy.Builder()
+            .setMaxAttempts(5)
+            .setBackoff(/* initialBackoffMs= */ 400, /* maxBackoffMs= */ 400, 1f)
+            .setJitterFactor(0)
+            .build();
+
+    try {
+      // The first retry starts after 400 ms, the second would start after 800 ms.
+      newExecutor(retryPolicy).execute(post, false, /* timeoutMs= */ 600);
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(503, e.responseCode);
+    }
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, metrics.getRetryCount());
+  }
+
+  @Test
+  public void timeout_isRetried() throws Exception {
+    server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+    server.enqueue(new MockResponse().setBody("license"));
+
+    newExecutor(newRetryPolicy().build()).execute(post, false);
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, metrics.getOutcomeCount(LicenseRequestMetrics.OUTCOME_NETWORK_ERROR));
+  }
+
+  @Test
+  public void retryAfter_isHonored() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    server.enqueue(new MockResponse().setBody("license"));
+
+    long startTimeMs = System.currentTimeMillis();
+    newExecutor(newRetryPolicy().build()).execute(post, false);
+
+    assertTrue(System.currentTimeMillis() - startTimeMs >= 1000);
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void retryAfter_beyondMaximum_isNotRetried() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+
+    try {
+      newExecutor(newRetryPolicy().build()).execute(post, false);
+      fail();
+    } catch (InvalidResponseCodeException e) {
+      assertEquals(503, e.responseCode);
+    }
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void slowAttempt_isHedged() throws Exception {
+    server.enqueue(new MockResponse().setBody("slow").setBodyDelay(3, TimeUnit.SECONDS));
+    server.enqueue(new MockResponse().setBody("fast"));
+    LicenseRetryPolicy retryPolicy =
+        newRetryPolicy().setHedging(/* defaultHedgeDelayMs= */ 200, 0.95f).build();
+
+    long startTimeMs = System.currentTimeMillis();
+    byte[] response = newExecutor(retryPolicy).execute(post, true);
+
+    assertArrayEquals("fast".getBytes("UTF-8"), response);
+    assertTrue(System.currentTimeMillis() - startTimeMs < 2000);
+    assertEquals(1, metrics.getHedgeCount());
+    assertEquals(1, metrics.getHedgeWinCount());
+  }
+
+  @Test
+  public void fastAttempt_isNotHedged() throws Exception {
+    server.enqueue(new MockResponse().setBody("license"));
+    LicenseRetryPolicy retryPolicy =
+        newRetryPolicy().setHedging(/* defaultHedgeDelayMs= */ 1000, 0.95f).build();
+
+    newExecutor(retryPolicy).execute(post, true);
+
+    assertEquals(1, server.getRequestCount());
+    assertEquals(0, metrics.getHedgeCount());
+  }
+
+  @Test
+  public void backoff_growsExponentiallyWithJitter() {
+    LicenseRetryPolicy retryPolicy =
+        new LicenseRetryPolicy.Builder()
+            .setMaxAttempts(5)
+            .setBackoff(100, 1000, 2f)
+            .setJitterFactor(0.5f)
+            .build();
+    Exception error = new InvalidResponseCodeException(502, null, null, null);
+    Random random = new Random(0);
+
+    for (int attemptCount = 1; attemptCount < 5; attemptCount++) {
+      long nominalDelayMs = Math.min(1000, 100L << (attemptCount - 1));
+      long delayMs = retryPolicy.getRetryDelayMs(error, attemptCount, random);
+      assertTrue(delayMs >= nominalDelayMs / 2 && delayMs <= nominalDelayMs);
+    }
+    assertEquals(-1, retryPolicy.getRetryDelayMs(error, 5, random));
+  }
+
+  private LicenseRequestExecutor newExecutor(LicenseRetryPolicy retryPolicy) {
+    return new LicenseRequestExecutor(retryPolicy, metrics, new Random(0));
+  }
+
+  private static LicenseRetryPolicy.Builder newRetryPolicy() {
+    return new LicenseRetryPolicy.Builder().setBackoff(10, 50, 2f).setMaxRetryAfterMs(2000);
+  }
+}
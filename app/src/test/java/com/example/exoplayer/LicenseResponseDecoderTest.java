@@ -0,0 +1,142 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+
+/** Unit tests for {@link LicenseResponseDecoder}. */
+public class LicenseResponseDecoderTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void decodeJson_returnsLicense() throws Exception {
+    for (int licenseSize : new int[] {1, 2, 3, 4, 100, 2048, 65536}) {
+      byte[] license = newLicense(licenseSize);
+      byte[] response =
+          ("{\"status\":\"ok\",\"license\":\"" + Base64.getEncoder().encodeToString(license) + "\"}")
+              .getBytes(UTF_8);
+
+      assertArrayEquals(
+          license, LicenseResponseDecoder.JSON.decode(response, 0, response.length));
+    }
+  }
+
+  @Test
+  public void decodeJson_withNestedValuesAndEscapes_returnsLicense() throws Exception {
+    byte[] license = newLicense(300);
+    String base64 = Base64.getMimeEncoder().encodeToString(license);
+    String escapedBase64 = base64.replace("/", "\\/").replace("\r\n", "\\n");
+    byte[] response =
+        ("  { \"meta\" : {\"ids\": [1, \"}\"]}, \"expiry\": 3600,\n"
+                + " \"license\" : \"" + escapedBase64 + "\", \"extra\": null }")
+            .getBytes(UTF_8);
+
+    assertArrayEquals(license, LicenseResponseDecoder.JSON.decode(response, 0, response.length));
+  }
+
+  @Test
+  public void decodeJson_withUnicodeEscapes_returnsLicense() throws Exception {
+    byte[] license = newLicense(300);
+    String base64 = Base64.getEncoder().encodeToString(license);
+    // Serializers that escape non-alphanumeric characters write "/", "+" and "=" as \\uXXXX.
+    String escapedBase64 =
+        base64.replace("/", "\\u002F").replace("+", "\\u002b").replace("=", "\\u003D");
+    assertTrue(escapedBase64.contains("\\u002F"));
+    byte[] response = ("{\"license\":\"" + escapedBase64 + "\"}").getBytes(UTF_8);
+
+    assertArrayEquals(license, LicenseResponseDecoder.JSON.decode(response, 0, response.length));
+  }
+
+  @Test
+  public void decodeJson_malformedUnicodeEscape_throws() {
+    byte[] response = "{\"license\":\"AAAA\\u00G1AAA\"}".getBytes(UTF_8);
+
+    try {
+      LicenseResponseDecoder.JSON.decode(response, 0, response.length);
+      fail();
+    } catch (LicenseResponseException e) {
+      assertFalse(e.isServerError());
+    }
+  }
+
+  @Test
+  public void decodeJson_withOffset_decodesOnlyRange() throws Exception {
+    byte[] license = newLicense(64);
+    byte[] json =
+        ("{\"license\":\"" + Base64.getEncoder().encodeToString(license) + "\"}").getBytes(UTF_8);
+    byte[] buffer = new byte[json.length + 10];
+    System.arraycopy(json, 0, buffer, 5, json.length);
+
+    assertArrayEquals(license, LicenseResponseDecoder.JSON.decode(buffer, 5, json.length));
+  }
+
+  @Test
+  public void decodeJson_errorResponse_throwsServerError() {
+    byte[] response =
+        "{\"errorCode\": 4003, \"message\": \"License expired\"}".getBytes(UTF_8);
+
+    try {
+      LicenseResponseDecoder.JSON.decode(response, 0, response.length);
+      fail();
+    } catch (LicenseResponseException e) {
+      assertTrue(e.isServerError());
+      assertEquals("4003", e.errorCode);
+      assertEquals("License expired", e.serverMessage);
+    }
+  }
+
+  @Test
+  public void decodeJson_malformedResponse_throwsWithTruncatedBody() {
+    StringBuilder html = new StringBuilder("<html>");
+    for (int i = 0; i < 1000; i++) {
+      html.append("error page ");
+    }
+    byte[] response = html.toString().getBytes(UTF_8);
+
+    try {
+      LicenseResponseDecoder.JSON.decode(response, 0, response.length);
+      fail();
+    } catch (LicenseResponseException e) {
+      assertFalse(e.isServerError());
+      assertTrue(e.getMessage().length() < 512);
+    }
+  }
+
+  @Test
+  public void decodeJson_invalidBase64_throws() {
+    byte[] response = "{\"license\":\"AAAA*AAA\"}".getBytes(UTF_8);
+
+    try {
+      LicenseResponseDecoder.JSON.decode(response, 0, response.length);
+      fail();
+    } catch (LicenseResponseException e) {
+      assertFalse(e.isServerError());
+    }
+  }
+
+  @Test
+  public void decodeRaw_returnsBody() throws Exception {
+    byte[] license = newLicense(128);
+
+    assertSame(license, LicenseResponseDecoder.RAW.decode(license, 0, license.length));
+    byte[] slice = LicenseResponseDecoder.RAW.decode(license, 10, 20);
+    assertEquals(20, slice.length);
+    assertEquals(license[10], slice[0]);
+  }
+
+  private static byte[] newLicense(int size) {
+    byte[] license = new byte[size];
+    new Random(size).nextBytes(license);
+    return license;
+  }
+}
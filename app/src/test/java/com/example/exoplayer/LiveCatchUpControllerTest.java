@@ -0,0 +1,71 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link LiveCatchUpController} and {@link LiveOffsetMetrics}. */
+public class LiveCatchUpControllerTest {
+
+  @Test
+  public void updateSpeed_withinTolerance_playsAtNormalSpeed() {
+    LiveCatchUpController controller = new LiveCatchUpController(5000);
+
+    assertEquals(1f, controller.updateSpeed(5400), 1e-6);
+    assertEquals(1f, controller.updateSpeed(4600), 1e-6);
+  }
+
+  @Test
+  public void updateSpeed_farBehind_speedsUpInStepsToMaxSpeed() {
+    LiveCatchUpController controller = new LiveCatchUpController(5000);
+
+    assertEquals(1.01f, controller.updateSpeed(15000), 1e-6);
+    assertEquals(1.02f, controller.updateSpeed(15000), 1e-6);
+    for (int i = 0; i < 10; i++) {
+      controller.updateSpeed(15000);
+    }
+    assertEquals(LiveCatchUpController.DEFAULT_MAX_SPEED, controller.getSpeed(), 1e-6);
+  }
+
+  @Test
+  public void updateSpeed_tooCloseToLiveEdge_slowsDownToMinSpeed() {
+    LiveCatchUpController controller = new LiveCatchUpController(5000);
+
+    for (int i = 0; i < 10; i++) {
+      controller.updateSpeed(0);
+    }
+    assertEquals(LiveCatchUpController.DEFAULT_MIN_SPEED, controller.getSpeed(), 1e-6);
+    // Back within tolerance, the speed returns to 1 one step at a time.
+    assertEquals(0.98f, controller.updateSpeed(5000), 1e-6);
+  }
+
+  @Test
+  public void shouldResync_pastThreshold_resetsSpeed() {
+    LiveCatchUpController controller = new LiveCatchUpController(5000);
+    controller.updateSpeed(20000);
+
+    assertFalse(controller.shouldResync(25000));
+    assertTrue(controller.shouldResync(25001));
+    assertEquals(1f, controller.getSpeed(), 1e-6);
+  }
+
+  @Test
+  public void metrics_trackOffsetsAndAdjustedTime() {
+    LiveOffsetMetrics metrics = new LiveOffsetMetrics();
+    metrics.onOffsetSample(6000, 1.01f);
+    metrics.onOffsetSample(5000, 1f);
+    metrics.onOffsetSample(4000, 1f);
+    metrics.onOffsetSample(5000, 1f);
+    metrics.onResync();
+
+    assertEquals(5000, metrics.getCurrentOffsetMs());
+    assertEquals(5000, metrics.getMeanOffsetMs());
+    assertEquals(4000, metrics.getMinOffsetMs());
+    assertEquals(6000, metrics.getMaxOffsetMs());
+    assertEquals(0.25f, metrics.getAdjustedFraction(), 1e-6);
+    assertEquals(1, metrics.getResyncCount());
+    assertEquals(5000, metrics.getOffsetPercentileMs(0.5f));
+  }
+}
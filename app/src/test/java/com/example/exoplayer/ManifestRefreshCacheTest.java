@@ -0,0 +1,216 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.app.Application;
+import android.net.Uri;
+
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceInputStream;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.ParsingLoadable;
+import com.google.android.exoplayer2.util.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/** Unit tests for {@link ManifestRefreshCache}, run against a local {@link MockWebServer}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class ManifestRefreshCacheTest {
+
+  private static final String MANIFEST =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\""
+          + " mediaPresentationDuration=\"PT10S\" minBufferTime=\"PT2S\">\n"
+          + " <Period id=\"0\">\n"
+          + "  <AdaptationSet mimeType=\"video/mp4\">\n"
+          + "   <SegmentTemplate timescale=\"1000\" duration=\"2000\" startNumber=\"1\""
+          + " media=\"segment-$Number$.m4s\"/>\n"
+          + "   <Representation id=\"%s\" bandwidth=\"400000\" codecs=\"avc1.4d401f\""
+          + " width=\"640\" height=\"360\"/>\n"
+          + "  </AdaptationSet>\n"
+          + " </Period>\n"
+          + "</MPD>\n";
+
+  private MockWebServer server;
+  private ManifestRefreshCache manifestRefreshCache;
+  private DataSource.Factory dataSourceFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    manifestRefreshCache = new ManifestRefreshCache();
+    dataSourceFactory =
+        manifestRefreshCache.buildDataSourceFactory(
+            new DefaultHttpDataSourceFactory("ManifestRefreshCacheTest"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void refreshWithEtag_notModified_servesPreviousBody() throws Exception {
+    byte[] manifest = getManifest("1");
+    server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(newBody(manifest)));
+    server.enqueue(new MockResponse().setResponseCode(304));
+    String url = server.url("/live/manifest.mpd").toString();
+
+    assertArrayEquals(manifest, load(url));
+    assertArrayEquals(manifest, load(url));
+
+    assertNull(server.takeRequest().getHeader("If-None-Match"));
+    assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+    ManifestRefreshCache.Metrics metrics = manifestRefreshCache.getMetrics();
+    assertEquals(2, metrics.getLoadCount());
+    assertEquals(1, metrics.getNotModifiedCount());
+    assertEquals(manifest.length, metrics.getBytesDownloaded());
+    assertEquals(manifest.length, metrics.getBytesSaved());
+  }
+
+  @Test
+  public void refreshWithLastModified_sendsIfModifiedSince() throws Exception {
+    String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+    byte[] first = getManifest("1");
+    byte[] second = getManifest("2");
+    server.enqueue(
+        new MockResponse().setHeader("Last-Modified", lastModified).setBody(newBody(first)));
+    server.enqueue(new MockResponse().setBody(newBody(second)));
+    String url = server.url("/live/manifest.mpd").toString();
+
+    load(url);
+    assertArrayEquals(second, load(url));
+
+    server.takeRequest();
+    assertEquals(lastModified, server.takeRequest().getHeader("If-Modified-Since"));
+    ManifestRefreshCache.Metrics metrics = manifestRefreshCache.getMetrics();
+    assertEquals(2, metrics.getLoadCount());
+    assertEquals(0, metrics.getNotModifiedCount());
+    assertEquals(first.length + second.length, metrics.getBytesDownloaded());
+  }
+
+  @Test
+  public void responseWithoutValidators_isNotConditional() throws Exception {
+    server.enqueue(new MockResponse().setBody(newBody(getManifest("1"))));
+    server.enqueue(new MockResponse().setBody(newBody(getManifest("1"))));
+    String url = server.url("/live/manifest.mpd").toString();
+
+    load(url);
+    load(url);
+
+    server.takeRequest();
+    RecordedRequest refresh = server.takeRequest();
+    assertNull(refresh.getHeader("If-None-Match"));
+    assertNull(refresh.getHeader("If-Modified-Since"));
+  }
+
+  @Test
+  public void manifestUrlWithoutExtension_isConditional() throws Exception {
+    byte[] manifest = getManifest("1");
+    server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody(newBody(manifest)));
+    server.enqueue(new MockResponse().setResponseCode(304));
+    String url = server.url("/live/channel?format=dash").toString();
+
+    load(url);
+    assertArrayEquals(manifest, load(url));
+
+    server.takeRequest();
+    assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+    assertEquals(1, manifestRefreshCache.getMetrics().getNotModifiedCount());
+  }
+
+  @Test
+  public void rangeRequest_isNotConditional() throws Exception {
+    server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("manifest"));
+    server.enqueue(new MockResponse().setHeader("ETag", "\"v1\"").setBody("mani"));
+    String url = server.url("/live/manifest.mpd").toString();
+
+    load(url);
+    DataSourceInputStream inputStream =
+        new DataSourceInputStream(
+            dataSourceFactory.createDataSource(),
+            new DataSpec(Uri.parse(url), /* absoluteStreamPosition= */ 0, 4, /* key= */ null));
+    try {
+      Util.toByteArray(inputStream);
+    } finally {
+      inputStream.close();
+    }
+
+    server.takeRequest();
+    assertNull(server.takeRequest().getHeader("If-None-Match"));
+    assertEquals(1, manifestRefreshCache.getMetrics().getLoadCount());
+  }
+
+  @Test
+  public void parser_unchangedManifest_reusesPreviousResult() throws Exception {
+    ParsingLoadable.Parser<DashManifest> parser = manifestRefreshCache.newDashManifestParser();
+    Uri uri = Uri.parse("https://example.com/live/manifest.mpd");
+
+    DashManifest first = parser.parse(uri, new ByteArrayInputStream(getManifest("1")));
+    DashManifest unchanged = parser.parse(uri, new ByteArrayInputStream(getManifest("1")));
+    DashManifest changed = parser.parse(uri, new ByteArrayInputStream(getManifest("2")));
+
+    assertSame(first, unchanged);
+    assertNotSame(first, changed);
+    ManifestRefreshCache.Metrics metrics = manifestRefreshCache.getMetrics();
+    assertEquals(2, metrics.getParseCount());
+    assertEquals(1, metrics.getParseSkippedCount());
+  }
+
+  @Test
+  public void parsers_doNotShareResults() throws Exception {
+    Uri uri = Uri.parse("https://example.com/live/manifest.mpd");
+
+    DashManifest first =
+        manifestRefreshCache
+            .newDashManifestParser()
+            .parse(uri, new ByteArrayInputStream(getManifest("1")));
+    DashManifest second =
+        manifestRefreshCache
+            .newDashManifestParser()
+            .parse(uri, new ByteArrayInputStream(getManifest("1")));
+
+    assertNotSame(first, second);
+    assertEquals(2, manifestRefreshCache.getMetrics().getParseCount());
+  }
+
+  private byte[] load(String url) throws IOException {
+    DataSourceInputStream inputStream =
+        new DataSourceInputStream(
+            dataSourceFactory.createDataSource(), new DataSpec(Uri.parse(url)));
+    try {
+      return Util.toByteArray(inputStream);
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static byte[] getManifest(String representationId) {
+    return Util.getUtf8Bytes(String.format(MANIFEST, representationId));
+  }
+
+  private static Buffer newBody(byte[] data) {
+    return new Buffer().write(data);
+  }
+}
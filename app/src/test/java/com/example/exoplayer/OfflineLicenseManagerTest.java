@@ -0,0 +1,299 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.DrmInitData;
+import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
+import com.google.android.exoplayer2.drm.ExoMediaDrm.ProvisionRequest;
+import com.google.android.exoplayer2.drm.MediaDrmCallback;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link OfflineLicenseManager} and {@link OfflineLicenseStore}. */
+public class OfflineLicenseManagerTest {
+
+  private static final UUID WIDEVINE_UUID = new UUID(0xEDEF8BA979D64ACEL, 0xA3C827DCD51D21EDL);
+  private static final String CONTENT_ID = "content";
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File storeFile;
+  private StubMediaDrmCallback mediaDrmCallback;
+  private StubLicenseDownloader licenseDownloader;
+  private DrmInitData drmInitData;
+
+  @Before
+  public void setUp() throws Exception {
+    storeFile = new File(temporaryFolder.getRoot(), "licenses");
+    mediaDrmCallback = new StubMediaDrmCallback();
+    licenseDownloader = new StubLicenseDownloader(mediaDrmCallback);
+    drmInitData =
+        new DrmInitData(
+            new DrmInitData.SchemeData(WIDEVINE_UUID, "video/mp4", new byte[] {1, 2, 3}));
+  }
+
+  @Test
+  public void acquireLicense_missThenHit_makesSingleKeyRequest() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+
+    byte[] first = manager.acquireLicense(drmInitData);
+    byte[] second = manager.acquireLicense(drmInitData);
+
+    assertArrayEquals(first, second);
+    assertEquals(1, mediaDrmCallback.keyRequestCount);
+    manager.release();
+  }
+
+  @Test
+  public void acquireLicense_doesNotCountLookups() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    String contentId = OfflineLicenseManager.getContentId(drmInitData);
+    // A restore that misses and falls back to acquiring the license counts as a single miss.
+    assertNull(manager.getStore().getKeySetId(contentId, System.currentTimeMillis()));
+
+    manager.acquireLicense(drmInitData);
+
+    assertEquals(0, manager.getStore().getHitCount());
+    assertEquals(1, manager.getStore().getMissCount());
+    manager.release();
+  }
+
+  @Test
+  public void getContentId_keyedByWidevinePssh() {
+    DrmInitData samePssh =
+        new DrmInitData(
+            new DrmInitData.SchemeData(WIDEVINE_UUID, "video/webm", new byte[] {1, 2, 3}));
+    DrmInitData otherPssh =
+        new DrmInitData(
+            new DrmInitData.SchemeData(WIDEVINE_UUID, "video/mp4", new byte[] {1, 2, 4}));
+    DrmInitData otherScheme =
+        new DrmInitData(
+            new DrmInitData.SchemeData(
+                new UUID(0x9A04F07998404286L, 0xAB92E65BE0885F95L),
+                "video/mp4",
+                new byte[] {1, 2, 3}));
+
+    String contentId = OfflineLicenseManager.getContentId(drmInitData);
+
+    assertNotNull(contentId);
+    assertEquals(contentId, OfflineLicenseManager.getContentId(samePssh));
+    assertFalse(contentId.equals(OfflineLicenseManager.getContentId(otherPssh)));
+    assertNull(OfflineLicenseManager.getContentId(otherScheme));
+  }
+
+  @Test
+  public void persistLicense_persistsBeforeRelease() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    manager.persistLicense(drmInitData, new byte[] {4, 5}, /* durationRemainingSec= */ 3600);
+
+    manager.release();
+
+    assertTrue(licenseDownloader.awaitRelease());
+    assertArrayEquals(
+        new byte[] {4, 5},
+        new OfflineLicenseStore(storeFile)
+            .peekKeySetId(OfflineLicenseManager.getContentId(drmInitData), 0));
+    assertEquals(0, mediaDrmCallback.keyRequestCount);
+  }
+
+  @Test
+  public void persistLicense_withoutKeySetId_stopsPersisting() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    assertTrue(manager.canPersistLicense(drmInitData));
+
+    // A license server whose policy does not grant persistent licenses answers with a streaming
+    // license, which has no key set id.
+    manager.persistLicense(drmInitData, /* keySetId= */ null, C.TIME_UNSET);
+    manager.release();
+
+    assertTrue(licenseDownloader.awaitRelease());
+    assertFalse(manager.canPersistLicense(drmInitData));
+    assertEquals(0, new OfflineLicenseStore(storeFile).size());
+  }
+
+  @Test
+  public void acquireLicense_afterReload_usesPersistedLicense() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    byte[] keySetId = manager.acquireLicense(drmInitData);
+    manager.release();
+
+    OfflineLicenseManager reloadedManager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+
+    assertArrayEquals(keySetId, reloadedManager.acquireLicense(drmInitData));
+    assertEquals(1, mediaDrmCallback.keyRequestCount);
+    reloadedManager.release();
+  }
+
+  @Test
+  public void acquireLicense_expiredLicense_fallsBackToKeyRequest() throws Exception {
+    licenseDownloader.durationRemainingSec = 0;
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+
+    manager.acquireLicense(drmInitData);
+    manager.acquireLicense(drmInitData);
+
+    assertEquals(2, mediaDrmCallback.keyRequestCount);
+    assertEquals(1, manager.getStore().getExpiredCount());
+    manager.release();
+  }
+
+  @Test
+  public void invalidateLicense_removesPersistedLicense() throws Exception {
+    OfflineLicenseStore store = new OfflineLicenseStore(storeFile);
+    OfflineLicenseManager manager = new OfflineLicenseManager(store, licenseDownloader);
+    manager.acquireLicense(drmInitData);
+
+    manager.invalidateLicense(drmInitData);
+
+    assertNull(
+        new OfflineLicenseStore(storeFile)
+            .getKeySetId(OfflineLicenseManager.getContentId(drmInitData), 0));
+    manager.release();
+  }
+
+  @Test
+  public void releaseLicense_releasesAndRemovesPersistedLicense() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    byte[] keySetId = manager.acquireLicense(drmInitData);
+
+    manager.releaseLicense(keySetId);
+
+    assertEquals(1, licenseDownloader.releasedKeySetIds.size());
+    assertArrayEquals(keySetId, licenseDownloader.releasedKeySetIds.get(0));
+    assertNull(
+        new OfflineLicenseStore(storeFile)
+            .getKeySetId(OfflineLicenseManager.getContentId(drmInitData), 0));
+    manager.release();
+  }
+
+  @Test
+  public void releaseLicense_serverUnreachable_stillRemovesPersistedLicense() throws Exception {
+    OfflineLicenseManager manager =
+        new OfflineLicenseManager(new OfflineLicenseStore(storeFile), licenseDownloader);
+    byte[] keySetId = manager.acquireLicense(drmInitData);
+    licenseDownloader.releaseError = new IOException("Unreachable");
+
+    try {
+      manager.releaseLicense(keySetId);
+      fail();
+    } catch (IOException e) {
+      // Expected.
+    }
+
+    assertEquals(0, manager.getStore().size());
+    manager.release();
+  }
+
+  @Test
+  public void store_noExpiry_neverExpires() {
+    OfflineLicenseStore store = new OfflineLicenseStore(storeFile);
+    store.put(CONTENT_ID, new byte[] {4, 5}, OfflineLicenseStore.NO_EXPIRY);
+
+    store.removeExpired(Long.MAX_VALUE - 1);
+
+    assertArrayEquals(new byte[] {4, 5}, store.getKeySetId(CONTENT_ID, Long.MAX_VALUE - 1));
+  }
+
+  @Test
+  public void store_removeKeySetId_removesMatchingEntries() {
+    OfflineLicenseStore store = new OfflineLicenseStore(storeFile);
+    store.put(CONTENT_ID, new byte[] {4, 5}, OfflineLicenseStore.NO_EXPIRY);
+    store.put("other", new byte[] {6}, OfflineLicenseStore.NO_EXPIRY);
+
+    store.removeKeySetId(new byte[] {4, 5});
+
+    assertNull(new OfflineLicenseStore(storeFile).getKeySetId(CONTENT_ID, 0));
+    assertEquals(1, store.size());
+  }
+
+  /** Downloads "licenses" by forwarding key requests to a {@link MediaDrmCallback}. */
+  private static final class StubLicenseDownloader
+      implements OfflineLicenseManager.LicenseDownloader {
+
+    private final MediaDrmCallback mediaDrmCallback;
+    private final CountDownLatch released;
+
+    public final List<byte[]> releasedKeySetIds = new ArrayList<>();
+    public long durationRemainingSec = 3600;
+    @Nullable public Exception releaseError;
+
+    public StubLicenseDownloader(MediaDrmCallback mediaDrmCallback) {
+      this.mediaDrmCallback = mediaDrmCallback;
+      released = new CountDownLatch(1);
+    }
+
+    @Override
+    public byte[] downloadLicense(DrmInitData drmInitData) throws Exception {
+      byte[] data = drmInitData.get(0).data;
+      return mediaDrmCallback.executeKeyRequest(
+          WIDEVINE_UUID, new KeyRequest(data, /* licenseServerUrl= */ ""));
+    }
+
+    @Override
+    public long getLicenseDurationRemainingSec(byte[] keySetId) {
+      return durationRemainingSec;
+    }
+
+    @Override
+    public void releaseLicense(byte[] keySetId) throws Exception {
+      if (releaseError != null) {
+        throw releaseError;
+      }
+      releasedKeySetIds.add(keySetId);
+    }
+
+    @Override
+    public void release() {
+      released.countDown();
+    }
+
+    public boolean awaitRelease() throws InterruptedException {
+      return released.await(5, TimeUnit.SECONDS);
+    }
+  }
+
+  /** A {@link MediaDrmCallback} that counts requests instead of making them. */
+  private static final class StubMediaDrmCallback implements MediaDrmCallback {
+
+    public int keyRequestCount;
+
+    @Override
+    public byte[] executeProvisionRequest(UUID uuid, ProvisionRequest request) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] executeKeyRequest(UUID uuid, KeyRequest request) {
+      keyRequestCount++;
+      return new byte[] {(byte) keyRequestCount};
+    }
+  }
+}
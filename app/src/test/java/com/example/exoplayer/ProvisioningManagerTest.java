@@ -0,0 +1,198 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/** Unit tests for {@link ProvisioningManager}. */
+public class ProvisioningManagerTest {
+
+  private static final String FINGERPRINT = "vendor/device:11/build";
+  private static final LicenseRetryPolicy FAST_RETRY_POLICY =
+      new LicenseRetryPolicy.Builder()
+          .setMaxAttempts(3)
+          .setBackoff(
+              /* initialBackoffMs= */ 10, /* maxBackoffMs= */ 10, /* backoffMultiplier= */ 1)
+          .build();
+
+  private File stateFile;
+  private FakeProvisioner provisioner;
+  private List<ProvisioningManager> managers;
+
+  @Before
+  public void setUp() throws Exception {
+    stateFile = File.createTempFile("provisioning", ".bin");
+    stateFile.delete();
+    provisioner = new FakeProvisioner();
+    managers = new ArrayList<>();
+  }
+
+  @After
+  public void tearDown() {
+    provisioner.gate.countDown();
+    provisioner.retryGate.countDown();
+    for (ProvisioningManager manager : managers) {
+      manager.release();
+    }
+    stateFile.delete();
+  }
+
+  @Test
+  public void concurrentCallers_shareOneAttempt() throws Exception {
+    provisioner.gate = new CountDownLatch(1);
+    ProvisioningManager manager = newManager(FINGERPRINT);
+
+    Future<Boolean> first = manager.provision();
+    Future<Boolean> second = manager.provision();
+    provisioner.gate.countDown();
+
+    assertSame(first, second);
+    assertTrue(first.get(5, TimeUnit.SECONDS));
+    assertTrue(manager.isProvisioned());
+    assertEquals(1, manager.getProvisionRequestCount());
+    assertEquals(1, manager.getJoinedCount());
+    assertEquals(1, provisioner.provisionCount);
+  }
+
+  @Test
+  public void provisionedDevice_sendsNoRequest() throws Exception {
+    provisioner.provisioned = true;
+    ProvisioningManager manager = newManager(FINGERPRINT);
+
+    assertTrue(manager.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(1, provisioner.checkCount);
+    assertEquals(0, manager.getProvisionRequestCount());
+    assertEquals(-1, manager.getProvisioningDurationMs());
+  }
+
+  @Test
+  public void persistedState_skipsCheckOnSameBuildOnly() throws Exception {
+    assertTrue(newManager(FINGERPRINT).provision().get(5, TimeUnit.SECONDS));
+    assertEquals(1, provisioner.checkCount);
+
+    ProvisioningManager sameBuild = newManager(FINGERPRINT);
+    assertTrue(sameBuild.provision().get(5, TimeUnit.SECONDS));
+    assertTrue(sameBuild.isProvisioned());
+    assertEquals(1, provisioner.checkCount);
+
+    ProvisioningManager otherBuild = newManager("vendor/device:12/build");
+    assertTrue(otherBuild.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(2, provisioner.checkCount);
+  }
+
+  @Test
+  public void persistedState_isIgnoredForOtherSecurityLevel() throws Exception {
+    assertTrue(newManager(FINGERPRINT, "L1").provision().get(5, TimeUnit.SECONDS));
+    assertEquals(1, provisioner.checkCount);
+
+    ProvisioningManager sameLevel = newManager(FINGERPRINT, "L1");
+    assertTrue(sameLevel.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(1, provisioner.checkCount);
+
+    ProvisioningManager otherLevel = newManager(FINGERPRINT, "L3");
+    assertTrue(otherLevel.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(2, provisioner.checkCount);
+  }
+
+  @Test
+  public void retryableFailure_isRetriedInBackground() throws Exception {
+    provisioner.failuresRemaining = 1;
+    provisioner.failure = new ConnectException();
+    provisioner.retryGate = new CountDownLatch(1);
+    ProvisioningManager manager = newManager(FINGERPRINT);
+
+    assertFalse(manager.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(ProvisioningManager.STATE_RETRY_SCHEDULED, manager.getState());
+
+    // Wait for the retry to be held in its provisioning request, and join it.
+    long deadlineMs = System.currentTimeMillis() + 5000;
+    while (provisioner.provisionCount < 2 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(5);
+    }
+    assertEquals(2, provisioner.provisionCount);
+    Future<Boolean> retry = manager.provision();
+    assertEquals(1, manager.getJoinedCount());
+    assertEquals(ProvisioningManager.STATE_RETRY_SCHEDULED, manager.getState());
+
+    provisioner.retryGate.countDown();
+    assertTrue(retry.get(5, TimeUnit.SECONDS));
+    assertTrue(manager.isProvisioned());
+    assertEquals(2, manager.getAttemptCount());
+  }
+
+  @Test
+  public void nonRetryableFailure_failsUntilProvisionedAgain() throws Exception {
+    provisioner.failuresRemaining = 1;
+    provisioner.failure = new IllegalStateException("Denied by server");
+    ProvisioningManager manager = newManager(FINGERPRINT);
+
+    assertFalse(manager.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(ProvisioningManager.STATE_FAILED, manager.getState());
+    assertFalse(stateFile.exists());
+
+    assertTrue(manager.provision().get(5, TimeUnit.SECONDS));
+    assertEquals(ProvisioningManager.STATE_PROVISIONED, manager.getState());
+    assertTrue(stateFile.exists());
+  }
+
+  private ProvisioningManager newManager(String fingerprint) {
+    return newManager(fingerprint, /* securityLevel= */ null);
+  }
+
+  private ProvisioningManager newManager(String fingerprint, String securityLevel) {
+    ProvisioningManager manager =
+        new ProvisioningManager(
+            provisioner,
+            stateFile,
+            fingerprint,
+            securityLevel,
+            FAST_RETRY_POLICY,
+            new Random(/* seed= */ 0));
+    managers.add(manager);
+    return manager;
+  }
+
+  private static final class FakeProvisioner implements ProvisioningManager.Provisioner {
+
+    public volatile boolean provisioned;
+    public volatile CountDownLatch gate = new CountDownLatch(0);
+    /** Replaces {@link #gate} once a request has failed, so that retries can be held. */
+    public volatile CountDownLatch retryGate = new CountDownLatch(0);
+    public volatile int failuresRemaining;
+    public volatile Exception failure;
+    public volatile int checkCount;
+    public volatile int provisionCount;
+
+    @Override
+    public boolean isProvisioned() {
+      checkCount++;
+      return provisioned;
+    }
+
+    @Override
+    public void provision() throws Exception {
+      provisionCount++;
+      gate.await();
+      if (failuresRemaining > 0) {
+        failuresRemaining--;
+        gate = retryGate;
+        throw failure;
+      }
+      provisioned = true;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Unit tests for {@link QoeAggregator}, fed with synthetic event streams. */
+public class QoeAggregatorTest {
+
+  private File snapshotFile;
+
+  @Before
+  public void setUp() throws Exception {
+    snapshotFile = File.createTempFile("qoe", ".txt");
+    snapshotFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    snapshotFile.delete();
+    new File(snapshotFile.getPath() + ".1").delete();
+  }
+
+  @Test
+  public void session_countsRebuffersButNotStartup() {
+    QoeAggregator aggregator = new QoeAggregator();
+    aggregator.startSession("vtv1", 0);
+    aggregator.onBuffering(0);
+    aggregator.onPlaying(1500);
+    aggregator.onBuffering(11500);
+    aggregator.onPlaying(12500);
+    aggregator.onBuffering(20000);
+    aggregator.onPlaying(23000);
+    aggregator.endSession(30000);
+
+    QoeCounters counters = aggregator.getTotalCounters();
+    assertEquals(1, counters.sessionCount);
+    assertEquals(2, counters.rebufferCount);
+    assertEquals(4000, counters.rebufferTimeMs);
+    assertEquals(24500, counters.playTimeMs);
+    assertEquals(4000f / 28500, counters.getRebufferRatio(), 1e-6);
+    // One rebuffer of 1s and one of 3s.
+    assertEquals(1, counters.rebufferDurations.getWeight(2));
+    assertEquals(1, counters.rebufferDurations.getWeight(4));
+  }
+
+  @Test
+  public void pause_isNeitherPlayNorRebufferTime() {
+    QoeAggregator aggregator = new QoeAggregator();
+    aggregator.startSession("vtv1", 0);
+    aggregator.onPlaying(1000);
+    aggregator.onPaused(5000);
+    aggregator.onPlaying(65000);
+    aggregator.endSession(66000);
+
+    QoeCounters counters = aggregator.getTotalCounters();
+    assertEquals(5000, counters.playTimeMs);
+    assertEquals(0, counters.rebufferTimeMs);
+    assertEquals(0, counters.rebufferCount);
+  }
+
+  @Test
+  public void bitrateSwitches_weightMeanBitrateByPlayTime() {
+    QoeAggregator aggregator = new QoeAggregator();
+    aggregator.startSession("vtv1", 0);
+    aggregator.onVideoBitrateChanged(0, 800000);
+    aggregator.onPlaying(0);
+    aggregator.onVideoBitrateChanged(2000, 3000000);
+    aggregator.onVideoBitrateChanged(2000, 3000000);
+    aggregator.onVideoBitrateChanged(8000, 1500000);
+    aggregator.endSession(10000);
+
+    QoeCounters counters = aggregator.getTotalCounters();
+    assertEquals(2, counters.bitrateSwitchCount);
+    assertEquals((800000L * 2 + 3000000L * 6 + 1500000L * 2) / 10, counters.getMeanBitrate());
+    assertEquals(10000, counters.bitratePlayTimes.getTotalWeight());
+  }
+
+  @Test
+  public void droppedFramesAndBandwidth_areRolledUpPerChannel() {
+    QoeAggregator aggregator = new QoeAggregator();
+    for (int i = 0; i < 3; i++) {
+      aggregator.startSession(i % 2 == 0 ? "vtv1" : "vtv2", i * 1000);
+      aggregator.onPlaying(i * 1000);
+      aggregator.onDroppedFrames(5);
+      aggregator.onBandwidthEstimate(4000000);
+      aggregator.onBandwidthEstimate(2000000);
+    }
+    aggregator.endSession(3000);
+    // Events outside a session are ignored.
+    aggregator.onDroppedFrames(100);
+
+    QoeCounters vtv1 = aggregator.getChannelCounters("vtv1");
+    QoeCounters vtv2 = aggregator.getChannelCounters("vtv2");
+    assertEquals(2, vtv1.sessionCount);
+    assertEquals(10, vtv1.droppedFrameCount);
+    assertEquals(1, vtv2.sessionCount);
+    assertEquals(5, vtv2.droppedFrameCount);
+    assertEquals(3000000, vtv1.getMeanBandwidthEstimate());
+    assertEquals(15, aggregator.getTotalCounters().droppedFrameCount);
+    assertEquals(6, aggregator.getTotalCounters().bandwidthEstimates.getTotalWeight());
+    assertEquals(0, aggregator.getChannelCounters("vtv3").sessionCount);
+  }
+
+  @Test
+  public void getSessionCounters_includesTimeOfCurrentState() {
+    QoeAggregator aggregator = new QoeAggregator();
+    aggregator.startSession("vtv1", 0);
+    aggregator.onPlaying(500);
+
+    assertEquals(1500, aggregator.getSessionCounters(2000).playTimeMs);
+    assertEquals(2500, aggregator.getSessionCounters(3000).playTimeMs);
+  }
+
+  @Test
+  public void endSession_writesSnapshotsInBatches() throws Exception {
+    QoeAggregator aggregator =
+        new QoeAggregator(snapshotFile, /* batchSize= */ 2, /* maxFileSizeBytes= */ 1 << 20);
+    for (int i = 0; i < 3; i++) {
+      aggregator.startSession("channel" + i, 0);
+      aggregator.onPlaying(0);
+      aggregator.endSession(1000);
+    }
+    // The first two sessions made a batch; the third is only written on flush.
+    aggregator.flush().get();
+    List<String> lines = readLines(snapshotFile);
+    aggregator.release();
+
+    assertEquals(3, lines.size());
+    assertTrue(lines.get(0).contains(" channel=channel0 "));
+    assertTrue(lines.get(2).contains(" channel=channel2 "));
+    assertTrue(lines.get(2).contains(" playMs=1000 "));
+  }
+
+  private static List<String> readLines(File file) throws Exception {
+    List<String> lines = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,153 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/** Unit tests for {@link SharedHttpClient}, run against a local {@link MockWebServer}. */
+public class SharedHttpClientTest {
+
+  private MockWebServer server;
+  private CountingDns dns;
+  private SharedHttpClient sharedHttpClient;
+  private String host;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    dns = new CountingDns();
+    sharedHttpClient =
+        new SharedHttpClient.Builder()
+            .setDns(dns)
+            .setClock(new FakeClock(/* initialTimeMs= */ 0))
+            .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  @Test
+  public void sequentialRequests_reuseOneConnection() throws Exception {
+    server.start();
+    host = server.url("/").host();
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setBody("segment"));
+    }
+
+    for (int i = 0; i < 5; i++) {
+      get(sharedHttpClient.getClient(), "/segment" + i);
+    }
+
+    HttpConnectionStats stats = sharedHttpClient.getConnectionStats();
+    assertEquals(1, stats.getConnectionCount(host));
+    assertEquals(4, stats.getReusedConnectionCount(host));
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+    assertEquals(1, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test
+  public void closedConnections_shareDnsLookup() throws Exception {
+    server.start();
+    host = server.url("/").host();
+    for (int i = 0; i < 3; i++) {
+      server.enqueue(
+          new MockResponse().setBody("segment").setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+    }
+
+    for (int i = 0; i < 3; i++) {
+      get(sharedHttpClient.getClient(), "/segment" + i);
+    }
+
+    HttpConnectionStats stats = sharedHttpClient.getConnectionStats();
+    assertEquals(3, stats.getConnectionCount(host));
+    assertEquals(0, stats.getReusedConnectionCount(host));
+    assertEquals(1, dns.lookupCount.get());
+  }
+
+  @Test
+  public void http2_multiplexesConcurrentRequests() throws Exception {
+    server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+    server.start();
+    host = server.url("/").host();
+    for (int i = 0; i < 5; i++) {
+      server.enqueue(new MockResponse().setBody("segment").setBodyDelay(100, TimeUnit.MILLISECONDS));
+    }
+    final OkHttpClient client =
+        sharedHttpClient
+            .getClient()
+            .newBuilder()
+            .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+            .build();
+
+    // Open the connection first, so that the concurrent requests find it in the pool.
+    get(client, "/manifest.mpd");
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    List<Future<String>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final String path = "/segment" + i;
+      futures.add(
+          executorService.submit(
+              new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                  return get(client, path);
+                }
+              }));
+    }
+    for (Future<String> future : futures) {
+      assertEquals("segment", future.get(5, TimeUnit.SECONDS));
+    }
+    executorService.shutdown();
+
+    HttpConnectionStats stats = sharedHttpClient.getConnectionStats();
+    assertEquals(1, stats.getConnectionCount(host));
+    assertEquals(1, stats.getHttp2ConnectionCount(host));
+    assertEquals(4, stats.getReusedConnectionCount(host));
+  }
+
+  private String get(OkHttpClient client, String path) throws Exception {
+    Request request = new Request.Builder().url(server.url(path)).build();
+    Response response = client.newCall(request).execute();
+    try {
+      return response.body().string();
+    } finally {
+      response.close();
+    }
+  }
+
+  private static final class CountingDns implements Dns {
+
+    private final AtomicInteger lookupCount = new AtomicInteger();
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+      lookupCount.incrementAndGet();
+      return Dns.SYSTEM.lookup(hostname);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/** Unit tests for {@link StartupTracker} and {@link StartupLog}. */
+public class StartupTrackerTest {
+
+  private static final long MS = 1000000;
+
+  private File logFile;
+
+  @Before
+  public void setUp() throws Exception {
+    logFile = File.createTempFile("startup", ".log");
+    logFile.delete();
+  }
+
+  @After
+  public void tearDown() {
+    logFile.delete();
+    new File(logFile.getPath() + ".1").delete();
+  }
+
+  @Test
+  public void record_keepsFirstOccurrenceOfEachPhase() {
+    StartupTracker tracker = new StartupTracker(/* capacity= */ 4, /* logFile= */ null);
+    StartupTracker.Session session = tracker.startSession(/* startTimeNs= */ 1000 * MS);
+    session.record(StartupTracker.PHASE_MANIFEST_LOADED, 1120 * MS);
+    session.record(StartupTracker.PHASE_MANIFEST_LOADED, 3000 * MS);
+    session.record(StartupTracker.PHASE_FIRST_FRAME, 1900 * MS);
+
+    List<StartupTimeline> timelines = tracker.getTimelines();
+    assertEquals(1, timelines.size());
+    StartupTimeline timeline = timelines.get(0);
+    assertEquals(0, timeline.getOffsetMs(StartupTracker.PHASE_START));
+    assertEquals(120, timeline.getOffsetMs(StartupTracker.PHASE_MANIFEST_LOADED));
+    assertEquals(900, timeline.getOffsetMs(StartupTracker.PHASE_FIRST_FRAME));
+    assertEquals(
+        StartupTracker.UNKNOWN, timeline.getOffsetMs(StartupTracker.PHASE_LICENSE_RECEIVED));
+    assertEquals(
+        780,
+        timeline.getDurationMs(
+            StartupTracker.PHASE_MANIFEST_LOADED, StartupTracker.PHASE_FIRST_FRAME));
+  }
+
+  @Test
+  public void startSession_overwritesOldestSessionAndIgnoresItsLateRecords() {
+    StartupTracker tracker = new StartupTracker(/* capacity= */ 2, /* logFile= */ null);
+    StartupTracker.Session first = tracker.startSession(0);
+    tracker.startSession(0);
+    StartupTracker.Session third = tracker.startSession(0);
+
+    first.record(StartupTracker.PHASE_FIRST_FRAME, 500 * MS);
+
+    List<StartupTimeline> timelines = tracker.getTimelines();
+    assertEquals(2, timelines.size());
+    assertEquals(1, timelines.get(0).sequence);
+    assertEquals(2, timelines.get(1).sequence);
+    assertEquals(
+        StartupTracker.UNKNOWN, timelines.get(1).getOffsetMs(StartupTracker.PHASE_FIRST_FRAME));
+    third.record(StartupTracker.PHASE_FIRST_FRAME, 500 * MS);
+    assertEquals(500, tracker.getTimelines().get(1).getOffsetMs(StartupTracker.PHASE_FIRST_FRAME));
+  }
+
+  @Test
+  public void getPercentileMs_usesSessionsWithBothPhases() {
+    StartupTracker tracker = new StartupTracker(/* capacity= */ 16, /* logFile= */ null);
+    for (int i = 1; i <= 10; i++) {
+      StartupTracker.Session session = tracker.startSession(0);
+      session.record(StartupTracker.PHASE_LICENSE_REQUESTED, 100 * MS);
+      session.record(StartupTracker.PHASE_LICENSE_RECEIVED, (100 + i * 10) * MS);
+    }
+    // A session whose license request is still in flight.
+    tracker.startSession(0).record(StartupTracker.PHASE_LICENSE_REQUESTED, 100 * MS);
+
+    assertEquals(
+        50,
+        tracker.getPercentileMs(
+            StartupTracker.PHASE_LICENSE_REQUESTED, StartupTracker.PHASE_LICENSE_RECEIVED, 0.5f));
+    assertEquals(
+        90,
+        tracker.getPercentileMs(
+            StartupTracker.PHASE_LICENSE_REQUESTED, StartupTracker.PHASE_LICENSE_RECEIVED, 0.9f));
+    assertEquals(
+        StartupTracker.UNKNOWN,
+        tracker.getPercentileMs(
+            StartupTracker.PHASE_START, StartupTracker.PHASE_FIRST_FRAME, 0.5f));
+  }
+
+  @Test
+  public void flushLog_appendsCompletedSessionsOnce() throws Exception {
+    StartupTracker tracker = new StartupTracker(/* capacity= */ 8, logFile);
+    StartupTracker.Session completed = tracker.startSession(0);
+    completed.record(StartupTracker.PHASE_MANIFEST_LOADED, 150 * MS);
+    completed.record(StartupTracker.PHASE_FIRST_FRAME, 1200 * MS);
+    StartupTracker.Session starting = tracker.startSession(0);
+
+    tracker.flushLog().get();
+    tracker.flushLog().get();
+    assertEquals(1, tracker.readLog().size());
+
+    starting.record(StartupTracker.PHASE_FIRST_FRAME, 700 * MS);
+    tracker.flushLog().get();
+    List<StartupTimeline> logged = tracker.readLog();
+    tracker.release();
+
+    assertEquals(2, logged.size());
+    assertEquals(150, logged.get(0).getOffsetMs(StartupTracker.PHASE_MANIFEST_LOADED));
+    assertEquals(1200, logged.get(0).getOffsetMs(StartupTracker.PHASE_FIRST_FRAME));
+    assertEquals(StartupTracker.UNKNOWN, logged.get(0).getOffsetMs(StartupTracker.PHASE_READY));
+    assertEquals(700, logged.get(1).getOffsetMs(StartupTracker.PHASE_FIRST_FRAME));
+  }
+
+  @Test
+  public void append_pastMaxSize_startsNewFile() throws Exception {
+    StartupLog log = new StartupLog(logFile, /* maxSizeBytes= */ 64);
+    long[] offsetsMs = new long[StartupTracker.PHASE_COUNT];
+    for (int i = 0; i < 10; i++) {
+      log.append(Collections.singletonList(new StartupTimeline(i, 1000L * i, offsetsMs)));
+    }
+
+    assertTrue(logFile.length() <= 64 + 40);
+    assertTrue(new File(logFile.getPath() + ".1").exists());
+    List<StartupTimeline> timelines = log.read();
+    assertEquals(9000, timelines.get(timelines.size() - 1).wallClockStartTimeMs);
+  }
+}
@@ -0,0 +1,61 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+
+/** Utility methods shared by unit tests. */
+/* package */ final class TestUtil {
+
+  private TestUtil() {}
+
+  /**
+   * Returns a {@link Callable} that posts {@code body} to {@code url} and returns the response
+   * body, as a license request attempt does.
+   *
+   * @param url The URL to post to.
+   * @param body The request body.
+   * @param readTimeoutMs The read timeout, in milliseconds, or 0 for none.
+   * @throws InvalidResponseCodeException From the callable, if the response code is not 2xx.
+   */
+  public static Callable<byte[]> newPost(
+      final String url, final byte[] body, final int readTimeoutMs) {
+    return new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+          connection.setReadTimeout(readTimeoutMs);
+          connection.setRequestMethod("POST");
+          connection.setDoOutput(true);
+          OutputStream outputStream = connection.getOutputStream();
+          outputStream.write(body);
+          outputStream.close();
+          int responseCode = connection.getResponseCode();
+          if (responseCode < 200 || responseCode > 299) {
+            throw new InvalidResponseCodeException(
+                responseCode,
+                connection.getResponseMessage(),
+                connection.getHeaderFields(),
+                /* dataSpec= */ null);
+          }
+          InputStream inputStream = connection.getInputStream();
+          ByteArrayOutputStream response = new ByteArrayOutputStream();
+          byte[] buffer = new byte[1024];
+          int bytesRead;
+          while ((bytesRead = inputStream.read(buffer)) != -1) {
+            response.write(buffer, 0, bytesRead);
+          }
+          return response.toByteArray();
+        } finally {
+          connection.disconnect();
+        }
+      }
+    };
+  }
+}
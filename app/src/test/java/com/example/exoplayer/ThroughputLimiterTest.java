@@ -0,0 +1,91 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Unit tests for {@link ThroughputLimiter}. */
+public class ThroughputLimiterTest {
+
+  private static final long MS = 1000000;
+
+  @Test
+  public void readsWithinBurst_doNotWait() {
+    ThroughputLimiter limiter = new ThroughputLimiter(/* maxBytesPerSecond= */ 1000);
+
+    assertEquals(0, limiter.reserve(600, 0));
+    assertEquals(0, limiter.reserve(400, 0));
+  }
+
+  @Test
+  public void readsBeyondBurst_waitUntilDebtIsRepaid() {
+    ThroughputLimiter limiter = new ThroughputLimiter(/* maxBytesPerSecond= */ 1000);
+
+    assertEquals(0, limiter.reserve(1000, 0));
+    assertEquals(500 * MS, limiter.reserve(500, 0));
+    // The second read is charged to the next caller until its debt is repaid.
+    assertEquals(700 * MS, limiter.reserve(200, 0));
+    assertEquals(200 * MS, limiter.reserve(0, 500 * MS));
+    assertEquals(1400, limiter.getThrottledMs());
+  }
+
+  @Test
+  public void idleTime_refillsUpToOneSecondOfThroughput() {
+    ThroughputLimiter limiter = new ThroughputLimiter(/* maxBytesPerSecond= */ 1000);
+    limiter.reserve(1000, 0);
+
+    // Ten idle seconds only refill the bucket to its capacity.
+    assertEquals(0, limiter.reserve(1000, 10000 * MS));
+    assertEquals(100 * MS, limiter.reserve(100, 10000 * MS));
+  }
+
+  @Test
+  public void concurrentReaders_shareTheCap() throws Exception {
+    final ThroughputLimiter limiter = new ThroughputLimiter(/* maxBytesPerSecond= */ 100000);
+    limiter.reserve(100000, System.nanoTime());
+    Thread[] readers = new Thread[4];
+    long startTimeNs = System.nanoTime();
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] =
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                for (int j = 0; j < 5; j++) {
+                  limiter.acquire(1000);
+                }
+              } catch (InterruptedException e) {
+                // Ignore.
+              }
+            }
+          };
+      readers[i].start();
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+
+    // 20 KB at 100 KB/s take at least 200 ms, however many readers share the limiter.
+    long elapsedMs = (System.nanoTime() - startTimeNs) / MS;
+    assertTrue(elapsedMs >= 180);
+  }
+
+  @Test
+  public void unlimited_neverWaits() {
+    ThroughputLimiter limiter = new ThroughputLimiter(ThroughputLimiter.UNLIMITED);
+
+    assertEquals(0, limiter.reserve(Integer.MAX_VALUE, 0));
+    assertEquals(0, limiter.reserve(Integer.MAX_VALUE, 0));
+    assertEquals(0, limiter.getThrottledMs());
+  }
+
+  @Test
+  public void longIdleTimeAtHighCap_refillsBucket() {
+    ThroughputLimiter limiter = new ThroughputLimiter(/* maxBytesPerSecond= */ 100000000);
+    limiter.reserve(100000000, 0);
+
+    // Ten idle minutes times the cap does not fit in a long.
+    assertEquals(0, limiter.reserve(100000000, 600000 * MS));
+  }
+}
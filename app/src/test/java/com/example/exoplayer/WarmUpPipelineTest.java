@@ -0,0 +1,212 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Unit tests for {@link WarmUpPipeline}. */
+public class WarmUpPipelineTest {
+
+  private static final Executor DIRECT_EXECUTOR =
+      new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          command.run();
+        }
+      };
+
+  private WarmUpPipeline warmUp;
+  private CountDownLatch slowComponentGate;
+
+  @Before
+  public void setUp() {
+    warmUp = new WarmUpPipeline(/* threadCount= */ 2, DIRECT_EXECUTOR);
+    slowComponentGate = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown() {
+    slowComponentGate.countDown();
+    warmUp.finish();
+  }
+
+  @Test
+  public void whenReady_waitsOnlyForNamedComponents() throws Exception {
+    warmUp.start("slow", gatedValue("slow"));
+    Future<String> fast = warmUp.start("fast", value("fast"));
+    CountDownLatch fastReady = new CountDownLatch(1);
+    CountDownLatch allReady = new CountDownLatch(1);
+
+    warmUp.whenReady(countDown(fastReady), "fast");
+    warmUp.whenReady(countDown(allReady));
+
+    assertTrue(fastReady.await(5, TimeUnit.SECONDS));
+    assertEquals("fast", warmUp.await(fast));
+    assertTrue(warmUp.isReady("fast"));
+    assertFalse(warmUp.isReady());
+    assertEquals(1, allReady.getCount());
+
+    slowComponentGate.countDown();
+    assertTrue(allReady.await(5, TimeUnit.SECONDS));
+    assertTrue(warmUp.isReady());
+  }
+
+  @Test
+  public void whenReady_afterCompletion_runsImmediately() throws Exception {
+    Future<String> component = warmUp.start("component", value("value"));
+    warmUp.await(component);
+    final AtomicInteger callbackCount = new AtomicInteger();
+
+    warmUp.whenReady(
+        new Runnable() {
+          @Override
+          public void run() {
+            callbackCount.incrementAndGet();
+          }
+        },
+        "component");
+
+    assertEquals(1, callbackCount.get());
+  }
+
+  @Test
+  public void component_canAwaitEarlierComponent() {
+    final Future<Integer> base = warmUp.start("base", gatedValue(20));
+    Future<Integer> dependent =
+        warmUp.start(
+            "dependent",
+            new Callable<Integer>() {
+              @Override
+              public Integer call() {
+                return warmUp.await(base) + 1;
+              }
+            });
+
+    slowComponentGate.countDown();
+
+    assertEquals(21, (int) warmUp.await(dependent));
+  }
+
+  @Test
+  public void failedComponent_isReadyButAwaitThrows() throws Exception {
+    Future<String> component =
+        warmUp.start(
+            "broken",
+            new Callable<String>() {
+              @Override
+              public String call() throws Exception {
+                throw new Exception("Disk full");
+              }
+            });
+    CountDownLatch ready = new CountDownLatch(1);
+    warmUp.whenReady(countDown(ready), "broken");
+
+    assertTrue(ready.await(5, TimeUnit.SECONDS));
+    try {
+      warmUp.await(component);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Disk full", e.getCause().getMessage());
+    }
+    assertTrue(warmUp.toString().contains("broken="));
+    assertTrue(warmUp.toString().contains("(failed)"));
+  }
+
+  @Test
+  public void getError_returnsErrorOfFailedNamedComponent() throws Exception {
+    final Exception error = new Exception("Disk full");
+    warmUp.start(
+        "broken",
+        new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            throw error;
+          }
+        });
+    warmUp.start("working", value("working"));
+    CountDownLatch ready = new CountDownLatch(1);
+    warmUp.whenReady(countDown(ready), "broken", "working");
+    assertTrue(ready.await(5, TimeUnit.SECONDS));
+
+    assertSame(error, warmUp.getError("working", "broken"));
+    assertSame(error, warmUp.getError());
+    assertNull(warmUp.getError("working"));
+  }
+
+  @Test
+  public void metrics_recordDurationQueueAndBlockedTime() throws Exception {
+    warmUp.finish();
+    final FakeClock clock = new FakeClock(/* initialTimeMs= */ 1000);
+    warmUp = new WarmUpPipeline(/* threadCount= */ 1, DIRECT_EXECUTOR, clock);
+    final Thread testThread = Thread.currentThread();
+    warmUp.start(
+        "slow",
+        new Callable<String>() {
+          @Override
+          public String call() {
+            // Take 30ms once the test thread is blocked waiting for the queued component.
+            while (testThread.getState() != Thread.State.WAITING) {
+              Thread.yield();
+            }
+            clock.advanceTime(30);
+            return "slow";
+          }
+        });
+    Future<String> queued = warmUp.start("queued", value("queued"));
+    assertEquals(-1, warmUp.getDurationMs("queued"));
+    assertEquals(-1, warmUp.getDurationMs("unknown"));
+
+    warmUp.await(queued);
+    CountDownLatch ready = new CountDownLatch(1);
+    warmUp.whenReady(countDown(ready), "queued");
+    assertTrue(ready.await(5, TimeUnit.SECONDS));
+
+    assertEquals(0, warmUp.getQueuedMs("slow"));
+    assertEquals(30, warmUp.getDurationMs("slow"));
+    assertEquals(30, warmUp.getQueuedMs("queued"));
+    assertEquals(0, warmUp.getDurationMs("queued"));
+    assertEquals(30, warmUp.getBlockedMs());
+  }
+
+  private <T> Callable<T> gatedValue(final T value) {
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        slowComponentGate.await();
+        return value;
+      }
+    };
+  }
+
+  private static <T> Callable<T> value(final T value) {
+    return new Callable<T>() {
+      @Override
+      public T call() {
+        return value;
+      }
+    };
+  }
+
+  private static Runnable countDown(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+  }
+}
@@ -0,0 +1,132 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.app.Application;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.ByteString;
+
+/**
+ * Unit tests for {@link WidevineMediaDrmCallback}, run against a local {@link MockWebServer}.
+ * Robolectric provides the framework classes used by the HTTP data source and the response decoder.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class WidevineMediaDrmCallbackTest {
+
+  private static final int REQUEST_COUNT = 8;
+  private static final byte[] LICENSE = new byte[] {5, 6, 7, 8};
+
+  private MockWebServer server;
+  private LicenseRequestCoalescer coalescer;
+  private WidevineMediaDrmCallback callback;
+  private ExecutorService callers;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    coalescer =
+        new LicenseRequestCoalescer(
+            LicenseRequestCoalescer.DEFAULT_MAX_CONCURRENT_REQUESTS,
+            LicenseRequestCoalescer.DEFAULT_MAX_QUEUED_REQUESTS);
+    callback =
+        new WidevineMediaDrmCallback(
+            server.url("/license").toString(),
+            /* forceDefaultLicenseUrl= */ false,
+            new DefaultHttpDataSourceFactory("WidevineMediaDrmCallbackTest"),
+            coalescer);
+    callers = Executors.newFixedThreadPool(REQUEST_COUNT);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    callers.shutdownNow();
+    server.shutdown();
+  }
+
+  @Test
+  public void concurrentIdenticalKeyRequests_sendSinglePost() throws Exception {
+    server.enqueue(newLicenseResponse().setBodyDelay(500, TimeUnit.MILLISECONDS));
+    final KeyRequest keyRequest = new KeyRequest(new byte[] {1, 2, 3}, /* licenseServerUrl= */ "");
+
+    List<Future<byte[]>> licenses = executeConcurrently(keyRequest, keyRequest);
+
+    for (Future<byte[]> license : licenses) {
+      assertArrayEquals(LICENSE, license.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, server.getRequestCount());
+    assertEquals(REQUEST_COUNT - 1, coalescer.getCoalescedRequestCount());
+  }
+
+  @Test
+  public void concurrentKeyRequestsWithDifferentBodies_areNotCoalesced() throws Exception {
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      server.enqueue(newLicenseResponse().setBodyDelay(500, TimeUnit.MILLISECONDS));
+    }
+
+    List<Future<byte[]>> licenses =
+        executeConcurrently(
+            new KeyRequest(new byte[] {1}, /* licenseServerUrl= */ ""),
+            new KeyRequest(new byte[] {2}, /* licenseServerUrl= */ ""));
+
+    for (Future<byte[]> license : licenses) {
+      assertArrayEquals(LICENSE, license.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(2, server.getRequestCount());
+    assertEquals(REQUEST_COUNT - 2, coalescer.getCoalescedRequestCount());
+  }
+
+  /**
+   * Executes {@link #REQUEST_COUNT} key requests at once, alternating between {@code first} and
+   * {@code second}.
+   */
+  private List<Future<byte[]>> executeConcurrently(
+      final KeyRequest first, final KeyRequest second) {
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<byte[]>> licenses = new ArrayList<>();
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      final KeyRequest keyRequest = i % 2 == 0 ? first : second;
+      licenses.add(
+          callers.submit(
+              new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                  startLatch.await();
+                  return callback.executeKeyRequest(C.WIDEVINE_UUID, keyRequest);
+                }
+              }));
+    }
+    startLatch.countDown();
+    return licenses;
+  }
+
+  private static MockResponse newLicenseResponse() {
+    return new MockResponse()
+        .setHeader("Content-Type", "application/json")
+        .setBody("{\"status\":\"ok\",\"license\":\"" + ByteString.of(LICENSE).base64() + "\"}");
+  }
+}
@@ -0,0 +1,88 @@
+package com.example.exoplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Unit tests for {@link ZappingEngine}. */
+public class ZappingEngineTest {
+
+  private static final long MB = 1024 * 1024;
+
+  @Test
+  public void maxPreparedNeighbors_defaultBudgets_preparesBothNeighbors() {
+    assertEquals(
+        2,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 2,
+            /* memoryBudgetBytes= */ 24 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 2000000,
+            /* standbyBitrate= */ 128000,
+            /* standbyBufferMs= */ 2000));
+  }
+
+  @Test
+  public void maxPreparedNeighbors_isLimitedByMemoryBudget() {
+    // Each neighbor needs its 2 MB overhead plus 1 MB of buffer.
+    assertEquals(
+        1,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 2,
+            /* memoryBudgetBytes= */ 5 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 100000000,
+            /* standbyBitrate= */ 1048576,
+            /* standbyBufferMs= */ 8000));
+    assertEquals(
+        0,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 2,
+            /* memoryBudgetBytes= */ MB,
+            /* bandwidthBudgetBitsPerSecond= */ 100000000,
+            /* standbyBitrate= */ 128000,
+            /* standbyBufferMs= */ 2000));
+  }
+
+  @Test
+  public void maxPreparedNeighbors_isLimitedByBandwidthBudget() {
+    assertEquals(
+        1,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 2,
+            /* memoryBudgetBytes= */ 64 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 200000,
+            /* standbyBitrate= */ 128000,
+            /* standbyBufferMs= */ 2000));
+  }
+
+  @Test
+  public void maxPreparedNeighbors_isAtMostTwo() {
+    assertEquals(
+        2,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 5,
+            /* memoryBudgetBytes= */ 64 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 100000000,
+            /* standbyBitrate= */ 128000,
+            /* standbyBufferMs= */ 2000));
+    assertEquals(
+        0,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ -1,
+            /* memoryBudgetBytes= */ 64 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 100000000,
+            /* standbyBitrate= */ 128000,
+            /* standbyBufferMs= */ 2000));
+  }
+
+  @Test
+  public void maxPreparedNeighbors_withoutStandbyBitrate_ignoresBandwidthBudget() {
+    assertEquals(
+        2,
+        ZappingEngine.getMaxPreparedNeighbors(
+            /* maxPreparedNeighbors= */ 2,
+            /* memoryBudgetBytes= */ 24 * MB,
+            /* bandwidthBudgetBitsPerSecond= */ 0,
+            /* standbyBitrate= */ 0,
+            /* standbyBufferMs= */ 2000));
+  }
+}
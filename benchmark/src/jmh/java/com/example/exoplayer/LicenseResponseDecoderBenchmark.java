@@ -0,0 +1,85 @@
+package com.example.exoplayer;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link LicenseResponseDecoder} with the previous response handling of {@code
+ * WidevineMediaDrmCallback}, which read the body with {@code Util.toByteArray}, built a {@link
+ * String} and a {@link JSONObject}, and Base64 decoded the {@code license} field.
+ *
+ * <p>Both paths start from the response stream so that the cost of buffering the body is included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LicenseResponseDecoderBenchmark {
+
+  /** The size of the JSON response, in bytes. */
+  @Param({"2048", "8192", "32768", "65536"})
+  public int responseSize;
+
+  private byte[] response;
+
+  @Setup
+  public void setUp() {
+    // Leave room for the JSON envelope around the Base64 encoded license.
+    byte[] license = new byte[(responseSize - 64) / 4 * 3];
+    new Random(responseSize).nextBytes(license);
+    String json =
+        "{\"status\":\"ok\",\"license\":\"" + Base64.getEncoder().encodeToString(license) + "\"}";
+    response = json.getBytes(Charset.forName("UTF-8"));
+  }
+
+  @Benchmark
+  public byte[] previousPath() throws Exception {
+    byte[] bytes = toByteArray(new ByteArrayInputStream(response));
+    JSONObject jsonObject = new JSONObject(new String(bytes));
+    return Base64.getMimeDecoder().decode(jsonObject.getString("license"));
+  }
+
+  @Benchmark
+  public byte[] licenseResponseDecoder() throws IOException {
+    InputStream inputStream = new ByteArrayInputStream(response);
+    // The content length is known, so the body is read into an exact-size buffer.
+    byte[] bytes = new byte[response.length];
+    int bytesRead = 0;
+    while (bytesRead < bytes.length) {
+      bytesRead += inputStream.read(bytes, bytesRead, bytes.length - bytesRead);
+    }
+    return LicenseResponseDecoder.JSON.decode(bytes, 0, bytes.length);
+  }
+
+  /** Equivalent of {@code Util.toByteArray}. */
+  private static byte[] toByteArray(InputStream inputStream) throws IOException {
+    byte[] buffer = new byte[1024 * 4];
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    return outputStream.toByteArray();
+  }
+}
@@ -0,0 +1,100 @@
+package com.example.exoplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process DASH origin on the loopback interface, which serves the segments of a single
+ * representation from files in a temporary directory, the way a CDN edge serves cached content.
+ */
+final class FileDashOrigin {
+
+  private final File directory;
+  private final int segmentCount;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  /**
+   * @param segmentCount The number of segments of the single representation.
+   * @param segmentSize The size of each segment, in bytes.
+   */
+  FileDashOrigin(int segmentCount, int segmentSize) throws IOException {
+    this.segmentCount = segmentCount;
+    directory = Files.createTempDirectory("dash-origin").toFile();
+    Random random = new Random(segmentSize);
+    byte[] segment = new byte[segmentSize];
+    for (int i = 0; i < segmentCount; i++) {
+      random.nextBytes(segment);
+      writeFile("segment-" + i + ".m4s", segment);
+    }
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", new FileHandler());
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /** Returns the URL of the segment at {@code index}. */
+  String getSegmentUrl(int index) {
+    return getBaseUrl() + "segment-" + index + ".m4s";
+  }
+
+  int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /** Stops the server and deletes the files. */
+  void stop() {
+    server.stop(/* delay= */ 0);
+    executor.shutdownNow();
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  private String getBaseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  private void writeFile(String name, byte[] data) throws IOException {
+    OutputStream outputStream = new FileOutputStream(new File(directory, name));
+    try {
+      outputStream.write(data);
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private final class FileHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      File file = new File(directory, exchange.getRequestURI().getPath().substring(1));
+      if (!file.isFile()) {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+        return;
+      }
+      exchange.sendResponseHeaders(200, file.length());
+      OutputStream responseBody = exchange.getResponseBody();
+      Files.copy(file.toPath(), responseBody);
+      responseBody.close();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.example.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link WidevineMediaDrmCallback#executeKeyRequest} against a {@link StubLicenseServer},
+ * with the HTTP data sources of a {@link SharedHttpClient} as in the app: the header snapshot, the
+ * {@link LicenseRequestCoalescer}, the POST, the exact-size response read and the {@link
+ * LicenseResponseDecoder}.
+ *
+ * <p>Sample mode reports latency percentiles, and the GC profiler the allocations per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KeyRequestBenchmark {
+
+  private static final int KEY_REQUEST_SIZE = 2048;
+  private static final int LICENSE_SIZE = 1024;
+
+  /** The time the license server takes to answer, in milliseconds. */
+  @Param({"0", "20"})
+  public long serverLatencyMs;
+
+  private StubLicenseServer server;
+  private WidevineMediaDrmCallback callback;
+  private KeyRequest keyRequest;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = new StubLicenseServer(LICENSE_SIZE, serverLatencyMs);
+    SharedHttpClient httpClient = new SharedHttpClient.Builder().build();
+    callback =
+        new WidevineMediaDrmCallback(
+            server.getLicenseUrl(),
+            /* forceDefaultLicenseUrl= */ true,
+            httpClient.buildHttpDataSourceFactory("KeyRequestBenchmark"),
+            new LicenseRequestCoalescer(
+                LicenseRequestCoalescer.DEFAULT_MAX_CONCURRENT_REQUESTS,
+                LicenseRequestCoalescer.DEFAULT_MAX_QUEUED_REQUESTS));
+    callback.setCustomData(
+        KeyRequestHeadersBenchmark.USER_ID,
+        KeyRequestHeadersBenchmark.SESSION_ID,
+        KeyRequestHeadersBenchmark.MERCHANT_ID,
+        KeyRequestHeadersBenchmark.APP_ID);
+    byte[] data = new byte[KEY_REQUEST_SIZE];
+    new Random(KEY_REQUEST_SIZE).nextBytes(data);
+    keyRequest = new KeyRequest(data, /* licenseServerUrl= */ "");
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop();
+  }
+
+  /** One player requesting a key. */
+  @Benchmark
+  public byte[] keyRequest() throws Exception {
+    return callback.executeKeyRequest(C.WIDEVINE_UUID, keyRequest);
+  }
+
+  /** Eight players requesting the same key at once, which join each other's requests. */
+  @Benchmark
+  @Threads(8)
+  public byte[] identicalConcurrentKeyRequests() throws Exception {
+    return callback.executeKeyRequest(C.WIDEVINE_UUID, keyRequest);
+  }
+}
@@ -0,0 +1,112 @@
+package com.example.exoplayer;
+
+import android.util.Base64;
+
+import com.google.android.exoplayer2.drm.ExoMediaDrm.KeyRequest;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.util.Util;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares how {@link WidevineMediaDrmCallback#executeKeyRequest} builds a key request, reading the
+ * snapshot of headers whose {@code custom-data} header is only encoded again when the ids change,
+ * with the previous per-request building of the headers, which copied the properties under a lock
+ * and JSON and Base64 encoded the {@code custom-data} header every time. Both paths create the data
+ * source with the headers set and the spec of the POST, as the request does before it is sent.
+ *
+ * <p>The cost moved out of the request path is measured by the {@code setCustomData} benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KeyRequestHeadersBenchmark {
+
+  static final String USER_ID = "1-6849382";
+  static final String SESSION_ID = "exoplayer_sessionId_123456";
+  static final String MERCHANT_ID = "d5321abd-6676-4bc1-a39e-6bb763029e54";
+  static final String APP_ID = "3930f331-e337-42b7-9619-00a0c12c16cb";
+
+  private static final String OTHER_SESSION_ID = "exoplayer_sessionId_654321";
+
+  private static final String LICENSE_URL = "https://license.example.com/";
+
+  private final Map<String, String> keyRequestProperties = new HashMap<>();
+
+  private HttpDataSource.Factory dataSourceFactory;
+  private WidevineMediaDrmCallback callback;
+  private KeyRequest keyRequest;
+  private boolean otherSession;
+
+  @Setup
+  public void setUp() {
+    dataSourceFactory =
+        new SharedHttpClient.Builder().build().buildHttpDataSourceFactory("HeadersBenchmark");
+    callback = new WidevineMediaDrmCallback(LICENSE_URL, dataSourceFactory);
+    callback.setCustomData(USER_ID, SESSION_ID, MERCHANT_ID, APP_ID);
+    keyRequest = new KeyRequest(new byte[2048], /* licenseServerUrl= */ "");
+  }
+
+  /** The request built by a key request, from the header snapshot. */
+  @Benchmark
+  public void keyRequest(Blackhole blackhole) {
+    blackhole.consume(callback.newKeyRequestDataSource());
+    blackhole.consume(callback.newKeyRequestDataSpec(keyRequest));
+  }
+
+  /** The request built by a key request before the snapshot. */
+  @Benchmark
+  public void previousKeyRequest(Blackhole blackhole) throws Exception {
+    Map<String, String> requestProperties = new HashMap<>();
+    requestProperties.put("Content-Type", "application/octet-stream");
+    requestProperties.put("custom-data", encodeCustomData());
+    synchronized (keyRequestProperties) {
+      requestProperties.putAll(keyRequestProperties);
+    }
+    blackhole.consume(
+        WidevineMediaDrmCallback.newPostDataSource(dataSourceFactory, requestProperties));
+    blackhole.consume(callback.newKeyRequestDataSpec(keyRequest));
+  }
+
+  /** Setting the ids of the current session again, as each new player does. */
+  @Benchmark
+  public WidevineMediaDrmCallback unchangedCustomData() {
+    callback.setCustomData(USER_ID, SESSION_ID, MERCHANT_ID, APP_ID);
+    return callback;
+  }
+
+  /** Setting the ids of a new session, which encodes the header and rebuilds the snapshot. */
+  @Benchmark
+  public WidevineMediaDrmCallback changedCustomData() {
+    otherSession = !otherSession;
+    callback.setCustomData(
+        USER_ID, otherSession ? OTHER_SESSION_ID : SESSION_ID, MERCHANT_ID, APP_ID);
+    return callback;
+  }
+
+  /** The previous encoding of the {@code custom-data} header. */
+  private static String encodeCustomData() throws Exception {
+    JSONObject customData = new JSONObject();
+    customData.put("userId", USER_ID);
+    customData.put("sessionId", SESSION_ID);
+    customData.put("merchantId", MERCHANT_ID);
+    customData.put("appId", APP_ID);
+    return Base64.encodeToString(Util.getUtf8Bytes(customData.toString()), Base64.NO_WRAP);
+  }
+}
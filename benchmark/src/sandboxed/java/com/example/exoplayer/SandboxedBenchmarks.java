@@ -0,0 +1,165 @@
+package com.example.exoplayer;
+
+import android.app.Application;
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of app classes that need ExoPlayer and the Android framework. Robolectric
+ * provides the framework, as it does for the unit tests of the app, so the benchmarks must run in
+ * its sandbox.
+ *
+ * <p>JMH cannot fork these benchmarks, since its forked JVMs run a main class of its own outside of
+ * any sandbox. Running them all in the JVM of this test would let the JIT profiles of earlier
+ * benchmarks skew later ones, so this test instead starts a JVM per benchmark method, which runs
+ * this test again for that benchmark only, in process. The parameter combinations of a method
+ * share its JVM.
+ *
+ * <p>Run with {@code ./gradlew :benchmark:jmhSandboxed}. Results are written as JSON to the file
+ * named by the {@code jmh.resultsFile} system property.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, manifest = Config.NONE, application = Application.class)
+public class SandboxedBenchmarks {
+
+  /** The system property naming the only benchmark to run in process. */
+  private static final String BENCHMARK_PROPERTY = "jmh.benchmark";
+  /** The system property naming the file to which results are written. */
+  private static final String RESULTS_FILE_PROPERTY = "jmh.resultsFile";
+  /** The system property holding the classpath of the benchmarks, set by the Gradle task. */
+  private static final String CLASSPATH_PROPERTY = "jmh.classpath";
+
+  private static final List<Class<?>> BENCHMARK_CLASSES =
+      Arrays.<Class<?>>asList(
+          KeyRequestBenchmark.class, KeyRequestHeadersBenchmark.class, SegmentReadBenchmark.class);
+
+  @Test
+  public void run() throws Exception {
+    File resultsFile =
+        new File(System.getProperty(RESULTS_FILE_PROPERTY, "results-sandboxed.json"));
+    String benchmark = System.getProperty(BENCHMARK_PROPERTY);
+    if (benchmark != null) {
+      runInProcess(benchmark, resultsFile);
+    } else {
+      runForked(resultsFile);
+    }
+  }
+
+  private static void runInProcess(String benchmark, File resultsFile) throws Exception {
+    Options options =
+        new OptionsBuilder()
+            .include("^" + Pattern.quote(benchmark) + "$")
+            .forks(0)
+            .addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(resultsFile.getPath())
+            .build();
+    new Runner(options).run();
+  }
+
+  /** Runs each benchmark in a JVM of its own, and merges their results into {@code resultsFile}. */
+  private static void runForked(File resultsFile) throws Exception {
+    StringBuilder results = new StringBuilder();
+    for (String benchmark : listBenchmarks()) {
+      File benchmarkResultsFile = File.createTempFile("jmh", ".json");
+      try {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-Xmx" + Runtime.getRuntime().maxMemory() / (1024 * 1024) + "m");
+        command.add("-cp");
+        command.add(System.getProperty(CLASSPATH_PROPERTY, System.getProperty("java.class.path")));
+        command.add("-D" + BENCHMARK_PROPERTY + "=" + benchmark);
+        command.add("-D" + RESULTS_FILE_PROPERTY + "=" + benchmarkResultsFile.getPath());
+        command.add(JUnitCore.class.getName());
+        command.add(SandboxedBenchmarks.class.getName());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        // Test output is captured by the test runner, so the output of the JVM is copied to it.
+        copy(process.getInputStream(), System.out);
+        if (process.waitFor() != 0) {
+          throw new IllegalStateException(benchmark + " failed");
+        }
+        // Each run writes a JSON array, and their elements are merged into a single array.
+        String benchmarkResults = readString(benchmarkResultsFile).trim();
+        benchmarkResults = benchmarkResults.substring(1, benchmarkResults.length() - 1).trim();
+        if (!benchmarkResults.isEmpty()) {
+          results.append(results.length() > 0 ? ",\n" : "").append(benchmarkResults);
+        }
+      } finally {
+        benchmarkResultsFile.delete();
+      }
+    }
+    OutputStream outputStream = new FileOutputStream(resultsFile);
+    try {
+      outputStream.write(("[\n" + results + "\n]\n").getBytes("UTF-8"));
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  /** Returns the names of the benchmark methods of {@link #BENCHMARK_CLASSES}. */
+  private static Set<String> listBenchmarks() {
+    List<String> includes = new ArrayList<>();
+    for (Class<?> benchmarkClass : BENCHMARK_CLASSES) {
+      includes.add("^" + Pattern.quote(benchmarkClass.getName() + ".") + "\\w+$");
+    }
+    Set<String> benchmarks = new LinkedHashSet<>();
+    for (BenchmarkListEntry entry :
+        BenchmarkList.defaultList()
+            .find(
+                OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT),
+                includes,
+                Collections.<String>emptyList())) {
+      benchmarks.add(entry.getUsername());
+    }
+    return benchmarks;
+  }
+
+  private static void copy(InputStream inputStream, OutputStream outputStream)
+      throws IOException {
+    byte[] buffer = new byte[4096];
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    outputStream.flush();
+  }
+
+  private static String readString(File file) throws IOException {
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      copy(inputStream, outputStream);
+      return outputStream.toString("UTF-8");
+    } finally {
+      inputStream.close();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package com.example.exoplayer;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures segment reads from a {@link FileDashOrigin} into a 128 KB buffer, through the data
+ * sources of the app:
+ *
+ * <ul>
+ *   <li>{@code http}: the HTTP data sources of a {@link SharedHttpClient}.
+ *   <li>{@code throttledHttp}: the same, wrapped in a {@link ThrottledDataSource} whose {@link
+ *       ThroughputLimiter} is shared by the loads of a download, as {@code
+ *       OfflineDownloaderFactory} builds them. The cap is far above what the loopback interface
+ *       delivers, so that this measures the cost of the limiter rather than the cap.
+ *   <li>{@code playbackCacheHit}: the {@link PlaybackCache} data sources, with every segment
+ *       already cached, as for rewinds and replays.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SegmentReadBenchmark {
+
+  private static final int SEGMENT_COUNT = 16;
+  private static final int BUFFER_SIZE = 128 * 1024;
+  private static final long HIGH_CAP_BYTES_PER_SECOND = 100L * 1024 * 1024 * 1024;
+  private static final long CACHE_BUDGET_BYTES = 64 * 1024 * 1024;
+
+  /** The size of each segment, in bytes. */
+  @Param({"262144", "2097152"})
+  public int segmentSize;
+
+  /** The data sources segments are read through. */
+  @Param({"http", "throttledHttp", "playbackCacheHit"})
+  public String dataSource;
+
+  private FileDashOrigin origin;
+  private DataSource.Factory dataSourceFactory;
+  private File cacheDirectory;
+  private ExoDatabaseProvider databaseProvider;
+  private PlaybackCache playbackCache;
+
+  /** The buffer and next segment of each benchmark thread. */
+  @State(Scope.Thread)
+  public static class Reader {
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int segmentIndex;
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    origin = new FileDashOrigin(SEGMENT_COUNT, segmentSize);
+    HttpDataSource.Factory httpDataSourceFactory =
+        new SharedHttpClient.Builder().build().buildHttpDataSourceFactory("SegmentReadBenchmark");
+    if ("http".equals(dataSource)) {
+      dataSourceFactory = httpDataSourceFactory;
+    } else if ("throttledHttp".equals(dataSource)) {
+      dataSourceFactory =
+          new ThrottledDataSource.Factory(
+              httpDataSourceFactory, new ThroughputLimiter(HIGH_CAP_BYTES_PER_SECOND));
+    } else {
+      Context context = ApplicationProvider.getApplicationContext();
+      cacheDirectory = Files.createTempDirectory("playback-cache").toFile();
+      databaseProvider = new ExoDatabaseProvider(context);
+      playbackCache =
+          new PlaybackCache(
+              cacheDirectory,
+              databaseProvider,
+              CACHE_BUDGET_BYTES,
+              CACHE_BUDGET_BYTES,
+              CacheUtil.DEFAULT_CACHE_KEY_FACTORY);
+      dataSourceFactory =
+          playbackCache.buildDataSourceFactory(
+              context, httpDataSourceFactory, /* readOnlyCache= */ null);
+      Reader reader = new Reader();
+      for (int i = 0; i < SEGMENT_COUNT; i++) {
+        read(reader);
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    origin.stop();
+    if (playbackCache != null) {
+      playbackCache.release();
+      databaseProvider.close();
+      deleteRecursively(cacheDirectory);
+    }
+  }
+
+  /** One load reading segments in sequence, as playback does. */
+  @Benchmark
+  public long readSegment(Reader reader) throws IOException {
+    return read(reader);
+  }
+
+  /** The four loads of a download reading segments in parallel. */
+  @Benchmark
+  @Threads(4)
+  public long readSegmentsInParallel(Reader reader) throws IOException {
+    return read(reader);
+  }
+
+  private long read(Reader reader) throws IOException {
+    String url = origin.getSegmentUrl(reader.segmentIndex);
+    reader.segmentIndex = (reader.segmentIndex + 1) % origin.getSegmentCount();
+    DataSource source = dataSourceFactory.createDataSource();
+    try {
+      source.open(new DataSpec(Uri.parse(url)));
+      long bytesLoaded = 0;
+      int bytesRead;
+      while ((bytesRead = source.read(reader.buffer, 0, reader.buffer.length))
+          != C.RESULT_END_OF_INPUT) {
+        bytesLoaded += bytesRead;
+      }
+      return bytesLoaded;
+    } finally {
+      source.close();
+    }
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,80 @@
+package com.example.exoplayer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process license server on the loopback interface, which answers every POST with the same
+ * JSON license response, in the format {@link LicenseResponseDecoder#JSON} decodes.
+ */
+final class StubLicenseServer {
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final byte[] response;
+  private final long latencyMs;
+
+  /**
+   * @param licenseSize The size of the license in each response, in bytes.
+   * @param latencyMs The time the server takes to answer each request, in milliseconds.
+   */
+  StubLicenseServer(int licenseSize, long latencyMs) throws IOException {
+    this.latencyMs = latencyMs;
+    byte[] license = new byte[licenseSize];
+    new Random(licenseSize).nextBytes(license);
+    String json =
+        "{\"status\":\"ok\",\"license\":\"" + Base64.getEncoder().encodeToString(license) + "\"}";
+    response = json.getBytes(Charset.forName("UTF-8"));
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/license", new LicenseHandler());
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /** Returns the URL to which key requests are posted. */
+  String getLicenseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/license";
+  }
+
+  void stop() {
+    server.stop(/* delay= */ 0);
+    executor.shutdownNow();
+  }
+
+  private final class LicenseHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      InputStream requestBody = exchange.getRequestBody();
+      byte[] buffer = new byte[4096];
+      while (requestBody.read(buffer) != -1) {
+        // Drain the key request.
+      }
+      if (latencyMs > 0) {
+        try {
+          Thread.sleep(latencyMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, response.length);
+      OutputStream responseBody = exchange.getResponseBody();
+      responseBody.write(response);
+      responseBody.close();
+    }
+  }
+}